@@ -0,0 +1,81 @@
+package jfmi.app;
+
+
+/** A FileFingerprint identifies the contents of a TaggedFile, so that the
+  file can be recognized after it is moved. The fingerprint is a fast hash
+  of the file's size and its first and last blocks; the full hash, which is
+  optional, covers the whole file. Both are computed by
+  jfmi.util.ContentHash.
+  */
+public class FileFingerprint {
+
+	// PRIVATE INSTANCE Fields
+	private int fileId;
+	private long size;
+	private long modified;
+	private String fingerprint;
+	private String fullHash;
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs a FileFingerprint.
+	  @param fileId_ the id of the file
+	  @param size_ the file's size in bytes when it was hashed
+	  @param modified_ the file's modification time when it was hashed, or
+	  		FileStatus.UNKNOWN
+	  @param fingerprint_ the file's fingerprint
+	  @param fullHash_ the hash of the whole file, or null if not computed
+	  */
+	public FileFingerprint(int fileId_, long size_, long modified_,
+						   String fingerprint_, String fullHash_)
+	{
+		fileId = fileId_;
+		size = size_;
+		modified = modified_;
+		fingerprint = fingerprint_;
+		fullHash = fullHash_;
+	}
+
+	/** @return the id of the file */
+	public int getFileId()
+	{
+		return fileId;
+	}
+
+	/** @return the file's fingerprint */
+	public String getFingerprint()
+	{
+		return fingerprint;
+	}
+
+	/** @return the hash of the whole file, or null if it was not computed */
+	public String getFullHash()
+	{
+		return fullHash;
+	}
+
+	/** @return the file's modification time when it was hashed, or
+	  		FileStatus.UNKNOWN */
+	public long getModified()
+	{
+		return modified;
+	}
+
+	/** @return the file's size in bytes when it was hashed */
+	public long getSize()
+	{
+		return size;
+	}
+
+	/** Returns a String representation of this fingerprint.
+	  @return a String representation of this fingerprint
+	  */
+	public String toString()
+	{
+		return fileId + ": " + fingerprint;
+	}
+
+}
@@ -0,0 +1,738 @@
+package jfmi.app;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/** A FileIdBitmap is a compressed set of non-negative file ids, organised as
+  a roaring bitmap. Ids are split into a 16-bit high part, which selects a
+  container, and a 16-bit low part, which the container stores. A container
+  holding at most ARRAY_MAX_SIZE values is a sorted array of them; a fuller
+  container is a bitmap of all 65536 low values. Sets of ids which are
+  dense or sparse are both stored compactly, and intersections, unions and
+  differences work a container at a time.
+
+  FileIdBitmaps are not thread-safe.
+  */
+public final class FileIdBitmap implements Iterable<Integer> {
+
+	// PUBLIC CLASS Fields
+	/** The most values an array container holds before it becomes a
+	  bitmap container. At this size, both kinds use 8 KB. */
+	public static final int ARRAY_MAX_SIZE = 4096;
+
+	// PRIVATE CLASS Fields
+	private static final int BITMAP_WORDS = 1024;
+
+	// PRIVATE INSTANCE Fields
+	private char[] keys;
+	private Container[] containers;
+	private int size;
+
+
+	//************************************************************
+	// PUBLIC CLASS Methods
+	//************************************************************
+
+	/** Creates a bitmap holding the specified ids.
+	  @param ids the ids to add
+	  @return a new FileIdBitmap
+	  @throws IllegalArgumentException if an id is negative
+	  */
+	public static FileIdBitmap of(int... ids)
+	{
+		FileIdBitmap bitmap = new FileIdBitmap();
+
+		for (int id : ids) {
+			bitmap.add(id);
+		}
+
+		return bitmap;
+	}
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs an empty FileIdBitmap.
+	  */
+	public FileIdBitmap()
+	{
+		keys = new char[4];
+		containers = new Container[4];
+		size = 0;
+	}
+
+	/** Constructs a FileIdBitmap holding the same ids as another.
+	  @param other the bitmap to copy
+	  */
+	public FileIdBitmap(FileIdBitmap other)
+	{
+		keys = Arrays.copyOf(other.keys, Math.max(4, other.size));
+		containers = new Container[keys.length];
+		size = other.size;
+
+		for (int i = 0; i < size; i++) {
+			containers[i] = other.containers[i].copy();
+		}
+	}
+
+	/** Adds an id to the set.
+	  @param id the id to add
+	  @return true if the id was not already in the set
+	  @throws IllegalArgumentException if id is negative
+	  */
+	public boolean add(int id)
+	{
+		checkId(id);
+
+		char high = (char)(id >>> 16);
+		int i = findKey(high);
+
+		if (i < 0) {
+			i = -i - 1;
+			insertContainer(i, high, new ArrayContainer());
+		}
+
+		Container c = containers[i];
+		int before = c.cardinality();
+		containers[i] = c.add((char)id);
+
+		return containers[i].cardinality() != before;
+	}
+
+	/** Removes every id from the set. */
+	public void clear()
+	{
+		Arrays.fill(containers, 0, size, null);
+		size = 0;
+	}
+
+	/** Tests whether an id is in the set.
+	  @param id the id to look for
+	  @return true if the set contains the id
+	  */
+	public boolean contains(int id)
+	{
+		if (id < 0) {
+			return false;
+		}
+
+		int i = findKey((char)(id >>> 16));
+		return i >= 0 && containers[i].contains((char)id);
+	}
+
+	/** Counts the ids in the set.
+	  @return the number of ids in the set
+	  */
+	public int cardinality()
+	{
+		int count = 0;
+
+		for (int i = 0; i < size; i++) {
+			count += containers[i].cardinality();
+		}
+
+		return count;
+	}
+
+	/** Computes the intersection of this set and another.
+	  @param other the other set
+	  @return a new set of the ids in both sets
+	  */
+	public FileIdBitmap and(FileIdBitmap other)
+	{
+		FileIdBitmap result = new FileIdBitmap();
+		int i = 0;
+		int j = 0;
+
+		while (i < size && j < other.size) {
+			if (keys[i] < other.keys[j]) {
+				i++;
+			} else if (keys[i] > other.keys[j]) {
+				j++;
+			} else {
+				Container c = containers[i].and(other.containers[j]);
+				if (c.cardinality() > 0) {
+					result.appendContainer(keys[i], c);
+				}
+				i++;
+				j++;
+			}
+		}
+
+		return result;
+	}
+
+	/** Computes the difference of this set and another.
+	  @param other the other set
+	  @return a new set of the ids in this set which are not in the other
+	  */
+	public FileIdBitmap andNot(FileIdBitmap other)
+	{
+		FileIdBitmap result = new FileIdBitmap();
+		int j = 0;
+
+		for (int i = 0; i < size; i++) {
+			while (j < other.size && other.keys[j] < keys[i]) {
+				j++;
+			}
+
+			Container c;
+
+			if (j < other.size && other.keys[j] == keys[i]) {
+				c = containers[i].andNot(other.containers[j]);
+			} else {
+				c = containers[i].copy();
+			}
+
+			if (c.cardinality() > 0) {
+				result.appendContainer(keys[i], c);
+			}
+		}
+
+		return result;
+	}
+
+	/** Tests whether the set is empty.
+	  @return true if the set has no ids
+	  */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/** Iterates over the ids in the set, in ascending order. The set must not
+	  be modified during iteration.
+	  @return an iterator over the ids
+	  */
+	public Iterator<Integer> iterator()
+	{
+		final int[] ids = toArray();
+
+		return new Iterator<Integer>() {
+			private int next = 0;
+
+			public boolean hasNext()
+			{
+				return next < ids.length;
+			}
+
+			public Integer next()
+			{
+				if (next >= ids.length) {
+					throw new NoSuchElementException();
+				}
+				return ids[next++];
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/** Computes the union of this set and another.
+	  @param other the other set
+	  @return a new set of the ids in either set
+	  */
+	public FileIdBitmap or(FileIdBitmap other)
+	{
+		FileIdBitmap result = new FileIdBitmap();
+		int i = 0;
+		int j = 0;
+
+		while (i < size || j < other.size) {
+			if (j >= other.size || (i < size && keys[i] < other.keys[j])) {
+				result.appendContainer(keys[i], containers[i].copy());
+				i++;
+			} else if (i >= size || keys[i] > other.keys[j]) {
+				result.appendContainer(other.keys[j],
+									   other.containers[j].copy());
+				j++;
+			} else {
+				result.appendContainer(keys[i],
+									   containers[i].or(other.containers[j]));
+				i++;
+				j++;
+			}
+		}
+
+		return result;
+	}
+
+	/** Removes an id from the set.
+	  @param id the id to remove
+	  @return true if the id was in the set
+	  */
+	public boolean remove(int id)
+	{
+		if (id < 0) {
+			return false;
+		}
+
+		int i = findKey((char)(id >>> 16));
+		if (i < 0) {
+			return false;
+		}
+
+		Container c = containers[i];
+		int before = c.cardinality();
+		c = c.remove((char)id);
+
+		if (c.cardinality() == 0) {
+			System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+			System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+			containers[--size] = null;
+		} else {
+			containers[i] = c;
+		}
+
+		return c.cardinality() != before;
+	}
+
+	/** Copies the ids in the set into an array.
+	  @return the ids, in ascending order
+	  */
+	public int[] toArray()
+	{
+		int[] ids = new int[cardinality()];
+		int n = 0;
+
+		for (int i = 0; i < size; i++) {
+			n = containers[i].copyTo(ids, n, keys[i] << 16);
+		}
+
+		return ids;
+	}
+
+	/** Returns a String representation of this set.
+	  @return a String representation of this set
+	  */
+	public String toString()
+	{
+		return Arrays.toString(toArray());
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASS Methods
+	//************************************************************
+
+	/** Throws an IllegalArgumentException if an id is negative. */
+	private static void checkId(int id)
+	{
+		if (id < 0) {
+			throw new IllegalArgumentException("id cannot be negative");
+		}
+	}
+
+
+	//************************************************************
+	// PRIVATE INSTANCE Methods
+	//************************************************************
+
+	/** Appends a container whose key is greater than every existing key. */
+	private void appendContainer(char key, Container c)
+	{
+		insertContainer(size, key, c);
+	}
+
+	/** Finds the index of a container by its key.
+	  @return the index, or (-(insertion point) - 1) if there is none
+	  */
+	private int findKey(char key)
+	{
+		int low = 0;
+		int high = size - 1;
+
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+
+			if (keys[mid] < key) {
+				low = mid + 1;
+			} else if (keys[mid] > key) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+
+		return -(low + 1);
+	}
+
+	/** Inserts a container at the specified index. */
+	private void insertContainer(int index, char key, Container c)
+	{
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			containers = Arrays.copyOf(containers, size * 2);
+		}
+
+		System.arraycopy(keys, index, keys, index + 1, size - index);
+		System.arraycopy(containers, index, containers, index + 1,
+						 size - index);
+		keys[index] = key;
+		containers[index] = c;
+		size++;
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASSES
+	//************************************************************
+
+	/** A Container holds the low 16 bits of the ids sharing a high part.
+	  Operations which change a container's size may return a container of
+	  the other kind in its place.
+	  */
+	private abstract static class Container {
+		abstract Container add(char value);
+		abstract Container and(Container other);
+		abstract Container andNot(Container other);
+		abstract int cardinality();
+		abstract boolean contains(char value);
+		abstract Container copy();
+		abstract int copyTo(int[] out, int offset, int high);
+		abstract Container or(Container other);
+		abstract Container remove(char value);
+	}
+
+	/** An ArrayContainer holds up to ARRAY_MAX_SIZE values in a sorted array.
+	  */
+	private static final class ArrayContainer extends Container {
+		private char[] values;
+		private int cardinality;
+
+		ArrayContainer()
+		{
+			this(new char[4], 0);
+		}
+
+		ArrayContainer(char[] values_, int cardinality_)
+		{
+			values = values_;
+			cardinality = cardinality_;
+		}
+
+		Container add(char value)
+		{
+			int i = Arrays.binarySearch(values, 0, cardinality, value);
+			if (i >= 0) {
+				return this;
+			}
+
+			if (cardinality == ARRAY_MAX_SIZE) {
+				return toBitmap().add(value);
+			}
+
+			i = -i - 1;
+			if (cardinality == values.length) {
+				values = Arrays.copyOf(values,
+								Math.min(ARRAY_MAX_SIZE, cardinality * 2));
+			}
+
+			System.arraycopy(values, i, values, i + 1, cardinality - i);
+			values[i] = value;
+			cardinality++;
+
+			return this;
+		}
+
+		Container and(Container other)
+		{
+			char[] out = new char[Math.min(cardinality, other.cardinality())];
+			int n = 0;
+
+			if (other instanceof ArrayContainer) {
+				ArrayContainer a = (ArrayContainer)other;
+				int i = 0;
+				int j = 0;
+
+				while (i < cardinality && j < a.cardinality) {
+					if (values[i] < a.values[j]) {
+						i++;
+					} else if (values[i] > a.values[j]) {
+						j++;
+					} else {
+						out[n++] = values[i];
+						i++;
+						j++;
+					}
+				}
+
+			} else {
+				for (int i = 0; i < cardinality; i++) {
+					if (other.contains(values[i])) {
+						out[n++] = values[i];
+					}
+				}
+			}
+
+			return new ArrayContainer(out, n);
+		}
+
+		Container andNot(Container other)
+		{
+			char[] out = new char[cardinality];
+			int n = 0;
+
+			for (int i = 0; i < cardinality; i++) {
+				if (!other.contains(values[i])) {
+					out[n++] = values[i];
+				}
+			}
+
+			return new ArrayContainer(out, n);
+		}
+
+		int cardinality()
+		{
+			return cardinality;
+		}
+
+		boolean contains(char value)
+		{
+			return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+		}
+
+		Container copy()
+		{
+			return new ArrayContainer(Arrays.copyOf(values, cardinality),
+									  cardinality);
+		}
+
+		int copyTo(int[] out, int offset, int high)
+		{
+			for (int i = 0; i < cardinality; i++) {
+				out[offset++] = high | values[i];
+			}
+
+			return offset;
+		}
+
+		Container or(Container other)
+		{
+			if (other instanceof BitmapContainer) {
+				return other.or(this);
+			}
+
+			ArrayContainer a = (ArrayContainer)other;
+			char[] out = new char[cardinality + a.cardinality];
+			int n = 0;
+			int i = 0;
+			int j = 0;
+
+			while (i < cardinality || j < a.cardinality) {
+				if (j >= a.cardinality
+					|| (i < cardinality && values[i] < a.values[j])) {
+					out[n++] = values[i++];
+				} else if (i >= cardinality || values[i] > a.values[j]) {
+					out[n++] = a.values[j++];
+				} else {
+					out[n++] = values[i++];
+					j++;
+				}
+			}
+
+			ArrayContainer union = new ArrayContainer(out, n);
+			return n > ARRAY_MAX_SIZE ? union.toBitmap() : union;
+		}
+
+		Container remove(char value)
+		{
+			int i = Arrays.binarySearch(values, 0, cardinality, value);
+
+			if (i >= 0) {
+				System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+				cardinality--;
+			}
+
+			return this;
+		}
+
+		/** @return a BitmapContainer holding the same values */
+		BitmapContainer toBitmap()
+		{
+			BitmapContainer bitmap = new BitmapContainer();
+
+			for (int i = 0; i < cardinality; i++) {
+				bitmap.set(values[i]);
+			}
+
+			return bitmap;
+		}
+	}
+
+	/** A BitmapContainer holds more than ARRAY_MAX_SIZE values as a bitmap of
+	  every possible low value.
+	  */
+	private static final class BitmapContainer extends Container {
+		private final long[] words;
+		private int cardinality;
+
+		BitmapContainer()
+		{
+			this(new long[BITMAP_WORDS], 0);
+		}
+
+		BitmapContainer(long[] words_, int cardinality_)
+		{
+			words = words_;
+			cardinality = cardinality_;
+		}
+
+		/** Builds the smaller kind of container for the specified words. */
+		static Container of(long[] words)
+		{
+			int cardinality = 0;
+			for (long w : words) {
+				cardinality += Long.bitCount(w);
+			}
+
+			BitmapContainer bitmap = new BitmapContainer(words, cardinality);
+			return cardinality > ARRAY_MAX_SIZE ? bitmap : bitmap.toArray();
+		}
+
+		Container add(char value)
+		{
+			set(value);
+			return this;
+		}
+
+		Container and(Container other)
+		{
+			if (other instanceof ArrayContainer) {
+				return other.and(this);
+			}
+
+			long[] b = ((BitmapContainer)other).words;
+			long[] out = new long[BITMAP_WORDS];
+
+			for (int i = 0; i < BITMAP_WORDS; i++) {
+				out[i] = words[i] & b[i];
+			}
+
+			return of(out);
+		}
+
+		Container andNot(Container other)
+		{
+			long[] out = Arrays.copyOf(words, BITMAP_WORDS);
+
+			if (other instanceof ArrayContainer) {
+				ArrayContainer a = (ArrayContainer)other;
+
+				for (int i = 0; i < a.cardinality; i++) {
+					char v = a.values[i];
+					out[v >>> 6] &= ~(1L << v);
+				}
+
+			} else {
+				long[] b = ((BitmapContainer)other).words;
+
+				for (int i = 0; i < BITMAP_WORDS; i++) {
+					out[i] &= ~b[i];
+				}
+			}
+
+			return of(out);
+		}
+
+		int cardinality()
+		{
+			return cardinality;
+		}
+
+		boolean contains(char value)
+		{
+			return (words[value >>> 6] & (1L << value)) != 0;
+		}
+
+		Container copy()
+		{
+			return new BitmapContainer(Arrays.copyOf(words, BITMAP_WORDS),
+									   cardinality);
+		}
+
+		int copyTo(int[] out, int offset, int high)
+		{
+			for (int i = 0; i < BITMAP_WORDS; i++) {
+				long w = words[i];
+
+				while (w != 0) {
+					out[offset++] = high | (i << 6)
+									| Long.numberOfTrailingZeros(w);
+					w &= w - 1;
+				}
+			}
+
+			return offset;
+		}
+
+		Container or(Container other)
+		{
+			long[] out = Arrays.copyOf(words, BITMAP_WORDS);
+
+			if (other instanceof ArrayContainer) {
+				ArrayContainer a = (ArrayContainer)other;
+
+				for (int i = 0; i < a.cardinality; i++) {
+					char v = a.values[i];
+					out[v >>> 6] |= 1L << v;
+				}
+
+			} else {
+				long[] b = ((BitmapContainer)other).words;
+
+				for (int i = 0; i < BITMAP_WORDS; i++) {
+					out[i] |= b[i];
+				}
+			}
+
+			return of(out);
+		}
+
+		Container remove(char value)
+		{
+			if (contains(value)) {
+				words[value >>> 6] &= ~(1L << value);
+				cardinality--;
+			}
+
+			return cardinality > ARRAY_MAX_SIZE ? this : toArray();
+		}
+
+		/** Sets a value's bit. */
+		void set(char value)
+		{
+			if (!contains(value)) {
+				words[value >>> 6] |= 1L << value;
+				cardinality++;
+			}
+		}
+
+		/** @return an ArrayContainer holding the same values */
+		ArrayContainer toArray()
+		{
+			char[] values = new char[cardinality];
+			int n = 0;
+
+			for (int i = 0; i < BITMAP_WORDS; i++) {
+				long w = words[i];
+
+				while (w != 0) {
+					values[n++] = (char)((i << 6)
+										 | Long.numberOfTrailingZeros(w));
+					w &= w - 1;
+				}
+			}
+
+			return new ArrayContainer(values, n);
+		}
+	}
+
+}
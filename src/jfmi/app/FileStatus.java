@@ -0,0 +1,102 @@
+package jfmi.app;
+
+
+/** A FileStatus holds what was last learned about a TaggedFile's path from
+  the file system: whether it exists, the file's size and modification
+  time, and the modification time of its directory when it was checked.
+  Values which have never been read are UNKNOWN.
+  */
+public class FileStatus {
+
+	// PUBLIC CLASS Fields
+	public static final long UNKNOWN = -1;
+
+	// PRIVATE INSTANCE Fields
+	private int fileId;
+	private String path;
+	private boolean missing;
+	private long size;
+	private long modified;
+	private long directoryModified;
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs a FileStatus whose file has not been checked.
+	  @param fileId_ the id of the file
+	  @param path_ the path of the file
+	  */
+	public FileStatus(int fileId_, String path_)
+	{
+		this(fileId_, path_, false, UNKNOWN, UNKNOWN, UNKNOWN);
+	}
+
+	/** Constructs a FileStatus.
+	  @param fileId_ the id of the file
+	  @param path_ the path of the file
+	  @param missing_ true if the file did not exist when checked
+	  @param size_ the file's size in bytes, or UNKNOWN
+	  @param modified_ the file's modification time in milliseconds since the
+	  		epoch, or UNKNOWN
+	  @param directoryModified_ the modification time of the file's directory
+	  		when it was checked, or UNKNOWN
+	  */
+	public FileStatus(int fileId_, String path_, boolean missing_, long size_,
+					  long modified_, long directoryModified_)
+	{
+		fileId = fileId_;
+		path = path_;
+		missing = missing_;
+		size = size_;
+		modified = modified_;
+		directoryModified = directoryModified_;
+	}
+
+	/** @return the modification time of the file's directory when the file
+	  		was checked, or UNKNOWN */
+	public long getDirectoryModified()
+	{
+		return directoryModified;
+	}
+
+	/** @return the id of the file */
+	public int getFileId()
+	{
+		return fileId;
+	}
+
+	/** @return the file's modification time, or UNKNOWN */
+	public long getModified()
+	{
+		return modified;
+	}
+
+	/** @return the path of the file */
+	public String getPath()
+	{
+		return path;
+	}
+
+	/** @return the file's size in bytes, or UNKNOWN */
+	public long getSize()
+	{
+		return size;
+	}
+
+	/** @return true if the file did not exist when checked */
+	public boolean isMissing()
+	{
+		return missing;
+	}
+
+	/** Returns a String representation of this status.
+	  @return a String representation of this status
+	  */
+	public String toString()
+	{
+		return path + (missing ? " (missing)" : " (" + size + " bytes)");
+	}
+
+}
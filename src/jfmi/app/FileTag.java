@@ -3,8 +3,11 @@ package jfmi.app;
 /** Represents a tag that the JFMI application can apply to a file.
   */
 public class FileTag implements Comparable<FileTag> {
+	// PUBLIC CLASS Fields
+	public static final int DEFAULT_TAG_ID = -1;
 
 	// PRIVATE INSTANCE Fields
+	int tagId;
 	String tag;
 
 
@@ -12,22 +15,35 @@ public class FileTag implements Comparable<FileTag> {
 	// PUBLIC INSTANCE Methods
 	//************************************************************
 
-	/** Constructs a default FileTag with an empty tag value.
+	/** Constructs a default FileTag with a negative tag id and an empty tag
+	  value.
 	  */
 	public FileTag()
 	{
 		this("");
 	}
 
-	/** Constructs a FileTag with the specified tag value.
+	/** Constructs a FileTag with the specified tag value, whose tag id is not
+	  yet known.
 	  @param newTag the value for the tag field
 	  */
 	public FileTag(String newTag)
 	{
+		this(DEFAULT_TAG_ID, newTag);
+	}
+
+	/** Constructs a FileTag with the specified tag id and tag value.
+	  @param id the value for the tagId field
+	  @param newTag the value for the tag field
+	  */
+	public FileTag(int id, String newTag)
+	{
+		setTagId(id);
 		setTag(newTag);
 	}
 
-	/** Tests this instance for equality with another FileTag.
+	/** Tests this instance for equality with another FileTag. Tags are equal
+	  if their values are equal; the tag value is unique in the repository.
 	  @param o a FileTag to test for equality against
 	  @return true if this instance is equal to the parameter
 	  */
@@ -36,6 +52,23 @@ public class FileTag implements Comparable<FileTag> {
 		return tag.equals(o.tag);	
 	}
 
+	/** Retrieves the id of the FileTag's record in the repository.
+	  @return the value of the tagId field, or DEFAULT_TAG_ID if it is not
+	  		known
+	  */
+	public int getTagId()
+	{
+		return tagId;
+	}
+
+	/** Sets the id of the FileTag's record in the repository.
+	  @param id the new value for the tagId field
+	  */
+	public void setTagId(int id)
+	{
+		tagId = id;
+	}
+
 	/** Retrieves the FileTag's value.
 	  @return the value of the tag field
 	  */
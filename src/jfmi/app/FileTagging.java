@@ -12,6 +12,7 @@ public class FileTagging implements Comparable<FileTagging> {
 	// PRIVATE INSTANCE Fields
 	int taggingId;
 	int fileId;
+	int tagId;
 	String tag;
 	String comment;
 
@@ -38,6 +39,7 @@ public class FileTagging implements Comparable<FileTagging> {
 	{
 		setTaggingId(tid);
 		setFileId(fid);
+		setTagId(FileTag.DEFAULT_TAG_ID);
 		setTag(tagVal);
 		setComment(commentVal);
 	}
@@ -71,6 +73,15 @@ public class FileTagging implements Comparable<FileTagging> {
 		return fileId;
 	}
 
+	/** Retrieves the id of the tag associated with this tagging.
+	  @return the value of the tagId field, or FileTag.DEFAULT_TAG_ID if it
+	  		is not known
+	  */
+	public int getTagId()
+	{
+		return tagId;
+	}
+
 	/** Retrieves the tag associated with this tagging.
 	  @return the value of the tag field
 	  */
@@ -103,6 +114,14 @@ public class FileTagging implements Comparable<FileTagging> {
 		fileId = id;
 	}
 
+	/** Sets the id of the tag associated with this tagging.
+	  @param id the new value for the tagId field
+	  */
+	public void setTagId(int id)
+	{
+		tagId = id;
+	}
+
 	/** Sets the value of the tag associated with this tagging. If the parameter
 	  is null, the tag is set to the empty string, "".
 	  @param newTag the new value for the tag field
@@ -0,0 +1,302 @@
+package jfmi.app;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+/** A TagIndex maps each tag to the set of ids of the files tagged with it,
+  so that boolean combinations of tags can be answered in memory without
+  querying the repository. The index also records the ids of every file,
+  which NOT queries are evaluated against.
+
+  A TagIndex is thread-safe. Query results are new bitmaps, which the caller
+  may modify.
+  */
+public class TagIndex {
+
+	// PRIVATE INSTANCE Fields
+	private final ReadWriteLock lock;
+	private Map<String, FileIdBitmap> filesByTag;
+	private FileIdBitmap allFiles;
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs an empty TagIndex.
+	  */
+	public TagIndex()
+	{
+		lock = new ReentrantReadWriteLock();
+		filesByTag = new HashMap<String, FileIdBitmap>();
+		allFiles = new FileIdBitmap();
+	}
+
+	/** Adds a file, and its taggings, to the index. Taggings already in the
+	  index for the file are kept.
+	  @param file the file to add
+	  */
+	public void addFile(TaggedFile file)
+	{
+		lock.writeLock().lock();
+
+		try {
+			allFiles.add(file.getFileId());
+
+			addTaggings(file);
+
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/** Removes every file and tag from the index. */
+	public void clear()
+	{
+		lock.writeLock().lock();
+
+		try {
+			filesByTag.clear();
+			allFiles.clear();
+
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/** Counts the files tagged with a tag.
+	  @param tag the tag value
+	  @return the number of files with the tag
+	  */
+	public int countFiles(String tag)
+	{
+		lock.readLock().lock();
+
+		try {
+			FileIdBitmap files = filesByTag.get(tag);
+			return files == null ? 0 : files.cardinality();
+
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** Gets the ids of every file in the index.
+	  @return a new bitmap of file ids
+	  */
+	public FileIdBitmap getAllFiles()
+	{
+		lock.readLock().lock();
+
+		try {
+			return new FileIdBitmap(allFiles);
+
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** Gets the ids of the files tagged with a tag.
+	  @param tag the tag value
+	  @return a new bitmap of file ids
+	  */
+	public FileIdBitmap getFiles(String tag)
+	{
+		lock.readLock().lock();
+
+		try {
+			FileIdBitmap files = filesByTag.get(tag);
+			return files == null ? new FileIdBitmap() : new FileIdBitmap(files);
+
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** Gets the ids of the files tagged with every one of the specified tags.
+	  @param tags the tag values; if empty, every file matches
+	  @return a new bitmap of file ids
+	  */
+	public FileIdBitmap matchAll(Collection<String> tags)
+	{
+		lock.readLock().lock();
+
+		try {
+			FileIdBitmap result = allFiles;
+
+			for (String tag : tags) {
+				FileIdBitmap files = filesByTag.get(tag);
+				if (files == null) {
+					return new FileIdBitmap();
+				}
+				result = result.and(files);
+			}
+
+			return result == allFiles ? new FileIdBitmap(allFiles) : result;
+
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** Gets the ids of the files tagged with at least one of the specified
+	  tags.
+	  @param tags the tag values
+	  @return a new bitmap of file ids
+	  */
+	public FileIdBitmap matchAny(Collection<String> tags)
+	{
+		lock.readLock().lock();
+
+		try {
+			return unionOf(tags);
+
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** Gets the ids of the files tagged with none of the specified tags.
+	  @param tags the tag values
+	  @return a new bitmap of file ids
+	  */
+	public FileIdBitmap matchNone(Collection<String> tags)
+	{
+		lock.readLock().lock();
+
+		try {
+			return allFiles.andNot(unionOf(tags));
+
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** Removes a file, and its taggings, from the index.
+	  @param fileId the id of the file to remove
+	  */
+	public void removeFile(int fileId)
+	{
+		lock.writeLock().lock();
+
+		try {
+			allFiles.remove(fileId);
+			removeTaggings(fileId);
+
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/** Removes a tag from the index. The files which had the tag remain.
+	  @param tag the tag value
+	  */
+	public void removeTag(String tag)
+	{
+		lock.writeLock().lock();
+
+		try {
+			filesByTag.remove(tag);
+
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/** Replaces the contents of this index with those of another. The other
+	  index must not be used afterwards.
+	  @param other the index whose contents to take
+	  */
+	public void replaceWith(TagIndex other)
+	{
+		lock.writeLock().lock();
+
+		try {
+			filesByTag = other.filesByTag;
+			allFiles = other.allFiles;
+
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/** Adds a file to the index, replacing any taggings already in the index
+	  for it with the file's current taggings.
+	  @param file the file to add or update
+	  */
+	public void updateFile(TaggedFile file)
+	{
+		lock.writeLock().lock();
+
+		try {
+			removeTaggings(file.getFileId());
+			allFiles.add(file.getFileId());
+
+			addTaggings(file);
+
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+
+	//************************************************************
+	// PRIVATE INSTANCE Methods
+	//************************************************************
+
+	/** Adds a file's id to the bitmaps of its tags. The write lock must be
+	  held. */
+	private void addTaggings(TaggedFile file)
+	{
+		if (file.getFileTaggings() == null) {
+			return;
+		}
+
+		for (FileTagging tagging : file.getFileTaggings()) {
+			addTagging(tagging.getTag(), file.getFileId());
+		}
+	}
+
+	/** Adds a file id to a tag's bitmap. The write lock must be held. */
+	private void addTagging(String tag, int fileId)
+	{
+		FileIdBitmap files = filesByTag.get(tag);
+
+		if (files == null) {
+			files = new FileIdBitmap();
+			filesByTag.put(tag, files);
+		}
+
+		files.add(fileId);
+	}
+
+	/** Removes a file id from every tag's bitmap. The write lock must be held.
+	  */
+	private void removeTaggings(int fileId)
+	{
+		for (FileIdBitmap files : filesByTag.values()) {
+			files.remove(fileId);
+		}
+	}
+
+	/** Computes the union of the bitmaps of the specified tags. The read lock
+	  must be held. */
+	private FileIdBitmap unionOf(Collection<String> tags)
+	{
+		FileIdBitmap result = new FileIdBitmap();
+
+		for (String tag : tags) {
+			FileIdBitmap files = filesByTag.get(tag);
+			if (files != null) {
+				result = result.or(files);
+			}
+		}
+
+		return result;
+	}
+
+}
@@ -4,6 +4,8 @@ import java.io.File;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
+import jfmi.util.StringUtil;
+
 import static jfmi.app.FileTaggingSorters.SQLPrimaryKeySorter;
 
 /** Represents a file in the file system, along with its associated taggings (if
@@ -15,6 +17,11 @@ public class TaggedFile implements Comparable<TaggedFile> {
 	private int fileId;
 	private File file;
 	private SortedSet<FileTagging> fileTaggings;
+	private boolean missing;
+	private String fileName;
+	private String fileTagsString;
+	private String nameSortKey;
+	private String pathSortKey;
 
 
 	//************************************************************
@@ -53,6 +60,21 @@ public class TaggedFile implements Comparable<TaggedFile> {
 		setFileTaggings(taggings);
 	}
 
+	/** Adds a tagging to this file's set of taggings, creating the set if
+	  the file has none.
+	  @param tagging the tagging to add
+	  @return true if the file did not already have the tagging
+	  */
+	public boolean addFileTagging(FileTagging tagging)
+	{
+		if (fileTaggings == null) {
+			fileTaggings = new TreeSet<FileTagging>(new SQLPrimaryKeySorter());
+		}
+
+		fileTagsString = null;
+		return fileTaggings.add(tagging);
+	}
+
 	/** Compares this instance against another TaggedFile for equality.
 	  @param o a FileTag to compare against
 	  @return true if this instance is equal to the argument
@@ -86,12 +108,42 @@ public class TaggedFile implements Comparable<TaggedFile> {
 		return fileId;
 	}
 
-	/** Access the file name.
+	/** Access the file name. The name is parsed from the path once.
 	  @return the String value of the file's name
 	  */
 	public String getFileName() 
 	{
-		return file.getName();
+		if (fileName == null) {
+			fileName = file.getName();
+		}
+
+		return fileName;
+	}
+
+	/** Returns the key which orders this file by name, ignoring case. The
+	  key is computed once, and recomputed only after the file is set.
+	  @return the case-folded file name, or null if the file is null
+	  */
+	public String getNameSortKey()
+	{
+		if (nameSortKey == null && file != null) {
+			nameSortKey = StringUtil.foldCase(getFileName());
+		}
+
+		return nameSortKey;
+	}
+
+	/** Returns the key which orders this file by path, ignoring case. The
+	  key is computed once, and recomputed only after the file is set.
+	  @return the case-folded file path, or null if the file is null
+	  */
+	public String getPathSortKey()
+	{
+		if (pathSortKey == null && file != null) {
+			pathSortKey = StringUtil.foldCase(file.getPath());
+		}
+
+		return pathSortKey;
 	}
 
 	/** Access the file path.
@@ -102,11 +154,16 @@ public class TaggedFile implements Comparable<TaggedFile> {
 		return file.getPath();
 	}
 
-	/** Returns this TaggedFile's associated tags as a String.
+	/** Returns this TaggedFile's associated tags as a String. The String is
+	  built once, and rebuilt only after the taggings are set or added to.
 	  @return the tags associated with this file as a String
 	  */
 	public String getFileTagsAsString()
 	{
+		if (fileTagsString != null) {
+			return fileTagsString;
+		}
+
 		if (fileTaggings == null) {
 			return "";
 		}
@@ -119,10 +176,13 @@ public class TaggedFile implements Comparable<TaggedFile> {
 			str.append("] ");
 		}
 
-		return str.toString();
+		fileTagsString = str.toString();
+		return fileTagsString;
 	}
 
-	/** Return a reference to this TaggedFile's taggings.
+	/** Return a reference to this TaggedFile's taggings. Taggings should be
+	  added with addFileTagging(), rather than to the returned set, so that
+	  getFileTagsAsString() reflects them.
 	  @return a SortedSet<FileTagging> of this file's taggings, may be null
 	  */
 	public SortedSet<FileTagging> getFileTaggings()
@@ -142,12 +202,23 @@ public class TaggedFile implements Comparable<TaggedFile> {
 		return fileTaggings.toArray(new FileTagging[0]);
 	}
 
+	/** Indicates whether the file was found to no longer exist at its path.
+	  @return true if the file is missing
+	  */
+	public boolean isMissing()
+	{
+		return missing;
+	}
+
 	/** Sets this instance's file field.
 	  @param file File to use as this instance's - can be null
 	  */
 	public void setFile(File file)
 	{
 		this.file = file;
+		fileName = null;
+		nameSortKey = null;
+		pathSortKey = null;
 	}
 
 	/** Sets the file id.
@@ -158,6 +229,14 @@ public class TaggedFile implements Comparable<TaggedFile> {
 		fileId = id;
 	}
 
+	/** Sets whether the file was found to no longer exist at its path.
+	  @param missing_ true if the file is missing
+	  */
+	public void setMissing(boolean missing_)
+	{
+		missing = missing_;
+	}
+
 	/** Sets this instance's file path.
 	  @param path String whose value is the desired path
 	  */
@@ -172,6 +251,7 @@ public class TaggedFile implements Comparable<TaggedFile> {
 	public void setFileTaggings(SortedSet<FileTagging> taggingSet)
 	{
 		fileTaggings = taggingSet;
+		fileTagsString = null;
 	}
 
 	/** Sets the set of taggings for this file from an array.
@@ -180,6 +260,8 @@ public class TaggedFile implements Comparable<TaggedFile> {
 	  */
 	public void setFileTaggings(FileTagging[] taggingArray)
 	{
+		fileTagsString = null;
+
 		if (taggingArray == null) {
 			fileTaggings = null;
 		} else {
@@ -0,0 +1,664 @@
+package jfmi.app;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+/** A TaggedFileCatalog holds every stored file, and its taggings, in memory
+  in a compact, columnar form. A file is a row of int columns, ordered by
+  file id; its path is stored as UTF-8 in a byte arena which all rows share;
+  and its taggings are a run of packed (tagging id, tag id) int pairs, where
+  each distinct tag is stored once in a dictionary, with its repository
+  tagId. Comments are stored in the byte arena beside the paths. No
+  per-file objects are kept: TaggedFile and FileTagging objects are built
+  from the columns when they are asked for, and are copies which the caller
+  may modify.
+
+  Rows are not moved when files are removed or changed. Removed rows are
+  marked deleted, and changed paths and taggings are written again at the
+  end of their arenas; once enough of the catalog is unused, it is
+  compacted.
+
+  A TaggedFileCatalog is thread-safe.
+  */
+public class TaggedFileCatalog {
+
+	// PRIVATE INSTANCE Fields
+	private final ReadWriteLock lock;
+	private Columns columns;
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs an empty TaggedFileCatalog.
+	  */
+	public TaggedFileCatalog()
+	{
+		lock = new ReentrantReadWriteLock();
+		columns = new Columns();
+	}
+
+	/** Removes every file and tag from the catalog. */
+	public void clear()
+	{
+		lock.writeLock().lock();
+
+		try {
+			columns = new Columns();
+
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/** Tests whether the catalog holds a file.
+	  @param fileId the id of the file
+	  @return true if the catalog holds the file
+	  */
+	public boolean contains(int fileId)
+	{
+		lock.readLock().lock();
+
+		try {
+			return columns.findLiveRow(fileId) >= 0;
+
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** Estimates the heap used by the catalog's columns, arenas and tag
+	  dictionary, including the unused room kept for growth.
+	  @return the estimated size of the catalog, in bytes
+	  */
+	public long estimateHeapBytes()
+	{
+		lock.readLock().lock();
+
+		try {
+			return columns.estimateHeapBytes();
+
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** Builds a TaggedFile, with its taggings, from the catalog.
+	  @param fileId the id of the file
+	  @return a new TaggedFile, or null if the catalog does not hold the file
+	  */
+	public TaggedFile getFile(int fileId)
+	{
+		lock.readLock().lock();
+
+		try {
+			int row = columns.findLiveRow(fileId);
+			return row < 0 ? null : columns.newFile(row);
+
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** Builds TaggedFiles, with their taggings, for a sequence of file ids,
+	  such as the ranked result of a tag search, or a FileIdBitmap. Ids which
+	  the catalog does not hold are skipped.
+	  @param fileIds the ids of the files
+	  @return new TaggedFiles, in the order of their ids in fileIds
+	  */
+	public List<TaggedFile> getFiles(Iterable<Integer> fileIds)
+	{
+		lock.readLock().lock();
+
+		try {
+			List<TaggedFile> files = new ArrayList<TaggedFile>();
+
+			for (int fileId : fileIds) {
+				int row = columns.findLiveRow(fileId);
+
+				if (row >= 0) {
+					files.add(columns.newFile(row));
+				}
+			}
+
+			return files;
+
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** Reads the path of a file, without building its taggings.
+	  @param fileId the id of the file
+	  @return the file's path, or null if the catalog does not hold the file
+	  */
+	public String getPath(int fileId)
+	{
+		lock.readLock().lock();
+
+		try {
+			int row = columns.findLiveRow(fileId);
+			return row < 0 ? null : columns.readString(columns.pathRefs[row]);
+
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** Adds a file, and its taggings, to the catalog, replacing the file's
+	  path, status and taggings if the catalog already holds it.
+	  @param file the file to add or update
+	  */
+	public void putFile(TaggedFile file)
+	{
+		lock.writeLock().lock();
+
+		try {
+			columns.putFile(file);
+
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/** Removes a file, and its taggings, from the catalog.
+	  @param fileId the id of the file to remove
+	  */
+	public void removeFile(int fileId)
+	{
+		lock.writeLock().lock();
+
+		try {
+			columns.removeFile(fileId);
+
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/** Removes a tag, and every tagging with it, from the catalog. The files
+	  which had the tag remain.
+	  @param tag the tag value
+	  */
+	public void removeTag(String tag)
+	{
+		lock.writeLock().lock();
+
+		try {
+			columns.removeTag(tag);
+
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/** Removes the tag having a repository tag id, and every tagging with
+	  it, from the catalog. The files which had the tag remain.
+	  @param tagId the tag id of the tag
+	  @return the value of the removed tag, or null if the catalog has no
+	  		tag with the id
+	  */
+	public String removeTagById(int tagId)
+	{
+		lock.writeLock().lock();
+
+		try {
+			String tag = columns.findTag(tagId);
+
+			if (tag != null) {
+				columns.removeTag(tag);
+			}
+
+			return tag;
+
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/** Replaces the contents of this catalog with those of another. The
+	  other catalog must not be used afterwards.
+	  @param other the catalog whose contents to take
+	  */
+	public void replaceWith(TaggedFileCatalog other)
+	{
+		lock.writeLock().lock();
+
+		try {
+			columns = other.columns;
+
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/** Counts the files in the catalog.
+	  @return the number of files
+	  */
+	public int size()
+	{
+		lock.readLock().lock();
+
+		try {
+			return columns.liveRows;
+
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASSES
+	//************************************************************
+
+	/** Columns holds the contents of a catalog. It is not thread-safe; the
+	  catalog's lock guards it.
+	  */
+	private static final class Columns {
+
+		static final byte MISSING = 1;
+		static final byte DELETED = 2;
+		static final int NO_STRING = -1;
+
+		// one entry per row, in file id order
+		int rowCount;
+		int liveRows;
+		int[] fileIds = new int[16];
+		int[] pathRefs = new int[16];
+		int[] taggingStarts = new int[16];
+		int[] taggingCounts = new int[16];
+		byte[] flags = new byte[16];
+
+		// UTF-8 strings, each preceded by its length as a varint
+		byte[] arena = new byte[1024];
+		int arenaLength;
+		int arenaGarbage;
+
+		// (tagging id, tag id) pairs, and the comment of each tagging
+		int[] taggings = new int[32];
+		int[] commentRefs = new int[16];
+		int taggingCount;
+		int taggingGarbage;
+
+		// the dictionary of tags and their repository tagIds; a removed
+		// tag's slot is null
+		String[] tags = new String[16];
+		int[] tagKeys = new int[16];
+		int tagCount;
+		Map<String, Integer> tagIds = new HashMap<String, Integer>();
+
+		/** Finds the row of a file which has not been removed.
+		  @return the row, or -1 if there is none
+		  */
+		int findLiveRow(int fileId)
+		{
+			int row = findRow(fileId);
+			return row >= 0 && (flags[row] & DELETED) == 0 ? row : -1;
+		}
+
+		/** Finds the row of a file id by binary search, including a removed
+		  file's row.
+		  @return the row, or (-(insertion row) - 1) if there is none
+		  */
+		int findRow(int fileId)
+		{
+			// ids are usually added in increasing order
+			if (rowCount > 0 && fileIds[rowCount - 1] < fileId) {
+				return -(rowCount + 1);
+			}
+
+			return Arrays.binarySearch(fileIds, 0, rowCount, fileId);
+		}
+
+		/** Builds a TaggedFile from a row. */
+		TaggedFile newFile(int row)
+		{
+			int fileId = fileIds[row];
+			// as when read from the repository, the set is never null
+			TaggedFile file = new TaggedFile(fileId, readString(pathRefs[row]),
+								new TreeSet<FileTagging>(
+									new FileTaggingSorters.SQLPrimaryKeySorter()));
+			file.setMissing((flags[row] & MISSING) != 0);
+
+			int start = taggingStarts[row];
+			for (int t = start; t < start + taggingCounts[row]; t++) {
+				FileTagging tagging = new FileTagging(taggings[2 * t], fileId,
+										tags[taggings[2 * t + 1]],
+										readString(commentRefs[t]));
+				tagging.setTagId(tagKeys[taggings[2 * t + 1]]);
+				file.addFileTagging(tagging);
+			}
+
+			return file;
+		}
+
+		/** Stores a file in its row, adding the row if there is none. */
+		void putFile(TaggedFile file)
+		{
+			int row = findRow(file.getFileId());
+
+			if (row < 0) {
+				row = -row - 1;
+				insertRow(row, file.getFileId());
+				liveRows++;
+			} else if ((flags[row] & DELETED) != 0) {
+				liveRows++;
+			} else {
+				arenaGarbage += stringSize(pathRefs[row]);
+				releaseTaggings(row);
+			}
+
+			pathRefs[row] = writeString(file.getFilePath());
+			flags[row] = file.isMissing() ? MISSING : 0;
+			taggingStarts[row] = taggingCount;
+			taggingCounts[row] = 0;
+
+			if (file.getFileTaggings() != null) {
+				for (FileTagging tagging : file.getFileTaggings()) {
+					appendTagging(tagging);
+					taggingCounts[row]++;
+				}
+			}
+
+			compactIfSparse();
+		}
+
+		/** Marks the row of a file deleted, releasing its path and taggings.
+		  */
+		void removeFile(int fileId)
+		{
+			int row = findLiveRow(fileId);
+			if (row < 0) {
+				return;
+			}
+
+			arenaGarbage += stringSize(pathRefs[row]);
+			releaseTaggings(row);
+			flags[row] = DELETED;
+			liveRows--;
+
+			compactIfSparse();
+		}
+
+		/** Finds the value of the tag having a repository tagId.
+		  @return the tag value, or null if there is none */
+		String findTag(int tagKey)
+		{
+			for (int tagId = 0; tagId < tagCount; tagId++) {
+				if (tags[tagId] != null && tagKeys[tagId] == tagKey) {
+					return tags[tagId];
+				}
+			}
+
+			return null;
+		}
+
+		/** Removes a tag from the dictionary, and its taggings from every
+		  row's run, closing the gaps within each run. */
+		void removeTag(String tag)
+		{
+			Integer tagId = tagIds.remove(tag);
+			if (tagId == null) {
+				return;
+			}
+
+			tags[tagId] = null;
+
+			for (int row = 0; row < rowCount; row++) {
+				if ((flags[row] & DELETED) != 0) {
+					continue;
+				}
+
+				int start = taggingStarts[row];
+				int kept = start;
+
+				for (int t = start; t < start + taggingCounts[row]; t++) {
+					if (taggings[2 * t + 1] == tagId) {
+						arenaGarbage += stringSize(commentRefs[t]);
+						taggingGarbage++;
+						continue;
+					}
+
+					taggings[2 * kept] = taggings[2 * t];
+					taggings[2 * kept + 1] = taggings[2 * t + 1];
+					commentRefs[kept] = commentRefs[t];
+					kept++;
+				}
+
+				taggingCounts[row] = kept - start;
+			}
+
+			compactIfSparse();
+		}
+
+		/** Estimates the heap used by the arrays and the tag dictionary. */
+		long estimateHeapBytes()
+		{
+			long bytes = 4L * (fileIds.length + pathRefs.length
+							   + taggingStarts.length + taggingCounts.length)
+						 + flags.length + arena.length
+						 + 4L * (taggings.length + commentRefs.length
+								 + tagKeys.length);
+
+			// each tag: a String and its chars, a map entry, and a boxed id
+			for (int i = 0; i < tagCount; i++) {
+				if (tags[i] != null) {
+					bytes += 96 + 2L * tags[i].length();
+				}
+			}
+
+			return bytes;
+		}
+
+		/** Reads a string from the byte arena.
+		  @param ref the offset of the string, or NO_STRING
+		  @return the string; "" for NO_STRING
+		  */
+		String readString(int ref)
+		{
+			if (ref == NO_STRING) {
+				return "";
+			}
+
+			int length = lengthAt(ref);
+			return new String(arena, ref + varintSize(length), length,
+							  StandardCharsets.UTF_8);
+		}
+
+		/** Appends a tagging to the end of the tagging arena, interning its
+		  tag. */
+		private void appendTagging(FileTagging tagging)
+		{
+			if (2 * taggingCount == taggings.length) {
+				taggings = Arrays.copyOf(taggings, taggings.length * 2);
+				commentRefs = Arrays.copyOf(commentRefs, commentRefs.length * 2);
+			}
+
+			taggings[2 * taggingCount] = tagging.getTaggingId();
+			taggings[2 * taggingCount + 1] = internTag(tagging.getTag(),
+													   tagging.getTagId());
+			commentRefs[taggingCount] = writeString(tagging.getComment());
+			taggingCount++;
+		}
+
+		/** Rebuilds the columns, dropping removed rows and unused strings,
+		  taggings and tags, once a quarter of the rows are removed or half
+		  of an arena is unused. */
+		private void compactIfSparse()
+		{
+			if (rowCount - liveRows <= rowCount / 4 + 16
+				&& arenaGarbage <= arenaLength / 2 + 4096
+				&& taggingGarbage <= taggingCount / 2 + 256) {
+				return;
+			}
+
+			Columns compact = new Columns();
+
+			for (int row = 0; row < rowCount; row++) {
+				if ((flags[row] & DELETED) == 0) {
+					compact.putFile(newFile(row));
+				}
+			}
+
+			rowCount = compact.rowCount;
+			liveRows = compact.liveRows;
+			fileIds = compact.fileIds;
+			pathRefs = compact.pathRefs;
+			taggingStarts = compact.taggingStarts;
+			taggingCounts = compact.taggingCounts;
+			flags = compact.flags;
+			arena = compact.arena;
+			arenaLength = compact.arenaLength;
+			arenaGarbage = compact.arenaGarbage;
+			taggings = compact.taggings;
+			commentRefs = compact.commentRefs;
+			taggingCount = compact.taggingCount;
+			taggingGarbage = compact.taggingGarbage;
+			tags = compact.tags;
+			tagKeys = compact.tagKeys;
+			tagCount = compact.tagCount;
+			tagIds = compact.tagIds;
+		}
+
+		/** Inserts an empty row for a file id, moving later rows down. */
+		private void insertRow(int row, int fileId)
+		{
+			if (rowCount == fileIds.length) {
+				int grown = rowCount * 2;
+				fileIds = Arrays.copyOf(fileIds, grown);
+				pathRefs = Arrays.copyOf(pathRefs, grown);
+				taggingStarts = Arrays.copyOf(taggingStarts, grown);
+				taggingCounts = Arrays.copyOf(taggingCounts, grown);
+				flags = Arrays.copyOf(flags, grown);
+			}
+
+			int moved = rowCount - row;
+			System.arraycopy(fileIds, row, fileIds, row + 1, moved);
+			System.arraycopy(pathRefs, row, pathRefs, row + 1, moved);
+			System.arraycopy(taggingStarts, row, taggingStarts, row + 1, moved);
+			System.arraycopy(taggingCounts, row, taggingCounts, row + 1, moved);
+			System.arraycopy(flags, row, flags, row + 1, moved);
+
+			fileIds[row] = fileId;
+			rowCount++;
+		}
+
+		/** Returns the id of a tag, adding it to the dictionary if it is new.
+		  A known repository tagId replaces the one the dictionary holds. */
+		private int internTag(String tag, int tagKey)
+		{
+			Integer tagId = tagIds.get(tag);
+
+			if (tagId == null) {
+				if (tagCount == tags.length) {
+					tags = Arrays.copyOf(tags, tagCount * 2);
+					tagKeys = Arrays.copyOf(tagKeys, tagCount * 2);
+				}
+
+				tagId = tagCount++;
+				tags[tagId] = tag;
+				tagKeys[tagId] = FileTag.DEFAULT_TAG_ID;
+				tagIds.put(tag, tagId);
+			}
+
+			if (tagKey != FileTag.DEFAULT_TAG_ID) {
+				tagKeys[tagId] = tagKey;
+			}
+
+			return tagId;
+		}
+
+		/** Counts a row's taggings, and their comments, as unused. */
+		private void releaseTaggings(int row)
+		{
+			int start = taggingStarts[row];
+
+			for (int t = start; t < start + taggingCounts[row]; t++) {
+				arenaGarbage += stringSize(commentRefs[t]);
+			}
+
+			taggingGarbage += taggingCounts[row];
+		}
+
+		/** Returns the number of arena bytes a string uses. */
+		private int stringSize(int ref)
+		{
+			if (ref == NO_STRING) {
+				return 0;
+			}
+
+			int length = lengthAt(ref);
+			return varintSize(length) + length;
+		}
+
+		/** Decodes the varint length which begins a string in the arena. */
+		private int lengthAt(int ref)
+		{
+			int length = 0;
+			int shift = 0;
+			int b;
+
+			do {
+				b = arena[ref++];
+				length |= (b & 0x7f) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+
+			return length;
+		}
+
+		/** Returns the number of bytes of a length encoded as a varint. */
+		private static int varintSize(int length)
+		{
+			int size = 1;
+
+			while (length >= 0x80) {
+				length >>>= 7;
+				size++;
+			}
+
+			return size;
+		}
+
+		/** Appends a string to the byte arena.
+		  @return the offset of the string, or NO_STRING if it is empty
+		  */
+		private int writeString(String s)
+		{
+			if (s == null || s.isEmpty()) {
+				return NO_STRING;
+			}
+
+			byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+
+			if (arenaLength + utf8.length + 5 > arena.length) {
+				arena = Arrays.copyOf(arena, Math.max(arena.length * 2,
+											arenaLength + utf8.length + 5));
+			}
+
+			int ref = arenaLength;
+			int length = utf8.length;
+
+			while (length >= 0x80) {
+				arena[arenaLength++] = (byte) (length | 0x80);
+				length >>>= 7;
+			}
+
+			arena[arenaLength++] = (byte) length;
+			System.arraycopy(utf8, 0, arena, arenaLength, utf8.length);
+			arenaLength += utf8.length;
+			return ref;
+		}
+	}
+
+}
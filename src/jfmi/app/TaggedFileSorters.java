@@ -1,6 +1,5 @@
 package jfmi.app;
 
-import java.io.File;
 import java.io.Serializable;
 import java.util.Comparator;
 
@@ -41,7 +40,8 @@ public class TaggedFileSorters {
 		public static final long serialVersionUID = 24102012;	//dd/mm/yyyy
 
 		/** Compares the specified TaggedFile instances for order, using their 
-		  file names.
+		  file names, ignoring case. The files' cached sort keys are compared,
+		  so no name is case-folded more than once.
 		  @param o1 a first object to be compared
 		  @param o2 a second object to be compared
 		  @return a negative integer, zero, or a positive integer, as the first
@@ -49,22 +49,24 @@ public class TaggedFileSorters {
 		  */
 		public int compare(TaggedFile o1, TaggedFile o2) 
 		{
-			File file1 = o1.getFile();
-			File file2 = o2.getFile();		
-
-			if (file1 == file2) {
-				return 0;
-			}
-
-			if (file1 == null) {
-				return -1;
-			}
+			return compareKeys(o1.getNameSortKey(), o2.getNameSortKey());
+		}
 
-			if (file2 == null) {
-				return 1;
-			}
+		/** Tests whether another object is also a FileNameSorter. The sorter
+		  has no state, so every instance imposes the same order, and a list
+		  model may reuse an order sorted by another instance.
+		  @param o the object to compare against
+		  @return true if o is a FileNameSorter
+		  */
+		public boolean equals(Object o)
+		{
+			return o != null && o.getClass() == getClass();
+		}
 
-			return file1.getName().compareToIgnoreCase(file2.getName());
+		/** @return a hash code which is the same for every instance */
+		public int hashCode()
+		{
+			return getClass().hashCode();
 		}
 
 	}
@@ -78,7 +80,8 @@ public class TaggedFileSorters {
 		public static final long serialVersionUID = 24102012;	//dd/mm/yyyy
 
 		/** Compares the specified TaggedFile instances for order, using their 
-		  file paths.
+		  file paths, ignoring case. The files' cached sort keys are compared,
+		  so no path is case-folded more than once.
 		  @param o1 a first object to be compared
 		  @param o2 a second object to be compared
 		  @return a negative integer, zero, or a positive integer, as the first
@@ -86,24 +89,45 @@ public class TaggedFileSorters {
 		  */
 		public int compare(TaggedFile o1, TaggedFile o2) 
 		{
-			File file1 = o1.getFile();
-			File file2 = o2.getFile();		
+			return compareKeys(o1.getPathSortKey(), o2.getPathSortKey());
+		}
 
-			if (file1 == file2) {
-				return 0;
-			}
+		/** Tests whether another object is also a FilePathSorter. The sorter
+		  has no state, so every instance imposes the same order, and a list
+		  model may reuse an order sorted by another instance.
+		  @param o the object to compare against
+		  @return true if o is a FilePathSorter
+		  */
+		public boolean equals(Object o)
+		{
+			return o != null && o.getClass() == getClass();
+		}
 
-			if (file1 == null) {
-				return -1;
-			}
+		/** @return a hash code which is the same for every instance */
+		public int hashCode()
+		{
+			return getClass().hashCode();
+		}
+
+	}
 
-			if (file2 == null) {
-				return 1;
-			}
 
-			return file1.getPath().compareToIgnoreCase(file2.getPath());
+	/** Compares two sort keys, ordering a null key first. */
+	private static int compareKeys(String key1, String key2)
+	{
+		if (key1 == key2) {
+			return 0;
+		}
+
+		if (key1 == null) {
+			return -1;
+		}
+
+		if (key2 == null) {
+			return 1;
 		}
 
+		return key1.compareTo(key2);
 	}
 
 
@@ -0,0 +1,199 @@
+package jfmi.control;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.SwingUtilities;
+
+
+/** A BackgroundTask is a unit of work, such as a repository query, which a
+  TaskExecutor runs off the Swing event dispatch thread. Subclasses do their
+  work in doInBackground(), and receive its outcome on the event dispatch
+  thread through exactly one of succeeded(), failed() or cancelled().
+
+  Long-running work can report progress with setProgress(); the reports are
+  coalesced, so progressed() sees the latest progress without the event
+  queue being flooded. Work should check isCancelled() regularly, and stop
+  early once the task has been cancelled.
+  */
+public abstract class BackgroundTask<T> {
+
+	// PRIVATE INSTANCE Fields
+	private final FutureTask<T> future;
+	private final AtomicLong progress;
+	private final AtomicBoolean progressPending;
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs a BackgroundTask which has not yet been submitted.
+	  */
+	public BackgroundTask()
+	{
+		progress = new AtomicLong();
+		progressPending = new AtomicBoolean();
+
+		future = new FutureTask<T>(new Callable<T>() {
+				public T call() throws Exception
+				{
+					return doInBackground();
+				}
+			}) {
+				protected void done()
+				{
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run()
+						{
+							finish();
+						}
+					});
+				}
+			};
+	}
+
+	/** Cancels the task. A task which has not started will not run; a running
+	  task is interrupted, and its result is discarded. cancelled() is
+	  called on the event dispatch thread.
+	  @return false if the task had already completed or been cancelled
+	  */
+	public final boolean cancel()
+	{
+		return future.cancel(true);
+	}
+
+	/** Waits for the task's work to complete, and retrieves its result. The
+	  result may be retrieved before it is delivered to succeeded().
+	  @return the result of doInBackground()
+	  @throws CancellationException if the task was cancelled
+	  @throws ExecutionException if doInBackground() threw an exception
+	  @throws InterruptedException if the waiting thread is interrupted
+	  */
+	public final T get() throws InterruptedException, ExecutionException
+	{
+		return future.get();
+	}
+
+	/** @return true if the task was cancelled before it completed */
+	public final boolean isCancelled()
+	{
+		return future.isCancelled();
+	}
+
+	/** @return true if the task has completed, failed or been cancelled */
+	public final boolean isDone()
+	{
+		return future.isDone();
+	}
+
+
+	//************************************************************
+	// PROTECTED INSTANCE Methods
+	//************************************************************
+
+	/** Performs the task's work. Called on a background thread.
+	  @return the result of the work
+	  @throws Exception if the work fails
+	  */
+	protected abstract T doInBackground() throws Exception;
+
+	/** Called on the event dispatch thread when the task was cancelled. The
+	  default implementation does nothing.
+	  */
+	protected void cancelled()
+	{
+	}
+
+	/** Called on the event dispatch thread when doInBackground() threw an
+	  exception. The default implementation does nothing.
+	  @param cause the exception thrown
+	  */
+	protected void failed(Throwable cause)
+	{
+	}
+
+	/** Called on the event dispatch thread with the latest progress reported
+	  by setProgress(), while the task is running. The default implementation
+	  does nothing.
+	  @param done the number of units of work done
+	  @param total the total number of units of work, or -1 if unknown
+	  */
+	protected void progressed(int done, int total)
+	{
+	}
+
+	/** Reports the task's progress. May be called from doInBackground().
+	  @param done the number of units of work done
+	  @param total the total number of units of work, or -1 if unknown
+	  */
+	protected final void setProgress(int done, int total)
+	{
+		progress.set(((long)done << 32) | (total & 0xffffffffL));
+
+		if (progressPending.compareAndSet(false, true)) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run()
+				{
+					progressPending.set(false);
+					long p = progress.get();
+
+					if (!future.isDone()) {
+						progressed((int)(p >> 32), (int)p);
+					}
+				}
+			});
+		}
+	}
+
+	/** Called on the event dispatch thread when doInBackground() returned
+	  normally. The default implementation does nothing.
+	  @param result the result of doInBackground()
+	  */
+	protected void succeeded(T result)
+	{
+	}
+
+
+	//************************************************************
+	// PACKAGE INSTANCE Methods
+	//************************************************************
+
+	/** @return the Runnable which a TaskExecutor runs to perform the task */
+	Runnable getRunnable()
+	{
+		return future;
+	}
+
+
+	//************************************************************
+	// PRIVATE INSTANCE Methods
+	//************************************************************
+
+	/** Delivers the outcome of the task. Called on the event dispatch thread.
+	  */
+	private void finish()
+	{
+		T result;
+
+		try {
+			result = future.get();
+		} catch (CancellationException e) {
+			cancelled();
+			return;
+		} catch (ExecutionException e) {
+			failed(e.getCause());
+			return;
+		} catch (InterruptedException e) {
+			// the task is done, so get() does not wait
+			Thread.currentThread().interrupt();
+			return;
+		}
+
+		succeeded(result);
+	}
+
+}
@@ -0,0 +1,551 @@
+package jfmi.control;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jfmi.app.TaggedFile;
+import jfmi.dao.BatchResult;
+import jfmi.dao.TaggedFileDAO;
+
+
+/** A FileImporter adds whole directory trees to the repository. Directories
+  are walked in parallel on a fork-join pool, and the files found are passed
+  through a bounded queue to the importing thread, which inserts them in
+  batches. Files which are already in the repository, or which were found
+  twice, are skipped. Errors do not stop an import; they are collected into
+  its Summary.
+
+  Files can be filtered with glob patterns, as described for
+  FileSystem.getPathMatcher(). A pattern containing a '/' is matched against
+  the path of a file relative to the directory it was found under; any other
+  pattern is matched against the file's name. A file is imported if it
+  matches an include pattern, or there are none, and does not match an
+  exclude pattern. Directories matching an exclude pattern are not walked.
+  Files which are given to the importer directly are always imported.
+  */
+public class FileImporter {
+
+	// PUBLIC CLASS Fields
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+	public static final int DEFAULT_PARALLELISM
+		= Math.max(2, Runtime.getRuntime().availableProcessors());
+
+	/** The most error messages a Summary keeps; later errors are counted. */
+	public static final int MAX_REPORTED_ERRORS = 100;
+
+	// PRIVATE CLASS Fields
+	private static final Path END_OF_WALK = Paths.get("");
+	private static final long POLL_MILLIS = 100;
+
+	// PRIVATE INSTANCE Fields
+	private final List<GlobFilter> includes;
+	private final List<GlobFilter> excludes;
+	private final TaggedFileDAO taggedFileDAO;
+
+	private int batchSize;
+	private int queueCapacity;
+	private int parallelism;
+
+
+	//************************************************************
+	// PUBLIC INTERFACES
+	//************************************************************
+
+	/** A Monitor follows the progress of an import, and can stop it. Its
+	  methods are called on the importing thread.
+	  */
+	public interface Monitor {
+
+		/** @return true if the import should stop */
+		boolean isCancelled();
+
+		/** Called after each batch of files is inserted.
+		  @param found the number of files found so far
+		  @param added the number of files added so far
+		  */
+		void filesImported(int found, int added);
+	}
+
+
+	//************************************************************
+	// PUBLIC CLASS Methods
+	//************************************************************
+
+	/** Splits a String of glob patterns separated by whitespace.
+	  @param patterns the patterns; may be null
+	  @return the patterns, in the order given
+	  */
+	public static List<String> splitPatterns(String patterns)
+	{
+		List<String> list = new ArrayList<String>();
+
+		if (patterns != null) {
+			for (String p : patterns.trim().split("\\s+")) {
+				if (!p.isEmpty()) {
+					list.add(p);
+				}
+			}
+		}
+
+		return list;
+	}
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs a FileImporter which imports every file it finds.
+	  */
+	public FileImporter()
+	{
+		this(Collections.<String>emptyList(), Collections.<String>emptyList());
+	}
+
+	/** Constructs a FileImporter which filters the files it finds with the
+	  specified glob patterns.
+	  @param includeGlobs the patterns of files to import; if empty, every
+	  		file not excluded is imported
+	  @param excludeGlobs the patterns of files and directories to skip
+	  @throws IllegalArgumentException if a pattern is invalid
+	  */
+	public FileImporter(Collection<String> includeGlobs,
+						Collection<String> excludeGlobs)
+	{
+		includes = compile(includeGlobs);
+		excludes = compile(excludeGlobs);
+		taggedFileDAO = new TaggedFileDAO();
+
+		batchSize = DEFAULT_BATCH_SIZE;
+		queueCapacity = DEFAULT_QUEUE_CAPACITY;
+		parallelism = DEFAULT_PARALLELISM;
+	}
+
+	/** Imports the specified files, and the files under the specified
+	  directories.
+	  @param roots the files and directories to import
+	  @param monitor follows the import's progress; may be null
+	  @return a summary of the import
+	  @throws SQLException if a problem occurs working with the database
+	  @throws InterruptedException if the importing thread is interrupted
+	  */
+	public Summary importFiles(Collection<File> roots, Monitor monitor)
+		throws SQLException, InterruptedException
+	{
+		Run run = new Run(roots, monitor);
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+		try {
+			pool.execute(run.new RootWalk());
+			run.consume();
+			return run.summary;
+
+		} finally {
+			run.stopped = true;
+			pool.shutdownNow();
+		}
+	}
+
+	/** Sets the number of files inserted per batch and transaction.
+	  @param batchSize_ the batch size
+	  @throws IllegalArgumentException if batchSize_ is less than 1
+	  */
+	public void setBatchSize(int batchSize_)
+	{
+		if (batchSize_ < 1) {
+			throw new IllegalArgumentException("batchSize_ must be positive");
+		}
+
+		batchSize = batchSize_;
+	}
+
+	/** Sets the number of directories walked at once.
+	  @param parallelism_ the number of walking threads
+	  @throws IllegalArgumentException if parallelism_ is less than 1
+	  */
+	public void setParallelism(int parallelism_)
+	{
+		if (parallelism_ < 1) {
+			throw new IllegalArgumentException("parallelism_ must be positive");
+		}
+
+		parallelism = parallelism_;
+	}
+
+	/** Sets the number of found files which may wait to be inserted. Walking
+	  pauses while the queue is full.
+	  @param queueCapacity_ the queue capacity
+	  @throws IllegalArgumentException if queueCapacity_ is less than 1
+	  */
+	public void setQueueCapacity(int queueCapacity_)
+	{
+		if (queueCapacity_ < 1) {
+			throw new IllegalArgumentException(
+										"queueCapacity_ must be positive");
+		}
+
+		queueCapacity = queueCapacity_;
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASS Methods
+	//************************************************************
+
+	/** Compiles glob patterns into filters.
+	  @param globs the patterns
+	  @return the filters
+	  @throws IllegalArgumentException if a pattern is invalid
+	  */
+	private static List<GlobFilter> compile(Collection<String> globs)
+	{
+		List<GlobFilter> filters = new ArrayList<GlobFilter>(globs.size());
+
+		for (String glob : globs) {
+			filters.add(new GlobFilter(glob));
+		}
+
+		return filters;
+	}
+
+	/** Tests whether a path matches any of the specified filters.
+	  @param filters the filters
+	  @param relative the path relative to the directory being walked
+	  @return true if a filter matches
+	  */
+	private static boolean matchesAny(List<GlobFilter> filters, Path relative)
+	{
+		for (GlobFilter f : filters) {
+			if (f.matches(relative)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+
+	//************************************************************
+	// PUBLIC CLASSES
+	//************************************************************
+
+	/** A Summary reports the outcome of an import. */
+	public static final class Summary {
+		private final AtomicInteger found = new AtomicInteger();
+		private int added;
+		private int duplicates;
+		private int errorCount;
+		private final List<String> errors = new ArrayList<String>();
+		private boolean cancelled;
+
+		/** @return the number of files added to the repository */
+		public int getAdded()
+		{
+			return added;
+		}
+
+		/** @return the number of files skipped because they were already in
+		  		the repository, or were found more than once */
+		public int getDuplicates()
+		{
+			return duplicates;
+		}
+
+		/** @return the number of files and directories which could not be
+		  		imported or walked */
+		public synchronized int getErrorCount()
+		{
+			return errorCount;
+		}
+
+		/** @return messages describing up to MAX_REPORTED_ERRORS errors */
+		public synchronized List<String> getErrors()
+		{
+			return new ArrayList<String>(errors);
+		}
+
+		/** @return the number of files found */
+		public int getFound()
+		{
+			return found.get();
+		}
+
+		/** @return true if the import was stopped before it finished */
+		public boolean isCancelled()
+		{
+			return cancelled;
+		}
+
+		/** Records an error. May be called from any thread. */
+		private synchronized void addError(Path path, Exception cause)
+		{
+			errorCount++;
+
+			if (errors.size() < MAX_REPORTED_ERRORS) {
+				errors.add(path + ": " + cause.getMessage());
+			}
+		}
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASSES
+	//************************************************************
+
+	/** A GlobFilter matches either file names or relative paths against a
+	  glob pattern. */
+	private static final class GlobFilter {
+		private final PathMatcher matcher;
+		private final boolean wholePath;
+
+		GlobFilter(String glob)
+		{
+			matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+			wholePath = glob.indexOf('/') >= 0;
+		}
+
+		boolean matches(Path relative)
+		{
+			return matcher.matches(wholePath ? relative
+											 : relative.getFileName());
+		}
+	}
+
+	/** A Run holds the state of one import: the queue between the walking
+	  threads and the importing thread, and the summary they both update.
+	  */
+	private final class Run {
+		private final Collection<File> roots;
+		private final Monitor monitor;
+		private final BlockingQueue<Path> queue;
+		private final Summary summary;
+		private final Set<String> seen;
+		private volatile boolean stopped;
+
+		Run(Collection<File> roots_, Monitor monitor_)
+		{
+			roots = roots_;
+			monitor = monitor_;
+			queue = new ArrayBlockingQueue<Path>(queueCapacity);
+			summary = new Summary();
+			seen = new HashSet<String>();
+			stopped = false;
+		}
+
+		/** Inserts found files in batches until the walk ends or the import
+		  is cancelled. Called on the importing thread. */
+		void consume() throws SQLException, InterruptedException
+		{
+			List<Path> batch = new ArrayList<Path>(batchSize);
+
+			while (true) {
+				if (monitor != null && monitor.isCancelled()) {
+					summary.cancelled = true;
+					return;
+				}
+
+				Path path = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+
+				if (path == END_OF_WALK) {
+					break;
+				} else if (path != null) {
+					batch.add(path);
+				}
+
+				// a slow walk still shows progress, one partial batch at a time
+				if (batch.size() >= batchSize
+					|| (path == null && !batch.isEmpty())) {
+					insert(batch);
+					batch.clear();
+				}
+			}
+
+			insert(batch);
+		}
+
+		/** Adds a found file to the queue, waiting while it is full.
+		  @return false if the import stopped while waiting */
+		boolean enqueue(Path path)
+		{
+			try {
+				while (!queue.offer(path, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+					if (stopped) {
+						return false;
+					}
+				}
+
+				return true;
+
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+
+		/** Inserts the files of a batch which are not yet in the repository.
+		  */
+		private void insert(List<Path> batch) throws SQLException
+		{
+			if (batch.isEmpty()) {
+				return;
+			}
+
+			List<String> paths = new ArrayList<String>(batch.size());
+
+			for (Path p : batch) {
+				if (seen.add(p.toString())) {
+					paths.add(p.toString());
+				} else {
+					summary.duplicates++;
+				}
+			}
+
+			Set<String> existing = taggedFileDAO.readExistingPaths(paths);
+			summary.duplicates += existing.size();
+
+			List<TaggedFile> files = new ArrayList<TaggedFile>(paths.size());
+
+			for (String path : paths) {
+				if (!existing.contains(path)) {
+					TaggedFile file = new TaggedFile();
+					file.setFilePath(path);
+					files.add(file);
+				}
+			}
+
+			BatchResult<TaggedFile> result = taggedFileDAO.createAll(files);
+			summary.added += result.getSuccessCount();
+
+			for (BatchResult.Failure<TaggedFile> f : result.getFailures()) {
+				summary.addError(f.getItem().getFile().toPath(), f.getCause());
+			}
+
+			if (monitor != null) {
+				monitor.filesImported(summary.getFound(), summary.added);
+			}
+		}
+
+		/** A RootWalk walks each root, and marks the end of the walk once
+		  every directory has been walked. */
+		final class RootWalk extends RecursiveAction {
+
+			protected void compute()
+			{
+				try {
+					List<DirectoryWalk> walks = new ArrayList<DirectoryWalk>();
+
+					for (File root : roots) {
+						Path path = root.toPath().toAbsolutePath().normalize();
+
+						if (Files.isDirectory(path)) {
+							walks.add(new DirectoryWalk(path, path));
+						} else if (Files.isRegularFile(path)) {
+							summary.found.incrementAndGet();
+							if (!enqueue(path)) {
+								return;
+							}
+						} else {
+							summary.addError(path, new IOException(
+									"The file does not exist."));
+						}
+					}
+
+					invokeAll(walks);
+
+				} finally {
+					enqueue(END_OF_WALK);
+				}
+			}
+		}
+
+		/** A DirectoryWalk queues the files in one directory, and walks its
+		  subdirectories in parallel. Symbolic links to directories are not
+		  followed, so the walk can not loop. */
+		final class DirectoryWalk extends RecursiveAction {
+			private final Path root;
+			private final Path dir;
+
+			DirectoryWalk(Path root_, Path dir_)
+			{
+				root = root_;
+				dir = dir_;
+			}
+
+			protected void compute()
+			{
+				List<DirectoryWalk> walks = new ArrayList<DirectoryWalk>();
+
+				try (DirectoryStream<Path> entries
+						= Files.newDirectoryStream(dir)) {
+					for (Path entry : entries) {
+						if (stopped) {
+							return;
+						}
+
+						Path relative = root.relativize(entry);
+						BasicFileAttributes attrs;
+
+						try {
+							attrs = Files.readAttributes(entry,
+									BasicFileAttributes.class,
+									LinkOption.NOFOLLOW_LINKS);
+						} catch (IOException e) {
+							summary.addError(entry, e);
+							continue;
+						}
+
+						if (attrs.isDirectory()) {
+							if (!matchesAny(excludes, relative)) {
+								walks.add(new DirectoryWalk(root, entry));
+							}
+							continue;
+						}
+
+						if (!Files.isRegularFile(entry)
+							|| matchesAny(excludes, relative)
+							|| (!includes.isEmpty()
+								&& !matchesAny(includes, relative))) {
+							continue;
+						}
+
+						summary.found.incrementAndGet();
+						if (!enqueue(entry)) {
+							return;
+						}
+					}
+
+				} catch (IOException e) {
+					summary.addError(dir, e);
+				} catch (DirectoryIteratorException e) {
+					summary.addError(dir, e.getCause());
+				}
+
+				invokeAll(walks);
+			}
+		}
+	}
+
+}
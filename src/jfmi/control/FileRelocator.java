@@ -0,0 +1,317 @@
+package jfmi.control;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jfmi.app.FileFingerprint;
+import jfmi.app.TaggedFile;
+import jfmi.dao.TaggedFileDAO;
+import jfmi.util.ContentHash;
+
+
+/** A FileRelocator finds missing files at new paths. The directories it is
+  given are searched for files whose contents have the fingerprint of a
+  missing file, and the missing file's record is moved to the path found.
+
+  Only files whose size is the size of some fingerprinted missing file are
+  hashed, and each fingerprint is looked up in the repository's index, so
+  found files are never compared with missing files pairwise. When several
+  missing files share a fingerprint, their full hashes, if they were
+  computed, decide which one was found; a file which still matches more
+  than one missing file is left alone. Files are hashed in parallel on a
+  bounded pool of threads.
+  */
+public class FileRelocator {
+
+	// PUBLIC CLASS Fields
+	public static final int DEFAULT_THREAD_COUNT = 4;
+
+	// PRIVATE INSTANCE Fields
+	private final TaggedFileDAO taggedFileDAO;
+	private int threadCount;
+
+
+	//************************************************************
+	// PUBLIC INTERFACES
+	//************************************************************
+
+	/** A Monitor follows the progress of a relocation scan, and can stop it.
+	  Its methods are called on the scanning thread.
+	  */
+	public interface Monitor {
+
+		/** @return true if the scan should stop */
+		boolean isCancelled();
+
+		/** Called as files are searched.
+		  @param searched the number of files searched so far
+		  @param relocated the number of missing files found so far
+		  */
+		void filesSearched(int searched, int relocated);
+	}
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs a FileRelocator with DEFAULT_THREAD_COUNT threads.
+	  */
+	public FileRelocator()
+	{
+		taggedFileDAO = new TaggedFileDAO();
+		threadCount = DEFAULT_THREAD_COUNT;
+	}
+
+	/** Sets the number of files hashed at once.
+	  @param threadCount_ the number of hashing threads
+	  @throws IllegalArgumentException if threadCount_ is less than 1
+	  */
+	public void setThreadCount(int threadCount_)
+	{
+		if (threadCount_ < 1) {
+			throw new IllegalArgumentException("threadCount_ must be positive");
+		}
+
+		threadCount = threadCount_;
+	}
+
+	/** Searches the specified directories, and the directories under them,
+	  for missing files. Symbolic links to directories are not followed.
+	  @param roots the directories to search
+	  @param monitor follows the scan's progress; may be null
+	  @return the outcome of the scan
+	  @throws SQLException if a problem occurs working with the database
+	  @throws InterruptedException if the scanning thread is interrupted
+	  */
+	public Result relocate(Collection<File> roots, final Monitor monitor)
+		throws SQLException, InterruptedException
+	{
+		final Result result = new Result();
+		final Set<Long> sizes = taggedFileDAO.readMissingSizes();
+
+		if (sizes.isEmpty()) {
+			return result;
+		}
+
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+				threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(threadCount * 4),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+
+		final Set<Integer> claimed = Collections.newSetFromMap(
+								new ConcurrentHashMap<Integer, Boolean>());
+
+		SimpleFileVisitor<Path> visitor = new SimpleFileVisitor<Path>() {
+			public FileVisitResult visitFile(Path file,
+											 BasicFileAttributes attrs)
+			{
+				if (monitor != null) {
+					if (monitor.isCancelled()) {
+						result.cancelled = true;
+						return FileVisitResult.TERMINATE;
+					}
+					monitor.filesSearched(result.searched + 1,
+										  result.relocated.get());
+				}
+
+				result.searched++;
+
+				if (attrs.isRegularFile() && sizes.contains(attrs.size())) {
+					executor.execute(new Candidate(file, claimed, result));
+				}
+
+				return result.failure == null ? FileVisitResult.CONTINUE
+											  : FileVisitResult.TERMINATE;
+			}
+
+			public FileVisitResult visitFileFailed(Path file, IOException e)
+			{
+				return FileVisitResult.CONTINUE;
+			}
+		};
+
+		try {
+			for (File root : roots) {
+				if (result.cancelled || result.failure != null) {
+					break;
+				}
+
+				try {
+					Files.walkFileTree(root.toPath(), visitor);
+				} catch (IOException e) {
+					// an unreadable root holds no files to find
+				}
+			}
+
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+		} finally {
+			executor.shutdownNow();
+		}
+
+		if (result.failure != null) {
+			throw result.failure;
+		}
+
+		return result;
+	}
+
+
+	//************************************************************
+	// PUBLIC CLASSES
+	//************************************************************
+
+	/** A Result reports the outcome of a relocation scan. */
+	public static final class Result {
+		private final AtomicInteger hashed = new AtomicInteger();
+		private final AtomicInteger relocated = new AtomicInteger();
+		private final AtomicInteger ambiguous = new AtomicInteger();
+		private int searched;
+		private boolean cancelled;
+		private volatile SQLException failure;
+
+		/** @return the number of found files which matched more than one
+		  		missing file, and so were not used */
+		public int getAmbiguousCount()
+		{
+			return ambiguous.get();
+		}
+
+		/** @return the number of files whose size matched a missing file,
+		  		and so were hashed */
+		public int getHashedCount()
+		{
+			return hashed.get();
+		}
+
+		/** @return the number of missing files found at new paths */
+		public int getRelocatedCount()
+		{
+			return relocated.get();
+		}
+
+		/** @return the number of files searched */
+		public int getSearchedCount()
+		{
+			return searched;
+		}
+
+		/** @return true if the scan was stopped before it finished */
+		public boolean isCancelled()
+		{
+			return cancelled;
+		}
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASSES
+	//************************************************************
+
+	/** A Candidate checks whether one file is a missing file, and moves the
+	  missing file's record to it if so.
+	  */
+	private final class Candidate implements Runnable {
+		private final Path file;
+		private final Set<Integer> claimed;
+		private final Result result;
+
+		Candidate(Path file_, Set<Integer> claimed_, Result result_)
+		{
+			file = file_;
+			claimed = claimed_;
+			result = result_;
+		}
+
+		public void run()
+		{
+			try {
+				String path = file.toString();
+
+				// a file which is already stored is not a missing one
+				if (!taggedFileDAO.readExistingPaths(
+							Collections.singleton(path)).isEmpty()) {
+					return;
+				}
+
+				result.hashed.incrementAndGet();
+				List<FileFingerprint> matches;
+				matches = taggedFileDAO.readMissingByFingerprint(
+											ContentHash.fingerprint(file));
+
+				if (matches.size() > 1) {
+					matches = matchFullHash(matches);
+				}
+
+				if (matches.size() > 1) {
+					result.ambiguous.incrementAndGet();
+					return;
+				}
+
+				if (matches.isEmpty()
+					|| !claimed.add(matches.get(0).getFileId())) {
+					return;
+				}
+
+				TaggedFile found = new TaggedFile();
+				found.setFileId(matches.get(0).getFileId());
+				found.setFilePath(path);
+
+				if (taggedFileDAO.update(found, found.getFileId())) {
+					result.relocated.incrementAndGet();
+				}
+
+			} catch (IOException e) {
+				// an unreadable file can not be matched
+			} catch (SQLException e) {
+				result.failure = e;
+			}
+		}
+
+		/** Narrows the missing files which share this file's fingerprint to
+		  those whose full hash is this file's, if any have a full hash.
+		  @param matches the missing files with this file's fingerprint
+		  @return the missing files which still match
+		  @throws IOException if this file can not be read
+		  */
+		private List<FileFingerprint> matchFullHash(
+				List<FileFingerprint> matches) throws IOException
+		{
+			String fullHash = null;
+			List<FileFingerprint> narrowed = new ArrayList<FileFingerprint>();
+
+			for (FileFingerprint m : matches) {
+				if (m.getFullHash() == null) {
+					continue;
+				}
+				if (fullHash == null) {
+					fullHash = ContentHash.fullHash(file);
+				}
+				if (m.getFullHash().equals(fullHash)) {
+					narrowed.add(m);
+				}
+			}
+
+			return fullHash == null ? matches : narrowed;
+		}
+	}
+
+}
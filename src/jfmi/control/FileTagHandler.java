@@ -2,6 +2,7 @@ package jfmi.control;
 
 import javax.swing.JOptionPane;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.SortedSet;
@@ -11,6 +12,9 @@ import jfmi.app.FileTag;
 import jfmi.dao.FileTagDAO;
 import jfmi.gui.FileTagHandlerDialog;
 import jfmi.gui.GUIUtil;
+import jfmi.repo.RepositoryChange;
+import jfmi.repo.RepositoryListener;
+import jfmi.repo.SQLiteRepository;
 
 /** A FileTagHandler handles application logic concerned with adding, removing,
   and updating tag records in the database. A FileTagHandler uses its parent
@@ -41,6 +45,9 @@ public class FileTagHandler {
 
 		tagHandlerDialog = new FileTagHandlerDialog(jfmiApp.getJFMIGUI(), this);
 		tagHandlerDialog.setVisible(false);
+
+		SQLiteRepository.instance().addRepositoryListener(
+											new TagChangeListener());
 	}
 
 	/** Adds a tag to the repository.
@@ -88,7 +95,6 @@ public class FileTagHandler {
 
 		FileTag tag = new FileTag(newTag);
 		addTagToRepo(tag, true);
-		updateDataAndGUI(true);
 	}
 
 	/** Begins an interaction with the user which allows them to remove
@@ -103,13 +109,12 @@ public class FileTagHandler {
 
 		String msg = "Are you sure you want to delete the selected tags?";
 
-		/* We delete the tags from the repo. We then update handler data, as
-		   well as the the application's FileHandler's data.
+		/* We delete the tags from the repo. The handler's list, and the
+		   files which were tagged with them, are updated by the repository
+		   changes the deletions publish.
 		   */
 		if (tagHandlerDialog.getUserConfirmation(msg)) {
 			deleteTagsFromRepo(tags, true);
-			updateDataAndGUI(true);
-			jfmiApp.getFileHandler().updateDataAndGUI(true);
 		}
 	}
 
@@ -126,13 +131,9 @@ public class FileTagHandler {
 			return;	// return if user cancelled, or did not edit tag
 		}
 
-		String oldTag = editMe.getTag();
-		editMe.setTag(editVal);
-
-		if (updateTagInRepo(oldTag, editMe, true)) {
-			updateDataAndGUI(true);
-		 	jfmiApp.getFileHandler().updateDataAndGUI(true);
-		}
+		/* The displayed tag is left unchanged; the repository change replaces
+		   it once the update is committed. */
+		updateTagInRepo(editMe, new FileTag(editVal), true);
 	}
 
 	/** When called, displays an interface to allow the user to
@@ -237,23 +238,25 @@ public class FileTagHandler {
 		}
 	}
 
-	/** Updates the FileTag record having the specified id, with the new
-	  data contained in the updateMe object.
-	  @param id the current tag/id of the target file tag
+	/** Updates the FileTag record of the specified tag, with the new data
+	  contained in the updateMe object.
+	  @param current the target file tag, as currently stored
 	  @param updateMe a FileTag containing the new information
 	  @param showErrors if true, errors will be displayed to the user
 	  @return true if the tag was updated successfully
 	  */
-	public boolean updateTagInRepo(String id, 
+	public boolean updateTagInRepo(FileTag current, 
 								   FileTag updateMe, 
 								   boolean showErrors)
 	{
+		String tag = current.getTag();
+
 		try {
-			boolean updated = fileTagDAO.update(updateMe, id.toString());
+			boolean updated = fileTagDAO.update(updateMe, current.getTagId());
 
 			if (!updated && showErrors) {
 				GUIUtil.showErrorDialog(
-					"Failed to update the tag \"" + id + "\""
+					"Failed to update the tag \"" + tag + "\""
 					+ " to \"" + updateMe.getTag()  + "\"."
 				);
 			}
@@ -263,7 +266,7 @@ public class FileTagHandler {
 		} catch (SQLException e) {
 			if (showErrors) {
 				GUIUtil.showErrorDialog(
-					"An error occurred while updating tag \"" + id + "\""
+					"An error occurred while updating tag \"" + tag + "\""
 					+ " to \"" + updateMe.getTag()  + "\".",
 					e.toString()
 				);
@@ -309,6 +312,61 @@ public class FileTagHandler {
 		return input;
 	}
 
-	
+
+	//************************************************************
+	// PRIVATE CLASSES
+	//************************************************************
+
+	/** A TagChangeListener applies committed changes to tags to the
+	  handler's list of tags, on the event dispatch thread. Inserted and
+	  renamed tags are read by their tag ids before the list is changed.
+	  */
+	private final class TagChangeListener implements RepositoryListener {
+
+		public void repositoryChanged(RepositoryChange change)
+		{
+			if (change.getEntity() != RepositoryChange.Entity.TAG) {
+				return;
+			}
+
+			RepositoryChange.Kind kind = change.getKind();
+			final List<Integer> tagIds = change.getTagIds();
+			final List<FileTag> added = new ArrayList<FileTag>();
+			boolean reload = kind == RepositoryChange.Kind.RESET;
+
+			if (kind == RepositoryChange.Kind.INSERTED
+				|| kind == RepositoryChange.Kind.UPDATED) {
+				try {
+					for (Integer tagId : tagIds) {
+						FileTag tag = fileTagDAO.readById(tagId);
+						if (tag != null) {
+							added.add(tag);
+						}
+					}
+				} catch (SQLException e) {
+					reload = true;
+				}
+			}
+
+			final boolean reloadAll = reload;
+			final boolean removeOld = kind != RepositoryChange.Kind.INSERTED;
+
+			GUIUtil.runOnEventDispatchThread(new Runnable() {
+				public void run()
+				{
+					if (reloadAll) {
+						updateDataAndGUI(true);
+						return;
+					}
+
+					// a renamed tag is removed, and added with its new value
+					if (removeOld) {
+						tagHandlerDialog.removeTags(tagIds);
+					}
+					tagHandlerDialog.addTags(added);
+				}
+			});
+		}
+	}
 
 }
@@ -5,6 +5,7 @@ import java.sql.SQLException;
 
 import jfmi.app.FileTag;
 import jfmi.app.FileTagging;
+import jfmi.dao.BatchResult;
 import jfmi.dao.FileTaggingDAO;
 import jfmi.gui.GUIUtil;
 
@@ -63,7 +64,9 @@ public class FileTaggingHandler {
 		return false;
 	}
 
-	/** Creates a Collection of FileTaggings in the repository.
+	/** Creates a Collection of FileTaggings in the repository. The taggings
+	  are inserted in batches, and any taggings which could not be created
+	  are reported in a single error message.
 	  @param taggings the Collection of FileTaggings to create
 	  @param showErrors if true, errors will be displayed
 	  @return true if no errors occurred
@@ -75,15 +78,39 @@ public class FileTaggingHandler {
 			return true;
 		}
 
-		boolean allAdded = true;
+		try {
+			BatchResult<FileTagging> result;
+			result = fileTaggingDAO.createAll(taggings);
 
-		for (FileTagging ft : taggings) {
-			if (addTaggingToRepo(ft, showErrors) == false) {
-				allAdded = false;
+			if (!result.isComplete() && showErrors) {
+				StringBuilder details = new StringBuilder("");
+
+				for (BatchResult.Failure<FileTagging> f : result.getFailures()) {
+					details.append(f.getItem().getTag());
+					details.append(": ");
+					details.append(f.getCause().getMessage());
+					details.append("\n");
+				}
+
+				GUIUtil.showErrorDialog(
+					"Could not create " + result.getFailures().size()
+					+ " of the taggings in the repository.",
+					details.toString()
+				);
+			}
+
+			return result.isComplete();
+
+		} catch (SQLException e) {
+			if (showErrors) {
+				GUIUtil.showErrorDialog(
+					"A repository error occurred while adding taggings.",
+					e.toString()
+				);
 			}
 		}
 
-		return allAdded;
+		return false;
 	}
 
 	/** Deletes a subset of FileTaggings from the underlying repository,
@@ -115,7 +142,7 @@ public class FileTaggingHandler {
 	public boolean deleteTaggingsByTag(FileTag tag, boolean showErrors)
 	{
 		try {
-			fileTaggingDAO.deleteByTag(tag.getTag().toString());
+			fileTaggingDAO.deleteByTag(tag.getTagId());
 			return true;
 
 		} catch (SQLException e) {
@@ -0,0 +1,594 @@
+package jfmi.control;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import jfmi.app.TaggedFile;
+import jfmi.dao.DAOException;
+import jfmi.dao.RecordCursor;
+import jfmi.dao.TaggedFileDAO;
+import jfmi.repo.RepositoryChange;
+import jfmi.repo.RepositoryListener;
+
+
+/** A FileWatcher keeps the paths of TaggedFiles in step with the file
+  system. It watches each directory which contains a TaggedFile once,
+  however many of its files are stored, and reacts to files being renamed,
+  moved and deleted:
+  <ul>
+  <li>A file deleted from one place and created at another in the same
+  	burst of events is taken to have moved, if the new file has the same
+  	name, or is the only file created in the same directory. Its path is
+  	updated with TaggedFileDAO.update().</li>
+  <li>Any other deleted file is flagged as missing, and unflagged if a file
+  	appears at its path again.</li>
+  <li>If events for a directory were lost, or the directory itself was
+  	moved or deleted, each stored file in the directory is checked.</li>
+  </ul>
+  Events are collected until the file system has been quiet for a short
+  while, so that a burst of changes is applied together. The watcher runs
+  on its own daemon thread, and follows repository changes to know which
+  files to watch.
+  */
+public class FileWatcher implements RepositoryListener {
+
+	// PUBLIC CLASS Fields
+	/** How long the file system must be quiet before events are applied. */
+	public static final long DEFAULT_QUIET_MILLIS = 250;
+
+	/** The longest events are held back while the file system stays busy. */
+	public static final long MAX_DELAY_MILLIS = 2000;
+
+	// PRIVATE INSTANCE Fields
+	private final TaggedFileDAO taggedFileDAO;
+	private final long quietMillis;
+
+	private WatchService watchService;
+	private Thread thread;
+
+	// guarded by this
+	private final Map<Path, WatchedDirectory> directories;
+	private final Map<WatchKey, WatchedDirectory> keys;
+	private final Map<Integer, Path> pathsById;
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs a FileWatcher which waits DEFAULT_QUIET_MILLIS for a burst
+	  of events to end.
+	  */
+	public FileWatcher()
+	{
+		this(DEFAULT_QUIET_MILLIS);
+	}
+
+	/** Constructs a FileWatcher.
+	  @param quietMillis_ how long the file system must be quiet before
+	  		events are applied
+	  */
+	public FileWatcher(long quietMillis_)
+	{
+		taggedFileDAO = new TaggedFileDAO();
+		quietMillis = quietMillis_;
+
+		directories = new HashMap<Path, WatchedDirectory>();
+		keys = new HashMap<WatchKey, WatchedDirectory>();
+		pathsById = new HashMap<Integer, Path>();
+	}
+
+	/** Retrieves the number of directories being watched.
+	  @return the number of watched directories
+	  */
+	public synchronized int getWatchedDirectoryCount()
+	{
+		return keys.size();
+	}
+
+	public void repositoryChanged(RepositoryChange change)
+	{
+		if (change.getEntity() != RepositoryChange.Entity.FILE) {
+			return;
+		}
+
+		try {
+			switch (change.getKind()) {
+			case INSERTED:
+			case UPDATED:
+				// only the paths are needed, not the taggings
+				for (TaggedFile file : taggedFileDAO.readByIds(
+											change.getFileIds(), false)) {
+					track(file.getFileId(), file.getFilePath());
+				}
+				break;
+			case DELETED:
+				for (Object id : change.getIds()) {
+					untrack((Integer)id);
+				}
+				break;
+			default:
+				reload();
+			}
+
+		} catch (SQLException | DAOException e) {
+			// the files are picked up again when the watcher next reloads
+		}
+	}
+
+	/** Starts watching the directories of every stored file. The files are
+	  read, and the directories registered, on the watcher's thread. Files
+	  whose directories no longer exist are flagged as missing.
+	  @throws IOException if the file system can not be watched
+	  @throws IllegalStateException if the watcher has already started
+	  */
+	public synchronized void start() throws IOException
+	{
+		if (watchService != null) {
+			throw new IllegalStateException("the watcher has already started");
+		}
+
+		watchService = FileSystems.getDefault().newWatchService();
+
+		thread = new Thread(new Runnable() {
+			public void run()
+			{
+				watch();
+			}
+		}, "jfmi-file-watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/** Stops watching, and waits for the watcher's thread to finish.
+	  @throws InterruptedException if interrupted while waiting
+	  */
+	public void stop() throws InterruptedException
+	{
+		Thread stopping;
+
+		synchronized (this) {
+			if (watchService == null) {
+				return;
+			}
+
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				// the thread is interrupted below
+			}
+
+			stopping = thread;
+			keys.clear();
+			directories.clear();
+			pathsById.clear();
+		}
+
+		stopping.interrupt();
+		stopping.join();
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASS Methods
+	//************************************************************
+
+	/** Matches deleted files with created files. A deleted file is moved to
+	  a created file with the same name; failing that, to the only file
+	  created in its directory, if it was the only file deleted there.
+	  @param deletedIds the ids of the deleted files; unmatched ids remain
+	  @param deletedPaths the paths of the deleted files; unmatched paths
+	  		remain
+	  @param created the paths of the created files
+	  @return the new path of each moved file, by id
+	  */
+	private static Map<Integer, Path> pairMoves(List<Integer> deletedIds,
+												List<Path> deletedPaths,
+												Set<Path> created)
+	{
+		Map<Integer, Path> moves = new LinkedHashMap<Integer, Path>();
+
+		if (created.isEmpty()) {
+			return moves;
+		}
+
+		Map<Path, List<Path>> createdByName = new HashMap<Path, List<Path>>();
+
+		for (Path c : created) {
+			List<Path> same = createdByName.get(c.getFileName());
+			if (same == null) {
+				same = new ArrayList<Path>();
+				createdByName.put(c.getFileName(), same);
+			}
+			same.add(c);
+		}
+
+		Map<Path, Map<Path, Integer>> unmatched;
+		unmatched = new HashMap<Path, Map<Path, Integer>>();
+
+		for (int i = 0; i < deletedPaths.size(); i++) {
+			Path deleted = deletedPaths.get(i);
+			List<Path> same = createdByName.get(deleted.getFileName());
+
+			if (same != null && !same.isEmpty()) {
+				Path target = same.remove(0);
+				created.remove(target);
+				moves.put(deletedIds.get(i), target);
+				continue;
+			}
+
+			Map<Path, Integer> inDir = unmatched.get(deleted.getParent());
+			if (inDir == null) {
+				inDir = new HashMap<Path, Integer>();
+				unmatched.put(deleted.getParent(), inDir);
+			}
+			inDir.put(deleted, deletedIds.get(i));
+		}
+
+		// a file renamed in place
+		Map<Path, List<Path>> createdByDir = new HashMap<Path, List<Path>>();
+
+		for (Path c : created) {
+			List<Path> inDir = createdByDir.get(c.getParent());
+			if (inDir == null) {
+				inDir = new ArrayList<Path>();
+				createdByDir.put(c.getParent(), inDir);
+			}
+			inDir.add(c);
+		}
+
+		for (Map.Entry<Path, Map<Path, Integer>> e : unmatched.entrySet()) {
+			List<Path> createdInDir = createdByDir.get(e.getKey());
+
+			if (e.getValue().size() == 1 && createdInDir != null
+				&& createdInDir.size() == 1) {
+				moves.put(e.getValue().values().iterator().next(),
+						  createdInDir.get(0));
+			}
+		}
+
+		for (int i = deletedIds.size() - 1; i >= 0; i--) {
+			if (moves.containsKey(deletedIds.get(i))) {
+				deletedIds.remove(i);
+				deletedPaths.remove(i);
+			}
+		}
+
+		return moves;
+	}
+
+
+	//************************************************************
+	// PRIVATE INSTANCE Methods
+	//************************************************************
+
+	/** Applies one burst of events to the repository.
+	  @param batch the events of each key, in the order they occurred
+	  @param invalid the keys whose directories can no longer be watched
+	  */
+	private void apply(Map<WatchKey, List<WatchEvent<?>>> batch,
+					   Set<WatchKey> invalid)
+	{
+		List<Integer> deletedIds = new ArrayList<Integer>();
+		List<Path> deletedPaths = new ArrayList<Path>();
+		Set<Path> created = new HashSet<Path>();
+		Set<Integer> found = new HashSet<Integer>();
+		Set<Integer> lost = new HashSet<Integer>();
+		List<Path> rescan = new ArrayList<Path>();
+
+		synchronized (this) {
+			for (Map.Entry<WatchKey, List<WatchEvent<?>>> e : batch.entrySet()) {
+				WatchedDirectory dir = keys.get(e.getKey());
+
+				if (dir == null) {
+					continue;
+				}
+
+				if (invalid.contains(e.getKey())) {
+					keys.remove(e.getKey());
+					dir.key = null;
+					rescan.add(dir.path);
+					continue;
+				}
+
+				for (WatchEvent<?> event : e.getValue()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						rescan.add(dir.path);
+						continue;
+					}
+
+					Path path = dir.path.resolve((Path)event.context());
+					Integer id = dir.files.get(path.getFileName().toString());
+
+					if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+						created.remove(path);
+						if (id != null && !deletedPaths.contains(path)) {
+							deletedIds.add(id);
+							deletedPaths.add(path);
+						}
+					} else if (event.kind()
+							   == StandardWatchEventKinds.ENTRY_CREATE) {
+						if (id != null) {
+							found.add(id);
+						} else {
+							created.add(path);
+						}
+					}
+				}
+			}
+
+			// a directory which lost events, or was moved, is checked in full
+			for (Path dirPath : rescan) {
+				WatchedDirectory dir = directories.get(dirPath);
+
+				if (dir != null && dir.key == null) {
+					register(dir);
+				}
+
+				if (dir != null) {
+					for (Map.Entry<String, Integer> f : dir.files.entrySet()) {
+						if (Files.exists(dirPath.resolve(f.getKey()))) {
+							found.add(f.getValue());
+						} else {
+							lost.add(f.getValue());
+						}
+					}
+				}
+			}
+		}
+
+		// files which were deleted and created again have not moved
+		for (int i = deletedPaths.size() - 1; i >= 0; i--) {
+			if (Files.exists(deletedPaths.get(i))) {
+				deletedPaths.remove(i);
+				deletedIds.remove(i);
+			}
+		}
+
+		for (Iterator<Path> it = created.iterator(); it.hasNext(); ) {
+			if (!Files.isRegularFile(it.next())) {
+				it.remove();
+			}
+		}
+
+		Map<Integer, Path> moves = pairMoves(deletedIds, deletedPaths, created);
+
+		for (Map.Entry<Integer, Path> move : moves.entrySet()) {
+			try {
+				TaggedFile moved = new TaggedFile(move.getKey(),
+									move.getValue().toString(), null);
+				taggedFileDAO.update(moved, move.getKey());
+
+			} catch (SQLException e) {
+				// the new path is already stored, as another file
+				lost.add(move.getKey());
+			}
+		}
+
+		lost.addAll(deletedIds);
+		lost.removeAll(moves.keySet());
+		found.removeAll(lost);
+
+		try {
+			taggedFileDAO.updateMissing(lost, true);
+			taggedFileDAO.updateMissing(found, false);
+		} catch (SQLException e) {
+			// the flags are corrected by the next check of the directory
+		}
+	}
+
+	/** Adds the events of a key to a batch, and readies the key for more
+	  events.
+	  */
+	private void collect(WatchKey key, Map<WatchKey, List<WatchEvent<?>>> batch,
+						 Set<WatchKey> invalid)
+	{
+		List<WatchEvent<?>> events = batch.get(key);
+
+		if (events == null) {
+			events = new ArrayList<WatchEvent<?>>();
+			batch.put(key, events);
+		}
+
+		events.addAll(key.pollEvents());
+
+		if (!key.reset()) {
+			invalid.add(key);
+		}
+	}
+
+	/** Registers a directory with the watch service. Must be called while
+	  holding this object's lock.
+	  @return true if the directory is now watched
+	  */
+	private boolean register(WatchedDirectory dir)
+	{
+		try {
+			dir.key = dir.path.register(watchService,
+										StandardWatchEventKinds.ENTRY_CREATE,
+										StandardWatchEventKinds.ENTRY_DELETE);
+			keys.put(dir.key, dir);
+			return true;
+
+		} catch (IOException | ClosedWatchServiceException e) {
+			dir.key = null;
+			return false;
+		}
+	}
+
+	/** Reads every stored file, and watches the directories which contain
+	  them. Files whose directories could not be watched are flagged as
+	  missing if the directories no longer exist.
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	private void reload() throws SQLException
+	{
+		List<Integer> lost = new ArrayList<Integer>();
+
+		synchronized (this) {
+			for (WatchKey key : keys.keySet()) {
+				key.cancel();
+			}
+			keys.clear();
+			directories.clear();
+			pathsById.clear();
+		}
+
+		RecordCursor<TaggedFile> cursor;
+		cursor = taggedFileDAO.openCursor(TaggedFileDAO.DEFAULT_FETCH_SIZE);
+
+		try {
+			while (cursor.hasNext()) {
+				TaggedFile file = cursor.next();
+
+				if (!track(file.getFileId(), file.getFilePath())
+					&& !Files.exists(Paths.get(file.getFilePath()))) {
+					lost.add(file.getFileId());
+				}
+			}
+
+		} finally {
+			cursor.close();
+		}
+
+		taggedFileDAO.updateMissing(lost, true);
+	}
+
+	/** Watches the directory of a file, replacing any path it was watched
+	  at before.
+	  @param fileId the file's id
+	  @param filePath the file's path
+	  @return true if the file's directory is being watched
+	  */
+	private synchronized boolean track(int fileId, String filePath)
+	{
+		if (watchService == null) {
+			return false;
+		}
+
+		Path path = Paths.get(filePath).toAbsolutePath().normalize();
+		Path old = pathsById.get(fileId);
+
+		if (old != null && old.equals(path)) {
+			return directories.get(path.getParent()).key != null;
+		}
+
+		untrack(fileId);
+
+		Path parent = path.getParent();
+		if (parent == null) {
+			return false;
+		}
+
+		WatchedDirectory dir = directories.get(parent);
+
+		if (dir == null) {
+			dir = new WatchedDirectory(parent);
+			directories.put(parent, dir);
+			register(dir);
+		}
+
+		dir.files.put(path.getFileName().toString(), fileId);
+		pathsById.put(fileId, path);
+
+		return dir.key != null;
+	}
+
+	/** Stops watching a file, and its directory if no other stored file is
+	  in it.
+	  @param fileId the file's id
+	  */
+	private synchronized void untrack(int fileId)
+	{
+		Path path = pathsById.remove(fileId);
+
+		if (path == null) {
+			return;
+		}
+
+		WatchedDirectory dir = directories.get(path.getParent());
+		dir.files.remove(path.getFileName().toString());
+
+		if (dir.files.isEmpty()) {
+			directories.remove(dir.path);
+
+			if (dir.key != null) {
+				keys.remove(dir.key);
+				dir.key.cancel();
+			}
+		}
+	}
+
+	/** The body of the watcher's thread: loads the stored files, then applies
+	  bursts of events until the watcher is stopped.
+	  */
+	private void watch()
+	{
+		try {
+			reload();
+		} catch (SQLException | DAOException e) {
+			// files added later are still watched
+		}
+
+		try {
+			while (true) {
+				Map<WatchKey, List<WatchEvent<?>>> batch;
+				batch = new LinkedHashMap<WatchKey, List<WatchEvent<?>>>();
+				Set<WatchKey> invalid = new HashSet<WatchKey>();
+
+				collect(watchService.take(), batch, invalid);
+				long deadline = System.currentTimeMillis() + MAX_DELAY_MILLIS;
+
+				WatchKey key;
+				while (System.currentTimeMillis() < deadline
+					   && (key = watchService.poll(quietMillis,
+									TimeUnit.MILLISECONDS)) != null) {
+					collect(key, batch, invalid);
+				}
+
+				apply(batch, invalid);
+			}
+
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// stopped
+		}
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASSES
+	//************************************************************
+
+	/** A WatchedDirectory is a directory containing stored files, with the
+	  key it is registered under, if it could be registered. */
+	private static final class WatchedDirectory {
+		final Path path;
+		final Map<String, Integer> files;
+		WatchKey key;
+
+		WatchedDirectory(Path path_)
+		{
+			path = path_;
+			files = new HashMap<String, Integer>();
+		}
+	}
+
+}
@@ -0,0 +1,280 @@
+package jfmi.control;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jfmi.app.FileFingerprint;
+import jfmi.app.FileStatus;
+import jfmi.dao.RecordCursor;
+import jfmi.dao.TaggedFileDAO;
+import jfmi.util.ContentHash;
+
+
+/** A FingerprintIndexer computes the content fingerprints of the stored
+  files which do not have one, so that they can be found by a FileRelocator
+  if they go missing. A hash of each whole file may also be computed, which
+  tells apart files whose fingerprints are equal.
+
+  Files are read from the repository in path order and hashed in parallel
+  on a bounded pool of threads. Fingerprints are written back in batches by
+  the indexing thread. A file which can not be read is left without a
+  fingerprint, and is tried again by the next indexing.
+  */
+public class FingerprintIndexer {
+
+	// PUBLIC CLASS Fields
+	public static final int DEFAULT_THREAD_COUNT = 4;
+	public static final int DEFAULT_BATCH_SIZE = 500;
+
+	// PRIVATE INSTANCE Fields
+	private final TaggedFileDAO taggedFileDAO;
+	private int threadCount;
+	private int batchSize;
+	private boolean fullHash;
+
+
+	//************************************************************
+	// PUBLIC INTERFACES
+	//************************************************************
+
+	/** A Monitor follows the progress of an indexing, and can stop it. Its
+	  methods are called on the indexing thread.
+	  */
+	public interface Monitor {
+
+		/** @return true if the indexing should stop */
+		boolean isCancelled();
+
+		/** Called as files are queued for hashing.
+		  @param done the number of files queued so far
+		  */
+		void filesFingerprinted(int done);
+	}
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs a FingerprintIndexer with DEFAULT_THREAD_COUNT threads,
+	  which does not compute full hashes.
+	  */
+	public FingerprintIndexer()
+	{
+		taggedFileDAO = new TaggedFileDAO();
+		threadCount = DEFAULT_THREAD_COUNT;
+		batchSize = DEFAULT_BATCH_SIZE;
+		fullHash = false;
+	}
+
+	/** Sets the number of fingerprints written per transaction.
+	  @param batchSize_ the batch size
+	  @throws IllegalArgumentException if batchSize_ is less than 1
+	  */
+	public void setBatchSize(int batchSize_)
+	{
+		if (batchSize_ < 1) {
+			throw new IllegalArgumentException("batchSize_ must be positive");
+		}
+
+		batchSize = batchSize_;
+	}
+
+	/** Sets whether a hash of each whole file is computed along with its
+	  fingerprint. Full hashes read every byte of every file.
+	  @param fullHash_ true to compute full hashes
+	  */
+	public void setFullHash(boolean fullHash_)
+	{
+		fullHash = fullHash_;
+	}
+
+	/** Sets the number of files hashed at once.
+	  @param threadCount_ the number of hashing threads
+	  @throws IllegalArgumentException if threadCount_ is less than 1
+	  */
+	public void setThreadCount(int threadCount_)
+	{
+		if (threadCount_ < 1) {
+			throw new IllegalArgumentException("threadCount_ must be positive");
+		}
+
+		threadCount = threadCount_;
+	}
+
+	/** Fingerprints every stored file which has no fingerprint and is not
+	  missing.
+	  @param monitor follows the indexing's progress; may be null
+	  @return the outcome of the indexing
+	  @throws SQLException if a problem occurs working with the database
+	  @throws InterruptedException if the indexing thread is interrupted
+	  */
+	public Result index(Monitor monitor)
+		throws SQLException, InterruptedException
+	{
+		Result result = new Result();
+		BlockingQueue<FileFingerprint> hashed;
+		hashed = new LinkedBlockingQueue<FileFingerprint>();
+
+		/* A full queue makes the indexing thread hash a file itself, so
+		   that reading the repository does not run far ahead of hashing. */
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(
+				threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(threadCount * 4),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+
+		RecordCursor<FileStatus> cursor = null;
+
+		try {
+			cursor = taggedFileDAO.openUnfingerprintedCursor(
+										TaggedFileDAO.DEFAULT_FETCH_SIZE);
+			int queued = 0;
+
+			while (cursor.hasNext()) {
+				if (monitor != null) {
+					if (monitor.isCancelled()) {
+						result.cancelled = true;
+						break;
+					}
+					monitor.filesFingerprinted(queued);
+				}
+
+				executor.execute(new HashFile(cursor.next(), fullHash, hashed,
+											  result));
+				queued++;
+
+				write(hashed, batchSize);
+			}
+
+			executor.shutdown();
+			while (!executor.awaitTermination(100, TimeUnit.MILLISECONDS)) {
+				write(hashed, batchSize);
+			}
+			write(hashed, 1);
+
+			return result;
+
+		} finally {
+			executor.shutdownNow();
+			if (cursor != null) {
+				cursor.close();
+			}
+		}
+	}
+
+
+	//************************************************************
+	// PRIVATE INSTANCE Methods
+	//************************************************************
+
+	/** Writes fingerprints, if at least a batch of them are waiting.
+	  @param hashed the fingerprints waiting to be written
+	  @param minimum the fewest fingerprints worth writing
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	private void write(BlockingQueue<FileFingerprint> hashed, int minimum)
+		throws SQLException
+	{
+		while (hashed.size() >= minimum) {
+			List<FileFingerprint> batch;
+			batch = new ArrayList<FileFingerprint>(batchSize);
+			hashed.drainTo(batch, batchSize);
+
+			if (batch.isEmpty()) {
+				return;
+			}
+
+			taggedFileDAO.updateFingerprints(batch);
+		}
+	}
+
+
+	//************************************************************
+	// PUBLIC CLASSES
+	//************************************************************
+
+	/** A Result reports the outcome of an indexing. */
+	public static final class Result {
+		private final AtomicInteger fingerprinted = new AtomicInteger();
+		private final AtomicInteger unreadable = new AtomicInteger();
+		private boolean cancelled;
+
+		/** @return the number of files fingerprinted */
+		public int getFingerprintedCount()
+		{
+			return fingerprinted.get();
+		}
+
+		/** @return the number of files which could not be read */
+		public int getUnreadableCount()
+		{
+			return unreadable.get();
+		}
+
+		/** @return true if the indexing was stopped before it finished */
+		public boolean isCancelled()
+		{
+			return cancelled;
+		}
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASSES
+	//************************************************************
+
+	/** A HashFile fingerprints one file. */
+	private static final class HashFile implements Runnable {
+		private final FileStatus file;
+		private final boolean fullHash;
+		private final BlockingQueue<FileFingerprint> hashed;
+		private final Result result;
+
+		HashFile(FileStatus file_, boolean fullHash_,
+				 BlockingQueue<FileFingerprint> hashed_, Result result_)
+		{
+			file = file_;
+			fullHash = fullHash_;
+			hashed = hashed_;
+			result = result_;
+		}
+
+		public void run()
+		{
+			try {
+				Path path = Paths.get(file.getPath());
+				BasicFileAttributes attrs = Files.readAttributes(path,
+												BasicFileAttributes.class);
+
+				if (!attrs.isRegularFile()) {
+					result.unreadable.incrementAndGet();
+					return;
+				}
+
+				hashed.add(new FileFingerprint(file.getFileId(), attrs.size(),
+									attrs.lastModifiedTime().toMillis(),
+									ContentHash.fingerprint(path),
+									fullHash ? ContentHash.fullHash(path)
+											 : null));
+				result.fingerprinted.incrementAndGet();
+
+			} catch (IOException | InvalidPathException e) {
+				result.unreadable.incrementAndGet();
+			}
+		}
+	}
+
+}
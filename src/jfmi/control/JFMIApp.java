@@ -1,7 +1,10 @@
 package jfmi.control;
 
+import java.io.IOException;
 import java.sql.SQLException;
 
+import jfmi.app.TagIndex;
+import jfmi.app.TaggedFileCatalog;
 import jfmi.dao.TaggedFileDAO;
 import jfmi.gui.JFMIFrame;
 import jfmi.gui.GUIUtil;
@@ -23,6 +26,14 @@ public final class JFMIApp {
 	private FileTagHandler tagHandler;
 	private FileTaggingHandler taggingHandler;
 
+	private TaskExecutor taskExecutor;
+
+	private TagIndex tagIndex;
+	private TaggedFileCatalog catalog;
+	private TagIndexUpdater tagIndexUpdater;
+
+	private FileWatcher fileWatcher;
+
 
 	//************************************************************	
 	// PUBLIC CLASS methods
@@ -45,6 +56,16 @@ public final class JFMIApp {
 	// PUBLIC INSTANCE Methods
 	//************************************************************	
 
+	/** Provides access to the compact in-memory catalog of every stored
+	  file and its taggings. The catalog is loaded with the tag index, and
+	  kept current with it.
+	  @return a reference to the application file catalog
+	  */
+	public TaggedFileCatalog getCatalog()
+	{
+		return catalog;
+	}
+
 	/** Provides access to the application file handler.
 	  @return a reference to the application file handler
 	  */
@@ -69,12 +90,44 @@ public final class JFMIApp {
 		return taggingHandler;
 	}
 
+	/** Provides access to the in-memory index of which files have which
+	  tags. The index is loaded in the background when the application
+	  starts, and kept current as the repository changes; it should only be
+	  queried while isTagIndexCurrent() is true.
+	  @return a reference to the application tag index
+	  */
+	public TagIndex getTagIndex()
+	{
+		return tagIndex;
+	}
+
+	/** Provides access to the executor which runs the application's
+	  background tasks.
+	  @return a reference to the application task executor
+	  */
+	public TaskExecutor getTaskExecutor()
+	{
+		return taskExecutor;
+	}
+
+	/** Tests whether the tag index has been loaded, and reflects every
+	  committed change to the repository.
+	  @return true if the tag index can be queried
+	  */
+	public boolean isTagIndexCurrent()
+	{
+		return tagIndexUpdater.isCurrent();
+	}
+
 	/** Starts execution of the application.
 	  @return true if the application starts successfully
 	  */
 	public boolean start() 
 	{
 		if (initJFMIRepo(true) && fileHandler.updateDataAndGUI(true)) {
+			beginLoadTagIndex();
+			startFileWatcher(true);
+			fileHandler.beginIndexFingerprints();
 			jfmiGUI.setVisible(true);
 			return true;
 		} 
@@ -104,13 +157,69 @@ public final class JFMIApp {
 	 */
 	private JFMIApp()
 	{
+		taskExecutor = new TaskExecutor();
 		jfmiGUI = new JFMIFrame(this);
 
+		tagIndex = new TagIndex();
+		catalog = new TaggedFileCatalog();
+		tagIndexUpdater = new TagIndexUpdater(tagIndex, catalog);
+		SQLiteRepository.instance().addRepositoryListener(tagIndexUpdater);
+
+		fileWatcher = new FileWatcher();
+		SQLiteRepository.instance().addRepositoryListener(fileWatcher);
+
 		fileHandler = new TaggedFileHandler(this);
 		tagHandler = new FileTagHandler(this);
 		taggingHandler = new FileTaggingHandler(this);
 	}
 
+	/** Loads the tag index from the repository in the background, so that
+	  the main window is shown without waiting for every file to be read.
+	  Until the index is loaded, searches read the repository instead. If
+	  an error occurs, an error message is displayed.
+	  */
+	private void beginLoadTagIndex()
+	{
+		taskExecutor.submit(new BackgroundTask<Void>() {
+			protected Void doInBackground() throws SQLException
+			{
+				tagIndexUpdater.rebuild();
+				return null;
+			}
+
+			protected void failed(Throwable cause)
+			{
+				GUIUtil.showErrorDialog(
+						"An error occurred while loading the tags of the files"
+						+ " in the application database. Searches will be"
+						+ " slower.",
+						cause.getMessage()
+				);
+			}
+		});
+	}
+
+	/** Starts watching the file system for stored files which are moved or
+	  deleted. The application runs without the watcher if it can not be
+	  started.
+	  @param showError if true, and an error occurs, display a message
+	  */
+	private void startFileWatcher(boolean showError)
+	{
+		try {
+			fileWatcher.start();
+
+		} catch (IOException e) {
+			if (showError) {
+				GUIUtil.showErrorDialog(
+						"Moved and deleted files will not be detected, because"
+						+ " the file system can not be watched.",
+						e.getMessage()
+				);
+			}
+		}
+	}
+
 	/** Tries to initialize an SQLiteRepository object associated with the
 	  SQLite database located at DB_PATH. If an error occurs while initializing
 	  repository, an error message is displayed if "showError" is true.
@@ -0,0 +1,359 @@
+package jfmi.control;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jfmi.app.FileStatus;
+import jfmi.dao.RecordCursor;
+import jfmi.dao.TaggedFileDAO;
+
+
+/** A PathValidator checks that the stored paths of TaggedFiles still exist,
+  flagging the files which are missing. The size and modification time of
+  each file are stored along with the modification time of its directory;
+  a directory whose modification time has not changed since it was last
+  checked has had no files added, removed or renamed, so its files are not
+  checked again.
+
+  Stored statuses are streamed from the repository, grouped by directory,
+  and checked in parallel on a bounded pool of threads. Changed statuses
+  are written back in batches by the validating thread.
+  */
+public class PathValidator {
+
+	// PUBLIC CLASS Fields
+	public static final int DEFAULT_THREAD_COUNT = 8;
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	// PRIVATE INSTANCE Fields
+	private final TaggedFileDAO taggedFileDAO;
+	private int threadCount;
+	private int batchSize;
+
+
+	//************************************************************
+	// PUBLIC INTERFACES
+	//************************************************************
+
+	/** A Monitor follows the progress of a validation, and can stop it. Its
+	  methods are called on the validating thread.
+	  */
+	public interface Monitor {
+
+		/** @return true if the validation should stop */
+		boolean isCancelled();
+
+		/** Called as files are checked.
+		  @param done the number of files checked or skipped so far
+		  */
+		void pathsValidated(int done);
+	}
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs a PathValidator with DEFAULT_THREAD_COUNT threads.
+	  */
+	public PathValidator()
+	{
+		taggedFileDAO = new TaggedFileDAO();
+		threadCount = DEFAULT_THREAD_COUNT;
+		batchSize = DEFAULT_BATCH_SIZE;
+	}
+
+	/** Sets the number of changed statuses written per transaction.
+	  @param batchSize_ the batch size
+	  @throws IllegalArgumentException if batchSize_ is less than 1
+	  */
+	public void setBatchSize(int batchSize_)
+	{
+		if (batchSize_ < 1) {
+			throw new IllegalArgumentException("batchSize_ must be positive");
+		}
+
+		batchSize = batchSize_;
+	}
+
+	/** Sets the number of directories checked at once.
+	  @param threadCount_ the number of checking threads
+	  @throws IllegalArgumentException if threadCount_ is less than 1
+	  */
+	public void setThreadCount(int threadCount_)
+	{
+		if (threadCount_ < 1) {
+			throw new IllegalArgumentException("threadCount_ must be positive");
+		}
+
+		threadCount = threadCount_;
+	}
+
+	/** Checks the paths of every stored file.
+	  @param monitor follows the validation's progress; may be null
+	  @return the outcome of the validation
+	  @throws SQLException if a problem occurs working with the database
+	  @throws InterruptedException if the validating thread is interrupted
+	  */
+	public Result validate(Monitor monitor)
+		throws SQLException, InterruptedException
+	{
+		Result result = new Result();
+		BlockingQueue<FileStatus> changed = new LinkedBlockingQueue<FileStatus>();
+
+		/* The queue is bounded, and a full queue makes the validating thread
+		   check a directory itself, so at most a few directories of
+		   statuses are held in memory at once. */
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(
+				threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(threadCount * 4),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+
+		RecordCursor<FileStatus> cursor = null;
+
+		try {
+			cursor = taggedFileDAO.openStatusCursor(
+										TaggedFileDAO.DEFAULT_FETCH_SIZE);
+			List<FileStatus> group = new ArrayList<FileStatus>();
+			String groupDir = null;
+
+			while (cursor.hasNext()) {
+				FileStatus status = cursor.next();
+				String dir = parentOf(status.getPath());
+
+				if (!group.isEmpty() && !dir.equals(groupDir)) {
+					executor.execute(new DirectoryCheck(group, changed, result));
+					group = new ArrayList<FileStatus>();
+
+					if (monitor != null) {
+						if (monitor.isCancelled()) {
+							result.cancelled = true;
+							break;
+						}
+						monitor.pathsValidated(result.getFileCount());
+					}
+
+					write(changed, batchSize, result);
+				}
+
+				group.add(status);
+				groupDir = dir;
+			}
+
+			if (!group.isEmpty() && !result.cancelled) {
+				executor.execute(new DirectoryCheck(group, changed, result));
+			}
+
+			executor.shutdown();
+			while (!executor.awaitTermination(100, TimeUnit.MILLISECONDS)) {
+				write(changed, batchSize, result);
+			}
+			write(changed, 1, result);
+
+			return result;
+
+		} finally {
+			executor.shutdownNow();
+			if (cursor != null) {
+				cursor.close();
+			}
+		}
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASS Methods
+	//************************************************************
+
+	/** Finds the directory part of a stored path.
+	  @param path a file path
+	  @return the path of its directory, or "" if it has none
+	  */
+	private static String parentOf(String path)
+	{
+		try {
+			Path parent = Paths.get(path).getParent();
+			return parent == null ? "" : parent.toString();
+
+		} catch (InvalidPathException e) {
+			return "";
+		}
+	}
+
+
+	//************************************************************
+	// PRIVATE INSTANCE Methods
+	//************************************************************
+
+	/** Writes changed statuses, if at least a batch of them are waiting.
+	  @param changed the statuses waiting to be written
+	  @param minimum the fewest statuses worth writing
+	  @param result the result to record the changes in
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	private void write(BlockingQueue<FileStatus> changed, int minimum,
+					   Result result) throws SQLException
+	{
+		while (changed.size() >= minimum) {
+			List<FileStatus> batch = new ArrayList<FileStatus>(batchSize);
+			changed.drainTo(batch, batchSize);
+
+			if (batch.isEmpty()) {
+				return;
+			}
+
+			result.flagsChanged += taggedFileDAO.updateStatuses(batch);
+		}
+	}
+
+
+	//************************************************************
+	// PUBLIC CLASSES
+	//************************************************************
+
+	/** A Result reports the outcome of a validation. */
+	public static final class Result {
+		private final AtomicInteger files = new AtomicInteger();
+		private final AtomicInteger checked = new AtomicInteger();
+		private final AtomicInteger missing = new AtomicInteger();
+		private int flagsChanged;
+		private boolean cancelled;
+
+		/** @return the number of files which were checked on the file
+		  		system, rather than skipped */
+		public int getCheckedCount()
+		{
+			return checked.get();
+		}
+
+		/** @return the number of files validated */
+		public int getFileCount()
+		{
+			return files.get();
+		}
+
+		/** @return the number of files which were newly found missing, or
+		  		found again */
+		public int getFlagsChangedCount()
+		{
+			return flagsChanged;
+		}
+
+		/** @return the number of validated files which are missing */
+		public int getMissingCount()
+		{
+			return missing.get();
+		}
+
+		/** @return true if the validation was stopped before it finished */
+		public boolean isCancelled()
+		{
+			return cancelled;
+		}
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASSES
+	//************************************************************
+
+	/** A DirectoryCheck validates the files of one directory. */
+	private static final class DirectoryCheck implements Runnable {
+		private final List<FileStatus> files;
+		private final BlockingQueue<FileStatus> changed;
+		private final Result result;
+
+		DirectoryCheck(List<FileStatus> files_,
+					   BlockingQueue<FileStatus> changed_, Result result_)
+		{
+			files = files_;
+			changed = changed_;
+			result = result_;
+		}
+
+		public void run()
+		{
+			Path dir = Paths.get(files.get(0).getPath()).getParent();
+			long dirModified = FileStatus.UNKNOWN;
+
+			try {
+				if (dir != null) {
+					dirModified = Files.getLastModifiedTime(dir).toMillis();
+				}
+			} catch (IOException e) {
+				// the directory is gone, and so are its files
+			}
+
+			boolean unchanged = dirModified != FileStatus.UNKNOWN;
+
+			for (FileStatus s : files) {
+				if (s.getDirectoryModified() != dirModified) {
+					unchanged = false;
+				}
+			}
+
+			for (FileStatus s : files) {
+				FileStatus now = unchanged ? s : check(s, dirModified);
+
+				if (now.isMissing()) {
+					result.missing.incrementAndGet();
+				}
+				if (!unchanged) {
+					result.checked.incrementAndGet();
+				}
+				if (now != s) {
+					changed.add(now);
+				}
+
+				result.files.incrementAndGet();
+			}
+		}
+
+		/** Reads a file's current status.
+		  @param s the file's stored status
+		  @param dirModified the modification time of the file's directory
+		  @return a new status, or s if nothing has changed
+		  */
+		private static FileStatus check(FileStatus s, long dirModified)
+		{
+			FileStatus now;
+
+			try {
+				BasicFileAttributes attrs = Files.readAttributes(
+						Paths.get(s.getPath()), BasicFileAttributes.class);
+
+				now = new FileStatus(s.getFileId(), s.getPath(), false,
+									 attrs.size(),
+									 attrs.lastModifiedTime().toMillis(),
+									 dirModified);
+
+			} catch (IOException | InvalidPathException e) {
+				now = new FileStatus(s.getFileId(), s.getPath(), true,
+									 s.getSize(), s.getModified(), dirModified);
+			}
+
+			if (now.isMissing() == s.isMissing()
+				&& now.getSize() == s.getSize()
+				&& now.getModified() == s.getModified()
+				&& now.getDirectoryModified() == s.getDirectoryModified()) {
+				return s;
+			}
+
+			return now;
+		}
+	}
+
+}
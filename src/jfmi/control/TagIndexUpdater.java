@@ -0,0 +1,230 @@
+package jfmi.control;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import jfmi.app.TagIndex;
+import jfmi.app.TaggedFile;
+import jfmi.app.TaggedFileCatalog;
+import jfmi.dao.DAOException;
+import jfmi.dao.RecordCursor;
+import jfmi.dao.TaggedFileDAO;
+import jfmi.repo.RepositoryChange;
+import jfmi.repo.RepositoryListener;
+
+
+/** A TagIndexUpdater loads a TagIndex and a TaggedFileCatalog from the
+  repository, and keeps them current by applying committed repository
+  changes to them. Changed files are re-read together, on the thread which
+  made the change, and applied to both.
+
+  A rebuild may run in the background while changes are committed. The
+  files and tags changed while it reads are recorded, and applied again to
+  the rebuilt index and catalog once they replace the old ones, since the
+  rebuild may have read them before they changed.
+  */
+public class TagIndexUpdater implements RepositoryListener {
+
+	// PRIVATE INSTANCE Fields
+	private final TagIndex index;
+	private final TaggedFileCatalog catalog;
+	private final TaggedFileDAO taggedFileDAO;
+	private final Object rebuildLock;
+	private volatile boolean current;
+	private Set<Integer> changedFiles;
+	private List<Integer> deletedTags;
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs a TagIndexUpdater which maintains the specified index and
+	  catalog.
+	  @param index_ the index to load and update
+	  @param catalog_ the catalog to load and update
+	  */
+	public TagIndexUpdater(TagIndex index_, TaggedFileCatalog catalog_)
+	{
+		index = index_;
+		catalog = catalog_;
+		taggedFileDAO = new TaggedFileDAO();
+		rebuildLock = new Object();
+		current = false;
+	}
+
+	/** Tests whether the index and catalog reflect every committed change.
+	  They are not current until they are first rebuilt, or after a change
+	  could not be applied to them and the rebuild which followed failed.
+	  @return true if the index and catalog are current
+	  */
+	public boolean isCurrent()
+	{
+		return current;
+	}
+
+	/** Rebuilds the index and catalog from every file and tagging in the
+	  repository. They keep their old contents until the new ones are fully
+	  read. Changes committed during the rebuild are applied to the new
+	  contents before the index and catalog are marked current. Only one
+	  rebuild runs at a time.
+	  @throws SQLException if a problem occurs working with the database
+	  @throws DAOException if a problem occurs reading a file
+	  */
+	public void rebuild() throws SQLException
+	{
+		synchronized (rebuildLock) {
+			synchronized (this) {
+				changedFiles = new HashSet<Integer>();
+				deletedTags = new ArrayList<Integer>();
+			}
+
+			TagIndex loaded = new TagIndex();
+			TaggedFileCatalog loadedCatalog = new TaggedFileCatalog();
+			boolean read = false;
+
+			try {
+				RecordCursor<TaggedFile> cursor = taggedFileDAO.openCursor(
+										TaggedFileDAO.DEFAULT_FETCH_SIZE);
+
+				try {
+					while (cursor.hasNext()) {
+						TaggedFile file = cursor.next();
+						loaded.addFile(file);
+						loadedCatalog.putFile(file);
+					}
+
+				} finally {
+					cursor.close();
+				}
+
+				read = true;
+
+			} finally {
+				if (!read) {
+					synchronized (this) {
+						changedFiles = null;
+						deletedTags = null;
+					}
+				}
+			}
+
+			Set<Integer> replayFiles;
+			List<Integer> replayTags;
+
+			/* Changes delivered after the contents are replaced are applied
+			   to the new contents; those delivered before are replayed. */
+			synchronized (this) {
+				replayFiles = changedFiles;
+				replayTags = deletedTags;
+				changedFiles = null;
+				deletedTags = null;
+				index.replaceWith(loaded);
+				catalog.replaceWith(loadedCatalog);
+			}
+
+			removeTags(replayTags);
+			updateFiles(replayFiles, false);
+			current = true;
+		}
+	}
+
+	public void repositoryChanged(RepositoryChange change)
+	{
+		try {
+			if (change.getKind() == RepositoryChange.Kind.RESET) {
+				if (change.getEntity() == RepositoryChange.Entity.FILE) {
+					rebuild();
+				}
+				return;
+			}
+
+			if (change.getEntity() == RepositoryChange.Entity.TAG) {
+				/* A renamed tag's old value is removed; the files tagged
+				   with it are updated by the change which follows. */
+				if (change.getKind() != RepositoryChange.Kind.INSERTED) {
+					List<Integer> tagIds = change.getTagIds();
+
+					synchronized (this) {
+						if (deletedTags != null) {
+							deletedTags.addAll(tagIds);
+						}
+					}
+
+					removeTags(tagIds);
+				}
+				return;
+			}
+
+			synchronized (this) {
+				if (changedFiles != null) {
+					changedFiles.addAll(change.getFileIds());
+				}
+			}
+
+			updateFiles(change.getFileIds(),
+						change.getKind() == RepositoryChange.Kind.DELETED);
+
+		} catch (SQLException | DAOException e) {
+			// The index may have missed the change; reload it in full.
+			current = false;
+
+			try {
+				rebuild();
+			} catch (SQLException | DAOException e2) {
+				// The index stays marked as not current.
+			}
+		}
+	}
+
+
+	//************************************************************
+	// PRIVATE INSTANCE Methods
+	//************************************************************
+
+	/** Removes tags from the index and catalog. The index knows tags by
+	  their values, which are found in the catalog.
+	  @param tagIds the tag ids of the tags to remove
+	  */
+	private void removeTags(Collection<Integer> tagIds)
+	{
+		for (Integer tagId : tagIds) {
+			String tag = catalog.removeTagById(tagId);
+
+			if (tag != null) {
+				index.removeTag(tag);
+			}
+		}
+	}
+
+	/** Re-reads changed files into the index and catalog, removing those
+	  which are no longer stored.
+	  @param fileIds the ids of the changed files
+	  @param deleted true if the files are known to have been deleted
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	private void updateFiles(Collection<Integer> fileIds, boolean deleted)
+		throws SQLException
+	{
+		Set<Integer> removed = new HashSet<Integer>(fileIds);
+
+		// the changed files are read together, rather than one by one
+		if (!deleted) {
+			for (TaggedFile file : taggedFileDAO.readByIds(removed, true)) {
+				index.updateFile(file);
+				catalog.putFile(file);
+				removed.remove(file.getFileId());
+			}
+		}
+
+		for (int fileId : removed) {
+			index.removeFile(fileId);
+			catalog.removeFile(fileId);
+		}
+	}
+
+}
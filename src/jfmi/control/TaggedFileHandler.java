@@ -5,22 +5,30 @@ import java.awt.Desktop.Action;
 import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.Vector;
 
 import jfmi.app.EditedTaggedFile;
 import jfmi.app.FileTag;
 import jfmi.app.FileTagging;
 import jfmi.app.TaggedFile;
+import jfmi.dao.FileQuery;
 import jfmi.dao.TaggedFileDAO;
+import jfmi.dao.TaggedFileOrder;
 import jfmi.gui.GUIUtil;
 import jfmi.gui.JFMIFrame;
 import jfmi.gui.TaggedFileHandlerGUI;
 import jfmi.gui.TaggedFileEditDialog;
+import jfmi.repo.RepositoryChange;
+import jfmi.repo.RepositoryListener;
+import jfmi.repo.SQLiteRepository;
+import jfmi.repo.Transaction;
 
 
 /** A controller class for handling the logic of updating/adding/deleting which
@@ -34,6 +42,16 @@ public class TaggedFileHandler {
 
 	private TaggedFileDAO taggedFileDAO;
 
+	private BackgroundTask<?> fileListTask;
+	private FileQuery searchQuery;
+	private TaggedFileOrder allFilesOrder;
+	private boolean allFilesAscending;
+	private volatile TaggedFilePageSource allFilesSource;
+	private BackgroundTask<FileImporter.Summary> importTask;
+	private BackgroundTask<PathValidator.Result> validateTask;
+	private BackgroundTask<FingerprintIndexer.Result> fingerprintTask;
+	private BackgroundTask<FileRelocator.Result> relocateTask;
+
 
 	//************************************************************	
 	// PUBLIC INSTANCE Methods
@@ -48,71 +66,140 @@ public class TaggedFileHandler {
 	{
 		setJFMIApp(jfmiApp_);
 		taggedFileDAO = new TaggedFileDAO();
+		allFilesOrder = TaggedFileOrder.PATH;
+		allFilesAscending = true;
 		fileGUI = new TaggedFileHandlerGUI(jfmiApp.getJFMIGUI(), this);
+
+		SQLiteRepository.instance().addRepositoryListener(
+											new FileChangeListener());
 	}
 
-	/** Given an array of File objects, attempts to create TaggedFile objects
-	  and insert them into the repository.
-	  @param files an array of File to be newly created in the repository
+	/** Cancels the file import, path check, missing file search, search or
+	  file list refresh which is running, if any.
 	  */
-	public void addFilesToRepo(File[] files)
+	public void cancelBackgroundTasks()
 	{
-		TaggedFile newFile;
+		if (importTask != null) {
+			importTask.cancel();
+		}
 
-		if (files == null) {
-			return;
+		if (validateTask != null) {
+			validateTask.cancel();
 		}
 
-		for (File f : files) {
-			newFile = new TaggedFile();
-			newFile.setFile(f);
-				
-			addTaggedFileToRepo(newFile, true);
+		if (relocateTask != null) {
+			relocateTask.cancel();
 		}
 
+		cancelFileListTask();
 	}
 
-	/** Attempts to add a TaggedFile to the repository. If showErrors is
-	  true, any errors which occur are displayed to the user.
-	  @param file the TaggedFile to be added to the repository
-	  @param showErrors if true, the user receives error messages
-	  @return true if the file was added successfully
+	/** Cancels the search or file list refresh which is running, if any.
 	  */
-	public boolean addTaggedFileToRepo(TaggedFile file, boolean showErrors)
+	public void cancelFileListTask()
 	{
-		try {
-			boolean creationSuccess = taggedFileDAO.create(file);
+		if (fileListTask != null) {
+			fileListTask.cancel();
+		}
+	}
 
-			if (!creationSuccess && showErrors) {
-				GUIUtil.showErrorDialog(
-					"The following file could not be added: " 
-					+ file.getFilePath()
-				);
-			}
+	/** Begins an interaction with the user that allows them to add new files
+	  to the repository for tagging. If directories are selected, the user
+	  may choose which of the files under them to add, and the files are
+	  added in the background.
+	  */
+	public void beginAddFile()
+	{
+		File[] selectedFiles = fileGUI.displayFileChooser();
 
-			return creationSuccess;
+		if (selectedFiles == null) {
+			return;
+		}
 
-		} catch (SQLException e) {
-			if (showErrors) {
-				GUIUtil.showErrorDialog(
-					"An error occurred while adding the file: " 
-					+ file.getFilePath(), 
-					e.toString()
-				);
+		String[] filters = new String[2];
+
+		for (File f : selectedFiles) {
+			if (f.isDirectory()) {
+				filters = fileGUI.displayImportFilterPrompt();
+				break;
 			}
 		}
 
-		return false;
+		if (filters == null) {
+			return;
+		}
+
+		FileImporter importer;
+
+		try {
+			importer = new FileImporter(FileImporter.splitPatterns(filters[0]),
+										FileImporter.splitPatterns(filters[1]));
+		} catch (IllegalArgumentException e) {
+			GUIUtil.showErrorDialog("A file pattern is not valid.",
+									e.getMessage());
+			return;
+		}
+
+		beginImportFiles(importer, Arrays.asList(selectedFiles));
 	}
 
-	/** Begins an interaction with the user that allows them to add new files
-	  to the repository for tagging.
+	/** Adds the specified files, and the files under the specified
+	  directories, to the repository in the background. Progress is shown in
+	  the main window, and any files which could not be added are reported in
+	  a single message once the import finishes. Only one import runs at a
+	  time.
+	  @param importer the importer which filters and adds the files
+	  @param roots the files and directories to add
 	  */
-	public void beginAddFile()
+	public void beginImportFiles(final FileImporter importer,
+								 final List<File> roots)
 	{
-		File[] selectedFiles = fileGUI.displayFileChooser();
-		addFilesToRepo(selectedFiles);
-		updateDataAndGUI(true);
+		if (importTask != null) {
+			GUIUtil.showAlert("Files are already being added. Wait for them to"
+							  + " finish, or cancel them first.");
+			return;
+		}
+
+		importTask = jfmiApp.getTaskExecutor().submit(new ImportTask(importer,
+																	 roots));
+	}
+
+	/** Fingerprints, in the background, the contents of the stored files
+	  which do not have a fingerprint, so that they can be found if they are
+	  moved while the application is not watching them. Errors are not
+	  displayed; files which could not be fingerprinted are tried again the
+	  next time.
+	  */
+	public void beginIndexFingerprints()
+	{
+		if (fingerprintTask != null) {
+			return;
+		}
+
+		fingerprintTask = jfmiApp.getTaskExecutor().submit(
+											new FingerprintTask());
+	}
+
+	/** Begins an interaction with the user which searches the chosen
+	  directories, in the background, for files which are missing from their
+	  saved paths. Missing files are recognized by their content
+	  fingerprints, and their paths are updated to where they were found.
+	  */
+	public void beginRelocateFiles()
+	{
+		if (relocateTask != null) {
+			GUIUtil.showAlert("Missing files are already being searched for.");
+			return;
+		}
+
+		File[] roots = fileGUI.displayFileChooser();
+
+		if (roots == null) {
+			return;
+		}
+
+		relocateTask = jfmiApp.getTaskExecutor().submit(
+							new RelocateTask(Arrays.asList(roots)));
 	}
 
 	/** Begins an interaction with the user which adds a tagging to a 
@@ -145,13 +232,14 @@ public class TaggedFileHandler {
 		}
 
 		deleteFilesFromRepo(selectedFiles);
-		updateDataAndGUI(true);
 	}
 
-	/** Searches for files matching any of the specified criteria. Any of the
-	  reference parameters may be null.
-	  @param fileName return files with a name similar to this
-	  @param filePath return files with a path similar to this
+	/** Searches for files matching any of the specified criteria in the
+	  background, and displays them in the main list, best matches first.
+	  Any of the reference parameters may be null; if no criteria are
+	  given, all files are displayed.
+	  @param fileName return files with a name containing this
+	  @param filePath return files with a path containing this
 	  @param tags return files with any of these tags
 	  @param commentKeywords return files commented with any of these words
 	  @param showErrors if true, errors are displayed
@@ -164,38 +252,98 @@ public class TaggedFileHandler {
 			boolean showErrors
 	)
 	{
-		Set<TaggedFile> results = new TreeSet<TaggedFile>();	
-		Set<TaggedFile> partial;
+		List<FileQuery> criteria = new ArrayList<FileQuery>();
 
 		if (fileName != null) {
-			partial = searchFilesByPath(fileName, showErrors);
-			if (partial != null) {
-				results.addAll(partial);
-			}
+			criteria.add(FileQuery.nameContains(fileName));
 		}
 
 		if (filePath != null) {
-			partial = searchFilesByPath(filePath, showErrors);
-			if (partial != null) {
-				results.addAll(partial);
-			}
+			criteria.add(FileQuery.pathContains(filePath));
 		}
 
-		if (tags != null) {
-			partial = searchFilesByTags(tags, showErrors);
-			if (partial != null) {
-				results.addAll(partial);
+		if (tags != null && !tags.isEmpty()) {
+			List<String> values = new ArrayList<String>(tags.size());
+			for (FileTag tag : tags) {
+				values.add(tag.getTag());
 			}
+
+			criteria.add(FileQuery.taggedWithAny(values));
 		}
 
-		if (commentKeywords != null) {
-			partial = searchFilesByCommentKeywords(commentKeywords, showErrors);
-			if (partial != null) {
-				results.addAll(partial);
-			}
+		if (commentKeywords != null
+			&& TaggedFileDAO.toCommentMatchQuery(commentKeywords) != null) {
+			criteria.add(FileQuery.commentKeywords(commentKeywords));
+		}
+
+		if (criteria.isEmpty()) {
+			beginShowAllFiles(showErrors);
+			return;
+		}
+
+		runSearchTask(FileQuery.or(criteria), showErrors);
+	}
+
+	/** Runs the search whose results are displayed in the main list again,
+	  after files were added which may match it. Errors are not displayed.
+	  */
+	public void beginRefreshSearch()
+	{
+		if (searchQuery != null && !jfmiApp.getJFMIGUI().isShowingAllFiles()) {
+			runSearchTask(searchQuery, false);
+		}
+	}
+
+	/** Shows every file in the main list, in the order last chosen. Only
+	  the number of files is read before the list is shown; the files
+	  themselves are read a page at a time as they are scrolled into view.
+	  @param showErrors if true, errors are displayed
+	  */
+	public void beginShowAllFiles(boolean showErrors)
+	{
+		runFileListTask(new AllFilesTask(new TaggedFilePageSource(
+											allFilesOrder, allFilesAscending),
+										 false, showErrors));
+	}
+
+	/** Refreshes the main list of every file after files have changed,
+	  keeping the rows already shown until they are read again. Errors are
+	  not displayed.
+	  */
+	public void beginRefreshAllFiles()
+	{
+		runFileListTask(new AllFilesTask(new TaggedFilePageSource(
+											allFilesOrder, allFilesAscending),
+										 true, false));
+	}
+
+	/** Shows every file in the main list in a new order. The files are
+	  sorted by the repository as they are read.
+	  @param byName if true, the files are ordered by name; otherwise, by
+	  		path
+	  @param ascending true for ascending order
+	  */
+	public void beginSortAllFiles(boolean byName, boolean ascending)
+	{
+		allFilesOrder = byName ? TaggedFileOrder.NAME : TaggedFileOrder.PATH;
+		allFilesAscending = ascending;
+		beginShowAllFiles(true);
+	}
+
+	/** Checks, in the background, whether the stored paths of all files
+	  still exist, and flags the files which are missing. Only files in
+	  directories which changed since they were last checked are read from
+	  the file system.
+	  @param showErrors if true, errors are displayed
+	  */
+	public void beginValidatePaths(boolean showErrors)
+	{
+		if (validateTask != null) {
+			return;
 		}
 
-		updateDataAndGUI(true);
+		validateTask = jfmiApp.getTaskExecutor().submit(
+									new ValidateTask(showErrors));
 	}
 
 	/** Begins an interaction with the user which removes a tagging from an 
@@ -327,10 +475,9 @@ public class TaggedFileHandler {
 			} else {
 				EditedTaggedFile updated = new EditedTaggedFile(tf);
 
-				/* Redisplay the current file in the fileViewer and in
-				 the application's GUI */
+				/* Redisplay the current file in the fileViewer; the
+				 application's GUI is updated by the repository change */
 				fileGUI.getFileViewer().updateDisplayedFile(updated);
-				updateDataAndGUI(true);
 			}
 		}
 	}
@@ -397,27 +544,6 @@ public class TaggedFileHandler {
 		return false;
 	}
 
-	/** Returns an updated list of TaggedFiles from the repository.
-	  @param showError if true, and an error occurs, display a message
-	  @return a SortedSet<TaggedFile> of files, null if error occurs 
-	  */
-	public SortedSet<TaggedFile> readAllTaggedFiles(boolean showError)
-	{
-		try {
-			return taggedFileDAO.readAll();
-
-		} catch (SQLException e) {
-			if (showError) {
-				GUIUtil.showErrorDialog(
-					"Failed to refresh the list of files from the database.",
-					e.toString()
-				);
-			}
-		}
-
-		return null;
-	}
-
 	/** Reads a TaggedFile with the specified id from the repository.
 	  @param id the file id of the TaggedFile to read from the database
 	  @param showError if true, and an error occurs, display a message
@@ -446,74 +572,6 @@ public class TaggedFileHandler {
 		return null;
 	}
 
-	/** Searches for files which have a tagging comment with at least one of
-	  the specified keywords.
-	  @param words a set of keywords to filter comments by
-	  @param showErrors if true, errors are displayed
-	  @return a set of results, null if an error occurred
-	  */
-	public Set<TaggedFile> searchFilesByCommentKeywords(Set<String> words,
-														boolean showErrors)
-	{
-		try {
-			return taggedFileDAO.readByCommentKeywords(words);	
-
-		} catch (SQLException e) {
-			if (showErrors) {
-				StringBuilder error = new StringBuilder("Failed to retrieve");
-				error.append(" search results from the database.");
-				GUIUtil.showErrorDialog(error.toString(), e.toString());
-			}
-		}
-
-		return null;
-	}
-
-	/** Searches for files which contain the specified path as a substring of
-	 their path. 
-	  @param path a path substring to filter paths by
-	  @param showErrors if true, errors are displayed
-	  @return a set of results, null if an error occurred
-	  */
-	public Set<TaggedFile> searchFilesByPath(String path, boolean showErrors)
-	{
-		try {
-			return taggedFileDAO.readByPathLike(path);	
-
-		} catch (SQLException e) {
-			if (showErrors) {
-				StringBuilder error = new StringBuilder("Failed to retrieve");
-				error.append(" search results from the database.");
-				GUIUtil.showErrorDialog(error.toString(), e.toString());
-			}
-		}
-
-		return null;
-	}
-
-	/** Searches for files which are tagged with at least one of the specified 
-	  tags.
-	  @param tags the set of tags to be used as criteria
-	  @param showErrors if true, errors will be displayed
-	  @return a set of TaggedFile results, null if an error occurs
-	  */
-	public Set<TaggedFile> searchFilesByTags(Set<FileTag> tags, 
-											boolean showErrors)
-	{
-		try {
-			return taggedFileDAO.readByTags(tags);	
-
-		} catch (SQLException e) {
-			if (showErrors) {
-				StringBuilder error = new StringBuilder("Failed to retrieve");
-				error.append(" search results from the database.");
-				GUIUtil.showErrorDialog(error.toString(), e.toString());
-			}
-		}
-
-		return null;
-	}
-
 	/** Sets this instance's associated JFMIApp.
 	  @param jfmiApp_ the JFMIApp to associate this handler with
 	  @throws IllegalArgumentException if jfmiApp_ is null
@@ -534,14 +592,25 @@ public class TaggedFileHandler {
 	  */
 	public boolean updateDataAndGUI(boolean showErrors)
 	{
-		SortedSet<TaggedFile> files = readAllTaggedFiles(true);
+		TaggedFilePageSource source;
+		source = new TaggedFilePageSource(allFilesOrder, allFilesAscending);
+
+		try {
+			jfmiApp.getJFMIGUI().setTaggedFileJListSource(source,
+												source.countFiles(), false);
+			allFilesSource = source;
+			return true;
 
-		if (files != null) {
-			Vector<TaggedFile> fileVector = new Vector<TaggedFile>(files);
-			jfmiApp.getJFMIGUI().setTaggedFileJListData(fileVector);
+		} catch (SQLException e) {
+			if (showErrors) {
+				GUIUtil.showErrorDialog(
+					"Failed to refresh the list of files from the database.",
+					e.toString()
+				);
+			}
 		}
 
-		return files != null;
+		return false;
 	}
 
 	/** Updates a TaggedFile's file information (id, path) in the repository.
@@ -610,7 +679,8 @@ public class TaggedFileHandler {
 	}
 
 	/** Updates the specified EditedTaggedFile's file information (id, path) 
-	  as well as it's file taggings in the repository.
+	  as well as it's file taggings in the repository. All of the changes
+	  are made in one transaction; if any of them fails, none are saved.
 	  @param updateMe the EditedTaggedFile to update
 	  @param showErrors if true, errors are displayed to the user
 	  @return true if the update was performed successfully
@@ -618,13 +688,547 @@ public class TaggedFileHandler {
 	public boolean updateTaggedFileInRepo(EditedTaggedFile updateMe, 
 											boolean showErrors)
 	{
-		boolean updatedInfo = updateFileInfoInRepo(
-									updateMe.getEditedFile(), 
-									showErrors
-								);
-		boolean updatedTaggings = updateFileTaggingsInRepo(updateMe, showErrors);
+		try {
+			Transaction tx = SQLiteRepository.instance().beginTransaction();
+
+			try {
+				boolean updatedInfo = updateFileInfoInRepo(
+											updateMe.getEditedFile(), 
+											showErrors
+										);
+				boolean updatedTaggings = updatedInfo
+							&& updateFileTaggingsInRepo(updateMe, showErrors);
+
+				if (updatedInfo && updatedTaggings) {
+					tx.commit();
+					return true;
+				}
+
+			} finally {
+				tx.close();
+			}
 
-		return updatedInfo && updatedTaggings;
+		} catch (SQLException e) {
+			if (showErrors) {
+				GUIUtil.showErrorDialog(
+					"An error occurred with the repository while saving the"
+					+ " file. No changes were saved.",
+					e.toString()
+				);
+			}
+		}
+
+		return false;
+	}
+
+
+	//************************************************************	
+	// PRIVATE INSTANCE Methods
+	//************************************************************	
+
+	/** Searches for files matching a query in the background, and displays
+	  them in the main list, best matches first. A query with only tag
+	  criteria is matched in the tag index, once it is loaded, and the
+	  matching files are built from the file catalog, without reading the
+	  repository.
+	  @param query the query to select files by
+	  @param showErrors if true, errors are displayed
+	  */
+	private void runSearchTask(final FileQuery query, boolean showErrors)
+	{
+		searchQuery = query;
+
+		runFileListTask(new FileListTask<Vector<TaggedFile>>(showErrors,
+								"Failed to retrieve search results from the"
+								+ " database.") {
+			protected Vector<TaggedFile> doInBackground() throws SQLException
+			{
+				List<Integer> ranked = null;
+				if (jfmiApp.isTagIndexCurrent()) {
+					ranked = query.matchIn(jfmiApp.getTagIndex());
+				}
+
+				if (ranked == null) {
+					return new Vector<TaggedFile>(
+										taggedFileDAO.readByQuery(query));
+				}
+
+				// files deleted since they were matched are left out
+				return new Vector<TaggedFile>(
+								jfmiApp.getCatalog().getFiles(ranked));
+			}
+
+			protected void display(Vector<TaggedFile> files)
+			{
+				jfmiApp.getJFMIGUI().setTaggedFileJListData(files, false);
+			}
+		});
+	}
+
+	/** Runs a task which replaces the files in the main list, cancelling the
+	  one already running, so that a stale result never replaces a newer one.
+	  @param task the task to run
+	  */
+	private void runFileListTask(FileListTask<?> task)
+	{
+		cancelFileListTask();
+		fileListTask = jfmiApp.getTaskExecutor().submit(task);
+		jfmiApp.getJFMIGUI().setTaskStatus("Reading files...");
+	}
+
+
+	//************************************************************	
+	// PRIVATE CLASSES
+	//************************************************************	
+
+	/** A FileChangeListener applies committed changes to files to the main
+	  list. Changed files are read together, on the thread which made the
+	  change, and the list is updated on the event dispatch thread, in the
+	  order the changes were made.
+	  */
+	private final class FileChangeListener implements RepositoryListener {
+
+		public void repositoryChanged(RepositoryChange change)
+		{
+			if (change.getEntity() != RepositoryChange.Entity.FILE) {
+				return;
+			}
+
+			final RepositoryChange.Kind kind = change.getKind();
+			final List<Integer> ids = change.getFileIds();
+			final List<TaggedFile> files = new ArrayList<TaggedFile>();
+			boolean readFiles = true;
+
+			// pages of every file are not read until the change is applied
+			final TaggedFilePageSource source = allFilesSource;
+			if (source != null) {
+				source.changeBegun();
+			}
+
+			if (kind == RepositoryChange.Kind.INSERTED
+				|| kind == RepositoryChange.Kind.UPDATED) {
+				try {
+					files.addAll(taggedFileDAO.readByIds(ids, true));
+				} catch (SQLException e) {
+					readFiles = false;
+				}
+			}
+
+			final boolean read = readFiles;
+			GUIUtil.runOnEventDispatchThread(new Runnable() {
+				public void run()
+				{
+					try {
+						applyFileChange(kind, ids, files, source, read);
+					} finally {
+						if (source != null) {
+							source.changeEnded();
+						}
+					}
+				}
+			});
+		}
+
+		/** Applies a change to the files to the main list. Must be called
+		  on the event dispatch thread.
+		  @param kind the kind of change
+		  @param ids the ids of the changed files
+		  @param files the added or updated files, as they are now
+		  @param source the source of every file when the change was
+		  		published, or null if there was none
+		  @param read false if the files could not be read
+		  */
+		private void applyFileChange(RepositoryChange.Kind kind,
+									 List<Integer> ids,
+									 List<TaggedFile> files,
+									 TaggedFilePageSource source,
+									 boolean read)
+		{
+			JFMIFrame gui = jfmiApp.getJFMIGUI();
+
+			if (gui.isShowingAllFiles()) {
+				/* The list of every file is read again only if the change
+				   can not be applied to the source being shown. */
+				if (kind == RepositoryChange.Kind.RESET || !read
+					|| source == null || source != allFilesSource
+					|| fileListTask instanceof AllFilesTask) {
+					beginRefreshAllFiles();
+					return;
+				}
+
+				switch (kind) {
+				case INSERTED:
+					gui.applyFileChanges(Collections.<Integer>emptyList(),
+										 files);
+					break;
+				case UPDATED:
+					gui.applyFileChanges(ids, files);
+					break;
+				default:
+					gui.applyFileChanges(ids,
+										 Collections.<TaggedFile>emptyList());
+				}
+				return;
+			}
+
+			switch (kind) {
+			case INSERTED:
+				// search results gain only the new files which match it
+				beginRefreshSearch();
+				break;
+			case UPDATED:
+				// the files are shown as they were until next read
+				if (read) {
+					gui.updateTaggedFiles(files);
+				}
+				break;
+			case DELETED:
+				gui.removeTaggedFiles(ids);
+				break;
+			default:
+				beginShowAllFiles(true);
+			}
+		}
+	}
+
+	/** An ImportTask runs a FileImporter in the background, showing its
+	  progress in the main window.
+	  */
+	private final class ImportTask
+		extends BackgroundTask<FileImporter.Summary>
+		implements FileImporter.Monitor {
+
+		private final FileImporter importer;
+		private final List<File> roots;
+
+		ImportTask(FileImporter importer_, List<File> roots_)
+		{
+			importer = importer_;
+			roots = roots_;
+		}
+
+		public void filesImported(int found, int added)
+		{
+			setProgress(added, found);
+		}
+
+		protected FileImporter.Summary doInBackground() throws Exception
+		{
+			return importer.importFiles(roots, this);
+		}
+
+		protected void cancelled()
+		{
+			finished();
+		}
+
+		protected void failed(Throwable cause)
+		{
+			finished();
+			GUIUtil.showErrorDialog("An error occurred while adding the files.",
+									cause.toString());
+		}
+
+		protected void progressed(int done, int total)
+		{
+			jfmiApp.getJFMIGUI().setTaskStatus("Added " + done + " of "
+											   + total + " files found...");
+		}
+
+		protected void succeeded(FileImporter.Summary summary)
+		{
+			finished();
+			beginIndexFingerprints();
+
+			if (summary.getErrorCount() == 0) {
+				return;
+			}
+
+			StringBuilder details = new StringBuilder("");
+
+			for (String error : summary.getErrors()) {
+				details.append(error).append("\n");
+			}
+
+			int unlisted = summary.getErrorCount() - summary.getErrors().size();
+			if (unlisted > 0) {
+				details.append("... and ").append(unlisted).append(" more.\n");
+			}
+
+			GUIUtil.showErrorDialog(
+				"Added " + summary.getAdded() + " of " + summary.getFound()
+				+ " files. " + summary.getErrorCount() + " files or directories"
+				+ " could not be added.",
+				details.toString()
+			);
+		}
+
+		private void finished()
+		{
+			importTask = null;
+			jfmiApp.getJFMIGUI().setTaskStatus(null);
+		}
+	}
+
+	/** A ValidateTask runs a PathValidator in the background, showing its
+	  progress in the main window.
+	  */
+	private final class ValidateTask extends BackgroundTask<PathValidator.Result>
+		implements PathValidator.Monitor {
+
+		private final boolean showErrors;
+
+		ValidateTask(boolean showErrors_)
+		{
+			showErrors = showErrors_;
+		}
+
+		public void pathsValidated(int done)
+		{
+			setProgress(done, -1);
+		}
+
+		protected PathValidator.Result doInBackground() throws Exception
+		{
+			return new PathValidator().validate(this);
+		}
+
+		protected void cancelled()
+		{
+			finished();
+		}
+
+		protected void failed(Throwable cause)
+		{
+			finished();
+
+			if (showErrors) {
+				GUIUtil.showErrorDialog(
+					"An error occurred while checking the file paths.",
+					cause.toString());
+			}
+		}
+
+		protected void progressed(int done, int total)
+		{
+			jfmiApp.getJFMIGUI().setTaskStatus("Checked " + done
+											   + " file paths...");
+		}
+
+		protected void succeeded(PathValidator.Result result)
+		{
+			finished();
+
+			GUIUtil.showAlert("Checked " + result.getFileCount() + " files. "
+							  + result.getMissingCount() + " are missing from"
+							  + " their saved paths.");
+		}
+
+		private void finished()
+		{
+			validateTask = null;
+			jfmiApp.getJFMIGUI().setTaskStatus(null);
+		}
+	}
+
+	/** A FingerprintTask runs a FingerprintIndexer in the background. It
+	  runs quietly, since the user did not ask for it.
+	  */
+	private final class FingerprintTask
+		extends BackgroundTask<FingerprintIndexer.Result>
+		implements FingerprintIndexer.Monitor {
+
+		public void filesFingerprinted(int done)
+		{
+		}
+
+		protected FingerprintIndexer.Result doInBackground() throws Exception
+		{
+			return new FingerprintIndexer().index(this);
+		}
+
+		protected void cancelled()
+		{
+			fingerprintTask = null;
+		}
+
+		protected void failed(Throwable cause)
+		{
+			// files left unfingerprinted are tried again next time
+			fingerprintTask = null;
+		}
+
+		protected void succeeded(FingerprintIndexer.Result result)
+		{
+			fingerprintTask = null;
+		}
+	}
+
+	/** A RelocateTask runs a FileRelocator in the background, showing its
+	  progress in the main window.
+	  */
+	private final class RelocateTask extends BackgroundTask<FileRelocator.Result>
+		implements FileRelocator.Monitor {
+
+		private final List<File> roots;
+
+		RelocateTask(List<File> roots_)
+		{
+			roots = roots_;
+		}
+
+		public void filesSearched(int searched, int relocated)
+		{
+			setProgress(relocated, searched);
+		}
+
+		protected FileRelocator.Result doInBackground() throws Exception
+		{
+			return new FileRelocator().relocate(roots, this);
+		}
+
+		protected void cancelled()
+		{
+			finished();
+		}
+
+		protected void failed(Throwable cause)
+		{
+			finished();
+			GUIUtil.showErrorDialog(
+				"An error occurred while searching for missing files.",
+				cause.toString());
+		}
+
+		protected void progressed(int done, int total)
+		{
+			jfmiApp.getJFMIGUI().setTaskStatus("Found " + done + " missing"
+											   + " files in " + total
+											   + " files searched...");
+		}
+
+		protected void succeeded(FileRelocator.Result result)
+		{
+			finished();
+
+			String message = "Found " + result.getRelocatedCount()
+						   + " missing files in " + result.getSearchedCount()
+						   + " files searched.";
+
+			if (result.getAmbiguousCount() > 0) {
+				message += " " + result.getAmbiguousCount() + " files matched"
+						 + " more than one missing file, and were not used.";
+			}
+
+			GUIUtil.showAlert(message);
+		}
+
+		private void finished()
+		{
+			relocateTask = null;
+			jfmiApp.getJFMIGUI().setTaskStatus(null);
+		}
+	}
+
+	/** An AllFilesTask counts the stored files in the background, and then
+	  shows them in the main list, read a page at a time from a
+	  TaggedFilePageSource.
+	  */
+	private final class AllFilesTask extends FileListTask<Integer> {
+
+		private final TaggedFilePageSource source;
+		private final boolean refresh;
+
+		/** Constructs an AllFilesTask.
+		  @param source_ the source of the files
+		  @param refresh_ true if the source replaces one with the same
+		  		order whose files have changed
+		  @param showErrors_ if true, a failure is displayed
+		  */
+		AllFilesTask(TaggedFilePageSource source_, boolean refresh_,
+					 boolean showErrors_)
+		{
+			super(showErrors_, "Failed to refresh the list of files from the"
+							   + " database.");
+			source = source_;
+			refresh = refresh_;
+		}
+
+		protected Integer doInBackground() throws SQLException
+		{
+			return source.countFiles();
+		}
+
+		protected void display(Integer count)
+		{
+			jfmiApp.getJFMIGUI().setTaggedFileJListSource(source, count,
+														  refresh);
+			allFilesSource = source;
+		}
+	}
+
+	/** A FileListTask reads files in the background and displays them in the
+	  main list.
+	  */
+	private abstract class FileListTask<T> extends BackgroundTask<T> {
+
+		private final boolean showErrors;
+		private final String errorMessage;
+
+		/** Constructs a FileListTask.
+		  @param showErrors_ if true, a failure is displayed
+		  @param errorMessage_ the message displayed on failure
+		  */
+		FileListTask(boolean showErrors_, String errorMessage_)
+		{
+			showErrors = showErrors_;
+			errorMessage = errorMessage_;
+		}
+
+		/** Displays the files which were read in the main list.
+		  @param result the files read
+		  */
+		protected abstract void display(T result);
+
+		protected void cancelled()
+		{
+			finished();
+		}
+
+		protected void failed(Throwable cause)
+		{
+			finished();
+
+			if (showErrors) {
+				GUIUtil.showErrorDialog(errorMessage, cause.toString());
+			}
+		}
+
+		protected void progressed(int done, int total)
+		{
+			if (fileListTask == this) {
+				jfmiApp.getJFMIGUI().setTaskStatus("Read " + done + " files...");
+			}
+		}
+
+		protected void succeeded(T result)
+		{
+			// a task which completed as it was replaced must not be shown
+			if (fileListTask == this) {
+				finished();
+				display(result);
+			}
+		}
+
+		/** Clears the task status, unless a newer task has replaced this one.
+		  */
+		private void finished()
+		{
+			if (fileListTask == this) {
+				fileListTask = null;
+				jfmiApp.getJFMIGUI().setTaskStatus(null);
+			}
+		}
 	}
 
 }
@@ -0,0 +1,175 @@
+package jfmi.control;
+
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jfmi.app.TaggedFile;
+import jfmi.dao.Page;
+import jfmi.dao.PageToken;
+import jfmi.dao.TaggedFileDAO;
+import jfmi.dao.TaggedFileOrder;
+import jfmi.gui.PagedListModel;
+
+
+/** A TaggedFilePageSource reads every stored file, a page at a time, in one
+  of the orderings of TaggedFileOrder. The token which ends each page read
+  is remembered, so a page is read by seeking to the nearest page boundary
+  before it and skipping only the records between; scrolling through the
+  list reads each page by seeking alone.
+
+  When files change, the changes are applied to the list's model, and the
+  tokens of the pages which moved are forgotten. changeBegun() is called
+  when a change is committed, before the model knows of it, and
+  changeEnded() once the model has applied it; a page read while a change
+  is pending, or while one begins, is not used, since its rows could be
+  from either side of the change.
+  */
+public class TaggedFilePageSource
+	implements PagedListModel.OrderedPageSource<TaggedFile> {
+
+	// PRIVATE INSTANCE Fields
+	private final TaggedFileDAO taggedFileDAO;
+	private final TaggedFileOrder order;
+	private final boolean ascending;
+	private final Comparator<TaggedFile> comparator;
+	private final TreeMap<Integer, PageToken> pageEnds;
+	private final AtomicInteger pendingChanges;
+	private final AtomicInteger changes;
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs a TaggedFilePageSource.
+	  @param order_ the ordering of the files
+	  @param ascending_ true for ascending order
+	  @throws NullPointerException if order_ is null
+	  */
+	public TaggedFilePageSource(TaggedFileOrder order_, boolean ascending_)
+	{
+		if (order_ == null) {
+			throw new NullPointerException("order_ cannot be null");
+		}
+
+		taggedFileDAO = new TaggedFileDAO();
+		order = order_;
+		ascending = ascending_;
+		comparator = order.getComparator(ascending);
+		pageEnds = new TreeMap<Integer, PageToken>();
+		pendingChanges = new AtomicInteger();
+		changes = new AtomicInteger();
+	}
+
+	/** Counts the files in the repository.
+	  @return the number of rows the source has
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public int countFiles() throws SQLException
+	{
+		return taggedFileDAO.countAll();
+	}
+
+	/** Records that files changed, and that pages read from now on are not
+	  to be used until the change has been applied to the list's model.
+	  */
+	public void changeBegun()
+	{
+		pendingChanges.incrementAndGet();
+		changes.incrementAndGet();
+	}
+
+	/** Records that a change which had begun has been applied to the list's
+	  model, or is no longer to be applied.
+	  */
+	public void changeEnded()
+	{
+		pendingChanges.decrementAndGet();
+	}
+
+	/** @return the comparator which orders the files as they are read */
+	public Comparator<TaggedFile> getComparator()
+	{
+		return comparator;
+	}
+
+	/** Returns the key of a file, its id.
+	  @param row the file
+	  @return the file's id
+	  */
+	public Object getKey(TaggedFile row)
+	{
+		return row.getFileId();
+	}
+
+	/** Forgets the tokens which end a page and the pages after it, since
+	  those pages now start at different files.
+	  @param page the index of the first page whose files moved
+	  */
+	public void pagesMoved(int page)
+	{
+		synchronized (pageEnds) {
+			pageEnds.tailMap(page).clear();
+		}
+	}
+
+	/** @return the ordering of the files */
+	public TaggedFileOrder getOrder()
+	{
+		return order;
+	}
+
+	/** @return true if the files are in ascending order */
+	public boolean isAscending()
+	{
+		return ascending;
+	}
+
+	/** Reads one page of files.
+	  @param page the index of the page, from 0
+	  @param pageSize the number of files on a full page
+	  @return the files of the page, or null if files changed while it was
+	  		read, or a change has not yet been applied to the list's model
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public List<TaggedFile> readPage(int page, int pageSize)
+		throws SQLException
+	{
+		int seen = changes.get();
+		if (pendingChanges.get() > 0) {
+			return null;
+		}
+
+		PageToken after = null;
+		int skip = page * pageSize;
+
+		synchronized (pageEnds) {
+			Map.Entry<Integer, PageToken> before = pageEnds.floorEntry(page - 1);
+
+			if (before != null) {
+				after = before.getValue();
+				skip = (page - before.getKey() - 1) * pageSize;
+			}
+		}
+
+		Page<TaggedFile> read = taggedFileDAO.readPage(order, ascending, after,
+													   skip, pageSize);
+
+		synchronized (pageEnds) {
+			if (changes.get() != seen) {
+				return null;
+			}
+
+			if (read.getNextToken() != null) {
+				pageEnds.put(page, read.getNextToken());
+			}
+		}
+
+		return read.getItems();
+	}
+
+}
@@ -0,0 +1,84 @@
+package jfmi.control;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/** A TaskExecutor runs BackgroundTasks on a fixed pool of daemon threads, so
+  that repository work does not block the Swing event dispatch thread.
+  */
+public class TaskExecutor {
+
+	// PUBLIC CLASS Fields
+	public static final int DEFAULT_THREAD_COUNT = 2;
+
+	// PRIVATE INSTANCE Fields
+	private final ExecutorService executor;
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs a TaskExecutor with DEFAULT_THREAD_COUNT threads.
+	  */
+	public TaskExecutor()
+	{
+		this(DEFAULT_THREAD_COUNT);
+	}
+
+	/** Constructs a TaskExecutor with the specified number of threads.
+	  @param threadCount the number of tasks which may run at once
+	  @throws IllegalArgumentException if threadCount is less than 1
+	  */
+	public TaskExecutor(int threadCount)
+	{
+		if (threadCount < 1) {
+			throw new IllegalArgumentException("threadCount must be positive");
+		}
+
+		final AtomicInteger threadNumber = new AtomicInteger();
+
+		executor = Executors.newFixedThreadPool(threadCount,
+			new ThreadFactory() {
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "jfmi-task-"
+										  + threadNumber.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+	}
+
+	/** Stops accepting tasks, and cancels the tasks which have not finished.
+	  @param timeoutMillis how long to wait for running tasks to stop
+	  @return true if every task stopped within the timeout
+	  @throws InterruptedException if interrupted while waiting
+	  */
+	public boolean shutdown(long timeoutMillis) throws InterruptedException
+	{
+		for (Runnable queued : executor.shutdownNow()) {
+			((Future<?>)queued).cancel(false);
+		}
+
+		return executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/** Submits a task to be run in the background.
+	  @param task the task to run; it must not have been submitted before
+	  @return the task
+	  @throws java.util.concurrent.RejectedExecutionException if the
+	  		executor has been shut down
+	  */
+	public <T> BackgroundTask<T> submit(BackgroundTask<T> task)
+	{
+		executor.execute(task.getRunnable());
+		return task;
+	}
+
+}
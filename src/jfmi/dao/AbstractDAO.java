@@ -1,12 +1,33 @@
 package jfmi.dao;
 
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
 
+import jfmi.repo.RepositoryChange;
+import jfmi.repo.SQLiteRepository;
+
 /** The AbstractDAO defines the base services which should be provided by
   all data access objects.
   */
 public abstract class AbstractDAO<T, U> {
 
+	/** The number of records written per batch by createAll(), by default. */
+	public static final int DEFAULT_BATCH_SIZE = 500;
+
+	/** The number of rows a cursor asks the storage to fetch at a time, by
+	  default. */
+	public static final int DEFAULT_FETCH_SIZE = 256;
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
 	/** Stores the specified T instance. 
 	  @param createMe the new T to store
 	  @return true if a new storage record was created successfully
@@ -14,6 +35,38 @@ public abstract class AbstractDAO<T, U> {
 	  */
 	public abstract boolean create(T createMe) throws Exception;
 
+	/** Stores each of the specified T instances. Records are written in
+	  batches of getBatchSize() records, each batch in a single transaction.
+	  An instance which can not be stored does not prevent the others from
+	  being stored; it is reported in the returned result instead.
+	  @param createUs the new T instances to store
+	  @return the number of records created, and the instances which failed
+	  @throws Exception if an error occurs which is not specific to one record
+	  */
+	public abstract BatchResult<T> createAll(Collection<T> createUs)
+		throws Exception;
+
+	/** Retrieves the number of records written per batch by createAll().
+	  @return the batch size
+	  */
+	public int getBatchSize()
+	{
+		return batchSize;
+	}
+
+	/** Sets the number of records written per batch by createAll().
+	  @param size the new batch size, at least 1
+	  @throws IllegalArgumentException if size is less than 1
+	  */
+	public void setBatchSize(int size)
+	{
+		if (size < 1) {
+			throw new IllegalArgumentException("size must be at least 1");
+		}
+
+		batchSize = size;
+	}
+
 	/** Reads the stored information of the T instance with the specified id.
 	  @param id the id of the target instance
 	  @return a new T instance if the id was valid, else null
@@ -27,6 +80,28 @@ public abstract class AbstractDAO<T, U> {
 	  */
 	public abstract SortedSet<T> readAll() throws Exception;
 
+	/** Opens a cursor over all storage records of type T, using the default
+	  fetch size. Records are read one at a time as the cursor advances, so
+	  the full set of records is never held in memory at once.
+	  @return a cursor over all records, which the caller must close if it
+	  		does not read every record
+	  @throws Exception if an error occurs
+	  */
+	public RecordCursor<T> openCursor() throws Exception
+	{
+		return openCursor(DEFAULT_FETCH_SIZE);
+	}
+
+	/** Opens a cursor over all storage records of type T. Records are read
+	  one at a time as the cursor advances, so the full set of records is
+	  never held in memory at once.
+	  @param fetchSize the number of rows to fetch from storage at a time
+	  @return a cursor over all records, which the caller must close if it
+	  		does not read every record
+	  @throws Exception if an error occurs
+	  */
+	public abstract RecordCursor<T> openCursor(int fetchSize) throws Exception;
+
 	/** Updates the storage record with specified id to match the information
 	  contained in the specified T instance.
 	  @param updateMe contains the new information to be used as the update
@@ -48,5 +123,74 @@ public abstract class AbstractDAO<T, U> {
 	  */
 	public abstract void deleteAll() throws Exception;
 
+	/** Publishes a change to the repository's listeners, unless it has no
+	  ids; see SQLiteRepository.publishChange().
+	  @param entity the kind of record changed
+	  @param kind the kind of change
+	  @param ids the ids of the changed records
+	  */
+	protected static void publishChange(RepositoryChange.Entity entity,
+										RepositoryChange.Kind kind,
+										Collection<? extends Object> ids)
+	{
+		if (kind == RepositoryChange.Kind.RESET || !ids.isEmpty()) {
+			SQLiteRepository.instance().publishChange(
+								new RepositoryChange(entity, kind, ids));
+		}
+	}
+
+	/** Reads the rowid of the last row inserted by a connection.
+	  @param conn the connection which inserted the row
+	  @return the rowid of the row, which is its INTEGER PRIMARY KEY
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	protected static int readLastInsertId(Connection conn) throws SQLException
+	{
+		Statement stmt = conn.createStatement();
+
+		try {
+			ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()");
+
+			try {
+				rs.next();
+				return rs.getInt(1);
+
+			} finally {
+				SQLiteRepository.closeQuietly(rs);
+			}
+
+		} finally {
+			SQLiteRepository.closeQuietly(stmt);
+		}
+	}
+
+	/** Retrieves the items of a createAll() call which were stored.
+	  @param attempted the items passed to createAll()
+	  @param result the result of createAll()
+	  @return the attempted items which are not among the result's failures
+	  */
+	protected static <T> List<T> getCreated(Collection<T> attempted,
+											BatchResult<T> result)
+	{
+		if (attempted == null) {
+			return new ArrayList<T>();
+		}
+
+		Map<T, Boolean> failed = new IdentityHashMap<T, Boolean>();
+
+		for (BatchResult.Failure<T> f : result.getFailures()) {
+			failed.put(f.getItem(), Boolean.TRUE);
+		}
+
+		List<T> created = new ArrayList<T>(attempted.size());
+
+		for (T item : attempted) {
+			if (!failed.containsKey(item)) {
+				created.add(item);
+			}
+		}
+
+		return created;
+	}
 
 }
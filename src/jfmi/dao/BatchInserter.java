@@ -0,0 +1,274 @@
+package jfmi.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import jfmi.repo.SQLiteRepository;
+
+
+/** A BatchInserter writes a collection of records with a single prepared
+  INSERT statement, using JDBC batches. Items are written in chunks; each
+  chunk is committed as one transaction. If a chunk's batch fails, the chunk
+  is rolled back and retried row by row so that the offending rows can be
+  reported while the rest of the chunk is still written.
+
+  If the connection is already in a transaction when the insert starts,
+  chunks are not committed; the caller remains in control of the transaction.
+
+  An inserter given a KeySetter reports the rowid of each item it inserts,
+  so that the caller need not read the inserted records back.
+  */
+final class BatchInserter<T> {
+
+	// PRIVATE CLASS Fields
+	private static final String SAVEPOINT = "jfmi_batch_chunk";
+
+	// PRIVATE INSTANCE Fields
+	private final String insertSQL;
+	private final RowBinder<T> binder;
+	private final KeySetter<T> keySetter;
+
+
+	//************************************************************
+	// PACKAGE INTERFACES
+	//************************************************************
+
+	/** Binds the fields of one item to the parameters of an INSERT. */
+	interface RowBinder<T> {
+
+		/** Sets the statement's parameters from the specified item.
+		  @param ps the statement whose parameters are set
+		  @param item the item being inserted
+		  @throws SQLException if a parameter can not be set
+		  */
+		void bind(PreparedStatement ps, T item) throws SQLException;
+	}
+
+	/** Receives the rowid of each item which is inserted. */
+	interface KeySetter<T> {
+
+		/** Sets the id of an item from the rowid of its inserted record.
+		  @param item the item which was inserted
+		  @param rowId the rowid of the item's record
+		  */
+		void setKey(T item, int rowId);
+	}
+
+
+	//************************************************************
+	// PACKAGE INSTANCE Methods
+	//************************************************************
+
+	/** Constructs a BatchInserter for the specified statement.
+	  @param insertSQL_ the parameterized INSERT statement
+	  @param binder_ sets the statement parameters for each item
+	  */
+	BatchInserter(String insertSQL_, RowBinder<T> binder_)
+	{
+		this(insertSQL_, binder_, null);
+	}
+
+	/** Constructs a BatchInserter which reports the rowid of each item it
+	  inserts. The statement must insert exactly one row per item.
+	  @param insertSQL_ the parameterized INSERT statement
+	  @param binder_ sets the statement parameters for each item
+	  @param keySetter_ receives the rowid of each inserted item, or null
+	  */
+	BatchInserter(String insertSQL_, RowBinder<T> binder_,
+				  KeySetter<T> keySetter_)
+	{
+		insertSQL = insertSQL_;
+		binder = binder_;
+		keySetter = keySetter_;
+	}
+
+	/** Inserts the specified items.
+	  @param items the items to insert
+	  @param chunkSize the maximum number of items per batch and transaction
+	  @return the number of items written, and the items which failed
+	  @throws SQLException if a problem occurs that is not attributable to
+	  		a single item, such as a failed commit
+	  */
+	BatchResult<T> insertAll(Collection<T> items, int chunkSize)
+		throws SQLException
+	{
+		BatchResult<T> result = new BatchResult<T>();
+
+		if (items == null || items.isEmpty()) {
+			return result;
+		}
+
+		Connection conn = SQLiteRepository.instance().getConnection();
+
+		try {
+			boolean ownTransaction = conn.getAutoCommit();
+
+			if (ownTransaction) {
+				conn.setAutoCommit(false);
+			}
+
+			try {
+				List<T> chunk = new ArrayList<T>(chunkSize);
+
+				for (T item : items) {
+					chunk.add(item);
+
+					if (chunk.size() == chunkSize) {
+						result.addAll(insertChunk(conn, chunk));
+						if (ownTransaction) {
+							conn.commit();
+						}
+						chunk.clear();
+					}
+				}
+
+				if (!chunk.isEmpty()) {
+					result.addAll(insertChunk(conn, chunk));
+					if (ownTransaction) {
+						conn.commit();
+					}
+				}
+
+			} finally {
+				if (ownTransaction) {
+					try {
+						conn.rollback();	// no-op unless a commit failed
+					} finally {
+						conn.setAutoCommit(true);
+					}
+				}
+			}
+
+		} finally {
+			SQLiteRepository.closeQuietly(conn);
+		}
+
+		return result;
+	}
+
+
+	//************************************************************
+	// PRIVATE INSTANCE Methods
+	//************************************************************
+
+	/** Inserts one chunk of items inside a savepoint.
+	  @param conn the connection to insert with
+	  @param chunk the items to insert
+	  @return the result of inserting the chunk
+	  @throws SQLException if the savepoint can not be managed
+	  */
+	private BatchResult<T> insertChunk(Connection conn, List<T> chunk)
+		throws SQLException
+	{
+		BatchResult<T> result = new BatchResult<T>();
+
+		execute(conn, "SAVEPOINT " + SAVEPOINT);
+
+		PreparedStatement ps = conn.prepareStatement(insertSQL);
+
+		try {
+			for (T item : chunk) {
+				binder.bind(ps, item);
+				ps.addBatch();
+			}
+
+			ps.executeBatch();
+			result.addSuccesses(chunk.size());
+
+			if (keySetter != null) {
+				/* The connection is the only writer, so the chunk's rows
+				   were given consecutive rowids, ending with the last one
+				   inserted. */
+				int first = AbstractDAO.readLastInsertId(conn)
+							- chunk.size() + 1;
+				for (int i = 0; i < chunk.size(); i++) {
+					keySetter.setKey(chunk.get(i), first + i);
+				}
+			}
+
+		} catch (SQLException batchFailure) {
+			SQLiteRepository.closeQuietly(ps);
+			ps = null;
+
+			execute(conn, "ROLLBACK TO " + SAVEPOINT);
+			result = insertRowByRow(conn, chunk);
+
+		} finally {
+			if (ps != null) {
+				SQLiteRepository.closeQuietly(ps);
+			}
+		}
+
+		execute(conn, "RELEASE " + SAVEPOINT);
+		return result;
+	}
+
+	/** Inserts each item of a chunk with its own statement execution,
+	  recording the items that fail.
+	  @param conn the connection to insert with
+	  @param chunk the items to insert
+	  @return the result of inserting the chunk
+	  @throws SQLException if the statement can not be prepared
+	  */
+	private BatchResult<T> insertRowByRow(Connection conn, List<T> chunk)
+		throws SQLException
+	{
+		BatchResult<T> result = new BatchResult<T>();
+		PreparedStatement ps = conn.prepareStatement(insertSQL);
+
+		try {
+			for (T item : chunk) {
+				try {
+					binder.bind(ps, item);
+
+					if (ps.executeUpdate() == 1) {
+						result.addSuccesses(1);
+						if (keySetter != null) {
+							keySetter.setKey(item,
+										AbstractDAO.readLastInsertId(conn));
+						}
+					} else {
+						result.addFailure(item, new SQLException("No row was"
+														+ " inserted."));
+					}
+
+				} catch (SQLException e) {
+					result.addFailure(item, e);
+
+					/* The driver does not reset a statement after a failed
+					   execution, so it is replaced with a fresh one. */
+					SQLiteRepository.closeQuietly(ps);
+					ps = conn.prepareStatement(insertSQL);
+				}
+			}
+
+		} finally {
+			SQLiteRepository.closeQuietly(ps);
+		}
+
+		return result;
+	}
+
+	/** Executes a single SQL statement which returns no results.
+	  @param conn the connection to execute with
+	  @param sql the statement to execute
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	private static void execute(Connection conn, String sql)
+		throws SQLException
+	{
+		Statement stmt = conn.createStatement();
+
+		try {
+			stmt.execute(sql);
+		} finally {
+			SQLiteRepository.closeQuietly(stmt);
+		}
+	}
+
+}
@@ -0,0 +1,115 @@
+package jfmi.dao;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/** A BatchResult reports the outcome of a bulk DAO operation: how many
+  records were written, and which items failed along with the reason each
+  one failed.
+  */
+public class BatchResult<T> {
+
+	// PRIVATE INSTANCE Fields
+	private int successCount;
+	private List<Failure<T>> failures;
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs an empty BatchResult with no successes or failures.
+	  */
+	public BatchResult()
+	{
+		successCount = 0;
+		failures = new ArrayList<Failure<T>>();
+	}
+
+	/** Records that a number of items were written successfully.
+	  @param count the number of items written
+	  */
+	public void addSuccesses(int count)
+	{
+		successCount += count;
+	}
+
+	/** Records that an item could not be written.
+	  @param item the item that failed
+	  @param cause the exception raised while writing the item
+	  */
+	public void addFailure(T item, SQLException cause)
+	{
+		failures.add(new Failure<T>(item, cause));
+	}
+
+	/** Adds the successes and failures of another result to this one.
+	  @param other the result to merge into this one
+	  */
+	public void addAll(BatchResult<T> other)
+	{
+		successCount += other.successCount;
+		failures.addAll(other.failures);
+	}
+
+	/** Retrieves the number of items written successfully.
+	  @return the number of successful items
+	  */
+	public int getSuccessCount()
+	{
+		return successCount;
+	}
+
+	/** Retrieves the items which failed, in the order they were attempted.
+	  @return an unmodifiable list of failures
+	  */
+	public List<Failure<T>> getFailures()
+	{
+		return Collections.unmodifiableList(failures);
+	}
+
+	/** Indicates whether every item was written.
+	  @return true if no failures were recorded
+	  */
+	public boolean isComplete()
+	{
+		return failures.isEmpty();
+	}
+
+
+	//************************************************************
+	// PUBLIC CLASSES
+	//************************************************************
+
+	/** Pairs an item which could not be written with the cause. */
+	public static class Failure<T> {
+		private final T item;
+		private final SQLException cause;
+
+		/** Constructs a Failure for the specified item and cause.
+		  @param item_ the item which failed
+		  @param cause_ the reason it failed
+		  */
+		public Failure(T item_, SQLException cause_)
+		{
+			item = item_;
+			cause = cause_;
+		}
+
+		/** @return the item which failed */
+		public T getItem()
+		{
+			return item;
+		}
+
+		/** @return the exception raised while writing the item */
+		public SQLException getCause()
+		{
+			return cause;
+		}
+	}
+
+}
@@ -0,0 +1,20 @@
+package jfmi.dao;
+
+
+/** A DAOException reports a data access failure from a context which can
+  not throw a checked exception, such as iterating over a RecordCursor. The
+  underlying cause, typically an SQLException, is available through
+  getCause().
+  */
+public class DAOException extends RuntimeException {
+
+	/** Constructs a new DAOException with the specified detail message and
+	  cause.
+	  @param message Exception detail message.
+	  @param cause the exception which caused the failure
+	  */
+	public DAOException(String message, Throwable cause)
+	{
+		super(message, cause);
+	}
+}
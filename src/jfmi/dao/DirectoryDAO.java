@@ -0,0 +1,559 @@
+package jfmi.dao;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import jfmi.repo.RepositoryChange;
+import jfmi.repo.SQLiteRepository;
+import jfmi.repo.Transaction;
+import jfmi.util.StringUtil;
+
+
+/** A DirectoryDAO provides data access for the directories of the stored
+  TaggedFiles. Each directory is stored once, with its parent, its name and
+  its path; a TaggedFile refers to its directory and stores only its name.
+
+  A directory path ends in a delimiter, '/' or '\\', and every directory
+  but the root, whose path is "", has the directory containing it as its
+  parent. Since a directory's path begins with the paths of all of its
+  ancestors, the directories under a directory are a range of paths, which
+  the index on the path column finds directly.
+
+  Directory rows are not removed when their files are; a directory moved
+  to a path which is still stored is merged into the stored directory.
+  */
+public class DirectoryDAO {
+
+	// PUBLIC CLASS Fields
+	public static final String TABLE_NAME = "main.Directory";
+
+	// PRIVATE CLASS Fields
+	private static final String CREATE_PSQL;
+	private static final String READ_ID_BY_PATH_PSQL;
+	private static final String READ_FILEIDS_UNDER_PSQL;
+	private static final String READ_SUBTREE_PSQL;
+	private static final String UPDATE_SUBTREE_PATHS_PSQL;
+	private static final String UPDATE_PARENT_PSQL;
+	private static final String UPDATE_PSQL;
+	private static final String MOVE_FILES_PSQL;
+	private static final String DELETE_PSQL;
+	private static final String READ_PARENT_PSQL;
+	private static final String DELETE_IF_EMPTY_PSQL;
+
+	static {
+		CREATE_PSQL = "INSERT OR IGNORE INTO " + TABLE_NAME
+					+ "(parentId, name, path) VALUES((SELECT dirId FROM "
+					+ TABLE_NAME + " WHERE path = ?), ?, ?)";
+
+		READ_ID_BY_PATH_PSQL = "SELECT dirId FROM " + TABLE_NAME
+							 + " WHERE path = ? ";
+
+		READ_FILEIDS_UNDER_PSQL = "SELECT file.fileId FROM "
+								+ TaggedFileDAO.TABLE_NAME + " file"
+								+ " JOIN " + TABLE_NAME + " d"
+								+ " ON d.dirId = file.dirId"
+								+ " WHERE d.path >= ? AND d.path < ? ";
+
+		/* A directory's path sorts before the paths of its descendants. */
+		READ_SUBTREE_PSQL = "SELECT dirId, path FROM " + TABLE_NAME
+						  + " WHERE path >= ? AND path < ? ORDER BY path ";
+
+		/* The paths of a directory and its descendants share its path as a
+		   prefix, which is replaced. */
+		UPDATE_SUBTREE_PATHS_PSQL = "UPDATE " + TABLE_NAME
+								  + " SET path = ?1 || substr(path,"
+								  + " length(?2) + 1)"
+								  + " WHERE path >= ?2 AND path < ?3 ";
+
+		UPDATE_PARENT_PSQL = "UPDATE " + TABLE_NAME + " SET parentId ="
+						   + " (SELECT dirId FROM " + TABLE_NAME
+						   + " WHERE path = ?), name = ? WHERE path = ? ";
+
+		UPDATE_PSQL = "UPDATE " + TABLE_NAME + " SET path = ?, name = ?,"
+					+ " parentId = (SELECT dirId FROM " + TABLE_NAME
+					+ " WHERE path = ?) WHERE dirId = ? ";
+
+		MOVE_FILES_PSQL = "UPDATE " + TaggedFileDAO.TABLE_NAME
+						+ " SET dirId = ? WHERE dirId = ? ";
+
+		DELETE_PSQL = "DELETE FROM " + TABLE_NAME + " WHERE dirId = ? ";
+
+		READ_PARENT_PSQL = "SELECT parentId FROM " + TABLE_NAME
+						 + " WHERE dirId = ? ";
+
+		DELETE_IF_EMPTY_PSQL = "DELETE FROM " + TABLE_NAME
+						+ " WHERE dirId = ?1 AND NOT EXISTS (SELECT 1 FROM "
+						+ TaggedFileDAO.TABLE_NAME + " WHERE dirId = ?1)"
+						+ " AND NOT EXISTS (SELECT 1 FROM " + TABLE_NAME
+						+ " WHERE parentId = ?1) ";
+	}
+
+
+	//************************************************************
+	// PUBLIC CLASS Methods
+	//************************************************************
+
+	/** Converts a path naming a directory into a directory path, which ends
+	  in a delimiter. A path which already ends in a delimiter, or is empty,
+	  is returned unchanged; otherwise File.separator is appended.
+	  @param path the path of a directory
+	  @return the directory path
+	  */
+	public static String toDirectoryPath(String path)
+	{
+		if (path.isEmpty() || path.endsWith("/") || path.endsWith("\\")) {
+			return path;
+		}
+
+		return path + File.separator;
+	}
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Moves a directory, with its subdirectories and all of the files under
+	  it, to a new path. The files refer to their directories by id, so
+	  unless directories are already stored under the new path, only the
+	  rows of the moved directories are updated. Otherwise each moved
+	  directory whose new path is stored is merged into the stored one,
+	  which takes its files. The moved files are published as updated, and
+	  the new path's parent directories are created if necessary.
+	  @param fromPath the current path of the directory
+	  @param toPath the new path of the directory
+	  @return true if the directory was moved, false if it is not stored
+	  @throws SQLException if a problem occurs working with the database,
+	  		including when a merged directory already holds a file with the
+	  		name of one of the moved files
+	  @throws IllegalArgumentException if either path is the root, or one
+	  		of the paths is under the other
+	  */
+	public boolean move(String fromPath, String toPath) throws SQLException
+	{
+		String from = toDirectoryPath(fromPath);
+		String to = toDirectoryPath(toPath);
+
+		if (from.isEmpty() || to.isEmpty()) {
+			throw new IllegalArgumentException("the root directory can not"
+											   + " be moved");
+		}
+
+		if (to.startsWith(from)) {
+			throw new IllegalArgumentException("a directory can not be moved"
+											   + " under itself");
+		}
+
+		if (from.startsWith(to)) {
+			throw new IllegalArgumentException("a directory can not be moved"
+											   + " onto a directory which"
+											   + " contains it");
+		}
+
+		Transaction tx = SQLiteRepository.instance().beginTransaction();
+
+		try {
+			Connection conn = tx.getConnection();
+			Map<Integer, String> moved = readSubtree(conn, from, false);
+
+			if (moved.isEmpty()) {
+				return false;
+			}
+
+			Set<Integer> fileIds = readFileIdsUnder(conn, from);
+			createDirectories(conn, Collections.singleton(parentOf(to)));
+
+			if (readSubtree(conn, to, true).isEmpty()) {
+				renameSubtree(conn, from, to);
+			} else {
+				mergeSubtree(conn, moved, from, to);
+			}
+
+			// delivered once the transaction commits
+			AbstractDAO.publishChange(RepositoryChange.Entity.FILE,
+									  RepositoryChange.Kind.UPDATED, fileIds);
+			tx.commit();
+
+			return true;
+
+		} finally {
+			tx.close();
+		}
+	}
+
+	/** Reads the ids of the files under a directory, including the files
+	  of its subdirectories.
+	  @param dirPath the path of the directory
+	  @return the ids of the files under the directory
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public Set<Integer> readFileIdsUnder(String dirPath) throws SQLException
+	{
+		Connection conn = SQLiteRepository.instance().getReadConnection();
+
+		try {
+			return readFileIdsUnder(conn, toDirectoryPath(dirPath));
+
+		} finally {
+			SQLiteRepository.closeQuietly(conn);
+		}
+	}
+
+
+	//************************************************************
+	// PACKAGE CLASS Methods
+	//************************************************************
+
+	/** Creates the rows of the specified directories, and of their
+	  ancestors, which are not yet stored.
+	  @param conn the connection to write with
+	  @param dirPaths the paths of the directories
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	static void createDirectories(Connection conn, Collection<String> dirPaths)
+		throws SQLException
+	{
+		List<String> missing = new ArrayList<String>();
+		Set<String> seen = new HashSet<String>();
+		PreparedStatement ps = conn.prepareStatement(READ_ID_BY_PATH_PSQL);
+
+		try {
+			// walk up from each directory to the nearest one which is stored
+			for (String dirPath : dirPaths) {
+				String dir = dirPath;
+
+				while (dir != null && seen.add(dir)
+					   && readId(ps, dir) == null) {
+					missing.add(dir);
+					dir = parentOf(dir);
+				}
+			}
+
+		} finally {
+			SQLiteRepository.closeQuietly(ps);
+		}
+
+		if (missing.isEmpty()) {
+			return;
+		}
+
+		// a parent's path is a prefix of its children's, so it sorts first
+		Collections.sort(missing);
+		ps = conn.prepareStatement(CREATE_PSQL);
+
+		try {
+			for (String dir : missing) {
+				ps.setString(1, parentOf(dir));
+				ps.setString(2, nameOf(dir));
+				ps.setString(3, dir);
+				ps.addBatch();
+			}
+
+			ps.executeBatch();
+
+		} finally {
+			SQLiteRepository.closeQuietly(ps);
+		}
+	}
+
+	/** Deletes a directory which holds no files and no directories, and
+	  then each of its ancestors which is left empty in turn, so that a
+	  directory is not kept once the last file under it is gone.
+	  @param conn the connection to write with
+	  @param dirId the id of the directory, or null to delete nothing
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	static void deleteIfEmpty(Connection conn, Integer dirId)
+		throws SQLException
+	{
+		PreparedStatement parent = conn.prepareStatement(READ_PARENT_PSQL);
+		PreparedStatement delete = null;
+
+		try {
+			delete = conn.prepareStatement(DELETE_IF_EMPTY_PSQL);
+
+			while (dirId != null) {
+				Integer parentId = null;
+				parent.setInt(1, dirId);
+				ResultSet rs = parent.executeQuery();
+
+				try {
+					if (rs.next()) {
+						parentId = rs.getInt(1);
+						if (rs.wasNull()) {
+							parentId = null;
+						}
+					}
+
+				} finally {
+					SQLiteRepository.closeQuietly(rs);
+				}
+
+				delete.setInt(1, dirId);
+				if (delete.executeUpdate() == 0) {
+					break;
+				}
+
+				dirId = parentId;
+			}
+
+		} finally {
+			SQLiteRepository.closeQuietly(parent);
+			if (delete != null) {
+				SQLiteRepository.closeQuietly(delete);
+			}
+		}
+	}
+
+	/** Retrieves the smallest path greater than the path of every directory
+	  under the specified directory. The directories under a directory are
+	  those with paths from the directory's path, inclusive, to this path,
+	  exclusive.
+	  @param dirPath the path of a directory other than the root
+	  @return the end of the directory's range of paths
+	  */
+	static String subtreeEnd(String dirPath)
+	{
+		int last = dirPath.length() - 1;
+		return dirPath.substring(0, last) + (char) (dirPath.charAt(last) + 1);
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASS Methods
+	//************************************************************
+
+	/** Moves the directories of a subtree one at a time, in path order, so
+	  that each directory's new parent is in place before it is moved. A
+	  directory whose new path is already stored gives its files to the
+	  stored directory, and its row is deleted once every directory has been
+	  moved, along with any of its subdirectories which were also merged.
+	  @param conn the connection to write with
+	  @param moved the ids and paths of the directories under fromPath, in
+	  		path order
+	  @param from the path of the moved directory
+	  @param to the new path of the moved directory
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	private static void mergeSubtree(Connection conn,
+									 Map<Integer, String> moved, String from,
+									 String to) throws SQLException
+	{
+		List<Integer> merged = new ArrayList<Integer>();
+		PreparedStatement find = conn.prepareStatement(READ_ID_BY_PATH_PSQL);
+		PreparedStatement update = null;
+		PreparedStatement moveFiles = null;
+
+		try {
+			update = conn.prepareStatement(UPDATE_PSQL);
+			moveFiles = conn.prepareStatement(MOVE_FILES_PSQL);
+
+			for (Map.Entry<Integer, String> dir : moved.entrySet()) {
+				String path = to + dir.getValue().substring(from.length());
+				Integer storedId = readId(find, path);
+
+				if (storedId == null) {
+					update.setString(1, path);
+					update.setString(2, nameOf(path));
+					update.setString(3, parentOf(path));
+					update.setInt(4, dir.getKey());
+					update.executeUpdate();
+				} else {
+					moveFiles.setInt(1, storedId);
+					moveFiles.setInt(2, dir.getKey());
+					moveFiles.executeUpdate();
+					merged.add(dir.getKey());
+				}
+			}
+
+		} finally {
+			SQLiteRepository.closeQuietly(find);
+			if (update != null) {
+				SQLiteRepository.closeQuietly(update);
+			}
+			if (moveFiles != null) {
+				SQLiteRepository.closeQuietly(moveFiles);
+			}
+		}
+
+		PreparedStatement ps = conn.prepareStatement(DELETE_PSQL);
+
+		try {
+			for (Integer dirId : merged) {
+				ps.setInt(1, dirId);
+				ps.addBatch();
+			}
+
+			ps.executeBatch();
+
+		} finally {
+			SQLiteRepository.closeQuietly(ps);
+		}
+	}
+
+	/** Reads the id of a directory with READ_ID_BY_PATH_PSQL.
+	  @return the directory's id, or null if it is not stored
+	  */
+	private static Integer readId(PreparedStatement ps, String dirPath)
+		throws SQLException
+	{
+		ps.setString(1, dirPath);
+		ResultSet rs = ps.executeQuery();
+
+		try {
+			return rs.next() ? rs.getInt(1) : null;
+
+		} finally {
+			SQLiteRepository.closeQuietly(rs);
+		}
+	}
+
+	/** Reads the ids and paths of a directory and the directories under it.
+	  @param conn the connection to read with
+	  @param dirPath the path of the directory, other than the root
+	  @param first if true, at most one directory is read
+	  @return the directories' ids and paths, in path order
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	private static Map<Integer, String> readSubtree(Connection conn,
+													String dirPath,
+													boolean first)
+		throws SQLException
+	{
+		Map<Integer, String> dirs = new LinkedHashMap<Integer, String>();
+		PreparedStatement ps = conn.prepareStatement(READ_SUBTREE_PSQL);
+
+		try {
+			ps.setString(1, dirPath);
+			ps.setString(2, subtreeEnd(dirPath));
+			ResultSet rs = ps.executeQuery();
+
+			try {
+				while (rs.next()) {
+					dirs.put(rs.getInt(1), rs.getString(2));
+
+					if (first) {
+						break;
+					}
+				}
+
+				return dirs;
+
+			} finally {
+				SQLiteRepository.closeQuietly(rs);
+			}
+
+		} finally {
+			SQLiteRepository.closeQuietly(ps);
+		}
+	}
+
+	/** Moves the directories of a subtree by replacing the prefix of their
+	  paths, when none of their new paths is stored.
+	  @param conn the connection to write with
+	  @param from the path of the moved directory
+	  @param to the new path of the moved directory
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	private static void renameSubtree(Connection conn, String from, String to)
+		throws SQLException
+	{
+		PreparedStatement ps;
+		ps = conn.prepareStatement(UPDATE_SUBTREE_PATHS_PSQL);
+
+		try {
+			ps.setString(1, to);
+			ps.setString(2, from);
+			ps.setString(3, subtreeEnd(from));
+			ps.executeUpdate();
+
+		} finally {
+			SQLiteRepository.closeQuietly(ps);
+		}
+
+		ps = conn.prepareStatement(UPDATE_PARENT_PSQL);
+
+		try {
+			ps.setString(1, parentOf(to));
+			ps.setString(2, nameOf(to));
+			ps.setString(3, to);
+			ps.executeUpdate();
+
+		} finally {
+			SQLiteRepository.closeQuietly(ps);
+		}
+	}
+
+	/** Retrieves the name of a directory: the last part of its path. */
+	private static String nameOf(String dirPath)
+	{
+		if (dirPath.isEmpty()) {
+			return "";
+		}
+
+		return StringUtil.parseNameFromPath(
+							dirPath.substring(0, dirPath.length() - 1));
+	}
+
+	/** Retrieves the path of a directory's parent, or null for the root. */
+	private static String parentOf(String dirPath)
+	{
+		if (dirPath.isEmpty()) {
+			return null;
+		}
+
+		return StringUtil.parseDirectoryFromPath(
+							dirPath.substring(0, dirPath.length() - 1));
+	}
+
+	/** Reads the ids of the files under a directory with a connection. */
+	private static Set<Integer> readFileIdsUnder(Connection conn,
+												 String dirPath)
+		throws SQLException
+	{
+		Set<Integer> fileIds = new HashSet<Integer>();
+		PreparedStatement ps;
+
+		if (dirPath.isEmpty()) {
+			ps = conn.prepareStatement("SELECT fileId FROM "
+									   + TaggedFileDAO.TABLE_NAME);
+		} else {
+			ps = conn.prepareStatement(READ_FILEIDS_UNDER_PSQL);
+		}
+
+		try {
+			if (!dirPath.isEmpty()) {
+				ps.setString(1, dirPath);
+				ps.setString(2, subtreeEnd(dirPath));
+			}
+
+			ResultSet rs = ps.executeQuery();
+
+			try {
+				while (rs.next()) {
+					fileIds.add(rs.getInt(1));
+				}
+
+				return fileIds;
+
+			} finally {
+				SQLiteRepository.closeQuietly(rs);
+			}
+
+		} finally {
+			SQLiteRepository.closeQuietly(ps);
+		}
+	}
+
+}
@@ -0,0 +1,470 @@
+package jfmi.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import jfmi.app.FileIdBitmap;
+import jfmi.app.TagIndex;
+import jfmi.repo.SQLiteRepository;
+
+
+/** A FileQuery describes which TaggedFiles a search should return. Queries
+  are built from criteria on a file's name, path, tags and tagging comments,
+  combined with and(), or() and not(), and are compiled by TaggedFileDAO
+  into a single SQL statement.
+
+  Results are ranked: a file scores one point for each criterion it meets,
+  other than criteria inside a not(), plus the full-text score of its
+  comments for each comment criterion.
+
+  A query with only tag criteria can also be answered from a TagIndex, with
+  matchIn().
+  */
+public abstract class FileQuery {
+
+	//************************************************************
+	// PUBLIC CLASS Methods
+	//************************************************************
+
+	/** Creates a query matching files whose name contains the specified
+	  text, ignoring case.
+	  @param text the text to look for in file names
+	  @return a new FileQuery
+	  */
+	public static FileQuery nameContains(String text)
+	{
+		return new LikeCriterion("f.name", text);
+	}
+
+	/** Creates a query matching files whose path contains the specified
+	  text, ignoring case.
+	  @param text the text to look for in file paths
+	  @return a new FileQuery
+	  */
+	public static FileQuery pathContains(String text)
+	{
+		return new LikeCriterion("(fd.path || f.name)", text);
+	}
+
+	/** Creates a query matching files tagged with any of the specified tags.
+	  @param tags the tag values to look for
+	  @return a new FileQuery
+	  @throws IllegalArgumentException if tags is empty
+	  */
+	public static FileQuery taggedWithAny(Collection<String> tags)
+	{
+		return new TagCriterion(tags);
+	}
+
+	/** Creates a query matching files with a tagging comment which matches
+	  a full-text query, as accepted by TaggedFileDAO.readByCommentMatch().
+	  @param matchQuery the full-text query
+	  @return a new FileQuery
+	  */
+	public static FileQuery commentMatches(String matchQuery)
+	{
+		return new CommentCriterion(matchQuery);
+	}
+
+	/** Creates a query matching files with a tagging comment containing any
+	  of the specified keywords; see TaggedFileDAO.toCommentMatchQuery().
+	  @param keywords the keywords to look for
+	  @return a new FileQuery
+	  @throws IllegalArgumentException if there are no usable keywords
+	  */
+	public static FileQuery commentKeywords(Collection<String> keywords)
+	{
+		String match = TaggedFileDAO.toCommentMatchQuery(keywords);
+
+		if (match == null) {
+			throw new IllegalArgumentException("no usable keywords");
+		}
+
+		return new CommentCriterion(match);
+	}
+
+	/** Creates a query matching files which match every one of the
+	  specified queries.
+	  @param queries the queries to combine, at least one
+	  @return a new FileQuery
+	  */
+	public static FileQuery and(FileQuery... queries)
+	{
+		return and(Arrays.asList(queries));
+	}
+
+	/** Creates a query matching files which match every one of the
+	  specified queries.
+	  @param queries the queries to combine, at least one
+	  @return a new FileQuery
+	  @throws IllegalArgumentException if queries is empty
+	  */
+	public static FileQuery and(List<FileQuery> queries)
+	{
+		return new Combination(" AND ", queries);
+	}
+
+	/** Creates a query matching files which match any of the specified
+	  queries.
+	  @param queries the queries to combine, at least one
+	  @return a new FileQuery
+	  */
+	public static FileQuery or(FileQuery... queries)
+	{
+		return or(Arrays.asList(queries));
+	}
+
+	/** Creates a query matching files which match any of the specified
+	  queries.
+	  @param queries the queries to combine, at least one
+	  @return a new FileQuery
+	  @throws IllegalArgumentException if queries is empty
+	  */
+	public static FileQuery or(List<FileQuery> queries)
+	{
+		return new Combination(" OR ", queries);
+	}
+
+	/** Creates a query matching files which do not match the specified
+	  query.
+	  @param query the query to negate
+	  @return a new FileQuery
+	  */
+	public static FileQuery not(final FileQuery query)
+	{
+		return new FileQuery() {
+			String compile(Compiler c, boolean ranked)
+			{
+				return "NOT (" + query.compile(c, false) + ")";
+			}
+
+			FileIdBitmap match(TagIndex index, List<FileIdBitmap> rankTerms)
+			{
+				FileIdBitmap matched = query.match(index, null);
+				return matched == null ? null
+									   : index.getAllFiles().andNot(matched);
+			}
+		};
+	}
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Finds the files matching this query in a TagIndex, without reading
+	  the repository, if every criterion of the query is a tag criterion.
+	  The files are ranked as TaggedFileDAO.readByQuery() ranks them: best
+	  matches first, and files of equal rank in order of their ids.
+	  @param index the index to match files in
+	  @return the ids of the matching files, ranked, or null if the query
+	  		has a criterion which the index can not answer
+	  */
+	public List<Integer> matchIn(TagIndex index)
+	{
+		List<FileIdBitmap> rankTerms = new ArrayList<FileIdBitmap>();
+		FileIdBitmap matched = match(index, rankTerms);
+
+		if (matched == null) {
+			return null;
+		}
+
+		// a file's rank is the number of rank terms it is in
+		List<List<Integer>> byRank = new ArrayList<List<Integer>>();
+		for (int i = 0; i <= rankTerms.size(); i++) {
+			byRank.add(new ArrayList<Integer>());
+		}
+
+		for (int fileId : matched) {
+			int rank = 0;
+			for (FileIdBitmap term : rankTerms) {
+				if (term.contains(fileId)) {
+					rank++;
+				}
+			}
+
+			byRank.get(rank).add(fileId);
+		}
+
+		List<Integer> ranked = new ArrayList<Integer>(matched.cardinality());
+		for (int rank = rankTerms.size(); rank >= 0; rank--) {
+			ranked.addAll(byRank.get(rank));
+		}
+
+		return ranked;
+	}
+
+
+	//************************************************************
+	// PACKAGE INSTANCE Methods
+	//************************************************************
+
+	/** Compiles the query into an SQL condition on the TaggedFile row "f".
+	  @param c the compiler collecting parameters, joins and rank terms
+	  @param ranked true if criteria met by a file should add to its rank
+	  @return the SQL condition
+	  */
+	abstract String compile(Compiler c, boolean ranked);
+
+	/** Matches the query against a TagIndex, as compile() matches it against
+	  the repository.
+	  @param index the index to match files in
+	  @param rankTerms the sets of files which criteria met by a file add to
+	  		its rank, added to; null if criteria should not add to ranks
+	  @return the ids of the matching files, or null if the query has a
+	  		criterion which the index can not answer
+	  */
+	abstract FileIdBitmap match(TagIndex index, List<FileIdBitmap> rankTerms);
+
+
+	//************************************************************
+	// PACKAGE CLASSES
+	//************************************************************
+
+	/** A Compiler accumulates the parts of the SQL statement which a query
+	  compiles to. Parameters are numbered (?1, ?2, ...) so that a criterion
+	  can use its parameters in both the rank and the WHERE clause.
+	  */
+	static final class Compiler {
+		private final List<Object> params = new ArrayList<Object>();
+		private final List<String> rankTerms = new ArrayList<String>();
+		private final StringBuilder joins = new StringBuilder();
+		private int joinCount;
+
+		/** Adds a parameter value.
+		  @param value the value to bind
+		  @return the parameter's placeholder, such as "?3"
+		  */
+		String bind(Object value)
+		{
+			params.add(value);
+			return "?" + params.size();
+		}
+
+		/** Adds a LEFT JOIN from "f" to a derived table of (fileId, score).
+		  @param select the derived table's SELECT statement
+		  @return the alias of the joined table
+		  */
+		String join(String select)
+		{
+			String alias = "j" + (++joinCount);
+			joins.append(" LEFT JOIN (").append(select).append(") ")
+				 .append(alias).append(" ON ").append(alias)
+				 .append(".fileId = f.fileId");
+			return alias;
+		}
+
+		/** Adds an expression to the rank of each file. */
+		void rank(String term)
+		{
+			rankTerms.add(term);
+		}
+
+		/** @return the parameter values, in placeholder order */
+		List<Object> getParams()
+		{
+			return Collections.unmodifiableList(params);
+		}
+
+		/** @return the LEFT JOINs added to the file table */
+		String getJoins()
+		{
+			return joins.toString();
+		}
+
+		/** @return the rank expression */
+		String getRank()
+		{
+			if (rankTerms.isEmpty()) {
+				return "0";
+			}
+
+			StringBuilder rank = new StringBuilder();
+
+			for (String term : rankTerms) {
+				rank.append(rank.length() == 0 ? "" : " + ").append(term);
+			}
+
+			return rank.toString();
+		}
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASSES
+	//************************************************************
+
+	/** Matches files where a text expression contains a substring. */
+	private static final class LikeCriterion extends FileQuery {
+		private final String expression;
+		private final String pattern;
+
+		LikeCriterion(String expression_, String text)
+		{
+			expression = expression_;
+
+			/* LIKE is case-insensitive for ASCII; its wildcards in the text
+			   are escaped so that they match literally. */
+			pattern = "%" + text.replace("\\", "\\\\").replace("%", "\\%")
+									.replace("_", "\\_") + "%";
+		}
+
+		String compile(Compiler c, boolean ranked)
+		{
+			String predicate = "(" + expression + " LIKE " + c.bind(pattern)
+								+ " ESCAPE '\\')";
+
+			if (ranked) {
+				c.rank(predicate);
+			}
+
+			return predicate;
+		}
+
+		FileIdBitmap match(TagIndex index, List<FileIdBitmap> rankTerms)
+		{
+			return null;
+		}
+	}
+
+	/** Matches files tagged with any of a set of tags. */
+	private static final class TagCriterion extends FileQuery {
+		private final List<String> tags;
+
+		TagCriterion(Collection<String> tags_)
+		{
+			if (tags_.isEmpty()) {
+				throw new IllegalArgumentException("tags_ cannot be empty");
+			}
+
+			tags = new ArrayList<String>(tags_);
+		}
+
+		String compile(Compiler c, boolean ranked)
+		{
+			StringBuilder in = new StringBuilder();
+
+			for (String tag : tags) {
+				in.append(in.length() == 0 ? "" : ", ").append(c.bind(tag));
+			}
+
+			String predicate = "f.fileId IN (SELECT fileId FROM "
+							+ FileTaggingDAO.TABLE_NAME + " WHERE tagId IN"
+							+ " (SELECT tagId FROM " + FileTagDAO.TABLE_NAME
+							+ " WHERE tag IN (" + in + ")))";
+
+			if (ranked) {
+				c.rank("(" + predicate + ")");
+			}
+
+			return predicate;
+		}
+
+		FileIdBitmap match(TagIndex index, List<FileIdBitmap> rankTerms)
+		{
+			FileIdBitmap matched = index.matchAny(tags);
+
+			if (rankTerms != null) {
+				rankTerms.add(matched);
+			}
+
+			return matched;
+		}
+	}
+
+	/** Matches files with a comment matching a full-text query. The scores
+	  of each file's matching comments are summed in a derived table, which
+	  is joined to the file. */
+	private static final class CommentCriterion extends FileQuery {
+		private final String matchQuery;
+
+		CommentCriterion(String matchQuery_)
+		{
+			matchQuery = matchQuery_;
+		}
+
+		String compile(Compiler c, boolean ranked)
+		{
+			String alias = c.join("SELECT tagging.fileId AS fileId,"
+						+ " SUM(m.score) AS score FROM (SELECT docid, "
+						+ SQLiteRepository.FTS_RANK_FUNCTION
+						+ "(matchinfo(FileTaggingComment)) AS score"
+						+ " FROM main.FileTaggingComment"
+						+ " WHERE FileTaggingComment MATCH "
+						+ c.bind(matchQuery) + " LIMIT -1) m"
+						+ " JOIN " + FileTaggingDAO.TABLE_NAME + " tagging"
+						+ " ON tagging.taggingId = m.docid"
+						+ " GROUP BY tagging.fileId");
+
+			if (ranked) {
+				c.rank("(" + alias + ".fileId IS NOT NULL)");
+				c.rank("IFNULL(" + alias + ".score, 0)");
+			}
+
+			return alias + ".fileId IS NOT NULL";
+		}
+
+		FileIdBitmap match(TagIndex index, List<FileIdBitmap> rankTerms)
+		{
+			return null;
+		}
+	}
+
+	/** Combines queries with AND or OR. */
+	private static final class Combination extends FileQuery {
+		private final String operator;
+		private final List<FileQuery> queries;
+
+		Combination(String operator_, List<FileQuery> queries_)
+		{
+			if (queries_.isEmpty()) {
+				throw new IllegalArgumentException("queries_ cannot be empty");
+			}
+
+			operator = operator_;
+			queries = new ArrayList<FileQuery>(queries_);
+		}
+
+		String compile(Compiler c, boolean ranked)
+		{
+			StringBuilder predicate = new StringBuilder("(");
+
+			for (FileQuery q : queries) {
+				if (predicate.length() > 1) {
+					predicate.append(operator);
+				}
+
+				predicate.append(q.compile(c, ranked));
+			}
+
+			return predicate.append(")").toString();
+		}
+
+		FileIdBitmap match(TagIndex index, List<FileIdBitmap> rankTerms)
+		{
+			FileIdBitmap matched = null;
+
+			for (FileQuery q : queries) {
+				FileIdBitmap next = q.match(index, rankTerms);
+
+				if (next == null) {
+					return null;
+				}
+
+				if (matched == null) {
+					matched = next;
+				} else if (operator.equals(" AND ")) {
+					matched = matched.and(next);
+				} else {
+					matched = matched.or(next);
+				}
+			}
+
+			return matched;
+		}
+	}
+
+}
@@ -5,18 +5,24 @@ import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
 import jfmi.app.FileTag;
 import static jfmi.app.FileTagSorters.SQLPrimaryKeySorter;
+import jfmi.repo.RepositoryChange;
 import jfmi.repo.SQLiteRepository;
 
 
 /** A FileTag provides data access for storing FileTag objects in an 
   underlying database.
   */
-public class FileTagDAO extends AbstractDAO<FileTag, String> {
+public class FileTagDAO extends AbstractDAO<FileTag, Integer> {
 
 	// PUBLIC CLASS Fields
 	public static final String TABLE_NAME = "main.FileTag";
@@ -29,13 +35,32 @@ public class FileTagDAO extends AbstractDAO<FileTag, String> {
 	private static final String DELETE_PSQL;
 	private static final String DELETE_ALL_SQL;
 
+	private static final BatchInserter.RowBinder<FileTag> CREATE_BINDER;
+	private static final BatchInserter.KeySetter<FileTag> CREATE_KEY_SETTER;
+
 	static {
-		CREATE_PSQL = "INSERT INTO " + TABLE_NAME + " VALUES(?)";
-		READ_BY_ID_PSQL = "SELECT * FROM " + TABLE_NAME + " WHERE tag = ? ";
-		READ_ALL_SQL = "SELECT * FROM " + TABLE_NAME;
-		UPDATE_PSQL = "UPDATE " + TABLE_NAME + " SET tag = ? WHERE tag = ? ";
-		DELETE_PSQL = "DELETE FROM " + TABLE_NAME + " WHERE tag = ? ";
+		CREATE_PSQL = "INSERT INTO " + TABLE_NAME + "(tag) VALUES(?)";
+		READ_BY_ID_PSQL = "SELECT tagId, tag FROM " + TABLE_NAME
+						+ " WHERE tagId = ? ";
+		READ_ALL_SQL = "SELECT tagId, tag FROM " + TABLE_NAME;
+		UPDATE_PSQL = "UPDATE " + TABLE_NAME + " SET tag = ? WHERE tagId = ? ";
+		DELETE_PSQL = "DELETE FROM " + TABLE_NAME + " WHERE tagId = ? ";
 		DELETE_ALL_SQL = "DELETE FROM " + TABLE_NAME;
+
+		CREATE_BINDER = new BatchInserter.RowBinder<FileTag>() {
+			public void bind(PreparedStatement ps, FileTag tag)
+				throws SQLException
+			{
+				ps.setString(1, tag.getTag());
+			}
+		};
+
+		CREATE_KEY_SETTER = new BatchInserter.KeySetter<FileTag>() {
+			public void setKey(FileTag tag, int rowId)
+			{
+				tag.setTagId(rowId);
+			}
+		};
 	}
 		
 
@@ -43,7 +68,8 @@ public class FileTagDAO extends AbstractDAO<FileTag, String> {
 	// PUBLIC INSTANCE Methods
 	//************************************************************
 
-	/** Creates a new FileTag record in the underlying database.
+	/** Creates a new FileTag record in the underlying database. If the
+	  record is created, the FileTag's tag id is set to the id of the record.
 	  @param createMe a FileTag instance containing the necessary information
 					  to replicate it in the database
 	  @return true if the record was created successfully
@@ -51,15 +77,20 @@ public class FileTagDAO extends AbstractDAO<FileTag, String> {
 	  */
 	public boolean create(FileTag createMe) throws SQLException
 	{
+		boolean created;
 		Connection conn = SQLiteRepository.instance().getConnection();
 
 		try {
 			PreparedStatement ps = conn.prepareStatement(CREATE_PSQL);
 
 			try {
-				ps.setString(1, createMe.getTag());
+				CREATE_BINDER.bind(ps, createMe);
+
+				created = ps.executeUpdate() == 1;	// 1 row should be created
 
-				return ps.executeUpdate() == 1;	// 1 row should be created
+				if (created) {
+					createMe.setTagId(readLastInsertId(conn));
+				}
 				
 			} finally {
 				SQLiteRepository.closeQuietly(ps);				
@@ -68,32 +99,67 @@ public class FileTagDAO extends AbstractDAO<FileTag, String> {
 		} finally {
 			SQLiteRepository.closeQuietly(conn);
 		}
+
+		if (created) {
+			publishChange(RepositoryChange.Entity.TAG,
+						  RepositoryChange.Kind.INSERTED,
+						  Collections.singleton(createMe.getTagId()));
+		}
+
+		return created;
+	}
+
+	/** Creates a new FileTag record for each of the specified tags, using
+	  batched inserts which are committed once per batch. The tag id of each
+	  FileTag whose record is created is set to the id of the record.
+	  @param createUs the FileTags to create records for
+	  @return the number of records created, and the tags which failed
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public BatchResult<FileTag> createAll(Collection<FileTag> createUs)
+		throws SQLException
+	{
+		BatchInserter<FileTag> inserter;
+		inserter = new BatchInserter<FileTag>(CREATE_PSQL, CREATE_BINDER,
+											  CREATE_KEY_SETTER);
+
+		BatchResult<FileTag> result;
+		result = inserter.insertAll(createUs, getBatchSize());
+
+		List<Integer> tagIds = new ArrayList<Integer>();
+		for (FileTag tag : getCreated(createUs, result)) {
+			tagIds.add(tag.getTagId());
+		}
+
+		publishChange(RepositoryChange.Entity.TAG,
+					  RepositoryChange.Kind.INSERTED, tagIds);
+
+		return result;
 	}
 
 
 	/** Retrieves the information necessary to create a FileTag object from the
 	  relevant database tables.
-	  @param id the tag value of the record to search for
+	  @param id the tag id of the record to search for
 	  @return a new FileTag if the read was successful, null otherwise
 	  @throws SQLException if a problem occurs working with the database
 	  */
-	public FileTag readById(String id) throws SQLException
+	public FileTag readById(Integer id) throws SQLException
 	{
-		Connection conn = SQLiteRepository.instance().getConnection();
+		Connection conn = SQLiteRepository.instance().getReadConnection();
 
 		try {
 			PreparedStatement ps = conn.prepareStatement(READ_BY_ID_PSQL);
 
 			try {
-				ps.setString(1, id);
+				ps.setInt(1, id);
 				ResultSet rs = ps.executeQuery();
 
 				try {
 					FileTag result = null;
 
 					if (rs.next()) {
-						result = new FileTag();
-						result.setTag(id);
+						result = new FileTag(id, rs.getString("tag"));
 					}
 
 					return result;
@@ -117,7 +183,7 @@ public class FileTagDAO extends AbstractDAO<FileTag, String> {
 	  */
 	public SortedSet<FileTag> readAll() throws SQLException
 	{
-		Connection conn = SQLiteRepository.instance().getConnection();
+		Connection conn = SQLiteRepository.instance().getReadConnection();
 
 		try {
 			Statement stmt = conn.createStatement();
@@ -131,8 +197,8 @@ public class FileTagDAO extends AbstractDAO<FileTag, String> {
 					FileTag next = null;
 
 					while (rs.next()) {
-						next = new FileTag();
-						next.setTag(rs.getString("tag"));
+						next = new FileTag(rs.getInt("tagId"),
+										   rs.getString("tag"));
 
 						set.add(next);
 					}
@@ -152,15 +218,51 @@ public class FileTagDAO extends AbstractDAO<FileTag, String> {
 		}
 	}
 
+	/** Opens a cursor which reads FileTag records from the database one at a
+	  time.
+	  @param fetchSize the number of rows to fetch from the database at a time
+	  @return a cursor over all FileTag records
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public RecordCursor<FileTag> openCursor(int fetchSize) throws SQLException
+	{
+		Connection conn = SQLiteRepository.instance().getReadConnection();
+		Statement stmt = null;
+
+		try {
+			stmt = conn.createStatement();
+			stmt.setFetchSize(fetchSize);
+			ResultSet rs = stmt.executeQuery(READ_ALL_SQL);
+
+			return new ResultSetCursor<FileTag>(conn, stmt, rs) {
+				protected FileTag readRecord(ResultSet rs) throws SQLException
+				{
+					return new FileTag(rs.getInt("tagId"),
+									   rs.getString("tag"));
+				}
+			};
+
+		} catch (SQLException e) {
+			if (stmt != null) {
+				SQLiteRepository.closeQuietly(stmt);
+			}
+			SQLiteRepository.closeQuietly(conn);
+			throw e;
+		}
+	}
+
 	/** Updates the specified FileTag's corresponding record in the database,
-	  if it exists.
+	  if it exists. If the record is updated, the FileTag's tag id is set to
+	  the id of the record.
 	  @param updateMe the FileTag which will be used to update the database
-	  @param id the id of the record to update 
+	  @param id the tag id of the record to update 
 	  @return true if the record existed and was updated successfully
 	  @throws SQLException if a problem occurs working with the database
 	  */
-	public boolean update(FileTag updateMe, String id) throws SQLException
+	public boolean update(FileTag updateMe, Integer id) throws SQLException
 	{
+		Set<Integer> fileIds = new FileTaggingDAO().readFileIdsByTag(id);
+		boolean updated;
 		Connection conn = SQLiteRepository.instance().getConnection();
 
 		try {
@@ -168,9 +270,13 @@ public class FileTagDAO extends AbstractDAO<FileTag, String> {
 
 			try {
 				ps.setString(1, updateMe.getTag());
-				ps.setString(2, id);
+				ps.setInt(2, id);
+
+				updated = ps.executeUpdate() == 1;	// 1 row should be updated
 
-				return ps.executeUpdate() == 1;	// 1 row should be updated
+				if (updated) {
+					updateMe.setTagId(id);
+				}
 				
 			} finally {
 				SQLiteRepository.closeQuietly(ps);				
@@ -179,6 +285,18 @@ public class FileTagDAO extends AbstractDAO<FileTag, String> {
 		} finally {
 			SQLiteRepository.closeQuietly(conn);
 		}
+
+		/* Taggings refer to the tag's tagId, so renaming it updates only its
+		   own row; the files tagged with it are read with the new value. */
+		if (updated) {
+			publishChange(RepositoryChange.Entity.TAG,
+						  RepositoryChange.Kind.UPDATED,
+						  Collections.singleton(id));
+			publishChange(RepositoryChange.Entity.FILE,
+						  RepositoryChange.Kind.UPDATED, fileIds);
+		}
+
+		return updated;
 	}
 
 	/** Deletes the specified FileTag's corresponding record from the 
@@ -189,16 +307,17 @@ public class FileTagDAO extends AbstractDAO<FileTag, String> {
 	  */
 	public boolean delete(FileTag deleteMe) throws SQLException
 	{
+		Set<Integer> fileIds;
+		fileIds = new FileTaggingDAO().readFileIdsByTag(deleteMe.getTagId());
+		int rowCount;
 		Connection conn = SQLiteRepository.instance().getConnection();
 
 		try {
 			PreparedStatement ps = conn.prepareStatement(DELETE_PSQL);
 
 			try {
-				ps.setString(1, deleteMe.getTag());
-				int rowCount = ps.executeUpdate();
-
-				return rowCount == 0 || rowCount == 1;
+				ps.setInt(1, deleteMe.getTagId());
+				rowCount = ps.executeUpdate();
 				
 			} finally {
 				SQLiteRepository.closeQuietly(ps);				
@@ -207,6 +326,16 @@ public class FileTagDAO extends AbstractDAO<FileTag, String> {
 		} finally {
 			SQLiteRepository.closeQuietly(conn);
 		}
+
+		if (rowCount == 1) {
+			publishChange(RepositoryChange.Entity.TAG,
+						  RepositoryChange.Kind.DELETED,
+						  Collections.singleton(deleteMe.getTagId()));
+			publishChange(RepositoryChange.Entity.FILE,
+						  RepositoryChange.Kind.UPDATED, fileIds);
+		}
+
+		return rowCount == 0 || rowCount == 1;
 	}
 
 	/** Deletes all FileTag records from the database.
@@ -229,6 +358,14 @@ public class FileTagDAO extends AbstractDAO<FileTag, String> {
 		} finally {
 			SQLiteRepository.closeQuietly(conn);
 		}
+
+		// deleting the tags cascades to every file's taggings
+		publishChange(RepositoryChange.Entity.TAG,
+					  RepositoryChange.Kind.RESET,
+					  Collections.<Integer>emptySet());
+		publishChange(RepositoryChange.Entity.FILE,
+					  RepositoryChange.Kind.RESET,
+					  Collections.<Integer>emptySet());
 	}
 
 }
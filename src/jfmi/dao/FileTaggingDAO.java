@@ -5,11 +5,15 @@ import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
 import jfmi.app.FileTagging;
 import static jfmi.app.FileTaggingSorters.SQLPrimaryKeySorter;
+import jfmi.repo.RepositoryChange;
 import jfmi.repo.SQLiteRepository;
 
 
@@ -22,34 +26,58 @@ public class FileTaggingDAO extends AbstractDAO<FileTagging, Integer> {
 	public static final String TABLE_NAME = "main.FileTagging";
 
 	// PRIVATE CLASS Fields
+	private static final String SELECT_SQL;
 	private static final String CREATE_PSQL;
 	private static final String READ_BY_ID_PSQL;
 	private static final String READ_BY_FILEID_PSQL;
+	private static final String READ_FILEIDS_BY_TAG_PSQL;
 	private static final String READ_ALL_SQL;
 	private static final String UPDATE_PSQL;
 	private static final String DELETE_PSQL;
 	private static final String DELETE_BY_TAG_PSQL;
 	private static final String DELETE_ALL_SQL;
 
+	private static final BatchInserter.RowBinder<FileTagging> CREATE_BINDER;
+
 	static {
-		CREATE_PSQL = "INSERT INTO " + TABLE_NAME + "(fileId, tag, comment)"
+		/* Taggings store the tagId of their tag, and reads join the tag's
+		   value back in. */
+		SELECT_SQL = "SELECT t.taggingId AS taggingId, t.fileId AS fileId,"
+				   + " t.tagId AS tagId, g.tag AS tag, t.comment AS comment"
+				   + " FROM " + TABLE_NAME + " t"
+				   + " JOIN " + FileTagDAO.TABLE_NAME + " g"
+				   + " ON g.tagId = t.tagId ";
+
+		CREATE_PSQL = "INSERT INTO " + TABLE_NAME + "(fileId, tagId, comment)"
 		   			+ " VALUES(?, ?, ?)";
 
-		READ_BY_ID_PSQL = "SELECT * FROM " + TABLE_NAME 
-						+ " WHERE taggingId = ? ";
+		CREATE_BINDER = new BatchInserter.RowBinder<FileTagging>() {
+			public void bind(PreparedStatement ps, FileTagging tagging)
+				throws SQLException
+			{
+				ps.setInt(1, tagging.getFileId());
+				ps.setInt(2, tagging.getTagId());
+				ps.setString(3, tagging.getComment());
+			}
+		};
+
+		READ_BY_ID_PSQL = SELECT_SQL + " WHERE t.taggingId = ? ";
 
-		READ_BY_FILEID_PSQL = "SELECT * FROM " + TABLE_NAME 
-							+ " WHERE fileId = ? ";
+		READ_BY_FILEID_PSQL = SELECT_SQL + " WHERE t.fileId = ? ";
 
-		READ_ALL_SQL = "SELECT * FROM " + TABLE_NAME;
+		READ_FILEIDS_BY_TAG_PSQL = "SELECT DISTINCT fileId FROM " + TABLE_NAME
+								 + " WHERE tagId = ? ";
+
+		READ_ALL_SQL = SELECT_SQL;
 
 		UPDATE_PSQL = "UPDATE " + TABLE_NAME 
-					+ " SET taggingId = ?, fileId = ?, tag = ?, comment = ? " 
-					+ " WHERE taggingId = ? ";
+					+ " SET taggingId = ?, fileId = ?, tagId = ?,"
+					+ " comment = ? WHERE taggingId = ? ";
 
 		DELETE_PSQL = "DELETE FROM " + TABLE_NAME + " WHERE taggingId = ? ";
 
-		DELETE_BY_TAG_PSQL = "DELETE FROM " + TABLE_NAME + " WHERE tag = ? ";
+		DELETE_BY_TAG_PSQL = "DELETE FROM " + TABLE_NAME
+						   + " WHERE tagId = ? ";
 
 		DELETE_ALL_SQL = "DELETE FROM " + TABLE_NAME;
 	}
@@ -59,7 +87,8 @@ public class FileTaggingDAO extends AbstractDAO<FileTagging, Integer> {
 	// PUBLIC INSTANCE Methods
 	//************************************************************
 
-	/** Creates a new FileTagging record in the underlying database.
+	/** Creates a new FileTagging record in the underlying database. The
+	  tagging's tag is identified by its tag id.
 	  @param createMe a FileTagging instance containing the necessary information
 					  to replicate it in the database
 	  @return true if the record was created successfully
@@ -67,17 +96,16 @@ public class FileTaggingDAO extends AbstractDAO<FileTagging, Integer> {
 	  */
 	public boolean create(FileTagging createMe) throws SQLException
 	{
+		boolean created;
 		Connection conn = SQLiteRepository.instance().getConnection();
 
 		try {
 			PreparedStatement ps = conn.prepareStatement(CREATE_PSQL);
 
 			try {
-				ps.setInt(1, createMe.getFileId());
-				ps.setString(2, createMe.getTag());
-				ps.setString(3, createMe.getComment());
+				CREATE_BINDER.bind(ps, createMe);
 
-				return ps.executeUpdate() == 1;	// 1 row should be created
+				created = ps.executeUpdate() == 1;	// 1 row should be created
 				
 			} finally {
 				SQLiteRepository.closeQuietly(ps);				
@@ -86,6 +114,38 @@ public class FileTaggingDAO extends AbstractDAO<FileTagging, Integer> {
 		} finally {
 			SQLiteRepository.closeQuietly(conn);
 		}
+
+		if (created) {
+			publishFileUpdated(createMe.getFileId());
+		}
+
+		return created;
+	}
+
+	/** Creates a new FileTagging record for each of the specified taggings,
+	  using batched inserts which are committed once per batch.
+	  @param createUs the FileTaggings to create records for
+	  @return the number of records created, and the taggings which failed
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public BatchResult<FileTagging> createAll(Collection<FileTagging> createUs)
+		throws SQLException
+	{
+		BatchInserter<FileTagging> inserter;
+		inserter = new BatchInserter<FileTagging>(CREATE_PSQL, CREATE_BINDER);
+
+		BatchResult<FileTagging> result;
+		result = inserter.insertAll(createUs, getBatchSize());
+
+		Set<Integer> fileIds = new TreeSet<Integer>();
+		for (FileTagging tagging : getCreated(createUs, result)) {
+			fileIds.add(tagging.getFileId());
+		}
+
+		publishChange(RepositoryChange.Entity.FILE,
+					  RepositoryChange.Kind.UPDATED, fileIds);
+
+		return result;
 	}
 
 	/** Reads all FileTagging records from the database.
@@ -94,7 +154,7 @@ public class FileTaggingDAO extends AbstractDAO<FileTagging, Integer> {
 	  */
 	public SortedSet<FileTagging> readAll() throws SQLException
 	{
-		Connection conn = SQLiteRepository.instance().getConnection();
+		Connection conn = SQLiteRepository.instance().getReadConnection();
 
 		try {
 			Statement stmt = conn.createStatement();
@@ -111,6 +171,7 @@ public class FileTaggingDAO extends AbstractDAO<FileTagging, Integer> {
 						next = new FileTagging();
 						next.setTaggingId(rs.getInt("taggingId"));
 						next.setFileId(rs.getInt("fileId"));
+						next.setTagId(rs.getInt("tagId"));
 						next.setTag(rs.getString("tag"));
 						next.setComment(rs.getString("comment"));
 
@@ -140,7 +201,7 @@ public class FileTaggingDAO extends AbstractDAO<FileTagging, Integer> {
 	  */
 	public FileTagging readById(Integer id) throws SQLException
 	{
-		Connection conn = SQLiteRepository.instance().getConnection();
+		Connection conn = SQLiteRepository.instance().getReadConnection();
 
 		try {
 			PreparedStatement ps = conn.prepareStatement(READ_BY_ID_PSQL);
@@ -156,6 +217,7 @@ public class FileTaggingDAO extends AbstractDAO<FileTagging, Integer> {
 						result = new FileTagging();
 						result.setTaggingId(id);
 						result.setFileId(rs.getInt("fileId"));
+						result.setTagId(rs.getInt("tagId"));
 						result.setTag(rs.getString("tag"));
 						result.setComment(rs.getString("comment"));
 					}
@@ -183,7 +245,7 @@ public class FileTaggingDAO extends AbstractDAO<FileTagging, Integer> {
 	  */
 	public SortedSet<FileTagging> readByFileId(int fileId) throws SQLException
 	{
-		Connection conn = SQLiteRepository.instance().getConnection();	
+		Connection conn = SQLiteRepository.instance().getReadConnection();	
 
 		try {
 			PreparedStatement ps = conn.prepareStatement(READ_BY_FILEID_PSQL);
@@ -201,6 +263,7 @@ public class FileTaggingDAO extends AbstractDAO<FileTagging, Integer> {
 						next = new FileTagging();
 						next.setTaggingId(rs.getInt("taggingId"));
 						next.setFileId(fileId);
+						next.setTagId(rs.getInt("tagId"));
 						next.setTag(rs.getString("tag"));
 						next.setComment(rs.getString("comment"));
 
@@ -257,6 +320,12 @@ public class FileTaggingDAO extends AbstractDAO<FileTagging, Integer> {
 			} catch (SQLException e) {
 			}
 
+			try {
+				tagging.setTagId(rs.getInt("tagId"));
+				aFieldIsSet = true;
+			} catch (SQLException e) {
+			}
+
 			try {
 				tagging.setTag(rs.getString("tag"));
 				aFieldIsSet = true;
@@ -278,6 +347,87 @@ public class FileTaggingDAO extends AbstractDAO<FileTagging, Integer> {
 		return taggings;
 	}
 
+	/** Opens a cursor which reads FileTagging records from the database one
+	  at a time.
+	  @param fetchSize the number of rows to fetch from the database at a time
+	  @return a cursor over all FileTagging records
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public RecordCursor<FileTagging> openCursor(int fetchSize)
+		throws SQLException
+	{
+		Connection conn = SQLiteRepository.instance().getReadConnection();
+		Statement stmt = null;
+
+		try {
+			stmt = conn.createStatement();
+			stmt.setFetchSize(fetchSize);
+			ResultSet rs = stmt.executeQuery(READ_ALL_SQL);
+
+			return new ResultSetCursor<FileTagging>(conn, stmt, rs) {
+				protected FileTagging readRecord(ResultSet rs)
+					throws SQLException
+				{
+					FileTagging next = new FileTagging();
+					next.setTaggingId(rs.getInt("taggingId"));
+					next.setFileId(rs.getInt("fileId"));
+					next.setTagId(rs.getInt("tagId"));
+					next.setTag(rs.getString("tag"));
+					next.setComment(rs.getString("comment"));
+
+					return next;
+				}
+			};
+
+		} catch (SQLException e) {
+			if (stmt != null) {
+				SQLiteRepository.closeQuietly(stmt);
+			}
+			SQLiteRepository.closeQuietly(conn);
+			throw e;
+		}
+	}
+
+	/** Reads the ids of the files tagged with the specified tag.
+	  @param tagId the tag id to look for
+	  @return the ids of the files having a tagging with the tag
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public Set<Integer> readFileIdsByTag(int tagId) throws SQLException
+	{
+		Connection conn = SQLiteRepository.instance().getReadConnection();
+
+		try {
+			PreparedStatement ps = conn.prepareStatement(
+											READ_FILEIDS_BY_TAG_PSQL
+										);
+
+			try {
+				ps.setInt(1, tagId);
+				ResultSet rs = ps.executeQuery();
+
+				try {
+					Set<Integer> fileIds = new TreeSet<Integer>();
+
+					while (rs.next()) {
+						fileIds.add(rs.getInt("fileId"));
+					}
+
+					return fileIds;
+
+				} finally {
+					SQLiteRepository.closeQuietly(rs);
+				}
+
+			} finally {
+				SQLiteRepository.closeQuietly(ps);
+			}
+
+		} finally {
+			SQLiteRepository.closeQuietly(conn);
+		}
+	}
+
 	/** Updates the specified FileTagging's corresponding record in the database,
 	  if it exists.
 	  @param updateMe the FileTagging whose information will update the record 
@@ -287,6 +437,7 @@ public class FileTaggingDAO extends AbstractDAO<FileTagging, Integer> {
 	  */
 	public boolean update(FileTagging updateMe, Integer id) throws SQLException
 	{
+		boolean updated;
 		Connection conn = SQLiteRepository.instance().getConnection();
 
 		try {
@@ -295,11 +446,11 @@ public class FileTaggingDAO extends AbstractDAO<FileTagging, Integer> {
 			try {
 				ps.setInt(1, updateMe.getTaggingId());
 				ps.setInt(2, updateMe.getFileId());
-				ps.setString(3, updateMe.getTag());
+				ps.setInt(3, updateMe.getTagId());
 				ps.setString(4, updateMe.getComment());
 				ps.setInt(5, id);
 
-				return ps.executeUpdate() == 1;	// 1 row should be updated
+				updated = ps.executeUpdate() == 1;	// 1 row should be updated
 				
 			} finally {
 				SQLiteRepository.closeQuietly(ps);				
@@ -308,6 +459,12 @@ public class FileTaggingDAO extends AbstractDAO<FileTagging, Integer> {
 		} finally {
 			SQLiteRepository.closeQuietly(conn);
 		}
+
+		if (updated) {
+			publishFileUpdated(updateMe.getFileId());
+		}
+
+		return updated;
 	}
 
 	/** Deletes the specified FileTagging's corresponding record from the 
@@ -318,6 +475,7 @@ public class FileTaggingDAO extends AbstractDAO<FileTagging, Integer> {
 	  */
 	public boolean delete(FileTagging deleteMe) throws SQLException
 	{
+		int rowCount;
 		Connection conn = SQLiteRepository.instance().getConnection();
 
 		try {
@@ -325,9 +483,7 @@ public class FileTaggingDAO extends AbstractDAO<FileTagging, Integer> {
 
 			try {
 				ps.setInt(1, deleteMe.getTaggingId());
-				int rowCount = ps.executeUpdate();
-
-				return rowCount == 0 || rowCount == 1;
+				rowCount = ps.executeUpdate();
 				
 			} finally {
 				SQLiteRepository.closeQuietly(ps);				
@@ -336,22 +492,29 @@ public class FileTaggingDAO extends AbstractDAO<FileTagging, Integer> {
 		} finally {
 			SQLiteRepository.closeQuietly(conn);
 		}
+
+		if (rowCount == 1) {
+			publishFileUpdated(deleteMe.getFileId());
+		}
+
+		return rowCount == 0 || rowCount == 1;
 	}
 
 	/** Deletes a FileTaggings from the database based on the specified
-	  tag value.
-	  @param tag the tag string value to identify target records by
+	  tag id.
+	  @param tagId the tag id to identify target records by
 	  @throws SQLException if a problem occurs working with the database
 	  */
-	public void deleteByTag(String tag) throws SQLException
+	public void deleteByTag(int tagId) throws SQLException
 	{
+		Set<Integer> fileIds = readFileIdsByTag(tagId);
 		Connection conn = SQLiteRepository.instance().getConnection();
 
 		try {
 			PreparedStatement ps = conn.prepareStatement(DELETE_BY_TAG_PSQL);
 
 			try {
-				ps.setString(1, tag.toString());
+				ps.setInt(1, tagId);
 				ps.executeUpdate();
 
 			} finally {
@@ -361,6 +524,9 @@ public class FileTaggingDAO extends AbstractDAO<FileTagging, Integer> {
 		} finally {
 			SQLiteRepository.closeQuietly(conn);
 		}	
+
+		publishChange(RepositoryChange.Entity.FILE,
+					  RepositoryChange.Kind.UPDATED, fileIds);
 	}
 
 	/** Deletes all FileTagging records from the database.
@@ -383,6 +549,25 @@ public class FileTaggingDAO extends AbstractDAO<FileTagging, Integer> {
 		} finally {
 			SQLiteRepository.closeQuietly(conn);
 		}
+
+		publishChange(RepositoryChange.Entity.FILE,
+					  RepositoryChange.Kind.RESET,
+					  Collections.<Integer>emptySet());
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASS Methods
+	//************************************************************
+
+	/** Publishes an update of the file whose taggings changed.
+	  @param fileId the id of the file
+	  */
+	private static void publishFileUpdated(int fileId)
+	{
+		publishChange(RepositoryChange.Entity.FILE,
+					  RepositoryChange.Kind.UPDATED,
+					  Collections.singleton(fileId));
 	}
 
 }
@@ -0,0 +1,51 @@
+package jfmi.dao;
+
+import java.util.Collections;
+import java.util.List;
+
+
+/** A Page holds one page of records read in a fixed ordering, together with
+  the token needed to read the page which follows it.
+  */
+public class Page<T> {
+
+	// PRIVATE INSTANCE Fields
+	private final List<T> items;
+	private final PageToken nextToken;
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs a Page of the specified items.
+	  @param items_ the records on the page, in order
+	  @param nextToken_ the token for the following page, or null if this is
+	  		the last page
+	  */
+	public Page(List<T> items_, PageToken nextToken_)
+	{
+		items = Collections.unmodifiableList(items_);
+		nextToken = nextToken_;
+	}
+
+	/** @return the records on this page, in order */
+	public List<T> getItems()
+	{
+		return items;
+	}
+
+	/** @return the token for reading the following page, or null if there
+	  		are no more records */
+	public PageToken getNextToken()
+	{
+		return nextToken;
+	}
+
+	/** @return true if there are records after this page */
+	public boolean hasNext()
+	{
+		return nextToken != null;
+	}
+
+}
@@ -0,0 +1,75 @@
+package jfmi.dao;
+
+
+/** A PageToken marks where one page of TaggedFile records ended, so that the
+  next page can be read by seeking past it rather than by skipping rows. It
+  records the ordering being paged through, along with the sort key and
+  file id of the last record on the page.
+  */
+public final class PageToken {
+
+	// PRIVATE INSTANCE Fields
+	private final TaggedFileOrder order;
+	private final boolean ascending;
+	private final String sortKey;
+	private final int fileId;
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs a PageToken positioned after the specified record.
+	  @param order_ the ordering being paged through
+	  @param ascending_ true if the ordering is ascending
+	  @param sortKey_ the sort key of the last record read
+	  @param fileId_ the file id of the last record read
+	  @throws NullPointerException if order_ or sortKey_ is null
+	  */
+	public PageToken(TaggedFileOrder order_, boolean ascending_,
+					 String sortKey_, int fileId_)
+	{
+		if (order_ == null || sortKey_ == null) {
+			throw new NullPointerException("order_ and sortKey_ cannot be null");
+		}
+
+		order = order_;
+		ascending = ascending_;
+		sortKey = sortKey_;
+		fileId = fileId_;
+	}
+
+	/** @return the ordering being paged through */
+	public TaggedFileOrder getOrder()
+	{
+		return order;
+	}
+
+	/** @return true if the ordering is ascending */
+	public boolean isAscending()
+	{
+		return ascending;
+	}
+
+	/** @return the sort key of the last record read */
+	public String getSortKey()
+	{
+		return sortKey;
+	}
+
+	/** @return the file id of the last record read */
+	public int getFileId()
+	{
+		return fileId;
+	}
+
+	/** Returns a String representation of this token.
+	  @return a String representation of this token
+	  */
+	public String toString()
+	{
+		return order + (ascending ? " ASC" : " DESC") + " after (" + sortKey
+				+ ", " + fileId + ")";
+	}
+
+}
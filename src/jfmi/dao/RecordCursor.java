@@ -0,0 +1,22 @@
+package jfmi.dao;
+
+import java.util.Iterator;
+
+
+/** A RecordCursor iterates over stored records, reading each record from
+  the underlying storage only when it is requested. A cursor holds storage
+  resources, such as a database connection, until it is closed; it closes
+  itself once its last record has been read, but a client which stops
+  iterating early must call close().
+
+  Failures while reading a record are reported by hasNext() and next() as
+  a DAOException.
+  */
+public interface RecordCursor<T> extends Iterator<T>, AutoCloseable {
+
+	/** Releases the storage resources held by the cursor. Closing a cursor
+	  which is already closed has no effect.
+	  */
+	public void close();
+
+}
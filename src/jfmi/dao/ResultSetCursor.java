@@ -0,0 +1,144 @@
+package jfmi.dao;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.NoSuchElementException;
+
+import jfmi.repo.SQLiteRepository;
+
+
+/** A ResultSetCursor is a RecordCursor which reads its records lazily from
+  an open JDBC ResultSet. Subclasses convert the current row (or a run of
+  adjacent rows) into a record in readRecord().
+  */
+abstract class ResultSetCursor<T> implements RecordCursor<T> {
+
+	// PRIVATE INSTANCE Fields
+	private Connection conn;
+	private Statement stmt;
+	private ResultSet rs;
+
+	private boolean onUnreadRow;
+	private boolean exhausted;
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Releases the cursor's ResultSet, Statement and Connection.
+	  */
+	public void close()
+	{
+		exhausted = true;
+		onUnreadRow = false;
+
+		if (rs != null) {
+			SQLiteRepository.closeQuietly(rs);
+			rs = null;
+		}
+
+		if (stmt != null) {
+			SQLiteRepository.closeQuietly(stmt);
+			stmt = null;
+		}
+
+		if (conn != null) {
+			SQLiteRepository.closeQuietly(conn);
+			conn = null;
+		}
+	}
+
+	/** Indicates whether another record can be read.
+	  @return true if next() will return a record
+	  @throws DAOException if the next row can not be read
+	  */
+	public boolean hasNext()
+	{
+		if (!onUnreadRow && !exhausted) {
+			advance();
+		}
+
+		return onUnreadRow;
+	}
+
+	/** Reads the next record.
+	  @return the next record
+	  @throws NoSuchElementException if there are no more records
+	  @throws DAOException if the record can not be read
+	  */
+	public T next()
+	{
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		onUnreadRow = false;
+
+		try {
+			return readRecord(rs);
+		} catch (SQLException e) {
+			close();
+			throw new DAOException("Failed to read a record.", e);
+		}
+	}
+
+	/** Records can not be removed through a cursor.
+	  @throws UnsupportedOperationException always
+	  */
+	public void remove()
+	{
+		throw new UnsupportedOperationException("remove() is not supported");
+	}
+
+
+	//************************************************************
+	// PROTECTED INSTANCE Methods
+	//************************************************************
+
+	/** Constructs a cursor which takes ownership of the specified resources.
+	  @param conn_ the connection the query was executed on
+	  @param stmt_ the statement which produced the result set
+	  @param rs_ the result set to read records from
+	  */
+	protected ResultSetCursor(Connection conn_, Statement stmt_, ResultSet rs_)
+	{
+		conn = conn_;
+		stmt = stmt_;
+		rs = rs_;
+	}
+
+	/** Moves the ResultSet to the following row. A readRecord()
+	  implementation which reads past the end of its record calls this to
+	  consume rows; the row it stops on is returned by the next call to
+	  readRecord(). When the rows run out the cursor closes itself.
+	  @return true if the ResultSet is positioned on an unread row
+	  @throws DAOException if the row can not be read
+	  */
+	protected boolean advance()
+	{
+		try {
+			onUnreadRow = rs.next();
+		} catch (SQLException e) {
+			close();
+			throw new DAOException("Failed to read the next row.", e);
+		}
+
+		if (!onUnreadRow) {
+			close();
+		}
+
+		return onUnreadRow;
+	}
+
+	/** Converts the current row of the ResultSet into a record. The
+	  ResultSet is positioned on a row which has not yet been read.
+	  @param rs the ResultSet to read from
+	  @return the record read
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	protected abstract T readRecord(ResultSet rs) throws SQLException;
+
+}
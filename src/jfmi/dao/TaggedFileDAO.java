@@ -4,17 +4,32 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.util.Iterator;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
+import jfmi.app.FileFingerprint;
+import jfmi.app.FileStatus;
 import jfmi.app.FileTag;
 import jfmi.app.TaggedFile;
 import static jfmi.app.TaggedFileSorters.SQLPrimaryKeySorter;
 import jfmi.app.FileTagging;
+import jfmi.app.FileTaggingSorters;
+import jfmi.repo.RepositoryChange;
 import jfmi.repo.SQLiteRepository;
+import jfmi.repo.Transaction;
 import jfmi.util.StringUtil;
 
 
@@ -26,43 +41,223 @@ public class TaggedFileDAO extends AbstractDAO<TaggedFile, Integer> {
 	// PUBLIC CLASS Fields
 	public static final String TABLE_NAME = "main.TaggedFile";
 
+	/** The largest number of tags bound to a single tag search query. */
+	public static final int MAX_TAG_BUCKET = 256;
+
+	/** The largest number of file ids bound to a single read by ids. */
+	public static final int MAX_ID_BUCKET = 256;
+
 	// PRIVATE CLASS Fields
 	private static final String CREATE_PSQL;
+	private static final String FILE_COLUMNS_SQL;
+	private static final String FILE_TABLES_SQL;
+	private static final String JOINED_SELECT_SQL;
+	private static final String JOINED_ORDER_SQL;
 	private static final String READ_ALL_SQL;
-	private static final String READ_BY_COMMENT_KEYWORDS_SQL;
+	private static final String READ_BY_COMMENT_MATCH_PSQL;
 	private static final String READ_BY_ID_PSQL;
+	private static final String[] READ_BY_IDS_PSQL;
+	private static final String[] READ_FILES_BY_IDS_PSQL;
+	private static final String READ_ID_BY_PATH_PSQL;
+	private static final String READ_DIR_ID_PSQL;
 	private static final String READ_BY_PATH_LIKE_PSQL;
+	private static final String READ_BY_DIRECTORY_PSQL;
+	private static final String READ_DIRECTORIES_NOCASE_PSQL;
 	private static final String READ_BY_TAGS_SQL;
+	private static final String[] READ_BY_TAGS_PSQL;
 	private static final String UPDATE_PSQL;
+	private static final String UPDATE_MISSING_PSQL;
+	private static final String READ_ALL_STATUS_SQL;
+	private static final String UPDATE_STATUS_PSQL;
+	private static final String READ_UNFINGERPRINTED_SQL;
+	private static final String READ_MISSING_SIZES_SQL;
+	private static final String READ_MISSING_BY_FINGERPRINT_PSQL;
+	private static final String UPDATE_FINGERPRINT_PSQL;
 	private static final String DELETE_PSQL;
 	private static final String DELETE_ALL_SQL;
+	private static final String DELETE_ALL_DIRECTORIES_SQL;
+	private static final String COUNT_SQL;
 
-	static {
-		CREATE_PSQL = "INSERT INTO " + TABLE_NAME + "(path) VALUES(?)";
-
-		READ_ALL_SQL = "SELECT * FROM " + TABLE_NAME;
+	private static final BatchInserter.RowBinder<TaggedFile> CREATE_BINDER;
+	private static final BatchInserter.KeySetter<TaggedFile> CREATE_KEY_SETTER;
 
-		READ_BY_COMMENT_KEYWORDS_SQL = "SELECT file.fileId, file.path "
-						+ " FROM " + TABLE_NAME + " file, "
-						+ FileTaggingDAO.TABLE_NAME + " t "
-						+ " WHERE file.fileId = t.fileId ";
-
-		READ_BY_ID_PSQL = "SELECT * FROM " + TABLE_NAME + " WHERE fileId = ? ";
-
-		READ_BY_TAGS_SQL = "SELECT file.fileId, file.path "
-		  				+ " FROM " + TABLE_NAME + " file, "
-						+ FileTaggingDAO.TABLE_NAME + " t "
-						+ " WHERE file.fileId = t.fileId ";
-
-		READ_BY_PATH_LIKE_PSQL = "SELECT * FROM " + TABLE_NAME
-						+ " WHERE path LIKE ? ";
+	static {
+		/* A file is stored as its directory and its name; its directory must
+		   be created first. See DirectoryDAO. */
+		CREATE_PSQL = "INSERT INTO " + TABLE_NAME + "(dirId, name)"
+					+ " VALUES((SELECT dirId FROM " + DirectoryDAO.TABLE_NAME
+					+ " WHERE path = ?), ?)";
+
+		CREATE_BINDER = new BatchInserter.RowBinder<TaggedFile>() {
+			public void bind(PreparedStatement ps, TaggedFile file)
+				throws SQLException
+			{
+				bindPath(ps, 1, file.getFilePath());
+			}
+		};
 
+		CREATE_KEY_SETTER = new BatchInserter.KeySetter<TaggedFile>() {
+			public void setKey(TaggedFile file, int rowId)
+			{
+				file.setFileId(rowId);
+			}
+		};
+
+		/* A file's path is the path of its directory followed by its name. */
+		FILE_COLUMNS_SQL = " file.fileId AS fileId,"
+						 + " d.path || file.name AS path,"
+						 + " file.missing AS missing ";
+
+		FILE_TABLES_SQL = " " + TABLE_NAME + " file"
+						+ " JOIN " + DirectoryDAO.TABLE_NAME + " d"
+						+ " ON d.dirId = file.dirId ";
+
+		/* Every read selects files joined to their taggings, ordered so that
+		   the rows of each file are adjacent. readFromResultSet() groups the
+		   rows back into TaggedFiles in a single pass. */
+		JOINED_SELECT_SQL = "SELECT" + FILE_COLUMNS_SQL + ","
+						+ " t.taggingId AS taggingId, t.tagId AS tagId,"
+						+ " g.tag AS tag, t.comment AS comment "
+						+ " FROM " + FILE_TABLES_SQL
+						+ " LEFT JOIN " + FileTaggingDAO.TABLE_NAME + " t "
+						+ " ON file.fileId = t.fileId "
+						+ " LEFT JOIN " + FileTagDAO.TABLE_NAME + " g "
+						+ " ON g.tagId = t.tagId ";
+
+		JOINED_ORDER_SQL = " ORDER BY file.fileId, t.taggingId";
+
+		READ_ALL_SQL = JOINED_SELECT_SQL + JOINED_ORDER_SQL;
+
+		/* Files are ranked by the summed score of their matching comments.
+		   matchinfo() can only be called while the full-text table is being
+		   scanned for the MATCH, so the scores are computed in a subquery
+		   over that table alone. Its "LIMIT -1" keeps SQLite from
+		   flattening the subquery into the join. */
+		READ_BY_COMMENT_MATCH_PSQL = "SELECT" + FILE_COLUMNS_SQL + ","
+						+ " t.taggingId AS taggingId, t.tagId AS tagId,"
+						+ " g.tag AS tag, t.comment AS comment "
+						+ " FROM (SELECT tagging.fileId AS fileId,"
+						+ " SUM(m.score) AS rank FROM (SELECT docid, "
+						+ SQLiteRepository.FTS_RANK_FUNCTION
+						+ "(matchinfo(FileTaggingComment)) AS score"
+						+ " FROM main.FileTaggingComment"
+						+ " WHERE FileTaggingComment MATCH ? LIMIT -1) m"
+						+ " JOIN " + FileTaggingDAO.TABLE_NAME + " tagging"
+						+ " ON tagging.taggingId = m.docid"
+						+ " GROUP BY tagging.fileId) r "
+						+ " JOIN " + TABLE_NAME + " file"
+						+ " ON file.fileId = r.fileId "
+						+ " JOIN " + DirectoryDAO.TABLE_NAME + " d"
+						+ " ON d.dirId = file.dirId "
+						+ " LEFT JOIN " + FileTaggingDAO.TABLE_NAME + " t "
+						+ " ON file.fileId = t.fileId "
+						+ " LEFT JOIN " + FileTagDAO.TABLE_NAME + " g "
+						+ " ON g.tagId = t.tagId "
+						+ " ORDER BY r.rank DESC, file.fileId, t.taggingId";
+
+		READ_BY_ID_PSQL = JOINED_SELECT_SQL + " WHERE file.fileId = ? "
+						+ JOINED_ORDER_SQL;
+
+		READ_ID_BY_PATH_PSQL = "SELECT file.fileId FROM " + FILE_TABLES_SQL
+							 + " WHERE d.path = ? AND file.name = ? ";
+
+		READ_DIR_ID_PSQL = "SELECT dirId FROM " + TABLE_NAME
+						 + " WHERE fileId = ? ";
+
+		READ_BY_TAGS_SQL = JOINED_SELECT_SQL
+						+ " WHERE file.fileId IN (SELECT fileId FROM "
+						+ FileTaggingDAO.TABLE_NAME + " WHERE tagId IN"
+						+ " (SELECT tagId FROM " + FileTagDAO.TABLE_NAME
+						+ " WHERE tag IN (";
+
+		/* Tag searches bind their tags to an IN list; see
+		   buildBucketedSql(). */
+		READ_BY_TAGS_PSQL = buildBucketedSql(READ_BY_TAGS_SQL,
+											 "))) " + JOINED_ORDER_SQL,
+											 MAX_TAG_BUCKET);
+
+		/* Files are read by id in the same buckets as tag searches. */
+		READ_BY_IDS_PSQL = buildBucketedSql(JOINED_SELECT_SQL
+											+ " WHERE file.fileId IN (",
+											") " + JOINED_ORDER_SQL,
+											MAX_ID_BUCKET);
+
+		READ_FILES_BY_IDS_PSQL = buildBucketedSql("SELECT" + FILE_COLUMNS_SQL
+								+ " FROM " + FILE_TABLES_SQL
+								+ " WHERE file.fileId IN (",
+								") ORDER BY file.fileId", MAX_ID_BUCKET);
+
+		READ_BY_PATH_LIKE_PSQL = JOINED_SELECT_SQL
+						+ " WHERE d.path || file.name LIKE ? "
+						+ JOINED_ORDER_SQL;
+
+		/* The directories under a directory are a range of paths; see
+		   DirectoryDAO. */
+		READ_BY_DIRECTORY_PSQL = JOINED_SELECT_SQL
+						+ " WHERE d.path >= ? AND d.path < ? "
+						+ JOINED_ORDER_SQL;
+
+		READ_DIRECTORIES_NOCASE_PSQL = "SELECT dirId, path FROM "
+						+ DirectoryDAO.TABLE_NAME
+						+ " WHERE path = ? COLLATE NOCASE";
+
+		/* A file found at a new path is no longer missing. */
 		UPDATE_PSQL = "UPDATE " + TABLE_NAME 
-					+ " SET fileId = ?, path = ? WHERE fileId = ? ";
+					+ " SET fileId = ?1, dirId = (SELECT dirId FROM "
+					+ DirectoryDAO.TABLE_NAME + " WHERE path = ?2), name = ?3,"
+					+ " missing = CASE WHEN dirId = (SELECT dirId FROM "
+					+ DirectoryDAO.TABLE_NAME + " WHERE path = ?2)"
+					+ " AND name = ?3 THEN missing ELSE 0 END"
+					+ " WHERE fileId = ?4 ";
+
+		UPDATE_MISSING_PSQL = "UPDATE " + TABLE_NAME + " SET missing = ? "
+							+ " WHERE fileId = ? AND missing <> ? ";
+
+		/* Statuses are read in directory order, so that the files of a
+		   directory are adjacent. */
+		READ_ALL_STATUS_SQL = "SELECT" + FILE_COLUMNS_SQL + ", file.size AS"
+							+ " size, file.modified AS modified,"
+							+ " file.dirModified AS dirModified"
+							+ " FROM " + FILE_TABLES_SQL
+							+ " ORDER BY d.path, file.name";
+
+		/* A file whose size or modification time changed has new contents,
+		   so its fingerprint is discarded. */
+		UPDATE_STATUS_PSQL = "UPDATE " + TABLE_NAME + " SET"
+			+ " fingerprint = CASE WHEN size IS ?1 AND modified IS ?2"
+			+ " THEN fingerprint END,"
+			+ " fullHash = CASE WHEN size IS ?1 AND modified IS ?2"
+			+ " THEN fullHash END,"
+			+ " size = ?1, modified = ?2, dirModified = ?3 WHERE fileId = ?4 ";
+
+		READ_UNFINGERPRINTED_SQL = "SELECT" + FILE_COLUMNS_SQL + ","
+								 + " file.size AS size,"
+								 + " file.modified AS modified,"
+								 + " file.dirModified AS dirModified"
+								 + " FROM " + FILE_TABLES_SQL
+								 + " WHERE file.fingerprint IS NULL"
+								 + " AND file.missing = 0"
+								 + " ORDER BY d.path, file.name";
+
+		READ_MISSING_SIZES_SQL = "SELECT DISTINCT size FROM " + TABLE_NAME
+							   + " WHERE missing = 1"
+							   + " AND fingerprint IS NOT NULL";
+
+		READ_MISSING_BY_FINGERPRINT_PSQL = "SELECT fileId, size, modified,"
+			+ " fingerprint, fullHash FROM " + TABLE_NAME
+			+ " WHERE fingerprint = ? AND missing = 1";
+
+		UPDATE_FINGERPRINT_PSQL = "UPDATE " + TABLE_NAME + " SET size = ?,"
+								+ " modified = ?, fingerprint = ?, fullHash = ?"
+								+ " WHERE fileId = ? ";
 
 		DELETE_PSQL = "DELETE FROM " + TABLE_NAME + " WHERE fileId = ? ";
 
 		DELETE_ALL_SQL = "DELETE FROM " + TABLE_NAME;
+
+		DELETE_ALL_DIRECTORIES_SQL = "DELETE FROM " + DirectoryDAO.TABLE_NAME;
+
+		COUNT_SQL = "SELECT COUNT(*) FROM " + TABLE_NAME;
 	}
 		
 
@@ -70,7 +265,9 @@ public class TaggedFileDAO extends AbstractDAO<TaggedFile, Integer> {
 	// PUBLIC INSTANCE Methods
 	//************************************************************
 
-	/** Creates a new TaggedFile record in the underlying database.
+	/** Creates a new TaggedFile record in the underlying database. If the
+	  record is created, the TaggedFile's file id is set to the id of the
+	  record.
 	  @param createMe a TaggedFile instance containing the necessary information
 					  to replicate it in the database
 	  @return true if the record was created successfully
@@ -78,23 +275,90 @@ public class TaggedFileDAO extends AbstractDAO<TaggedFile, Integer> {
 	  */
 	public boolean create(TaggedFile createMe) throws SQLException
 	{
-		Connection conn = SQLiteRepository.instance().getConnection();
+		int fileId = -1;
+		Transaction tx = SQLiteRepository.instance().beginTransaction();
 
 		try {
+			Connection conn = tx.getConnection();
+			DirectoryDAO.createDirectories(conn, Collections.singleton(
+					StringUtil.parseDirectoryFromPath(createMe.getFilePath())));
+
 			PreparedStatement ps = conn.prepareStatement(CREATE_PSQL);
 
 			try {
-				ps.setString(1, createMe.getFilePath());
+				CREATE_BINDER.bind(ps, createMe);
 
-				return ps.executeUpdate() == 1;	// 1 row should be created
+				if (ps.executeUpdate() == 1) {	// 1 row should be created
+					fileId = readLastInsertId(conn);
+				}
 				
 			} finally {
 				SQLiteRepository.closeQuietly(ps);				
 			}
 
+			tx.commit();
+
 		} finally {
-			SQLiteRepository.closeQuietly(conn);
+			tx.close();
+		}
+
+		if (fileId < 0) {
+			return false;
+		}
+
+		createMe.setFileId(fileId);
+		publishChange(RepositoryChange.Entity.FILE,
+					  RepositoryChange.Kind.INSERTED,
+					  Collections.singleton(fileId));
+
+		return true;
+	}
+
+	/** Creates a new TaggedFile record for each of the specified files, using
+	  batched inserts which are committed once per batch. The files'
+	  directories are created first, in one transaction. The file id of
+	  each file whose record is created is set to the id of the record.
+	  @param createUs the TaggedFiles to create records for
+	  @return the number of records created, and the files which failed
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public BatchResult<TaggedFile> createAll(Collection<TaggedFile> createUs)
+		throws SQLException
+	{
+		if (createUs != null && !createUs.isEmpty()) {
+			Set<String> dirPaths = new HashSet<String>();
+			for (TaggedFile file : createUs) {
+				dirPaths.add(StringUtil.parseDirectoryFromPath(
+														file.getFilePath()));
+			}
+
+			Transaction tx = SQLiteRepository.instance().beginTransaction();
+
+			try {
+				DirectoryDAO.createDirectories(tx.getConnection(), dirPaths);
+				tx.commit();
+
+			} finally {
+				tx.close();
+			}
+		}
+
+		BatchInserter<TaggedFile> inserter;
+		inserter = new BatchInserter<TaggedFile>(CREATE_PSQL, CREATE_BINDER,
+												 CREATE_KEY_SETTER);
+
+		BatchResult<TaggedFile> result;
+		result = inserter.insertAll(createUs, getBatchSize());
+
+		List<Integer> ids = new ArrayList<Integer>();
+		for (TaggedFile file : getCreated(createUs, result)) {
+			ids.add(file.getFileId());
 		}
+
+		publishChange(RepositoryChange.Entity.FILE,
+					  RepositoryChange.Kind.INSERTED, ids);
+
+		return result;
 	}
 
 	/** Reads all TaggedFile records from the database.
@@ -103,7 +367,7 @@ public class TaggedFileDAO extends AbstractDAO<TaggedFile, Integer> {
 	  */
 	public SortedSet<TaggedFile> readAll() throws SQLException
 	{
-		Connection conn = SQLiteRepository.instance().getConnection();
+		Connection conn = SQLiteRepository.instance().getReadConnection();
 
 		try {
 			Statement stmt = conn.createStatement();
@@ -112,22 +376,9 @@ public class TaggedFileDAO extends AbstractDAO<TaggedFile, Integer> {
 				ResultSet rs = stmt.executeQuery(READ_ALL_SQL);
 
 				try {
-					FileTaggingDAO tDAO = new FileTaggingDAO();
 					SortedSet<TaggedFile> set;
 				    set = new TreeSet<TaggedFile>(new SQLPrimaryKeySorter());
-					TaggedFile next = null;
-
-					while (rs.next()) {
-						next = new TaggedFile();
-						next.setFileId(rs.getInt("fileId"));
-						next.setFilePath(rs.getString("path"));
-
-						SortedSet<FileTagging> tSet;
-					    tSet = tDAO.readByFileId(next.getFileId());
-						next.setFileTaggings(tSet);
-
-						set.add(next);
-					}
+					readJoinedRows(rs, set);
 
 					return set;
 
@@ -144,6 +395,72 @@ public class TaggedFileDAO extends AbstractDAO<TaggedFile, Integer> {
 		}
 	}
 
+	/** Opens a cursor which reads TaggedFile records, together with their
+	  taggings, from the database one file at a time.
+	  @param fetchSize the number of rows to fetch from the database at a time
+	  @return a cursor over all TaggedFile records, in file id order
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public RecordCursor<TaggedFile> openCursor(int fetchSize)
+		throws SQLException
+	{
+		Connection conn = SQLiteRepository.instance().getReadConnection();
+		Statement stmt = null;
+
+		try {
+			stmt = conn.createStatement();
+			stmt.setFetchSize(fetchSize);
+			ResultSet rs = stmt.executeQuery(READ_ALL_SQL);
+
+			return new ResultSetCursor<TaggedFile>(conn, stmt, rs) {
+				protected TaggedFile readRecord(ResultSet rs)
+					throws SQLException
+				{
+					TaggedFile file = newFileFromRow(rs);
+					addTaggingFromRow(rs, file);
+
+					while (advance() && rs.getInt("fileId") == file.getFileId()) {
+						addTaggingFromRow(rs, file);
+					}
+
+					return file;
+				}
+			};
+
+		} catch (SQLException e) {
+			if (stmt != null) {
+				SQLiteRepository.closeQuietly(stmt);
+			}
+			SQLiteRepository.closeQuietly(conn);
+			throw e;
+		}
+	}
+
+	/** Opens a cursor which reads the FileStatus of every TaggedFile, without
+	  its taggings.
+	  @param fetchSize the number of rows to fetch from the database at a time
+	  @return a cursor over all file statuses, in path order
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public RecordCursor<FileStatus> openStatusCursor(int fetchSize)
+		throws SQLException
+	{
+		return openStatusCursor(READ_ALL_STATUS_SQL, fetchSize);
+	}
+
+	/** Opens a cursor which reads the FileStatus of every TaggedFile which
+	  has no fingerprint and is not missing.
+	  @param fetchSize the number of rows to fetch from the database at a time
+	  @return a cursor over the statuses of unfingerprinted files, in path
+	  		order
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public RecordCursor<FileStatus> openUnfingerprintedCursor(int fetchSize)
+		throws SQLException
+	{
+		return openStatusCursor(READ_UNFINGERPRINTED_SQL, fetchSize);
+	}
+
 	/** Retrieves the information necessary to create a TaggedFile object
 	  from the relevant database tables.
 	  @param id the file id of the record to search for
@@ -152,7 +469,7 @@ public class TaggedFileDAO extends AbstractDAO<TaggedFile, Integer> {
 	  */
 	public TaggedFile readById(Integer id) throws SQLException
 	{
-		Connection conn = SQLiteRepository.instance().getConnection();
+		Connection conn = SQLiteRepository.instance().getReadConnection();
 
 		try {
 			PreparedStatement ps = conn.prepareStatement(READ_BY_ID_PSQL);
@@ -162,19 +479,9 @@ public class TaggedFileDAO extends AbstractDAO<TaggedFile, Integer> {
 				ResultSet rs = ps.executeQuery();
 
 				try {
-					TaggedFile result = null;
-
-					if (rs.next()) {
-						result = new TaggedFile();
-						result.setFileId(id);
-						result.setFilePath(rs.getString("path"));	
-
-						FileTaggingDAO taggingDAO = new FileTaggingDAO();
-
-						result.setFileTaggings(taggingDAO.readByFileId(id));
-					}
+					SortedSet<TaggedFile> result = readFromResultSet(rs);
 
-					return result;
+					return result.isEmpty() ? null : result.first();
 
 				} finally {
 					SQLiteRepository.closeQuietly(rs);
@@ -189,8 +496,69 @@ public class TaggedFileDAO extends AbstractDAO<TaggedFile, Integer> {
 		}
 	}
 
+	/** Reads the TaggedFiles with the specified ids, with one query for
+	  each MAX_ID_BUCKET ids rather than one for each file. Ids which have
+	  no record are skipped.
+	  @param ids the file ids of the records to read
+	  @param withTaggings if false, the files are read without their
+	  		taggings, and their sets of taggings are empty
+	  @return the files which were read, in order of their ids
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public List<TaggedFile> readByIds(Collection<Integer> ids,
+									  boolean withTaggings)
+		throws SQLException
+	{
+		List<TaggedFile> files = new ArrayList<TaggedFile>(ids.size());
+
+		if (ids.isEmpty()) {
+			return files;
+		}
+
+		List<Integer> sorted = new ArrayList<Integer>(new TreeSet<Integer>(ids));
+		String[] sql = withTaggings ? READ_BY_IDS_PSQL : READ_FILES_BY_IDS_PSQL;
+		Connection conn = SQLiteRepository.instance().getReadConnection();
+
+		try {
+			for (int from = 0; from < sorted.size(); from += MAX_ID_BUCKET) {
+				List<Integer> bucketIds = sorted.subList(from,
+								Math.min(sorted.size(), from + MAX_ID_BUCKET));
+				int bucket = bucketIndex(bucketIds.size());
+				PreparedStatement ps = conn.prepareStatement(sql[bucket]);
+
+				try {
+					for (int i = 0; i < (1 << bucket); i++) {
+						if (i < bucketIds.size()) {
+							ps.setInt(i + 1, bucketIds.get(i));
+						} else {
+							ps.setNull(i + 1, Types.INTEGER);
+						}
+					}
+
+					ResultSet rs = ps.executeQuery();
+
+					try {
+						readJoinedRows(rs, files);
+					} finally {
+						SQLiteRepository.closeQuietly(rs);
+					}
+
+				} finally {
+					SQLiteRepository.closeQuietly(ps);
+				}
+			}
+
+			return files;
+
+		} finally {
+			SQLiteRepository.closeQuietly(conn);
+		}
+	}
+
 	/** Reads all TaggedFiles who have a tagging comment containing one
-	  of the specified keywords.
+	  of the specified keywords. Keywords are matched as whole words; a
+	  keyword ending in "*" matches any word it prefixes, and a keyword
+	  containing spaces matches the words as a phrase.
 	  @param keywords a set of keywords to search comments by
 	  @return a sorted set of resulting TaggedFiles, null if keywords is empty
 	  @throws SQLException if a problem occurs working with the database
@@ -198,27 +566,50 @@ public class TaggedFileDAO extends AbstractDAO<TaggedFile, Integer> {
 	public SortedSet<TaggedFile> readByCommentKeywords(Set<String> keywords)
 		throws SQLException
 	{
-		Connection conn = SQLiteRepository.instance().getConnection();	
-		String sql = getReadByCommentKeywordsQuery(keywords);
-		if (sql == null) {
+		String match = toCommentMatchQuery(keywords);
+		if (match == null) {
 			return null;
 		}
 
+		return new TreeSet<TaggedFile>(readByCommentMatch(match));
+	}
+
+	/** Reads all TaggedFiles who have a tagging comment matching a full-text
+	  query, best matches first. The query uses SQLite's full-text syntax:
+	  words, "quoted phrases", prefix* terms, and the AND, OR and NOT
+	  operators.
+	  @param matchQuery the full-text query to match comments against
+	  @return the matching TaggedFiles, ranked by how well their comments
+	  		match
+	  @throws SQLException if a problem occurs working with the database,
+	  		or the query is malformed
+	  */
+	public List<TaggedFile> readByCommentMatch(String matchQuery)
+		throws SQLException
+	{
+		Connection conn = SQLiteRepository.instance().getReadConnection();	
+
 		try {
-			Statement stmt = conn.createStatement();
+			PreparedStatement ps = conn.prepareStatement(
+											READ_BY_COMMENT_MATCH_PSQL
+										);
 
 			try {
-				ResultSet rs = stmt.executeQuery(sql);
+				ps.setString(1, matchQuery);
+				ResultSet rs = ps.executeQuery();
 
 				try {
-					return readFromResultSet(rs);
+					List<TaggedFile> files = new ArrayList<TaggedFile>();
+					readJoinedRows(rs, files);
+
+					return files;
 
 				} finally {
 					SQLiteRepository.closeQuietly(rs);
 				}
 
 			} finally {
-				SQLiteRepository.closeQuietly(stmt);
+				SQLiteRepository.closeQuietly(ps);
 			}
 
 		} finally {
@@ -235,7 +626,7 @@ public class TaggedFileDAO extends AbstractDAO<TaggedFile, Integer> {
 	public SortedSet<TaggedFile> readByPathLike(String pathLike)
 		throws SQLException
 	{
-		Connection conn = SQLiteRepository.instance().getConnection();	
+		Connection conn = SQLiteRepository.instance().getReadConnection();	
 		
 		try {
 			PreparedStatement ps = conn.prepareStatement(READ_BY_PATH_LIKE_PSQL);
@@ -260,30 +651,35 @@ public class TaggedFileDAO extends AbstractDAO<TaggedFile, Integer> {
 		}
 	}
 
-	/** Returns a sorted set of TaggedFile objects which have been tagged with
-	  any of the specified tags.
-	  @param tags the tag values by which to select TaggedFile records
-	  @return a sorted set of results, or null if tags is empty 
+	/** Reads all TaggedFiles under the specified directory, including the
+	  files of its subdirectories. The directories are found by a range of
+	  the directory path index, so the cost depends on the number of files
+	  read rather than the number stored.
+	  @param dirPath the path of the directory; a delimiter is appended if
+	  		it does not end in one
+	  @return a sorted set of the TaggedFiles under the directory
 	  @throws SQLException if a problem occurs working with the database
 	  */
-	public SortedSet<TaggedFile> readByTags(Set<FileTag> tags) 
+	public SortedSet<TaggedFile> readByDirectory(String dirPath)
 		throws SQLException
 	{
-		String query = getReadByTagsQuery(tags);
-		Connection conn = SQLiteRepository.instance().getConnection();
+		String dir = DirectoryDAO.toDirectoryPath(dirPath);
 
-		if (query == null) {
-			return null;
+		if (dir.isEmpty()) {
+			return readAll();
 		}
 
+		Connection conn = SQLiteRepository.instance().getReadConnection();	
+		
 		try {
-			Statement stmt = conn.createStatement();
+			PreparedStatement ps = conn.prepareStatement(READ_BY_DIRECTORY_PSQL);
 
 			try {
-				ResultSet rs = stmt.executeQuery(query);
+				ps.setString(1, dir);
+				ps.setString(2, DirectoryDAO.subtreeEnd(dir));
+				ResultSet rs = ps.executeQuery();
 
 				try {
-					
 					return readFromResultSet(rs);
 
 				} finally {
@@ -291,7 +687,7 @@ public class TaggedFileDAO extends AbstractDAO<TaggedFile, Integer> {
 				}
 
 			} finally {
-				SQLiteRepository.closeQuietly(stmt);
+				SQLiteRepository.closeQuietly(ps);
 			}
 
 		} finally {
@@ -299,78 +695,109 @@ public class TaggedFileDAO extends AbstractDAO<TaggedFile, Integer> {
 		}
 	}
 
-	/** Reads table fields from a ResultSet, creating a new TaggedFile for
-	  each row, and returning a sorted set of all created TaggedFiles. This
-	  method assumes that the ResultSet cursor is set one position before
-	  the row to start reading from. The method attempts to read all fields
-	  from the ResultSet. If a field is not present, the corresponding object's
-	  field is left at the default value. If no fields are present in a row,
-	  no object is created for the row.
-	  @param rs the ResultSet to read records from
-	  @return a sorted set of TaggedFiles
-	  @throws SQLException if a problem occurs working with the database
+	/** Reads the TaggedFiles matching a query, in a single statement. Each
+	  file is returned once, best matches first; files of equal rank are in
+	  order of their ids. See FileQuery for how files are ranked.
+	  @param query the query to select TaggedFiles by
+	  @return the matching TaggedFiles, ranked
+	  @throws SQLException if a problem occurs working with the database,
+	  		or a full-text query in the query is malformed
 	  */
-	public SortedSet<TaggedFile> readFromResultSet(ResultSet rs)
-		throws SQLException
+	public List<TaggedFile> readByQuery(FileQuery query) throws SQLException
 	{
-		FileTaggingDAO taggingDAO = new FileTaggingDAO();
-		SortedSet<FileTagging> taggings = null;
-		SortedSet<TaggedFile> files = new TreeSet<TaggedFile>();
-		TaggedFile file = null;
-		boolean aFieldIsSet = false;
+		FileQuery.Compiler compiler = new FileQuery.Compiler();
+		String where = query.compile(compiler, true);
+
+		/* The files are selected and ranked in a subquery, so that the join
+		   to their taggings does not multiply the rank terms. */
+		String sql = "SELECT file.fileId AS fileId, file.path AS path,"
+					+ " file.missing AS missing,"
+					+ " t.taggingId AS taggingId, t.tagId AS tagId,"
+					+ " g.tag AS tag, t.comment AS comment "
+					+ " FROM (SELECT f.fileId AS fileId,"
+					+ " fd.path || f.name AS path, f.missing AS missing, "
+					+ compiler.getRank() + " AS rank FROM " + TABLE_NAME
+					+ " f JOIN " + DirectoryDAO.TABLE_NAME + " fd"
+					+ " ON fd.dirId = f.dirId"
+					+ compiler.getJoins() + " WHERE " + where
+					+ ") file "
+					+ " LEFT JOIN " + FileTaggingDAO.TABLE_NAME + " t "
+					+ " ON file.fileId = t.fileId "
+					+ " LEFT JOIN " + FileTagDAO.TABLE_NAME + " g "
+					+ " ON g.tagId = t.tagId "
+					+ " ORDER BY file.rank DESC, file.fileId, t.taggingId";
+
+		Connection conn = SQLiteRepository.instance().getReadConnection();
 
-		while (rs.next()) {
-			if (file == null) {
-				file = new TaggedFile();
-			}
+		try {
+			PreparedStatement ps = conn.prepareStatement(sql);
 
 			try {
-				file.setFileId(rs.getInt("fileId"));
-				aFieldIsSet = true;
+				List<Object> params = compiler.getParams();
+				for (int i = 0; i < params.size(); i++) {
+					ps.setObject(i + 1, params.get(i));
+				}
 
-				taggings = taggingDAO.readByFileId(rs.getInt("fileId"));	
-				file.setFileTaggings(taggings);
-			} catch (SQLException e) {
-			}
+				ResultSet rs = ps.executeQuery();
 
-			try {
-				file.setFilePath(rs.getString("path"));
-				aFieldIsSet = true;
-			} catch (SQLException e) {
-			}
+				try {
+					List<TaggedFile> files = new ArrayList<TaggedFile>();
+					readJoinedRows(rs, files);
 
-			if (aFieldIsSet) {
-				files.add(file);
-				file = null;
+					return files;
+
+				} finally {
+					SQLiteRepository.closeQuietly(rs);
+				}
+
+			} finally {
+				SQLiteRepository.closeQuietly(ps);
 			}
-		} 
 
-		return files;
+		} finally {
+			SQLiteRepository.closeQuietly(conn);
+		}
 	}
 
-	/** Updates the specified TaggedFile's corresponding record in the database,
-	  if it exists.
-	  @param updateMe the TaggedFile whose information will update the record 
-	  @param id the id used to choose which record is updated
-	  @return true if the record existed and was updated successfully
+	/** Determines which of the specified paths already belong to TaggedFile
+	  records.
+	  @param paths the file paths to look for
+	  @return the paths which are stored in the database
 	  @throws SQLException if a problem occurs working with the database
 	  */
-	public boolean update(TaggedFile updateMe, Integer id) throws SQLException
+	public Set<String> readExistingPaths(Collection<String> paths)
+		throws SQLException
 	{
-		Connection conn = SQLiteRepository.instance().getConnection();
+		Set<String> existing = new HashSet<String>();
+
+		if (paths.isEmpty()) {
+			return existing;
+		}
+
+		Connection conn = SQLiteRepository.instance().getReadConnection();
 
 		try {
-			PreparedStatement ps = conn.prepareStatement(UPDATE_PSQL);
+			PreparedStatement ps = conn.prepareStatement(READ_ID_BY_PATH_PSQL);
 
 			try {
-				ps.setInt(1, updateMe.getFileId());
-				ps.setString(2, updateMe.getFilePath());
-				ps.setInt(3, id);
+				for (String path : paths) {
+					bindPath(ps, 1, path);
+					ResultSet rs = ps.executeQuery();
+
+					try {
+						if (rs.next()) {
+							existing.add(path);
+						}
+
+					} finally {
+						SQLiteRepository.closeQuietly(rs);
+					}
+				}
+
+				return existing;
 
-				return ps.executeUpdate() == 1;	// 1 row should be updated
-				
 			} finally {
-				SQLiteRepository.closeQuietly(ps);				
+				SQLiteRepository.closeQuietly(ps);
 			}
 
 		} finally {
@@ -378,27 +805,43 @@ public class TaggedFileDAO extends AbstractDAO<TaggedFile, Integer> {
 		}
 	}
 
-	/** Deletes the specified TaggedFile's corresponding record from the 
-	  database if it exists.
-	  @param deleteMe the TaggedFile whose record should be deleted
-	  @return true if the record was deleted, or did not exist
+	/** Retrieves the fingerprints of the missing files which have the
+	  specified fingerprint. The lookup uses the fingerprint index.
+	  @param fingerprint the fingerprint to search for
+	  @return the matching missing files' fingerprints, which may be empty
 	  @throws SQLException if a problem occurs working with the database
 	  */
-	public boolean delete(TaggedFile deleteMe) throws SQLException
+	public List<FileFingerprint> readMissingByFingerprint(String fingerprint)
+		throws SQLException
 	{
-		Connection conn = SQLiteRepository.instance().getConnection();
+		List<FileFingerprint> matches = new ArrayList<FileFingerprint>();
+		Connection conn = SQLiteRepository.instance().getReadConnection();
 
 		try {
-			PreparedStatement ps = conn.prepareStatement(DELETE_PSQL);
+			PreparedStatement ps;
+			ps = conn.prepareStatement(READ_MISSING_BY_FINGERPRINT_PSQL);
 
 			try {
-				ps.setInt(1, deleteMe.getFileId());
-				int rowCount = ps.executeUpdate();
+				ps.setString(1, fingerprint);
+				ResultSet rs = ps.executeQuery();
+
+				try {
+					while (rs.next()) {
+						matches.add(new FileFingerprint(rs.getInt("fileId"),
+												readLong(rs, "size"),
+												readLong(rs, "modified"),
+												rs.getString("fingerprint"),
+												rs.getString("fullHash")));
+					}
+
+					return matches;
+
+				} finally {
+					SQLiteRepository.closeQuietly(rs);
+				}
 
-				return rowCount == 0 || rowCount == 1;
-				
 			} finally {
-				SQLiteRepository.closeQuietly(ps);				
+				SQLiteRepository.closeQuietly(ps);
 			}
 
 		} finally {
@@ -406,21 +849,40 @@ public class TaggedFileDAO extends AbstractDAO<TaggedFile, Integer> {
 		}
 	}
 
-	/** Deletes all TaggedFile records from the database.
+	/** Retrieves the distinct sizes of the missing files which have
+	  fingerprints. Only files of these sizes can be found again by their
+	  fingerprints.
+	  @return the sizes, in bytes, of fingerprinted missing files
 	  @throws SQLException if a problem occurs working with the database
 	  */
-	public void deleteAll() throws SQLException
+	public Set<Long> readMissingSizes() throws SQLException
 	{
-		Connection conn = SQLiteRepository.instance().getConnection();
+		Set<Long> sizes = new HashSet<Long>();
+		Connection conn = SQLiteRepository.instance().getReadConnection();
 
 		try {
 			Statement stmt = conn.createStatement();
 
 			try {
-				stmt.executeUpdate(DELETE_ALL_SQL);
-				
+				ResultSet rs = stmt.executeQuery(READ_MISSING_SIZES_SQL);
+
+				try {
+					while (rs.next()) {
+						long size = readLong(rs, "size");
+
+						if (size != FileStatus.UNKNOWN) {
+							sizes.add(size);
+						}
+					}
+
+					return sizes;
+
+				} finally {
+					SQLiteRepository.closeQuietly(rs);
+				}
+
 			} finally {
-				SQLiteRepository.closeQuietly(stmt);				
+				SQLiteRepository.closeQuietly(stmt);
 			}
 
 		} finally {
@@ -428,61 +890,1288 @@ public class TaggedFileDAO extends AbstractDAO<TaggedFile, Integer> {
 		}
 	}
 
-
-	//************************************************************
-	// PRIVATE INSTANCE Methods
-	//************************************************************
-
-	/** Creates an SQL query used by the readByCommentKeywords() method.
-	  @param words a set of strings to be used in the query
-	  @return the created SQL query string, or null if words is null
+	/** Returns a sorted set of TaggedFile objects which have been tagged with
+	  any of the specified tags. More than MAX_TAG_BUCKET tags are searched
+	  for in several queries, whose results are merged.
+	  @param tags the tag values by which to select TaggedFile records
+	  @return a sorted set of results, or null if tags is empty 
+	  @throws SQLException if a problem occurs working with the database
 	  */
-	private String getReadByCommentKeywordsQuery(Set<String> words)
+	public SortedSet<TaggedFile> readByTags(Set<FileTag> tags) 
+		throws SQLException
 	{
-		Iterator<String> it = words.iterator();
-		String word;
-		StringBuilder sql = new StringBuilder(READ_BY_COMMENT_KEYWORDS_SQL);
-
-		if (it.hasNext()) {
-			word = StringUtil.doubleQuote("%" + it.next().toString() + "%");
-			sql.append(" AND ( t.comment LIKE " + word);
-		} else {
+		if (tags.isEmpty()) {
 			return null;
 		}
 
-		while (it.hasNext()) {
-			word = StringUtil.doubleQuote("%" + it.next().toString() + "%");
-			sql.append(" OR t.comment LIKE " + word);
+		List<String> values = new ArrayList<String>(tags.size());
+		for (FileTag tag : tags) {
+			values.add(tag.getTag());
 		}
 
-		sql.append(" )");
-		return sql.toString();
+		SortedSet<TaggedFile> files = new TreeSet<TaggedFile>();
+		Connection conn = SQLiteRepository.instance().getReadConnection();
+
+		try {
+			for (int from = 0; from < values.size(); from += MAX_TAG_BUCKET) {
+				int to = Math.min(values.size(), from + MAX_TAG_BUCKET);
+				readByTagValues(conn, values.subList(from, to), files);
+			}
+
+			return files;
+
+		} finally {
+			SQLiteRepository.closeQuietly(conn);
+		}
+	}
+
+	/** Reads the first page of TaggedFile records in the specified ordering.
+	  @param order the ordering to page through
+	  @param ascending true to read in ascending order, false for descending
+	  @param pageSize the maximum number of files on the page, at least 1
+	  @return the first page of files, with the token for the next page
+	  @throws SQLException if a problem occurs working with the database
+	  @throws IllegalArgumentException if pageSize is less than 1
+	  */
+	public Page<TaggedFile> readPage(TaggedFileOrder order, boolean ascending,
+									 int pageSize) throws SQLException
+	{
+		return readPage(order, ascending, null, 0, pageSize);
 	}
 
-	/** Creates an SQL query used by the readByTags() method.
-	  @param tags a set of FileTags to be used in the query
-	  @return the created SQL query string, or null if tags is null
+	/** Reads the page of TaggedFile records which follows the page that
+	  produced the specified token. The page is found by seeking past the
+	  token's (sort key, file id) position, so its cost does not depend on
+	  how many pages precede it.
+	  @param after the token of the previous page
+	  @param pageSize the maximum number of files on the page, at least 1
+	  @return the next page of files, with the token for the page after it
+	  @throws SQLException if a problem occurs working with the database
+	  @throws IllegalArgumentException if pageSize is less than 1
 	  */
-	private String getReadByTagsQuery(Set<FileTag> tags)
+	public Page<TaggedFile> readPage(PageToken after, int pageSize)
+		throws SQLException
 	{
-		Iterator<FileTag> it = tags.iterator();
-		String tag;
-		StringBuilder sql = new StringBuilder(READ_BY_TAGS_SQL);
+		return readPage(after.getOrder(), after.isAscending(), after, 0,
+						pageSize);
+	}
 
-		if (it.hasNext()) {
-			tag = StringUtil.doubleQuote(it.next().getTag());
-			sql.append(" AND ( t.tag = " + tag);
-		} else {
-			return null;
+	/** Reads the page of TaggedFile records which starts a number of records
+	  past a token's position, or past the start of the ordering. Skipped
+	  records are stepped over by the database, so a reader which remembers
+	  the tokens of pages it has read should seek from the nearest one.
+	  One more file than the page holds is requested, to learn whether a
+	  following page exists. Pages in PATH order are read by
+	  readPageByDirectory().
+	  @param order the ordering to page through
+	  @param ascending true for ascending order
+	  @param after the token to seek past, or null to start at the first
+	  		record
+	  @param skip the number of records to skip before the page
+	  @param pageSize the maximum number of files on the page, at least 1
+	  @return the page of files, with the token for the page after it
+	  @throws SQLException if a problem occurs working with the database
+	  @throws IllegalArgumentException if pageSize is less than 1, or skip
+	  		is negative
+	  */
+	public Page<TaggedFile> readPage(TaggedFileOrder order, boolean ascending,
+									 PageToken after, int skip, int pageSize)
+		throws SQLException
+	{
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("pageSize must be at least 1");
 		}
 
-		while (it.hasNext()) {
-			tag = StringUtil.doubleQuote(it.next().getTag());
-			sql.append(" OR t.tag = " + tag);
+		if (skip < 0) {
+			throw new IllegalArgumentException("skip cannot be negative");
 		}
 
-		sql.append(" )");
-		return sql.toString();
+		if (order == TaggedFileOrder.PATH) {
+			return readPageByDirectory(ascending, after, skip, pageSize);
+		}
+
+		String query = buildPageQuery(ascending, after != null);
+		Connection conn = SQLiteRepository.instance().getReadConnection();
+
+		try {
+			PreparedStatement ps = conn.prepareStatement(query);
+
+			try {
+				int param = 1;
+
+				if (after != null) {
+					ps.setString(param++, after.getSortKey());
+					ps.setString(param++, after.getSortKey());
+					ps.setInt(param++, after.getFileId());
+				}
+
+				ps.setInt(param++, pageSize + 1);
+				ps.setInt(param, skip);
+
+				ResultSet rs = ps.executeQuery();
+
+				try {
+					List<TaggedFile> files = new ArrayList<TaggedFile>(pageSize);
+					TaggedFile file = null;
+					String lastKey = null;
+					boolean more = false;
+
+					while (rs.next()) {
+						int fileId = rs.getInt("fileId");
+
+						if (file == null || file.getFileId() != fileId) {
+							if (files.size() == pageSize) {
+								more = true;
+								break;
+							}
+
+							file = newFileFromRow(rs);
+							lastKey = rs.getString("sortKey");
+							files.add(file);
+						}
+
+						addTaggingFromRow(rs, file);
+					}
+
+					PageToken next = null;
+					if (more) {
+						next = new PageToken(order, ascending, lastKey,
+											 file.getFileId());
+					}
+
+					return new Page<TaggedFile>(files, next);
+
+				} finally {
+					SQLiteRepository.closeQuietly(rs);
+				}
+
+			} finally {
+				SQLiteRepository.closeQuietly(ps);
+			}
+
+		} finally {
+			SQLiteRepository.closeQuietly(conn);
+		}
+	}
+
+	/** Reads the first page of TaggedFile records ordered by file path.
+	  @param ascending true to read in ascending order, false for descending
+	  @param pageSize the maximum number of files on the page, at least 1
+	  @return the first page of files, with the token for the next page
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public Page<TaggedFile> readPageByPath(boolean ascending, int pageSize)
+		throws SQLException
+	{
+		return readPage(TaggedFileOrder.PATH, ascending, pageSize);
+	}
+
+	/** Reads table fields from a ResultSet, creating a new TaggedFile for
+	  each distinct file id, and returning a sorted set of all created
+	  TaggedFiles. This method assumes that the ResultSet cursor is set one
+	  position before the row to start reading from, and that the rows of
+	  each file are adjacent, as produced by the joined TaggedFile/FileTagging
+	  queries of this class. Each row may carry one of the file's taggings in
+	  its "taggingId", "tag" and "comment" columns; rows with a null or absent
+	  taggingId contribute no tagging.
+	  @param rs the ResultSet to read records from
+	  @return a sorted set of TaggedFiles
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public SortedSet<TaggedFile> readFromResultSet(ResultSet rs)
+		throws SQLException
+	{
+		SortedSet<TaggedFile> files = new TreeSet<TaggedFile>();
+		readJoinedRows(rs, files);
+
+		return files;
+	}
+
+	/** Updates the specified TaggedFile's corresponding record in the database,
+	  if it exists. The directory of the file's path is created if necessary,
+	  and the directory it leaves is deleted if it is left empty.
+	  @param updateMe the TaggedFile whose information will update the record 
+	  @param id the id used to choose which record is updated
+	  @return true if the record existed and was updated successfully
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public boolean update(TaggedFile updateMe, Integer id) throws SQLException
+	{
+		boolean updated;
+		Transaction tx = SQLiteRepository.instance().beginTransaction();
+
+		try {
+			Connection conn = tx.getConnection();
+			Integer oldDirId = readDirId(conn, id);
+			DirectoryDAO.createDirectories(conn, Collections.singleton(
+					StringUtil.parseDirectoryFromPath(updateMe.getFilePath())));
+
+			PreparedStatement ps = conn.prepareStatement(UPDATE_PSQL);
+
+			try {
+				ps.setInt(1, updateMe.getFileId());
+				bindPath(ps, 2, updateMe.getFilePath());
+				ps.setInt(4, id);
+
+				updated = ps.executeUpdate() == 1;	// 1 row should be updated
+				
+			} finally {
+				SQLiteRepository.closeQuietly(ps);				
+			}
+
+			if (updated) {
+				DirectoryDAO.deleteIfEmpty(conn, oldDirId);
+			}
+
+			tx.commit();
+
+		} finally {
+			tx.close();
+		}
+
+		if (updated && id == updateMe.getFileId()) {
+			publishChange(RepositoryChange.Entity.FILE,
+						  RepositoryChange.Kind.UPDATED,
+						  Collections.singleton(id));
+		} else if (updated) {
+			publishChange(RepositoryChange.Entity.FILE,
+						  RepositoryChange.Kind.DELETED,
+						  Collections.singleton(id));
+			publishChange(RepositoryChange.Entity.FILE,
+						  RepositoryChange.Kind.INSERTED,
+						  Collections.singleton(updateMe.getFileId()));
+		}
+
+		return updated;
+	}
+
+	/** Stores the specified fingerprints, with the sizes and modification
+	  times of the files when they were hashed, in a single transaction.
+	  Fingerprints are not shown to the user, so no change is published.
+	  @param fingerprints the fingerprints to store
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public void updateFingerprints(Collection<FileFingerprint> fingerprints)
+		throws SQLException
+	{
+		if (fingerprints.isEmpty()) {
+			return;
+		}
+
+		Transaction tx = SQLiteRepository.instance().beginTransaction();
+
+		try {
+			PreparedStatement ps;
+			ps = tx.getConnection().prepareStatement(UPDATE_FINGERPRINT_PSQL);
+
+			try {
+				for (FileFingerprint f : fingerprints) {
+					bindLong(ps, 1, f.getSize());
+					bindLong(ps, 2, f.getModified());
+					ps.setString(3, f.getFingerprint());
+					ps.setString(4, f.getFullHash());
+					ps.setInt(5, f.getFileId());
+					ps.addBatch();
+				}
+
+				ps.executeBatch();
+
+			} finally {
+				SQLiteRepository.closeQuietly(ps);
+			}
+
+			tx.commit();
+
+		} finally {
+			tx.close();
+		}
+	}
+
+	/** Flags or unflags the specified files as missing from their paths.
+	  The files are updated in a single transaction.
+	  @param fileIds the ids of the files to update
+	  @param missing true if the files are missing
+	  @return the number of files whose flag changed
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public int updateMissing(Collection<Integer> fileIds, boolean missing)
+		throws SQLException
+	{
+		if (fileIds.isEmpty()) {
+			return 0;
+		}
+
+		List<Integer> changed = new ArrayList<Integer>();
+		Transaction tx = SQLiteRepository.instance().beginTransaction();
+
+		try {
+			PreparedStatement ps;
+			ps = tx.getConnection().prepareStatement(UPDATE_MISSING_PSQL);
+
+			try {
+				for (Integer id : fileIds) {
+					ps.setInt(1, missing ? 1 : 0);
+					ps.setInt(2, id);
+					ps.setInt(3, missing ? 1 : 0);
+
+					if (ps.executeUpdate() == 1) {
+						changed.add(id);
+					}
+				}
+
+			} finally {
+				SQLiteRepository.closeQuietly(ps);
+			}
+
+			// delivered once the transaction commits
+			publishChange(RepositoryChange.Entity.FILE,
+						  RepositoryChange.Kind.UPDATED, changed);
+			tx.commit();
+
+		} finally {
+			tx.close();
+		}
+
+		return changed.size();
+	}
+
+	/** Stores the specified file statuses, in a single transaction. Files
+	  whose missing flag changed are published as updated.
+	  @param statuses the statuses to store
+	  @return the number of files whose missing flag changed
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public int updateStatuses(Collection<FileStatus> statuses)
+		throws SQLException
+	{
+		if (statuses.isEmpty()) {
+			return 0;
+		}
+
+		List<Integer> changed = new ArrayList<Integer>();
+		Transaction tx = SQLiteRepository.instance().beginTransaction();
+
+		try {
+			Connection conn = tx.getConnection();
+			PreparedStatement status = conn.prepareStatement(UPDATE_STATUS_PSQL);
+			PreparedStatement missing = null;
+
+			try {
+				missing = conn.prepareStatement(UPDATE_MISSING_PSQL);
+
+				for (FileStatus s : statuses) {
+					bindLong(status, 1, s.getSize());
+					bindLong(status, 2, s.getModified());
+					bindLong(status, 3, s.getDirectoryModified());
+					status.setInt(4, s.getFileId());
+					status.addBatch();
+
+					missing.setInt(1, s.isMissing() ? 1 : 0);
+					missing.setInt(2, s.getFileId());
+					missing.setInt(3, s.isMissing() ? 1 : 0);
+
+					if (missing.executeUpdate() == 1) {
+						changed.add(s.getFileId());
+					}
+				}
+
+				status.executeBatch();
+
+			} finally {
+				SQLiteRepository.closeQuietly(status);
+				if (missing != null) {
+					SQLiteRepository.closeQuietly(missing);
+				}
+			}
+
+			// delivered once the transaction commits
+			publishChange(RepositoryChange.Entity.FILE,
+						  RepositoryChange.Kind.UPDATED, changed);
+			tx.commit();
+
+		} finally {
+			tx.close();
+		}
+
+		return changed.size();
+	}
+
+	/** Counts the TaggedFile records in the database.
+	  @return the number of files
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public int countAll() throws SQLException
+	{
+		Connection conn = SQLiteRepository.instance().getReadConnection();
+
+		try {
+			Statement stmt = conn.createStatement();
+
+			try {
+				ResultSet rs = stmt.executeQuery(COUNT_SQL);
+
+				try {
+					return rs.next() ? rs.getInt(1) : 0;
+				} finally {
+					SQLiteRepository.closeQuietly(rs);
+				}
+
+			} finally {
+				SQLiteRepository.closeQuietly(stmt);
+			}
+
+		} finally {
+			SQLiteRepository.closeQuietly(conn);
+		}
+	}
+
+	/** Deletes the specified TaggedFile's corresponding record from the 
+	  database if it exists. Its directory, and the directories above it,
+	  are deleted in the same transaction if they are left empty.
+	  @param deleteMe the TaggedFile whose record should be deleted
+	  @return true if the record was deleted, or did not exist
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public boolean delete(TaggedFile deleteMe) throws SQLException
+	{
+		int rowCount;
+		Transaction tx = SQLiteRepository.instance().beginTransaction();
+
+		try {
+			Connection conn = tx.getConnection();
+			Integer dirId = readDirId(conn, deleteMe.getFileId());
+			PreparedStatement ps = conn.prepareStatement(DELETE_PSQL);
+
+			try {
+				ps.setInt(1, deleteMe.getFileId());
+				rowCount = ps.executeUpdate();
+				
+			} finally {
+				SQLiteRepository.closeQuietly(ps);				
+			}
+
+			if (rowCount == 1) {
+				DirectoryDAO.deleteIfEmpty(conn, dirId);
+			}
+
+			tx.commit();
+
+		} finally {
+			tx.close();
+		}
+
+		if (rowCount == 1) {
+			publishChange(RepositoryChange.Entity.FILE,
+						  RepositoryChange.Kind.DELETED,
+						  Collections.singleton(deleteMe.getFileId()));
+		}
+
+		return rowCount == 0 || rowCount == 1;
+	}
+
+	/** Deletes all TaggedFile records, and their directories, from the
+	  database.
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public void deleteAll() throws SQLException
+	{
+		Connection conn = SQLiteRepository.instance().getConnection();
+
+		try {
+			Statement stmt = conn.createStatement();
+
+			try {
+				stmt.executeUpdate(DELETE_ALL_SQL);
+				stmt.executeUpdate(DELETE_ALL_DIRECTORIES_SQL);
+				
+			} finally {
+				SQLiteRepository.closeQuietly(stmt);				
+			}
+
+		} finally {
+			SQLiteRepository.closeQuietly(conn);
+		}
+
+		publishChange(RepositoryChange.Entity.FILE,
+					  RepositoryChange.Kind.RESET,
+					  Collections.<Integer>emptySet());
+	}
+
+
+	//************************************************************
+	// PUBLIC CLASS Methods
+	//************************************************************
+
+	/** Builds a full-text query which matches comments containing any of the
+	  specified keywords. Each keyword becomes a quoted phrase, so that
+	  characters with meaning in the query syntax are matched literally; a
+	  trailing "*" is kept as a prefix marker.
+	  @param keywords the keywords to match
+	  @return a query for readByCommentMatch(), or null if there are no
+	  		usable keywords
+	  */
+	public static String toCommentMatchQuery(Collection<String> keywords)
+	{
+		if (keywords == null) {
+			return null;
+		}
+
+		StringBuilder match = new StringBuilder();
+
+		for (String keyword : keywords) {
+			String phrase = keyword.replace("\"", " ").trim();
+			boolean prefix = phrase.endsWith("*");
+
+			phrase = phrase.replace("*", " ").trim();
+			if (phrase.isEmpty()) {
+				continue;
+			}
+
+			if (match.length() > 0) {
+				match.append(" OR ");
+			}
+
+			match.append('"').append(phrase).append(prefix ? "*\"" : "\"");
+		}
+
+		return match.length() > 0 ? match.toString() : null;
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASS Methods
+	//************************************************************
+
+	/** Builds the statements of a query which binds a list of values to an
+	  IN list. The list's length is rounded up to a power of two, so that
+	  only a handful of distinct statements exist and each stays in the
+	  connections' statement caches. Unused slots are bound to NULL, which
+	  matches nothing.
+	  @param head the query up to the IN list's first value
+	  @param tail the rest of the query after the IN list's last value
+	  @param maxBucket the largest number of values bound at once, a power
+	  		of two
+	  @return the statements, indexed by bucket; bucket i binds 2^i values
+	  */
+	private static String[] buildBucketedSql(String head, String tail,
+											 int maxBucket)
+	{
+		String[] statements = new String[bucketIndex(maxBucket) + 1];
+
+		for (int i = 0; i < statements.length; i++) {
+			StringBuilder sql = new StringBuilder(head);
+
+			for (int p = 0; p < (1 << i); p++) {
+				sql.append(p == 0 ? "?" : ", ?");
+			}
+
+			sql.append(tail);
+			statements[i] = sql.toString();
+		}
+
+		return statements;
+	}
+
+	/** Finds the bucket which holds a number of values, such as the tags of
+	  a tag search: bucket i binds up to 2^i values.
+	  @param count the number of values, at least 1
+	  @return the index of the smallest bucket which can hold count values
+	  */
+	private static int bucketIndex(int count)
+	{
+		return 32 - Integer.numberOfLeadingZeros(count - 1);
+	}
+
+	/** Builds the query which reads one page of files, with their taggings,
+	  in NAME order. The query's parameters are the seek position (sort key,
+	  sort key, file id), if seeking, followed by the number of files to
+	  read and the number of files to skip first.
+	  @param ascending true for ascending order
+	  @param seek true if the page starts after a token's position
+	  @return the page query
+	  */
+	private static String buildPageQuery(boolean ascending, boolean seek)
+	{
+		String key = "file.name";
+		String direction = ascending ? " ASC" : " DESC";
+		String past = ascending ? " > " : " < ";
+
+		/* The seek condition is written as a range on the sort key so that
+		   an index on the key can be used to find the start of the page. */
+		StringBuilder files = new StringBuilder();
+		files.append("SELECT").append(FILE_COLUMNS_SQL).append(", ")
+			 .append(key).append(" AS sortKey");
+		files.append(" FROM ").append(FILE_TABLES_SQL);
+
+		if (seek) {
+			files.append(" WHERE ").append(key).append(" COLLATE NOCASE")
+				 .append(ascending ? " >= " : " <= ").append("?")
+				 .append(" AND (").append(key).append(" COLLATE NOCASE")
+				 .append(past).append("? OR file.fileId").append(past)
+				 .append("?)");
+		}
+
+		files.append(" ORDER BY ").append(key).append(" COLLATE NOCASE")
+			 .append(direction).append(", file.fileId").append(direction);
+		files.append(" LIMIT ? OFFSET ?");
+
+		return "SELECT file.fileId AS fileId, file.path AS path,"
+				+ " file.missing AS missing, file.sortKey AS sortKey, t.taggingId AS taggingId,"
+				+ " t.tagId AS tagId, g.tag AS tag, t.comment AS comment "
+				+ " FROM (" + files + ") file "
+				+ " LEFT JOIN " + FileTaggingDAO.TABLE_NAME + " t "
+				+ " ON file.fileId = t.fileId "
+				+ " LEFT JOIN " + FileTagDAO.TABLE_NAME + " g "
+				+ " ON g.tagId = t.tagId "
+				+ " ORDER BY file.sortKey COLLATE NOCASE" + direction
+				+ ", file.fileId" + direction + ", t.taggingId";
+	}
+
+	/** Builds the query which walks the directories in the order of a PATH
+	  page, with Directory_path_nocase_idx. Directories whose paths differ
+	  only in case are ordered by id. The query's parameter is the path of
+	  the token's file, if seeking; no directory's path equals a file's.
+	  @param ascending true for ascending order
+	  @param seek true if the walk starts after a token's file
+	  @return the directory query
+	  */
+	private static String buildDirectoryWalkQuery(boolean ascending,
+												  boolean seek)
+	{
+		String direction = ascending ? " ASC" : " DESC";
+
+		StringBuilder sql = new StringBuilder();
+		sql.append("SELECT dirId, path FROM ").append(DirectoryDAO.TABLE_NAME);
+
+		if (seek) {
+			sql.append(" WHERE path COLLATE NOCASE")
+			   .append(ascending ? " > " : " < ").append("?");
+		}
+
+		sql.append(" ORDER BY path COLLATE NOCASE").append(direction)
+		   .append(", dirId").append(direction);
+
+		return sql.toString();
+	}
+
+	/** Builds the query which reads the files of one directory in the order
+	  of a PATH page, with TaggedFile_dirId_name_nocase_idx. The query's
+	  parameters are the directory id and the seek position (name, name,
+	  file id), if seeking, followed by the number of files to read.
+	  @param ascending true for ascending order
+	  @param seek true if the files start after a token's position
+	  @return the directory's file query
+	  */
+	private static String buildDirectoryFilesQuery(boolean ascending,
+												   boolean seek)
+	{
+		String direction = ascending ? " ASC" : " DESC";
+		String past = ascending ? " > " : " < ";
+
+		StringBuilder sql = new StringBuilder();
+		sql.append("SELECT fileId, name FROM ").append(TABLE_NAME)
+		   .append(" WHERE dirId = ?");
+
+		if (seek) {
+			sql.append(" AND name COLLATE NOCASE")
+			   .append(ascending ? " >= " : " <= ").append("?")
+			   .append(" AND (name COLLATE NOCASE").append(past)
+			   .append("? OR fileId").append(past).append("?)");
+		}
+
+		sql.append(" ORDER BY name COLLATE NOCASE").append(direction)
+		   .append(", fileId").append(direction).append(" LIMIT ?");
+
+		return sql.toString();
+	}
+
+	/** Reads the id of a file's directory.
+	  @param conn the connection to read with
+	  @param fileId the id of the file
+	  @return the id of the file's directory, or null if the file is not
+	  		stored
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	private static Integer readDirId(Connection conn, int fileId)
+		throws SQLException
+	{
+		PreparedStatement ps = conn.prepareStatement(READ_DIR_ID_PSQL);
+
+		try {
+			ps.setInt(1, fileId);
+			ResultSet rs = ps.executeQuery();
+
+			try {
+				return rs.next() ? rs.getInt(1) : null;
+
+			} finally {
+				SQLiteRepository.closeQuietly(rs);
+			}
+
+		} finally {
+			SQLiteRepository.closeQuietly(ps);
+		}
+	}
+
+	/** Adds the tagging in the current row of a joined TaggedFile/FileTagging
+	  ResultSet to the specified file, if the row has one.
+	  @param rs the ResultSet, positioned on a row of the file
+	  @param file the TaggedFile to add the tagging to
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	private static void addTaggingFromRow(ResultSet rs, TaggedFile file)
+		throws SQLException
+	{
+		int taggingId = rs.getInt("taggingId");
+
+		if (!rs.wasNull()) {
+			FileTagging tagging = new FileTagging();
+			tagging.setTaggingId(taggingId);
+			tagging.setFileId(file.getFileId());
+			tagging.setTagId(rs.getInt("tagId"));
+			tagging.setTag(rs.getString("tag"));
+			tagging.setComment(rs.getString("comment"));
+
+			file.addFileTagging(tagging);
+		}
+	}
+
+	/** Binds a file path to two parameters: the path of its directory, and
+	  its name.
+	  @param ps the statement whose parameters are set
+	  @param index the index of the directory parameter; the name is bound
+	  		to the next one
+	  @param path the path to bind
+	  @throws SQLException if the parameters can not be set
+	  */
+	private static void bindPath(PreparedStatement ps, int index, String path)
+		throws SQLException
+	{
+		ps.setString(index, StringUtil.parseDirectoryFromPath(path));
+		ps.setString(index + 1, StringUtil.parseNameFromPath(path));
+	}
+
+	/** Binds a long parameter, or NULL if the value is FileStatus.UNKNOWN.
+	  @param ps the statement whose parameter is set
+	  @param index the index of the parameter
+	  @param value the value to bind
+	  @throws SQLException if the parameter can not be set
+	  */
+	private static void bindLong(PreparedStatement ps, int index, long value)
+		throws SQLException
+	{
+		if (value == FileStatus.UNKNOWN) {
+			ps.setNull(index, Types.INTEGER);
+		} else {
+			ps.setLong(index, value);
+		}
+	}
+
+	/** Reads a long column, which is FileStatus.UNKNOWN if NULL.
+	  @param rs the ResultSet, positioned on a row
+	  @param column the name of the column
+	  @return the column's value
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	private static long readLong(ResultSet rs, String column)
+		throws SQLException
+	{
+		long value = rs.getLong(column);
+		return rs.wasNull() ? FileStatus.UNKNOWN : value;
+	}
+
+	/** Creates a TaggedFile, with an empty set of taggings, from the file
+	  columns of the current row of a ResultSet.
+	  @param rs the ResultSet, positioned on a row of the file
+	  @return the new TaggedFile
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	private static TaggedFile newFileFromRow(ResultSet rs) throws SQLException
+	{
+		TaggedFile file = new TaggedFile();
+		file.setFileId(rs.getInt("fileId"));
+		file.setFilePath(rs.getString("path"));
+		file.setMissing(rs.getInt("missing") != 0);
+		file.setFileTaggings(new TreeSet<FileTagging>(
+								new FileTaggingSorters.SQLPrimaryKeySorter()
+							));
+
+		return file;
+	}
+
+
+	//************************************************************
+	// PRIVATE INSTANCE Methods
+	//************************************************************
+
+	/** Opens a cursor which reads FileStatuses with a query.
+	  @param sql a query of the status columns of TaggedFile
+	  @param fetchSize the number of rows to fetch from the database at a time
+	  @return a cursor over the query's statuses
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	private RecordCursor<FileStatus> openStatusCursor(String sql,
+													  int fetchSize)
+		throws SQLException
+	{
+		Connection conn = SQLiteRepository.instance().getReadConnection();
+		Statement stmt = null;
+
+		try {
+			stmt = conn.createStatement();
+			stmt.setFetchSize(fetchSize);
+			ResultSet rs = stmt.executeQuery(sql);
+
+			return new ResultSetCursor<FileStatus>(conn, stmt, rs) {
+				protected FileStatus readRecord(ResultSet rs)
+					throws SQLException
+				{
+					return new FileStatus(rs.getInt("fileId"),
+										  rs.getString("path"),
+										  rs.getInt("missing") != 0,
+										  readLong(rs, "size"),
+										  readLong(rs, "modified"),
+										  readLong(rs, "dirModified"));
+				}
+			};
+
+		} catch (SQLException e) {
+			if (stmt != null) {
+				SQLiteRepository.closeQuietly(stmt);
+			}
+			SQLiteRepository.closeQuietly(conn);
+			throw e;
+		}
+	}
+
+	/** Reads the files tagged with any of up to MAX_TAG_BUCKET tag values,
+	  adding them to a set.
+	  @param conn the connection to read with
+	  @param values the tag values to search for
+	  @param files the set to add the read TaggedFiles to
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	private void readByTagValues(Connection conn, List<String> values,
+								 Set<TaggedFile> files) throws SQLException
+	{
+		int bucket = bucketIndex(values.size());
+		PreparedStatement ps = conn.prepareStatement(READ_BY_TAGS_PSQL[bucket]);
+
+		try {
+			int slots = 1 << bucket;
+
+			for (int i = 0; i < slots; i++) {
+				if (i < values.size()) {
+					ps.setString(i + 1, values.get(i));
+				} else {
+					ps.setNull(i + 1, Types.VARCHAR);
+				}
+			}
+
+			ResultSet rs = ps.executeQuery();
+
+			try {
+				readJoinedRows(rs, files);
+			} finally {
+				SQLiteRepository.closeQuietly(rs);
+			}
+
+		} finally {
+			SQLiteRepository.closeQuietly(ps);
+		}
+	}
+
+	/** Groups the rows of a joined TaggedFile/FileTagging ResultSet into
+	  TaggedFiles, adding each completed file to the specified collection.
+	  @param rs the ResultSet to read, positioned before its first row
+	  @param files the collection to add the read TaggedFiles to
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	private void readJoinedRows(ResultSet rs, Collection<TaggedFile> files)
+		throws SQLException
+	{
+		boolean hasTaggings = hasColumn(rs, "taggingId");
+		TaggedFile file = null;
+
+		while (rs.next()) {
+			int fileId = rs.getInt("fileId");
+
+			if (file == null || file.getFileId() != fileId) {
+				if (file != null) {
+					files.add(file);
+				}
+
+				file = newFileFromRow(rs);
+			}
+
+			if (hasTaggings) {
+				addTaggingFromRow(rs, file);
+			}
+		}
+
+		if (file != null) {
+			files.add(file);
+		}
+	}
+
+	/** Reads the page of files which starts a number of records past a
+	  token's position, or past the start of the PATH ordering. Paths are
+	  not stored whole, so their order can not be read from an index; the
+	  ids and paths of the page's files are instead merged from their
+	  directories by a PathMerge, and the files' taggings are then read by
+	  id. A PATH token's sort key is the path of the last file read.
+	  @param ascending true for ascending order
+	  @param after the token to seek past, or null to start at the first
+	  		record
+	  @param skip the number of records to skip before the page
+	  @param pageSize the maximum number of files on the page, at least 1
+	  @return the page of files, with the token for the page after it
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	private Page<TaggedFile> readPageByDirectory(boolean ascending,
+												 PageToken after, int skip,
+												 int pageSize)
+		throws SQLException
+	{
+		List<Integer> ids = new ArrayList<Integer>(skip + pageSize + 1);
+		List<String> paths = new ArrayList<String>(skip + pageSize + 1);
+		Connection conn = SQLiteRepository.instance().getReadConnection();
+
+		try {
+			PathMerge merge = new PathMerge(conn, ascending, after);
+
+			try {
+				merge.read(skip + pageSize + 1, ids, paths);
+
+			} finally {
+				merge.close();
+			}
+
+		} finally {
+			SQLiteRepository.closeQuietly(conn);
+		}
+
+		// skipped records were merged only to step over them
+		ids = ids.subList(Math.min(skip, ids.size()), ids.size());
+		paths = paths.subList(Math.min(skip, paths.size()), paths.size());
+
+		int size = Math.min(pageSize, ids.size());
+		Map<Integer, TaggedFile> read = new HashMap<Integer, TaggedFile>();
+		for (TaggedFile file : readByIds(ids.subList(0, size), true)) {
+			read.put(file.getFileId(), file);
+		}
+
+		// a file deleted since its id was read is left off the page
+		List<TaggedFile> files = new ArrayList<TaggedFile>(size);
+		for (Integer fileId : ids.subList(0, size)) {
+			TaggedFile file = read.get(fileId);
+			if (file != null) {
+				files.add(file);
+			}
+		}
+
+		PageToken next = null;
+		if (ids.size() > pageSize) {
+			next = new PageToken(TaggedFileOrder.PATH, ascending,
+								 paths.get(size - 1), ids.get(size - 1));
+		}
+
+		return new Page<TaggedFile>(files, next);
+	}
+
+	/** Tests whether a ResultSet contains a column with the specified label.
+	  @param rs the ResultSet to inspect
+	  @param label the column label to look for
+	  @return true if the column is present
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	private boolean hasColumn(ResultSet rs, String label) throws SQLException
+	{
+		ResultSetMetaData meta = rs.getMetaData();
+
+		for (int i = 1; i <= meta.getColumnCount(); i++) {
+			if (label.equalsIgnoreCase(meta.getColumnLabel(i))) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+
+
+	//************************************************************
+	// PRIVATE CLASSES
+	//************************************************************
+
+	/** A PathMerge reads the ids and paths of files in PATH order, the
+	  order of their full paths, for readPageByDirectory(). A directory's
+	  files all sort at or after its path, and within the range of paths
+	  which begin with it. The directories are walked in path order, with
+	  Directory_path_nocase_idx, and each one's files are read in name
+	  order, with TaggedFile_dirId_name_nocase_idx. Ascending, the first of
+	  the files read so far is next once it sorts before the next directory
+	  of the walk, since no file of a later directory can sort before that
+	  directory. Descending, a directory can hold files which sort after
+	  every directory under it, so the directories whose paths begin the
+	  next directory's path are read first. A merge which seeks past a
+	  token reads the directories whose paths begin the token's path from
+	  the token on. Directories whose paths differ only in case are merged
+	  like any others.
+	  */
+	private static final class PathMerge {
+
+		/** Orders Strings as SQLite's NOCASE collation does. */
+		private static final Comparator<String> NOCASE =
+			new Comparator<String>() {
+				public int compare(String a, String b)
+				{
+					return StringUtil.compareNoCase(a, b);
+				}
+			};
+
+		private final boolean ascending;
+		private final String afterPath;
+		private final int afterId;
+		private final PreparedStatement walk;
+		private final PreparedStatement read;
+		private final PreparedStatement seek;
+		private final PreparedStatement readByPath;
+		private final Set<Integer> readDirs;
+		private final Set<String> prefixesRead;
+		private final PriorityQueue<DirectoryFiles> heads;
+		private int limit;
+
+		/** Prepares a merge.
+		  @param conn the connection to read with
+		  @param ascending_ true for ascending order
+		  @param after the token to seek past, or null to start at the
+		  		first file
+		  @throws SQLException if a problem occurs working with the database
+		  */
+		PathMerge(Connection conn, boolean ascending_, PageToken after)
+			throws SQLException
+		{
+			ascending = ascending_;
+			afterPath = after == null ? null : after.getSortKey();
+			afterId = after == null ? 0 : after.getFileId();
+			readDirs = new HashSet<Integer>();
+			prefixesRead = new TreeSet<String>(NOCASE);
+
+			heads = new PriorityQueue<DirectoryFiles>(16,
+				new Comparator<DirectoryFiles>() {
+					public int compare(DirectoryFiles a, DirectoryFiles b)
+					{
+						int c = StringUtil.compareNoCase(a.getPath(),
+														 b.getPath());
+						if (c == 0) {
+							c = a.getFileId() < b.getFileId() ? -1
+								: a.getFileId() > b.getFileId() ? 1 : 0;
+						}
+						return ascending ? c : -c;
+					}
+				});
+
+			walk = conn.prepareStatement(
+						buildDirectoryWalkQuery(ascending, afterPath != null));
+			read = conn.prepareStatement(
+						buildDirectoryFilesQuery(ascending, false));
+			seek = conn.prepareStatement(
+						buildDirectoryFilesQuery(ascending, true));
+			readByPath = conn.prepareStatement(READ_DIRECTORIES_NOCASE_PSQL);
+		}
+
+		/** Closes the merge's statements. */
+		void close()
+		{
+			SQLiteRepository.closeQuietly(walk);
+			SQLiteRepository.closeQuietly(read);
+			SQLiteRepository.closeQuietly(seek);
+			SQLiteRepository.closeQuietly(readByPath);
+		}
+
+		/** Reads the ids and paths of files in order.
+		  @param limit_ the number of files to read
+		  @param ids the ids of the files read, added to
+		  @param paths the paths of the files read, added to
+		  @throws SQLException if a problem occurs working with the database
+		  */
+		void read(int limit_, List<Integer> ids, List<String> paths)
+			throws SQLException
+		{
+			limit = limit_;
+
+			if (afterPath != null) {
+				readPrefixes(afterPath);
+				walk.setString(1, afterPath);
+			}
+
+			ResultSet rs = walk.executeQuery();
+
+			try {
+				boolean more = rs.next();
+				int dirId = more ? rs.getInt(1) : 0;
+				String dirPath = more ? rs.getString(2) : null;
+
+				while (ids.size() < limit) {
+					if (more && !ascending) {
+						readPrefixes(dirPath);
+					}
+
+					DirectoryFiles head = heads.peek();
+					int c = head == null || !more ? 0
+							: StringUtil.compareNoCase(head.getPath(), dirPath);
+
+					if (head != null && (!more || (ascending ? c < 0 : c > 0))) {
+						heads.poll();
+						ids.add(head.getFileId());
+						paths.add(head.getPath());
+						if (head.advance()) {
+							heads.add(head);
+						}
+
+					} else if (more) {
+						readFiles(dirId, dirPath);
+						more = rs.next();
+						dirId = more ? rs.getInt(1) : 0;
+						dirPath = more ? rs.getString(2) : null;
+
+					} else {
+						break;
+					}
+				}
+
+			} finally {
+				SQLiteRepository.closeQuietly(rs);
+			}
+		}
+
+		/** Reads the files of every directory whose path, ignoring case,
+		  begins the specified path, including the path itself if it is a
+		  directory's.
+		  @param path the path whose directories are read
+		  @throws SQLException if a problem occurs working with the database
+		  */
+		private void readPrefixes(String path) throws SQLException
+		{
+			for (int end = 0; end <= path.length(); end++) {
+				if (end > 0 && path.charAt(end - 1) != '/'
+					&& path.charAt(end - 1) != '\\') {
+					continue;
+				}
+
+				String prefix = path.substring(0, end);
+				if (!prefixesRead.add(prefix)) {
+					continue;
+				}
+
+				List<Integer> dirIds = new ArrayList<Integer>();
+				List<String> dirPaths = new ArrayList<String>();
+				readByPath.setString(1, prefix);
+				ResultSet rs = readByPath.executeQuery();
+
+				try {
+					while (rs.next()) {
+						dirIds.add(rs.getInt(1));
+						dirPaths.add(rs.getString(2));
+					}
+
+				} finally {
+					SQLiteRepository.closeQuietly(rs);
+				}
+
+				for (int i = 0; i < dirIds.size(); i++) {
+					readFiles(dirIds.get(i), dirPaths.get(i));
+				}
+			}
+		}
+
+		/** Reads the first files of a directory into the merge, unless they
+		  have been read. If the directory's path begins the token's path,
+		  its files are read from the token on.
+		  @param dirId the id of the directory
+		  @param dirPath the path of the directory
+		  @throws SQLException if a problem occurs working with the database
+		  */
+		private void readFiles(int dirId, String dirPath) throws SQLException
+		{
+			if (!readDirs.add(dirId)) {
+				return;
+			}
+
+			PreparedStatement ps = read;
+			int param = 1;
+
+			if (afterPath != null && afterPath.length() >= dirPath.length()
+				&& StringUtil.compareNoCase(dirPath, afterPath.substring(0,
+											dirPath.length())) == 0) {
+				String afterName = afterPath.substring(dirPath.length());
+				ps = seek;
+				ps.setString(2, afterName);
+				ps.setString(3, afterName);
+				ps.setInt(4, afterId);
+				param = 4;
+			}
+
+			ps.setInt(1, dirId);
+			ps.setInt(param + 1, limit);
+
+			List<Integer> fileIds = new ArrayList<Integer>();
+			List<String> names = new ArrayList<String>();
+			ResultSet rs = ps.executeQuery();
+
+			try {
+				while (rs.next()) {
+					fileIds.add(rs.getInt(1));
+					names.add(rs.getString(2));
+				}
+
+			} finally {
+				SQLiteRepository.closeQuietly(rs);
+			}
+
+			if (!fileIds.isEmpty()) {
+				heads.add(new DirectoryFiles(dirPath, fileIds, names));
+			}
+		}
+	}
+
+	/** A DirectoryFiles holds the files of one directory which a PathMerge
+	  has read but not yet merged, in order. */
+	private static final class DirectoryFiles {
+
+		private final String dirPath;
+		private final List<Integer> fileIds;
+		private final List<String> names;
+		private int next;
+
+		DirectoryFiles(String dirPath_, List<Integer> fileIds_,
+					   List<String> names_)
+		{
+			dirPath = dirPath_;
+			fileIds = fileIds_;
+			names = names_;
+		}
+
+		/** @return the id of the directory's next file */
+		int getFileId()
+		{
+			return fileIds.get(next);
+		}
+
+		/** @return the path of the directory's next file */
+		String getPath()
+		{
+			return dirPath + names.get(next);
+		}
+
+		/** Moves past the next file.
+		  @return true if the directory has another file
+		  */
+		boolean advance()
+		{
+			return ++next < fileIds.size();
+		}
 	}
 
 }
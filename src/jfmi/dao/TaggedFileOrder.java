@@ -0,0 +1,44 @@
+package jfmi.dao;
+
+import java.util.Comparator;
+
+import jfmi.app.TaggedFile;
+import jfmi.util.StringUtil;
+
+/** The orderings in which TaggedFile records can be read a page at a time.
+  Both orderings compare their sort keys without regard to case, matching
+  TaggedFileSorters.FileNameSorter and FilePathSorter, and break ties by
+  file id so that every record has a unique position.
+  */
+public enum TaggedFileOrder {
+
+	/** Orders files by the name of the file, the last element of its path. */
+	NAME,
+
+	/** Orders files by their full path. */
+	PATH;
+
+	/** Returns a comparator which orders files as they are read in this
+	  ordering.
+	  @param ascending true for ascending order
+	  @return the comparator
+	  */
+	public Comparator<TaggedFile> getComparator(final boolean ascending)
+	{
+		return new Comparator<TaggedFile>() {
+			public int compare(TaggedFile a, TaggedFile b)
+			{
+				int c = (TaggedFileOrder.this == NAME)
+					? StringUtil.compareNoCase(a.getFileName(), b.getFileName())
+					: StringUtil.compareNoCase(a.getFilePath(), b.getFilePath());
+
+				if (c == 0) {
+					c = (a.getFileId() < b.getFileId()) ? -1
+						: (a.getFileId() == b.getFileId() ? 0 : 1);
+				}
+
+				return ascending ? c : -c;
+			}
+		};
+	}
+}
@@ -17,6 +17,7 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Vector;
 
@@ -39,6 +40,7 @@ public class FileTagHandlerDialog extends JDialog implements ActionListener {
 	private Box buttonBox;
 
 	private JList<FileTag> tagJList;
+	private MutableListModel<FileTag> tagListModel;
 	private JScrollPane tagScroller;
 	private Box listBox;
 
@@ -98,9 +100,40 @@ public class FileTagHandlerDialog extends JDialog implements ActionListener {
 	public void setTagJListData(Vector<FileTag> data)
 	{
 		if (data == null) {
-			tagJList.setListData(new FileTag[0]);
+			tagListModel = new MutableListModel<FileTag>();
 		} else {
-			tagJList.setListData(data);
+			tagListModel = new MutableListModel<FileTag>(data);
+		}
+
+		// tags added later are placed in order
+		tagListModel.sort();
+
+		tagJList.setModel(tagListModel);
+	}
+
+	/** Adds tags which were added to the repository to the displayed list,
+	  in order. Tags which are already displayed are ignored.
+	  @param tags the tags to add
+	  */
+	public void addTags(Collection<FileTag> tags)
+	{
+		for (FileTag tag : tags) {
+			if (tagListModel.binarySearch(tag) < 0) {
+				tagListModel.add(tag);
+			}
+		}
+	}
+
+	/** Removes tags which were deleted from the repository from the
+	  displayed list.
+	  @param tagIds the tag ids of the deleted tags
+	  */
+	public void removeTags(Collection<Integer> tagIds)
+	{
+		for (int i = tagListModel.getSize() - 1; i >= 0; i--) {
+			if (tagIds.contains(tagListModel.getElementAt(i).getTagId())) {
+				tagListModel.remove(i);
+			}
 		}
 	}
 
@@ -197,7 +230,8 @@ public class FileTagHandlerDialog extends JDialog implements ActionListener {
 	  */
 	private final void initListBox()
 	{
-		tagJList = new JList<FileTag>();
+		tagListModel = new MutableListModel<FileTag>();
+		tagJList = new JList<FileTag>(tagListModel);
 		tagJList.setLayoutOrientation(JList.VERTICAL);
 
 		// Initialize the scrollpane
@@ -1,6 +1,7 @@
 package jfmi.gui;
 
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 /** Provides a selection of utility methods for working with Java GUIs.
   */
@@ -10,6 +11,19 @@ public final class GUIUtil {
 	// PUBLIC CLASS Methods
 	//************************************************************
 
+	/** Runs a task on the event dispatch thread: at once if the caller is
+	  on that thread, otherwise after the events already queued.
+	  @param task the task to run
+	  */
+	public static void runOnEventDispatchThread(Runnable task)
+	{
+		if (SwingUtilities.isEventDispatchThread()) {
+			task.run();
+		} else {
+			SwingUtilities.invokeLater(task);
+		}
+	}
+
 	/** Uses the JOptionPane.showMessageDialog() method to display the
 	  specified alert message.
 	  @param message The message to display.
@@ -7,9 +7,10 @@ import java.awt.Dimension;
 import java.awt.event.ActionListener;
 import java.awt.event.ActionEvent;
 import java.io.File;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -28,7 +29,10 @@ import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.ListCellRenderer;
 import javax.swing.ListSelectionModel;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
 
 import jfmi.app.FileTag;
 import jfmi.app.TaggedFile;
@@ -37,6 +41,7 @@ import jfmi.control.JFMIApp;
 import jfmi.control.TaggedFileHandler;
 import jfmi.control.FileTagHandler;
 import jfmi.control.FileTaggingHandler;
+import jfmi.util.StringUtil;
 
 
 /** A JFMIFrame acts as the parent Swing Component for the JFMI application's
@@ -48,6 +53,13 @@ public class JFMIFrame extends JFrame implements ActionListener {
 	private static final String FRAME_TITLE = "JFMI";
 	private static final Dimension FRAME_DIMENSION = new Dimension(800, 600);
 
+	/* The list model keeps the orders it was sorted in, keyed by their
+	   Comparators, so the same instances are used for every sort. */
+	private static final Comparator<TaggedFile> NAME_ORDER
+									= new TaggedFileSorters.FileNameSorter();
+	private static final Comparator<TaggedFile> PATH_ORDER
+									= new TaggedFileSorters.FilePathSorter();
+
 	// PRIVATE Instance Fields
 	private JPanel contentPanel;
 
@@ -65,10 +77,19 @@ public class JFMIFrame extends JFrame implements ActionListener {
 	private JButton editFileButton;
 	private JButton showFileButton;
 	private JButton deleteFilesButton;
+	private JButton checkPathsButton;
+	private JButton findMissingButton;
 	private JButton sortButton;
 	private JButton searchButton;
 
+	private Box statusBox;
+	private JLabel statusLabel;
+	private JButton cancelTaskButton;
+
 	private MutableListModel<TaggedFile> listModel;
+	private Map<Integer, TaggedFile> listedFiles;
+	private PagedListModel<TaggedFile> pagedModel;
+	private volatile boolean showingAllFiles;
 	private JList<TaggedFile> taggedFileJList;
 	private JScrollPane taggedFileScroller;	
 
@@ -99,14 +120,26 @@ public class JFMIFrame extends JFrame implements ActionListener {
 		setContentPane(contentPanel);
 		initButtonBox();
 		initTagScroller();
+		initStatusBox();
 
 		add(buttonBox, BorderLayout.WEST);
 		add(taggedFileScroller, BorderLayout.CENTER);
+		add(statusBox, BorderLayout.SOUTH);
 
 		// Do not display initially
 		setVisible(false);
 	}
 
+	/** Indicates whether the list shows every stored file, read a page at a
+	  time, rather than a list of files such as search results. May be
+	  called on any thread.
+	  @return true if the list shows every stored file
+	  */
+	public boolean isShowingAllFiles()
+	{
+		return showingAllFiles;
+	}
+
 	/** Prompts a user to confirm an action with the specified message, and 
 	  returns the user's decision.
 	  @param confirmMsg the message to display to the user
@@ -121,12 +154,44 @@ public class JFMIFrame extends JFrame implements ActionListener {
 		return choice == JOptionPane.OK_OPTION;
 	}
 
+	/** Removes files which were deleted from the repository from the
+	  displayed list.
+	  @param fileIds the ids of the deleted files
+	  */
+	public void removeTaggedFiles(Collection<Integer> fileIds)
+	{
+		for (Integer id : fileIds) {
+			TaggedFile listed = listedFiles.remove(id);
+
+			if (listed != null) {
+				int index = listModel.indexOf(listed);
+				if (index >= 0) {
+					listModel.remove(index);
+				}
+			}
+		}
+	}
+
+	/** Sets the list data of the taggedFileJList list, sorted by file name.
+	  Passing a null reference to the method causes an exception to be thrown.
+	  @param vector Non-null Vector<TaggedFile> to be used as the list's data
+	  @throws IllegalArgumentException if vector is null
+	  */
+	public void setTaggedFileJListData(Vector<TaggedFile> vector)
+	{
+		setTaggedFileJListData(vector, true);
+	}
+
 	/** Sets the list data of the taggedFileJList list. Passing a null
 	  reference to the method causes an exception to be thrown.
 	  @param vector Non-null Vector<TaggedFile> to be used as the list's data
+	  @param sortByName if true, the list is sorted by file name; otherwise
+	  		the files are displayed in the order given, such as the ranked
+	  		order of search results
 	  @throws IllegalArgumentException if vector is null
 	  */
-	public void setTaggedFileJListData(Vector<TaggedFile> vector)
+	public void setTaggedFileJListData(Vector<TaggedFile> vector,
+									   boolean sortByName)
 	{
 		if (vector == null) {
 			throw new IllegalArgumentException("vector cannot be null");
@@ -135,12 +200,85 @@ public class JFMIFrame extends JFrame implements ActionListener {
 		// Set up the model and apply it to the list
 		listModel = new MutableListModel<TaggedFile>(vector);
 		taggedFileJList.setModel(listModel);	
+		taggedFileJList.setFixedCellWidth(-1);
+		showingAllFiles = false;
+
+		listedFiles = new HashMap<Integer, TaggedFile>();
+		for (TaggedFile file : vector) {
+			listedFiles.put(file.getFileId(), file);
+		}
 
 		// Sort the list
-		sortTaggedFileJList(new TaggedFileSorters.FileNameSorter());
+		if (sortByName) {
+			sortTaggedFileJList(NAME_ORDER);
+		}
+	}
+
+	/** Shows every stored file in the list, reading the files a page at a
+	  time from the specified source as they are scrolled into view.
+	  @param source the source of the files, in the order they are shown
+	  @param size the number of files the source has
+	  @param refresh if true, the source replaces one with the same order
+	  		whose files have changed, and the selection is kept; otherwise
+	  		the selection is cleared
+	  */
+	public void setTaggedFileJListSource(
+			PagedListModel.PageSource<TaggedFile> source, int size,
+			boolean refresh)
+	{
+		if (!showingAllFiles) {
+			// release the files of the previous list
+			listModel = new MutableListModel<TaggedFile>();
+			listedFiles = new HashMap<Integer, TaggedFile>();
+
+			/* Measuring the width of every row would read every page, so
+			   the cells are as wide as the widest row read so far. */
+			pagedModel.setSource(source, size);
+			taggedFileJList.setFixedCellWidth(0);
+			taggedFileJList.setModel(pagedModel);
+			showingAllFiles = true;
+			return;
+		}
+
+		if (!refresh) {
+			taggedFileJList.clearSelection();
+			taggedFileJList.setFixedCellWidth(0);
+		}
+
+		pagedModel.setSource(source, size);
+	}
+
+	/** Applies changes to the stored files to the list of every file,
+	  without reading the files already shown again.
+	  @param removedIds the ids of the files which were deleted or changed
+	  @param files the files which were added, and the changed files
+	  @throws IllegalStateException if every file is not being shown, or
+	  		its source is not ordered
+	  */
+	public void applyFileChanges(Collection<Integer> removedIds,
+								 Collection<TaggedFile> files)
+	{
+		if (!showingAllFiles) {
+			throw new IllegalStateException("every file is not being shown");
+		}
+
+		pagedModel.applyChanges(removedIds, files);
+	}
+
+	/** Shows the status of a background task below the list of files, with a
+	  button to cancel it. Must be called on the event dispatch thread.
+	  @param status the status to show, or null to hide the status
+	  */
+	public void setTaskStatus(String status)
+	{
+		statusLabel.setText(status == null ? "" : status);
+		statusBox.setVisible(status != null);
+		contentPanel.revalidate();
 	}
 
 	/** Sorts the displayed list of TaggedFiles using the specified Comparator.
+	  The list's orders are kept, so sorting by an equal Comparator again
+	  reuses the earlier order.
 	  @param c the Comparator to sort the files with
 	 */ 
 	public void sortTaggedFileJList(Comparator<TaggedFile> c)
@@ -148,6 +286,21 @@ public class JFMIFrame extends JFrame implements ActionListener {
 		listModel.sort(c);
 	}
 
+	/** Updates the displayed list with files which were updated in the
+	  repository. Files which are not displayed are ignored.
+	  @param files the updated files
+	  */
+	public void updateTaggedFiles(Collection<TaggedFile> files)
+	{
+		for (TaggedFile file : files) {
+			TaggedFile listed = listedFiles.get(file.getFileId());
+
+			if (listed != null) {
+				replaceTaggedFile(listed, file);
+			}
+		}
+	}
+
 
 	//************************************************************
 	// PRIVATE INSTANCE Methods
@@ -156,30 +309,76 @@ public class JFMIFrame extends JFrame implements ActionListener {
 	/** Handles sorting logic when the user confirms the sort option dialog. */
 	private void handleSortConfirm()
 	{
-		Comparator<TaggedFile> c = null;
-
 		String field = sortDialog.getSelectedField();
 		String order = sortDialog.getSelectedOrder();
 
-		if (sortDialog.fieldChanged()) {
-			if (field.equals("Name")) {
-				c = new TaggedFileSorters.FileNameSorter();
-			} else {
-				c = new TaggedFileSorters.FilePathSorter();
+		// every stored file is sorted by the repository as it is read
+		if (showingAllFiles) {
+			if (sortDialog.fieldChanged() || sortDialog.orderChanged()) {
+				jfmiApp.getFileHandler().beginSortAllFiles(
+								"Name".equals(field),
+								!"Descending (Z-A)".equals(order));
 			}
+			return;
+		}
+
+		if (sortDialog.fieldChanged()) {
+			sortTaggedFileJList(field.equals("Name") ? NAME_ORDER : PATH_ORDER);
+			listModel.setReversed(order.equals("Descending (Z-A)"));
+
+		} else if (sortDialog.orderChanged()) {	
+			listModel.reverse();	
+		}
+	}
+
+	/** Widens the cells of the list of every stored file to fit the rows
+	  in a range which have been read. Rows which have not been read are
+	  skipped a page at a time.
+	  @param first the index of the first row
+	  @param last the index of the last row
+	  */
+	private void fitCellWidthToRows(int first, int last)
+	{
+		ListCellRenderer<? super TaggedFile> renderer;
+		renderer = taggedFileJList.getCellRenderer();
+		int pageSize = pagedModel.getPageSize();
+		int width = taggedFileJList.getFixedCellWidth();
 
-			if (order.equals("Descending (Z-A)")) {
-				c = Collections.reverseOrder(c);
+		for (int index = first; index <= last; index++) {
+			TaggedFile file = pagedModel.peekElementAt(index);
+
+			if (file == null) {
+				index += pageSize - 1 - index % pageSize;
+				continue;
 			}
 
-			sortTaggedFileJList(c);
+			Component cell = renderer.getListCellRendererComponent(
+									taggedFileJList, file, index, false,
+									false);
+			width = Math.max(width, cell.getPreferredSize().width);
 		}
 
-		if (c == null && sortDialog.orderChanged()) {	
-			listModel.reverse();	
+		if (width > taggedFileJList.getFixedCellWidth()) {
+			taggedFileJList.setFixedCellWidth(width);
 		}
 	}
 
+	/** Replaces a displayed file with its updated version, moving it if its
+	  position in the list's order has changed.
+	  @param listed the displayed file
+	  @param file the updated file
+	  */
+	private void replaceTaggedFile(TaggedFile listed, TaggedFile file)
+	{
+		int index = listModel.indexOf(listed);
+		if (index < 0) {
+			return;
+		}
+
+		listedFiles.put(file.getFileId(), file);
+		listModel.set(index, file);
+	}
+
 	/** Initializes the contentPanel field.
 	  */
 	private final void initContentPanel()
@@ -218,6 +417,12 @@ public class JFMIFrame extends JFrame implements ActionListener {
 		initMenuButton(deleteFilesButton);
 		deleteFilesButton.setForeground(Styles.DANGER_COLOR);
 
+		checkPathsButton = new JButton("Check File Paths");
+		initMenuButton(checkPathsButton);
+
+		findMissingButton = new JButton("Find Missing Files");
+		initMenuButton(findMissingButton);
+
 		JLabel sortLabel = new JLabel("Sort/Search Options");
 		initMenuLabel(sortLabel);
 
@@ -248,6 +453,10 @@ public class JFMIFrame extends JFrame implements ActionListener {
 		paddedBox.add(Box.createVerticalStrut(5));
 		paddedBox.add(showFileButton);
 		paddedBox.add(Box.createVerticalStrut(5));
+		paddedBox.add(checkPathsButton);
+		paddedBox.add(Box.createVerticalStrut(5));
+		paddedBox.add(findMissingButton);
+		paddedBox.add(Box.createVerticalStrut(5));
 		paddedBox.add(deleteFilesButton);
 		paddedBox.add(Box.createVerticalStrut(50));
 
@@ -262,6 +471,27 @@ public class JFMIFrame extends JFrame implements ActionListener {
 		buttonBox.add(paddedBox);
 	}
 
+	/** Initializes the statusBox field, which is hidden until a background
+	  task reports its status.
+	  */
+	private final void initStatusBox()
+	{
+		statusLabel = new JLabel("");
+		statusLabel.setForeground(Color.DARK_GRAY);
+		statusLabel.setFont(Styles.SS_PLAIN_14);
+
+		cancelTaskButton = new JButton("Cancel");
+		cancelTaskButton.addActionListener(this);
+		Styles.setDefaultJButtonStyles(cancelTaskButton);
+
+		statusBox = Box.createHorizontalBox();
+		statusBox.setBorder(new EmptyBorder(5, 10, 5, 10));
+		statusBox.add(statusLabel);
+		statusBox.add(Box.createHorizontalGlue());
+		statusBox.add(cancelTaskButton);
+		statusBox.setVisible(false);
+	}
+
 	/** Initializes a menu button. 
 	  @param b the button to initialize
 	  */
@@ -334,9 +564,39 @@ public class JFMIFrame extends JFrame implements ActionListener {
 	{
 		// Instantiate the taggedFileJList
 		listModel = new MutableListModel<TaggedFile>();
+		listedFiles = new HashMap<Integer, TaggedFile>();
+		pagedModel = new PagedListModel<TaggedFile>();
 		taggedFileJList = new JList<TaggedFile>(listModel);
 		taggedFileJList.setLayoutOrientation(JList.VERTICAL);
-		taggedFileJList.setCellRenderer(new TaggedFileJListRenderer());
+		TaggedFileJListRenderer renderer = new TaggedFileJListRenderer();
+		taggedFileJList.setCellRenderer(renderer);
+
+		/* Every cell is as tall as the prototype's, so the list does not
+		   measure each file's cell to find its height. Cells are as wide
+		   as their files' paths. */
+		Component prototype = renderer.getListCellRendererComponent(
+						taggedFileJList,
+						TaggedFileJListRenderer.createPrototypeFile(),
+						0, false, false);
+		taggedFileJList.setFixedCellHeight(
+						prototype.getPreferredSize().height);
+
+		pagedModel.addListDataListener(new ListDataListener() {
+			public void contentsChanged(ListDataEvent e)
+			{
+				if (showingAllFiles) {
+					fitCellWidthToRows(e.getIndex0(), e.getIndex1());
+				}
+			}
+
+			public void intervalAdded(ListDataEvent e)
+			{
+			}
+
+			public void intervalRemoved(ListDataEvent e)
+			{
+			}
+		});
 
 		// Initialize the scroll pane
 		taggedFileScroller = new JScrollPane(taggedFileJList);
@@ -373,17 +633,29 @@ public class JFMIFrame extends JFrame implements ActionListener {
 		else if (src == editFileButton) actionEditFileButton();
 		else if (src == showFileButton) actionShowFileButton();	
 		else if (src == deleteFilesButton) actionDeleteFilesButton();
+		else if (src == checkPathsButton) 
+			jfmiApp.getFileHandler().beginValidatePaths(true);
+		else if (src == findMissingButton)
+			jfmiApp.getFileHandler().beginRelocateFiles();
 		else if (src == sortButton) sortDialog.setVisible(true);
 		else if (src == sortDialog.getConfirmButton()) actionSortConfirm();
 		else if (src == searchButton) actionSearchButton(); 
 		else if (src == searchDialog.getSearchButton()) actionSearchConfirm();
+		else if (src == cancelTaskButton) actionCancelTaskButton();
 	}
 
 	/** Handles an ActionEvent generated by allFilesButton.
 	  */
 	private void actionAllFilesButton()
 	{
-		jfmiApp.getFileHandler().updateDataAndGUI(true);
+		jfmiApp.getFileHandler().beginShowAllFiles(true);
+	}
+
+	/** Handles an ActionEvent generated by cancelTaskButton.
+	  */
+	private void actionCancelTaskButton()
+	{
+		jfmiApp.getFileHandler().cancelBackgroundTasks();
 	}
 
 	/** Handles an ActionEvent generated by editFileButton.
@@ -417,6 +689,9 @@ public class JFMIFrame extends JFrame implements ActionListener {
 	private void actionDeleteFilesButton()
 	{
 		List<TaggedFile> files = taggedFileJList.getSelectedValuesList();
+
+		// rows whose page has not been read are null
+		files.removeAll(Collections.singleton(null));
 		jfmiApp.getFileHandler().beginDeleteFiles(files);
 	}
 
@@ -464,7 +739,7 @@ public class JFMIFrame extends JFrame implements ActionListener {
 		if (keywords.equals("")) {
 			words = null;
 		} else {
-			words = new TreeSet<String>(Arrays.asList(keywords.split("\\s")));
+			words = new TreeSet<String>(StringUtil.splitKeywords(keywords));
 		}
 
 		// Get tags
@@ -1,22 +1,40 @@
 package jfmi.gui;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.RandomAccess;
+import java.util.Map;
 import java.util.Vector;
 import javax.swing.AbstractListModel;
 
+import jfmi.util.ParallelSort;
+
 /** Extends AbstractListModel to provide a mutable ListModel backed by a
   List. The elements in the ListModel must implement the Comparable interface.
+
+  Sorting does not move the backing List's elements. Instead, a sorted model
+  displays its elements through a permutation of their indices in the List.
+  The permutations of the most recently used orders are kept, and updated
+  as elements are added and removed, so switching back to an order does not
+  sort the list again. Reversing the list only flips the direction in which
+  the permutation is read.
   */
-public class MutableListModel<E extends Comparable<E>> 
+public class MutableListModel<E extends Comparable<E>>
 	extends AbstractListModel<E> {
 
+	// PUBLIC CLASS Fields
+	public static final int MAX_CACHED_ORDERS = 4;
+
 	// Private Instance Fields
 	private List<E> data;
+	private final Map<Comparator<? super E>, Permutation> orders;
+	private final Comparator<E> naturalOrder;
+	private Permutation active;
+	private boolean reversed;
 
 
 	//************************************************************
@@ -32,16 +50,12 @@ public class MutableListModel<E extends Comparable<E>>
 
 	/** Constructs an instance backed by the elements in the specified
 	  Collection.
-	  @param collection the non-null Collection that will be used to back the 
+	  @param collection the non-null Collection that will be used to back the
 	  		list model by creating a new List from its elements
 	  */
 	public MutableListModel(Collection<E> collection)
 	{
-		if (collection == null) {
-			throw new NullPointerException("collection cannot be null");
-		}
-
-		data = new Vector<E>(collection);
+		this(new Vector<E>(checkNotNull(collection, "collection")));
 	}
 
 	/** Constructs an instance backed by the specified non-null List.
@@ -49,31 +63,103 @@ public class MutableListModel<E extends Comparable<E>>
 	  */
 	public MutableListModel(List<E> list)
 	{
-		if (list == null) {
-			throw new NullPointerException("list cannot be null");
-		}
+		data = checkNotNull(list, "list");
+
+		// least recently used orders are forgotten first
+		orders = new LinkedHashMap<Comparator<? super E>, Permutation>(
+														8, 0.75f, true) {
+			protected boolean removeEldestEntry(
+					Map.Entry<Comparator<? super E>, Permutation> eldest)
+			{
+				return size() > MAX_CACHED_ORDERS && eldest.getValue() != active;
+			}
+		};
 
-		data = list;
+		naturalOrder = new Comparator<E>() {
+			public int compare(E e1, E e2)
+			{
+				return e1.compareTo(e2);
+			}
+		};
 	}
 
-	/** Adds an element to the end of the list.
+	/** Adds an element to the list. If the list is sorted, the element is
+	  added at its sorted position, after any equal elements; otherwise, it
+	  is added to the end of the list, or to the start if the list is
+	  reversed.
 	  @param e the element to add to the list
+	  @return the index at which the element was added
 	  */
-	public void add(E e)
+	public int add(E e)
 	{
 		data.add(e);
-		int end = data.size() - 1;
-		fireIntervalAdded(this, end, end);
+		int added = data.size() - 1;
+		int position = added;
+
+		for (Permutation p : orders.values()) {
+			int inserted = p.insert(added);
+
+			if (p == active) {
+				position = inserted;
+			}
+		}
+
+		int index = toIndex(position);
+		fireIntervalAdded(this, index, index);
+		return index;
 	}
 
-	/** Adds an element to the list at the specified index.
+	/** Adds an element to the list at the specified index. The list is no
+	  longer sorted afterwards; its elements keep their displayed order.
 	  @param index the index at which to insert the element
 	  @param e the element to be added
 	  */
 	public void add(int index, E e)
 	{
+		if (active != null || reversed) {
+			unsort();
+		}
+
 		data.add(index, e);
-		fireIntervalAdded(this, index, index); 
+		fireIntervalAdded(this, index, index);
+	}
+
+	/** Searches the list for an element which compares equal to a key, by
+	  the order the list is sorted in, or by the natural ordering of its
+	  elements if it is not sorted. An unsorted list must be in the natural
+	  ordering of its elements.
+	  @param key the key to search for
+	  @return the index of a matching element if there is one; otherwise,
+	  		(-(insertion point) - 1)
+	  */
+	public int binarySearch(E key)
+	{
+		Comparator<? super E> order = getOrder();
+		if (order == null) {
+			order = naturalOrder;
+		}
+
+		if (reversed) {
+			order = Collections.reverseOrder(order);
+		}
+
+		int low = 0;
+		int high = data.size() - 1;
+
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int c = order.compare(getElementAt(mid), key);
+
+			if (c < 0) {
+				low = mid + 1;
+			} else if (c > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+
+		return -(low + 1);
 	}
 
 	/** Returns true if the list model contains the specified element.
@@ -85,21 +171,36 @@ public class MutableListModel<E extends Comparable<E>>
 		return data.contains(element);
 	}
 
-	/** Returns a copy of the model's backing list.
-	  @return a copy of the model's backing data list
+	/** Returns a copy of the model's elements, in the order they are
+	  displayed.
+	  @return a copy of the model's data, in display order
 	  */
 	public List<E> getDataCopy()
 	{
-		return new Vector<E>(data);
+		Vector<E> copy = new Vector<E>(data.size());
+
+		for (int i = 0; i < data.size(); i++) {
+			copy.add(getElementAt(i));
+		}
+
+		return copy;
 	}
-	
+
 	/** Accesses the element at the specified index.
 	  @param index the index of the element to access
 	  @return the element at the specified index
 	  */
 	public E getElementAt(int index)
 	{
-		return data.get(index);
+		return data.get(toDataIndex(index));
+	}
+
+	/** Returns the comparator the list is sorted by, before any reversal.
+	  @return the list's order, or null if the list is not sorted
+	  */
+	public Comparator<? super E> getOrder()
+	{
+		return active == null ? null : active.order;
 	}
 
 	/** Returns the number of elements in the backing List.
@@ -110,6 +211,28 @@ public class MutableListModel<E extends Comparable<E>>
 		return data.size();
 	}
 
+	/** Returns the index of the specified element, which must be the same
+	  instance as the listed element. If the list is sorted, the element is
+	  found by binary search; otherwise, the whole list is searched.
+	  @param element the element to search for
+	  @return the index of the element, or -1 if it is not in the list
+	  */
+	public int indexOf(E element)
+	{
+		if (active == null) {
+			for (int i = 0; i < data.size(); i++) {
+				if (data.get(i) == element) {
+					return toIndex(i);
+				}
+			}
+
+			return -1;
+		}
+
+		int position = active.positionOf(element);
+		return position < 0 ? -1 : toIndex(position);
+	}
+
 	/** Returns true if the list is empty.
 	  */
 	public boolean isEmpty()
@@ -117,13 +240,27 @@ public class MutableListModel<E extends Comparable<E>>
 		return data.isEmpty();
 	}
 
+	/** Returns true if the list is displayed in the reverse of its order.
+	  @return true if the list is reversed
+	  */
+	public boolean isReversed()
+	{
+		return reversed;
+	}
+
 	/** Removes the element at the specified index.
 	  @param index the index of the element to remove
 	  @return the removed element
 	  */
 	public E remove(int index)
 	{
-		E element = data.remove(index);
+		int removed = toDataIndex(index);
+		E element = data.remove(removed);
+
+		for (Permutation p : orders.values()) {
+			p.remove(removed);
+		}
+
 		fireIntervalRemoved(this, index, index);
 		return element;
 	}
@@ -134,12 +271,13 @@ public class MutableListModel<E extends Comparable<E>>
 	  */
 	public boolean remove(E element)
 	{
-		int indexOf = data.indexOf(element);		
-		
-		if (indexOf == -1) {
+		int dataIndex = data.indexOf(element);
+
+		if (dataIndex == -1) {
 			return false;
 		} else {
-			remove(indexOf);
+			remove(toIndex(active == null ? dataIndex
+										   : active.positionOfIndex(dataIndex)));
 			return true;
 		}
 	}
@@ -149,34 +287,330 @@ public class MutableListModel<E extends Comparable<E>>
 	  */
 	public E removeFromEnd()
 	{
-		E element = data.remove(data.size() - 1);
-		int index = data.size();
-		fireIntervalRemoved(this, index, index); 
-		return element;
+		return remove(data.size() - 1);
 	}
 
-	/** Reverses the order of the elements in the list. */
+	/** Reverses the order of the elements in the list. The elements are not
+	  moved; the list is only read in the other direction. */
 	public void reverse()
 	{
-		Collections.reverse(data);
-		fireContentsChanged(this, 0, data.size());
+		setReversed(!reversed);
+	}
+
+	/** Replaces the element at the specified index. If the list is sorted,
+	  and the new element does not compare equal to the old, the new element
+	  is moved to its sorted position.
+	  @param index the index of the element to replace
+	  @param e the new element
+	  @return the replaced element
+	  */
+	public E set(int index, E e)
+	{
+		int replaced = toDataIndex(index);
+		E element = data.set(replaced, e);
+
+		for (Permutation p : orders.values()) {
+			if (p != active && p.order.compare(element, e) != 0) {
+				p.reposition(replaced);
+			}
+		}
+
+		if (active == null || active.order.compare(element, e) == 0) {
+			fireContentsChanged(this, index, index);
+			return element;
+		}
+
+		int position = active.reposition(replaced);
+		fireIntervalRemoved(this, index, index);
+
+		index = toIndex(position);
+		fireIntervalAdded(this, index, index);
+		return element;
+	}
+
+	/** Sets whether the list is displayed in the reverse of its order.
+	  @param reversed_ true to reverse the list
+	  */
+	public void setReversed(boolean reversed_)
+	{
+		if (reversed != reversed_) {
+			reversed = reversed_;
+			fireAllChanged();
+		}
 	}
 
 	/** Sorts the list data according to the natural ordering of its elements.
 	  */
 	public void sort()
 	{
-		Collections.sort(data);
-		fireContentsChanged(this, 0, data.size());
+		sort(naturalOrder);
 	}
 
-	/** Sorts the list according to the specified comparator.
+	/** Sorts the list according to the specified comparator, in ascending
+	  order. If the list was sorted by an equal comparator recently, its
+	  order is reused; otherwise, the list is sorted, on several threads if
+	  it is large. The comparator must be safe to call from several threads
+	  at once, and should implement equals() if its orders are to be reused
+	  by equal instances.
 	  @param comp the comparator used to sort the list data
 	  */
-	public void sort(Comparator<E> comp)
+	public void sort(Comparator<? super E> comp)
 	{
-		Collections.sort(data, comp);
-		fireContentsChanged(this, 0, data.size());
+		if (comp == null) {
+			throw new NullPointerException("comp cannot be null");
+		}
+
+		Permutation p = orders.get(comp);
+
+		if (p == null) {
+			p = new Permutation(comp);
+			orders.put(comp, p);
+		}
+
+		active = p;
+		reversed = false;
+		fireAllChanged();
+	}
+
+
+	//************************************************************
+	// PRIVATE Class Methods
+	//************************************************************
+
+	/** Throws a NullPointerException naming an argument if it is null. */
+	private static <T> T checkNotNull(T arg, String name)
+	{
+		if (arg == null) {
+			throw new NullPointerException(name + " cannot be null");
+		}
+
+		return arg;
+	}
+
+
+	//************************************************************
+	// PRIVATE Instance Methods
+	//************************************************************
+
+	/** Reports every element of the list as changed. */
+	private void fireAllChanged()
+	{
+		if (!data.isEmpty()) {
+			fireContentsChanged(this, 0, data.size() - 1);
+		}
+	}
+
+	/** Returns the index in the backing List of the element displayed at an
+	  index. */
+	private int toDataIndex(int index)
+	{
+		int position = reversed ? data.size() - 1 - index : index;
+
+		if (position < 0 || position >= data.size()) {
+			throw new ArrayIndexOutOfBoundsException(index);
+		}
+
+		return active == null ? position : active.indices[position];
+	}
+
+	/** Returns the index at which the element at a position in the list's
+	  order is displayed. */
+	private int toIndex(int position)
+	{
+		return reversed ? data.size() - 1 - position : position;
+	}
+
+	/** Moves the elements of the backing List into their displayed order,
+	  and forgets the orders of the list. */
+	private void unsort()
+	{
+		List<E> displayed = new ArrayList<E>(getDataCopy());
+
+		orders.clear();
+		active = null;
+		reversed = false;
+
+		data.clear();
+		data.addAll(displayed);
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASSES
+	//************************************************************
+
+	/** A Permutation holds the indices in the backing List of the list's
+	  elements, in the order of a comparator, and the inverse: the position
+	  in that order of each index. Elements which compare equal keep the
+	  order in which they were added.
+	  */
+	private final class Permutation {
+		final Comparator<? super E> order;
+		int[] indices;
+		int[] positions;
+
+		/** Constructs the Permutation of the backing List's current elements
+		  which sorts them by the specified comparator. */
+		Permutation(Comparator<? super E> order_)
+		{
+			order = order_;
+
+			// E erases to Comparable, so the array must be one of those
+			@SuppressWarnings("unchecked")
+			E[] elements = (E[]) data.toArray(new Comparable<?>[data.size()]);
+			int[] sorted = ParallelSort.sortIndices(elements, order);
+
+			indices = new int[Math.max(16, sorted.length)];
+			positions = new int[indices.length];
+			System.arraycopy(sorted, 0, indices, 0, sorted.length);
+			setPositions(0, sorted.length);
+		}
+
+		/** Inserts the index of the element just added to the end of the
+		  backing List at its sorted position.
+		  @return the position of the element
+		  */
+		int insert(int added)
+		{
+			int length = data.size() - 1;
+			int position = upperBound(data.get(added), length);
+
+			if (length == indices.length) {
+				indices = Arrays.copyOf(indices, length * 2);
+				positions = Arrays.copyOf(positions, length * 2);
+			}
+
+			System.arraycopy(indices, position, indices, position + 1,
+							 length - position);
+			indices[position] = added;
+			setPositions(position, length + 1);
+			return position;
+		}
+
+		/** Removes the index of an element which was removed from the backing
+		  List, and shifts down the indices of the elements after it. */
+		void remove(int removed)
+		{
+			int length = data.size();
+			int from = positions[removed];
+
+			System.arraycopy(indices, from + 1, indices, from, length - from);
+
+			// every index after the removed one moves down, so every
+			// position is written again in the same pass
+			for (int i = 0; i < length; i++) {
+				int index = indices[i];
+
+				if (index > removed) {
+					indices[i] = --index;
+				}
+				positions[index] = i;
+			}
+		}
+
+		/** Moves the index of an element which was replaced to its sorted
+		  position.
+		  @return the new position of the element
+		  */
+		int reposition(int replaced)
+		{
+			int length = data.size();
+			int from = positions[replaced];
+
+			System.arraycopy(indices, from + 1, indices, from,
+							 length - from - 1);
+
+			int to = upperBound(data.get(replaced), length - 1);
+			System.arraycopy(indices, to, indices, to + 1, length - 1 - to);
+			indices[to] = replaced;
+
+			setPositions(Math.min(from, to), Math.max(from, to) + 1);
+			return to;
+		}
+
+		/** Returns the position of an element, which must be the same
+		  instance as the listed element, found by binary search.
+		  @return the position, or -1 if the element is not listed
+		  */
+		int positionOf(E element)
+		{
+			int length = data.size();
+			int low = 0;
+			int high = length - 1;
+			int found = -1;
+
+			while (low <= high && found < 0) {
+				int mid = (low + high) >>> 1;
+				int c = order.compare(data.get(indices[mid]), element);
+
+				if (c < 0) {
+					low = mid + 1;
+				} else if (c > 0) {
+					high = mid - 1;
+				} else {
+					found = mid;
+				}
+			}
+
+			if (found < 0) {
+				return -1;
+			}
+
+			// scan the run of elements which compare equal to the element
+			for (int i = found;
+				 i >= 0 && order.compare(data.get(indices[i]), element) == 0;
+				 i--) {
+				if (data.get(indices[i]) == element) {
+					return i;
+				}
+			}
+
+			for (int i = found + 1;
+				 i < length
+				 && order.compare(data.get(indices[i]), element) == 0;
+				 i++) {
+				if (data.get(indices[i]) == element) {
+					return i;
+				}
+			}
+
+			return -1;
+		}
+
+		/** Returns the position of an index into the backing List. */
+		int positionOfIndex(int index)
+		{
+			return positions[index];
+		}
+
+		/** Records the positions of the indices from position from,
+		  inclusive, to position to, exclusive. */
+		private void setPositions(int from, int to)
+		{
+			for (int i = from; i < to; i++) {
+				positions[indices[i]] = i;
+			}
+		}
+
+		/** Returns the position after the last of the first length indices
+		  whose element is not greater than the specified element. */
+		private int upperBound(E e, int length)
+		{
+			int low = 0;
+			int high = length;
+
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+
+				if (order.compare(data.get(indices[mid]), e) <= 0) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+
+			return low;
+		}
 	}
 
 }
@@ -0,0 +1,731 @@
+package jfmi.gui;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.swing.AbstractListModel;
+import javax.swing.SwingUtilities;
+
+/** A PagedListModel is a ListModel over rows which are read a page at a
+  time from a PageSource, so that a list of any length can be displayed
+  without holding every row in memory. The model knows how many rows there
+  are, but reads only the pages which the list asks for, along with a few
+  pages ahead in the direction the list is being scrolled. The most
+  recently used pages are kept in a cache of bounded size.
+
+  Pages are read in the background, on the model's own thread. A row
+  whose page has not been read yet is null; once the page is read, the
+  model reports its rows as changed, and the list repaints them. All other
+  methods must be called on the event dispatch thread.
+
+  The rows of an OrderedPageSource can be added, changed and removed in
+  place, without counting the source's rows again or dropping the pages
+  already read.
+  */
+public class PagedListModel<E> extends AbstractListModel<E> {
+
+	// PUBLIC CLASS Fields
+	public static final int DEFAULT_PAGE_SIZE = 100;
+	public static final int DEFAULT_MAX_CACHED_PAGES = 40;
+	public static final int DEFAULT_PREFETCH_PAGES = 2;
+
+	// PRIVATE INSTANCE Fields
+	private final int pageSize;
+	private final int prefetchPages;
+	private final Map<Integer, LoadedPage<E>> cache;
+	private final Set<Integer> pending;
+	private final ExecutorService loader;
+
+	private PageSource<E> source;
+	private int size;
+	private volatile int generation;
+	private volatile int lastPage;
+	private boolean scrollingBack;
+
+
+	//************************************************************
+	// PUBLIC INTERFACES
+	//************************************************************
+
+	/** A PageSource reads the rows of a PagedListModel. Its methods are
+	  called on the model's loading thread, one at a time.
+	  */
+	public interface PageSource<E> {
+
+		/** Reads one page of rows.
+		  @param page the index of the page, from 0
+		  @param pageSize the number of rows on a full page
+		  @return the rows of the page, or null if they can not be read
+		  		now; only the last page may be short
+		  @throws Exception if the rows can not be read
+		  */
+		List<E> readPage(int page, int pageSize) throws Exception;
+	}
+
+	/** An OrderedPageSource is a PageSource whose rows are in the order of
+	  a comparator, and are identified by keys, so that rows which change
+	  can be placed in the model without the source being read again. Its
+	  pagesMoved() method is called on the event dispatch thread.
+	  */
+	public interface OrderedPageSource<E> extends PageSource<E> {
+
+		/** @return the comparator which orders the source's rows */
+		Comparator<? super E> getComparator();
+
+		/** Returns the key which identifies a row, such as its id.
+		  @param row the row
+		  @return the row's key
+		  */
+		Object getKey(E row);
+
+		/** Tells the source that rows were added or removed before the end
+		  of a page, so that page, and every page after it, now starts at
+		  a different row.
+		  @param page the index of the first page whose rows moved
+		  */
+		void pagesMoved(int page);
+	}
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs an empty PagedListModel with the default page size, cache
+	  size and prefetch distance.
+	  */
+	public PagedListModel()
+	{
+		this(DEFAULT_PAGE_SIZE, DEFAULT_MAX_CACHED_PAGES,
+			 DEFAULT_PREFETCH_PAGES);
+	}
+
+	/** Constructs an empty PagedListModel.
+	  @param pageSize_ the number of rows read at a time
+	  @param maxCachedPages the most pages kept in memory
+	  @param prefetchPages_ the number of pages read ahead of the list
+	  @throws IllegalArgumentException if pageSize_ or maxCachedPages is less
+	  		than 1, prefetchPages_ is negative, or the prefetched pages do not
+	  		fit in the cache
+	  */
+	public PagedListModel(int pageSize_, final int maxCachedPages,
+						  int prefetchPages_)
+	{
+		if (pageSize_ < 1 || maxCachedPages < 1) {
+			throw new IllegalArgumentException(
+						"pageSize_ and maxCachedPages must be positive");
+		}
+
+		if (prefetchPages_ < 0 || prefetchPages_ * 2 >= maxCachedPages) {
+			throw new IllegalArgumentException(
+						"prefetchPages_ must fit in the cache");
+		}
+
+		pageSize = pageSize_;
+		prefetchPages = prefetchPages_;
+		pending = new HashSet<Integer>();
+
+		// an access-ordered map evicts its least recently used page
+		cache = new LinkedHashMap<Integer, LoadedPage<E>>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(
+					Map.Entry<Integer, LoadedPage<E>> eldest)
+			{
+				return size() > maxCachedPages;
+			}
+		};
+
+		loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "jfmi-page-loader");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/** Applies changes to the rows of an OrderedPageSource without reading
+	  the source again. Removed rows, and the old versions of changed rows,
+	  are taken out of the cached pages, and added rows, and the new
+	  versions of changed rows, are put at their sorted positions; the list
+	  is told of each row added and removed. An added row which is already
+	  listed replaces it. Pages whose rows are all known afterwards stay
+	  cached, and the others are shown as they were until they are read
+	  again.
+
+	  A row added between two cached pages, or removed without being
+	  cached, is among rows which have not been read, so only the number
+	  of those rows changes. A removed row which is not cached could have
+	  been anywhere after the rows known from the start of the list, so
+	  every page after those is read again.
+	  @param removedKeys the keys of the rows which were removed or changed
+	  @param addedRows the rows which were added, and the new versions of
+	  		the rows which were changed
+	  @throws IllegalStateException if the source is not an
+	  		OrderedPageSource
+	  */
+	public void applyChanges(Collection<?> removedKeys,
+							 Collection<? extends E> addedRows)
+	{
+		if (!(source instanceof OrderedPageSource)) {
+			throw new IllegalStateException("the source is not ordered");
+		}
+
+		if (removedKeys.isEmpty() && addedRows.isEmpty()) {
+			return;
+		}
+
+		OrderedPageSource<E> ordered = (OrderedPageSource<E>) source;
+		KnownRows<E> known = new KnownRows<E>(ordered, size);
+
+		for (Map.Entry<Integer, LoadedPage<E>> entry
+				 : new TreeMap<Integer, LoadedPage<E>>(cache).entrySet()) {
+			if (entry.getValue().generation == generation) {
+				known.addPage(entry.getKey() * pageSize,
+							  entry.getValue().rows);
+			}
+		}
+
+		// pages being read hold the rows as they were before the changes
+		generation++;
+		pending.clear();
+
+		for (Object key : removedKeys) {
+			removeRow(known, key);
+		}
+
+		for (E row : addedRows) {
+			if (known.contains(ordered.getKey(row))) {
+				removeRow(known, ordered.getKey(row));
+			}
+
+			size++;
+			int index = known.add(row);
+			fireIntervalAdded(this, index, index);
+		}
+
+		replacePages(known);
+
+		if (known.firstMoved < size) {
+			fireContentsChanged(this, known.firstMoved, size - 1);
+		}
+		ordered.pagesMoved(known.firstMoved / pageSize);
+	}
+
+	/** Stops the model's loading thread. Pages are no longer read after the
+	  model is disposed.
+	  */
+	public void dispose()
+	{
+		loader.shutdownNow();
+	}
+
+	/** Returns the number of pages in the cache.
+	  @return the number of cached pages
+	  */
+	public int getCachedPageCount()
+	{
+		return cache.size();
+	}
+
+	/** Returns the row at the specified index, reading its page in the
+	  background if it is not cached.
+	  @param index the index of the row
+	  @return the row, or null if its page has not been read yet
+	  */
+	public E getElementAt(int index)
+	{
+		if (index < 0 || index >= size) {
+			return null;
+		}
+
+		int page = index / pageSize;
+		LoadedPage<E> loaded = cache.get(page);
+
+		if (page != lastPage) {
+			scrollingBack = page < lastPage;
+			lastPage = page;
+		}
+
+		request(page);
+		prefetch(page);
+
+		if (loaded == null || index % pageSize >= loaded.rows.size()) {
+			return null;
+		}
+
+		return loaded.rows.get(index % pageSize);
+	}
+
+	/** Returns the row at the specified index if its page has been read
+	  from the current source, without reading it otherwise.
+	  @param index the index of the row
+	  @return the row, or null if its page has not been read
+	  */
+	public E peekElementAt(int index)
+	{
+		if (!isLoaded(index)) {
+			return null;
+		}
+
+		List<E> rows = cache.get(index / pageSize).rows;
+		return index % pageSize < rows.size() ? rows.get(index % pageSize)
+											  : null;
+	}
+
+	/** Returns the number of rows read at a time.
+	  @return the page size
+	  */
+	public int getPageSize()
+	{
+		return pageSize;
+	}
+
+	/** Returns the number of rows in the list.
+	  @return the number of rows
+	  */
+	public int getSize()
+	{
+		return size;
+	}
+
+	/** Returns true if the row at the specified index has been read from
+	  the current source.
+	  @param index the index of the row
+	  @return true if the row's page is cached and current
+	  */
+	public boolean isLoaded(int index)
+	{
+		LoadedPage<E> loaded = cache.get(index / pageSize);
+		return loaded != null && loaded.generation == generation;
+	}
+
+	/** Replaces the source of the model's rows. Rows already read from the
+	  previous source are shown until the new source's pages are read, so a
+	  list which is refreshed does not flash empty.
+	  @param source_ the source of the rows
+	  @param size_ the number of rows the source has
+	  @throws IllegalArgumentException if size_ is negative
+	  */
+	public void setSource(PageSource<E> source_, int size_)
+	{
+		if (size_ < 0) {
+			throw new IllegalArgumentException("size_ cannot be negative");
+		}
+
+		int oldSize = size;
+		source = source_;
+		size = size_;
+		generation++;
+		pending.clear();
+
+		if (size < oldSize) {
+			fireIntervalRemoved(this, size, oldSize - 1);
+		} else if (size > oldSize) {
+			fireIntervalAdded(this, oldSize, size - 1);
+		}
+
+		int kept = Math.min(oldSize, size);
+		if (kept > 0) {
+			fireContentsChanged(this, 0, kept - 1);
+		}
+	}
+
+
+	//************************************************************
+	// PRIVATE INSTANCE Methods
+	//************************************************************
+
+	/** Removes a row, if it is listed, from the rows known to the model,
+	  and tells the list which row was removed.
+	  @param known the rows known to the model
+	  @param key the key of the row
+	  */
+	private void removeRow(KnownRows<E> known, Object key)
+	{
+		int index = known.remove(key);
+
+		if (index >= 0) {
+			size--;
+			fireIntervalRemoved(this, index, index);
+		}
+	}
+
+	/** Replaces the cached pages after rows were added and removed. Each
+	  page whose rows are all known is cached as current; the other pages
+	  keep their old rows, which are shown until the pages are read again.
+	  Rows of pages which are no longer current, and which are before the
+	  first moved row, are reported as changed so that the list asks for
+	  them again.
+	  @param known the rows known to the model
+	  */
+	private void replacePages(KnownRows<E> known)
+	{
+		Map<Integer, List<E>> current = known.getPages(pageSize);
+		List<Map.Entry<Integer, LoadedPage<E>>> old;
+		old = new ArrayList<Map.Entry<Integer, LoadedPage<E>>>(
+													cache.entrySet());
+		int pageCount = (size + pageSize - 1) / pageSize;
+
+		// pages are put back in the order they were last used
+		cache.clear();
+
+		for (Map.Entry<Integer, LoadedPage<E>> entry : old) {
+			int page = entry.getKey();
+			List<E> rows = current.remove(page);
+
+			if (rows != null) {
+				cache.put(page, new LoadedPage<E>(generation, rows));
+			} else if (page < pageCount) {
+				cache.put(page, entry.getValue());
+			}
+		}
+
+		for (Map.Entry<Integer, List<E>> entry : current.entrySet()) {
+			cache.put(entry.getKey(),
+					  new LoadedPage<E>(generation, entry.getValue()));
+		}
+
+		int firstMovedPage = known.firstMoved / pageSize;
+		for (int page = 0; page < firstMovedPage; page++) {
+			LoadedPage<E> loaded = cache.get(page);
+
+			if (loaded == null || loaded.generation != generation) {
+				fireContentsChanged(this, page * pageSize,
+									Math.min(size, (page + 1) * pageSize) - 1);
+			}
+		}
+	}
+
+	/** Reads the pages after, or before if scrolling back, a page. */
+	private void prefetch(int page)
+	{
+		int step = scrollingBack ? -1 : 1;
+
+		for (int i = 1; i <= prefetchPages; i++) {
+			int next = page + i * step;
+
+			if (next < 0 || next * pageSize >= size) {
+				break;
+			}
+
+			request(next);
+		}
+	}
+
+	/** Reads a page in the background, unless it is cached and current or
+	  is already being read.
+	  @param page the index of the page
+	  */
+	private void request(final int page)
+	{
+		LoadedPage<E> loaded = cache.get(page);
+
+		if (source == null
+			|| (loaded != null && loaded.generation == generation)
+			|| !pending.add(page)) {
+			return;
+		}
+
+		final PageSource<E> readFrom = source;
+		final int readFor = generation;
+
+		loader.execute(new Runnable() {
+			public void run()
+			{
+				List<E> rows = null;
+
+				// pages the list scrolled far away from are not worth reading
+				if (isWanted(page, readFor)) {
+					try {
+						rows = readFrom.readPage(page, pageSize);
+					} catch (Exception e) {
+						// the page is requested again when next painted
+					}
+				}
+
+				deliver(page, readFor, rows);
+			}
+		});
+	}
+
+	/** Stores a page which was read, on the event dispatch thread, and
+	  reports its rows as changed.
+	  @param page the index of the page
+	  @param readFor the generation of the source the page was read from
+	  @param rows the page's rows, or null if it was not read
+	  */
+	private void deliver(final int page, final int readFor,
+						 final List<E> rows)
+	{
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run()
+			{
+				if (readFor != generation) {
+					return;
+				}
+
+				pending.remove(page);
+
+				if (rows == null) {
+					return;
+				}
+
+				cache.put(page, new LoadedPage<E>(readFor, rows));
+
+				int first = page * pageSize;
+				int last = Math.min(size, first + pageSize) - 1;
+				if (first <= last) {
+					fireContentsChanged(PagedListModel.this, first, last);
+				}
+			}
+		});
+	}
+
+	/** Decides, on the loading thread, whether a page is still near enough
+	  to the list's position to be read.
+	  @param page the index of the page
+	  @param readFor the generation of the source the page is read from
+	  @return true if the page should be read
+	  */
+	private boolean isWanted(int page, int readFor)
+	{
+		return readFor == generation
+			   && Math.abs(page - lastPage) <= prefetchPages * 2 + 1;
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASSES
+	//************************************************************
+
+	/** A KnownRows holds the rows of a PagedListModel which are known while
+	  changes are applied, as runs of consecutive rows. Between the runs,
+	  and before and after them, are rows which have not been read.
+	  */
+	private static final class KnownRows<E> {
+		final OrderedPageSource<E> source;
+		final Comparator<? super E> order;
+		final List<Integer> starts;
+		final List<List<E>> runs;
+		final Map<Object, E> byKey;
+		int size;
+		int firstMoved;
+
+		/** Constructs a KnownRows with no known rows.
+		  @param source_ the source of the rows
+		  @param size_ the number of rows
+		  */
+		KnownRows(OrderedPageSource<E> source_, int size_)
+		{
+			source = source_;
+			order = source.getComparator();
+			starts = new ArrayList<Integer>();
+			runs = new ArrayList<List<E>>();
+			byKey = new HashMap<Object, E>();
+			size = size_;
+			firstMoved = size_;
+		}
+
+		/** Adds the rows of a page, which must come after the rows already
+		  added, joining them to the last run if they follow it. */
+		void addPage(int start, List<E> rows)
+		{
+			int last = runs.size() - 1;
+
+			if (last >= 0 && starts.get(last) + runs.get(last).size() == start) {
+				runs.get(last).addAll(rows);
+			} else {
+				starts.add(start);
+				runs.add(new ArrayList<E>(rows));
+			}
+
+			for (E row : rows) {
+				byKey.put(source.getKey(row), row);
+			}
+		}
+
+		/** Adds a row at its sorted position.
+		  @return the index of the row; a row which is added among rows
+		  		which have not been read is given the index after them
+		  */
+		int add(E row)
+		{
+			int run = findRun(row);
+			int index;
+
+			if (run >= 0) {
+				List<E> rows = runs.get(run);
+				int at = -Collections.binarySearch(rows, row, order) - 1;
+				int end = starts.get(run) + rows.size();
+				int next = run + 1 < runs.size() ? starts.get(run + 1) : size;
+
+				if (at < rows.size() || end == next) {
+					index = starts.get(run) + at;
+					rows.add(at, row);
+					byKey.put(source.getKey(row), row);
+				} else {
+					// the row is among those between the run and the next
+					index = next;
+					firstMoved = Math.min(firstMoved, end);
+				}
+
+			} else if (!runs.isEmpty() && starts.get(0) == 0) {
+				index = 0;
+				runs.get(0).add(0, row);
+				byKey.put(source.getKey(row), row);
+				run = 0;
+
+			} else {
+				index = runs.isEmpty() ? size : starts.get(0);
+				firstMoved = 0;
+			}
+
+			shiftStarts(run + 1, 1);
+			size++;
+			firstMoved = Math.min(firstMoved, index);
+			return index;
+		}
+
+		/** @return true if the row having a key is known */
+		boolean contains(Object key)
+		{
+			return byKey.containsKey(key);
+		}
+
+		/** Removes the row having a key.
+		  @return the index of the removed row, or -1 if no row was removed;
+		  		an unknown row is counted as removed, from the end of the
+		  		list, if there are rows which have not been read
+		  */
+		int remove(Object key)
+		{
+			E row = byKey.remove(key);
+
+			if (row == null) {
+				return forgetAfterFirstGap();
+			}
+
+			int run = findRun(row);
+			List<E> rows = runs.get(run);
+			int at = Collections.binarySearch(rows, row, order);
+			int index = starts.get(run) + at;
+
+			rows.remove(at);
+			if (rows.isEmpty()) {
+				starts.remove(run);
+				runs.remove(run);
+				run--;
+			}
+
+			shiftStarts(run + 1, -1);
+			size--;
+			firstMoved = Math.min(firstMoved, index);
+			return index;
+		}
+
+		/** Returns the rows of every page which is made up only of known
+		  rows, by page index. */
+		Map<Integer, List<E>> getPages(int pageSize)
+		{
+			Map<Integer, List<E>> pages = new HashMap<Integer, List<E>>();
+
+			for (int run = 0; run < runs.size(); run++) {
+				int start = starts.get(run);
+				int end = start + runs.get(run).size();
+
+				for (int page = (start + pageSize - 1) / pageSize;
+					 page * pageSize < end; page++) {
+					int pageEnd = Math.min(size, (page + 1) * pageSize);
+
+					if (pageEnd <= end) {
+						pages.put(page, new ArrayList<E>(runs.get(run).subList(
+										page * pageSize - start,
+										pageEnd - start)));
+					}
+				}
+			}
+
+			return pages;
+		}
+
+		/** Finds the last run whose first row is not after a row.
+		  @return the run, or -1 if the row is before every run */
+		private int findRun(E row)
+		{
+			int low = 0;
+			int high = runs.size() - 1;
+
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+
+				if (order.compare(runs.get(mid).get(0), row) <= 0) {
+					low = mid + 1;
+				} else {
+					high = mid - 1;
+				}
+			}
+
+			return high;
+		}
+
+		/** Forgets every run after the first rows which have not been read,
+		  since an unknown row removed from among them moves every row after
+		  them. The row is not counted as removed if every row is known.
+		  @return the index of the last row, or -1 if every row is known */
+		private int forgetAfterFirstGap()
+		{
+			boolean leading = !runs.isEmpty() && starts.get(0) == 0;
+			int gap = leading ? runs.get(0).size() : 0;
+
+			if (gap == size) {
+				return -1;
+			}
+
+			while (runs.size() > (leading ? 1 : 0)) {
+				for (E row : runs.remove(runs.size() - 1)) {
+					byKey.remove(source.getKey(row));
+				}
+				starts.remove(starts.size() - 1);
+			}
+
+			size--;
+			firstMoved = Math.min(firstMoved, gap);
+			return size;
+		}
+
+		/** Moves the starts of the runs from a run on. */
+		private void shiftStarts(int from, int by)
+		{
+			for (int run = from; run < starts.size(); run++) {
+				starts.set(run, starts.get(run) + by);
+			}
+		}
+	}
+
+	/** A LoadedPage holds the rows of a page, and the generation of the
+	  source they were read from.
+	  */
+	private static final class LoadedPage<E> {
+		final int generation;
+		final List<E> rows;
+
+		LoadedPage(int generation_, List<E> rows_)
+		{
+			generation = generation_;
+			rows = rows_;
+		}
+	}
+
+}
@@ -52,6 +52,11 @@ public final class Styles {
 	/** A yellow lighter than Styles.LIGHT_YELLOW */
 	public static final Color LIGHTEST_YELLOW;
 
+	/** Background color of a selected list cell. */
+	public static final Color LIST_SELECTED_COLOR;
+	/** Background color of the list cell which has the focus. */
+	public static final Color LIST_FOCUSED_COLOR;
+
 	/** Color used for a level 3 header. */
 	public static final Color H3_COLOR;
 	/** Color used for a level 4 header. */
@@ -80,6 +85,9 @@ public final class Styles {
 		LIGHT_YELLOW = new Color(225, 225, 190);
 		LIGHTEST_YELLOW = new Color(245, 245, 210);
 
+		LIST_SELECTED_COLOR = new Color(237, 240, 240);
+		LIST_FOCUSED_COLOR = new Color(228, 238, 239);
+
 		H3_COLOR = Color.BLACK;
 		H4_COLOR = Color.DARK_GRAY;
 	}
@@ -363,6 +363,7 @@ public class TaggedFileEditDialog extends JDialog implements
 			// Create a new FileTagging from the tag
 			FileTagging newTagging = new FileTagging();
 			newTagging.setFileId(displayedFile.getEditedFile().getFileId());
+			newTagging.setTagId(selectedTag.getTagId());
 			newTagging.setTag(selectedTag.getTag());
 
 			// Pass control off to the file handler
@@ -1,7 +1,10 @@
 package jfmi.gui;
 
 import java.io.File;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
 
 import jfmi.app.TaggedFile;
 import jfmi.control.JFMIApp;
@@ -11,6 +14,10 @@ import jfmi.control.TaggedFileHandler;
   */
 public class TaggedFileHandlerGUI {
 
+	// PRIVATE CLASS Fields
+	private static final String INCLUDE_FIELD = "Include patterns:";
+	private static final String EXCLUDE_FIELD = "Exclude patterns:";
+
 	// PRIVATE INSTANCE Fields
 	private TaggedFileHandler fileHandler;
 
@@ -65,6 +72,33 @@ public class TaggedFileHandlerGUI {
 		}
 	}
 
+	/** Asks the user which files to import from the selected directories.
+	  @return the include and exclude glob patterns entered, in that order,
+	  		or null if the user cancelled
+	  */
+	public String[] displayImportFilterPrompt()
+	{
+		SortedSet<String> fields = new TreeSet<String>();
+		fields.add(INCLUDE_FIELD);
+		fields.add(EXCLUDE_FIELD);
+
+		FormBox form = new FormBox(fields);
+
+		int returnVal = JOptionPane.showConfirmDialog(jfmiGUI, form,
+						"Import files matching (e.g. *.jpg docs/**)",
+						JOptionPane.OK_CANCEL_OPTION,
+						JOptionPane.PLAIN_MESSAGE);
+
+		if (returnVal != JOptionPane.OK_OPTION) {
+			return null;
+		}
+
+		return new String[] {
+			form.getFieldValue(INCLUDE_FIELD),
+			form.getFieldValue(EXCLUDE_FIELD)
+		};
+	}
+
 	/** Provides access to the file viewer.
 	  @return a reference to the file viewer
 	  */
@@ -2,19 +2,25 @@ package jfmi.gui;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
-import java.util.ArrayList;
+import java.awt.Rectangle;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.MatteBorder;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
-import javax.swing.JButton;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 
 import jfmi.app.TaggedFile;
 
+/** A TaggedFileJListCellPanel displays a TaggedFile in a list cell. One
+  panel is built, and rebound to each file as its cell is painted, so that
+  painting a cell allocates no components. As for Swing's default
+  renderers, repaint and revalidate requests are ignored, since a renderer
+  is only painted, never displayed.
+  */
 public class TaggedFileJListCellPanel extends JPanel {
 
+	// PRIVATE INSTANCE Fields
 	private TaggedFile taggedFile;
 
 	private JLabel fileNameLabel;
@@ -29,14 +35,13 @@ public class TaggedFileJListCellPanel extends JPanel {
 	// PUBLIC INSTANCE Methods
 	//************************************************************
 
-	/** Ctor: TaggedFile.
+	/** Ctor: default. The panel displays nothing until a file is set.
 	  */
-	public TaggedFileJListCellPanel(TaggedFile taggedFile_)
+	public TaggedFileJListCellPanel()
 	{
 		// Initialize instance
 		setLayout(new BorderLayout(10, 12));
 		setBackground(Color.WHITE);
-		setTaggedFile(taggedFile_);
 
 		// Initialize file display area
 		initFileBox();
@@ -59,6 +64,64 @@ public class TaggedFileJListCellPanel extends JPanel {
 		add(contentBox, BorderLayout.CENTER);
 	}
 
+	/** Ctor: TaggedFile.
+	  @param taggedFile_ the file to display
+	  */
+	public TaggedFileJListCellPanel(TaggedFile taggedFile_)
+	{
+		this();
+		setTaggedFile(taggedFile_);
+	}
+
+	/** Accessor of taggedFile field.
+	  @return the file displayed, or null if none is
+	  */
+	public TaggedFile getTaggedFile()
+	{
+		return taggedFile;
+	}
+
+	/** Displays a file, replacing the text of the panel's labels. Labels
+	  whose text is unchanged are not laid out again.
+	  @param taggedFile_ the file to display, or null to display nothing
+	  */
+	public final void setTaggedFile(TaggedFile taggedFile_)
+	{
+		taggedFile = taggedFile_;
+
+		if (taggedFile == null) {
+			fileNameLabel.setText("");
+			filePathLabel.setText("");
+			tagLabel.setText("");
+			return;
+		}
+
+		fileNameLabel.setText(taggedFile.getFileName());
+		filePathLabel.setText(taggedFile.isMissing()
+							  ? taggedFile.getFilePath() + " (missing)"
+							  : taggedFile.getFilePath());
+		tagLabel.setText(taggedFile.getFileTagsAsString());
+	}
+
+	//************************************************************
+	// OVERRIDES of JComponent, for rendering
+	//************************************************************
+
+	/** Ignored; the panel is laid out when it is painted. */
+	public void revalidate()
+	{
+	}
+
+	/** Ignored; the panel is painted by the list. */
+	public void repaint(long tm, int x, int y, int width, int height)
+	{
+	}
+
+	/** Ignored; the panel is painted by the list. */
+	public void repaint(Rectangle r)
+	{
+	}
+
 	//************************************************************
 	// PRIVATE INSTANCE Methods
 	//************************************************************
@@ -67,19 +130,10 @@ public class TaggedFileJListCellPanel extends JPanel {
 	  */
 	private final void initFileBox()
 	{
-		// Initialize labels
-		String fname = "";
-		String fpath = "";
-
-		if (taggedFile != null) {
-			fname = taggedFile.getFileName();
-			fpath = taggedFile.getFilePath();
-		}
-	
-		fileNameLabel = new JLabel(fname);
+		fileNameLabel = new CellLabel();
 		Styles.setHeaderStyles(fileNameLabel, 3);
 
-		filePathLabel = new JLabel(fpath);
+		filePathLabel = new CellLabel();
 		Styles.setHeaderStyles(filePathLabel, 4);
 
 		// Add the labels to the fileBox field
@@ -92,16 +146,36 @@ public class TaggedFileJListCellPanel extends JPanel {
 	  */
 	private final void initTagLabel()
 	{
-		tagLabel = new JLabel(taggedFile.getFileTagsAsString());
+		tagLabel = new CellLabel();
 		tagLabel.setFont(Styles.SS_PLAIN_12);
 		tagLabel.setForeground(Styles.VIOLET);
 	}
 
-	/** Mutator of taggedFile field.
+	//************************************************************
+	// PRIVATE CLASSES
+	//************************************************************
+
+	/** A CellLabel is a JLabel whose text changes only invalidate it, rather
+	  than scheduling the list and its scroll pane to be laid out again.
 	  */
-	private final void setTaggedFile(TaggedFile taggedFile_)
-	{
-		taggedFile = taggedFile_;
+	private static final class CellLabel extends JLabel {
+
+		CellLabel()
+		{
+			super(" ");
+		}
+
+		public void revalidate()
+		{
+			invalidate();
+		}
+
+		public void repaint(long tm, int x, int y, int width, int height)
+		{
+		}
+
+		public void repaint(Rectangle r)
+		{
+		}
 	}
 }
-
@@ -5,19 +5,45 @@ import java.awt.Component;
 import javax.swing.JList;
 import javax.swing.ListCellRenderer;
 
+import jfmi.app.FileTagging;
 import jfmi.app.TaggedFile;
 import jfmi.gui.TaggedFileJListCellPanel;
 
+/** Renders TaggedFiles in a JList with a single TaggedFileJListCellPanel,
+  which is rebound to each file as its cell is painted.
+  */
 public class TaggedFileJListRenderer implements ListCellRenderer<TaggedFile> {
 
+	// PRIVATE INSTANCE Fields
+	private final TaggedFileJListCellPanel panel;
+
 	/** Ctor: default.
 	  */
 	public TaggedFileJListRenderer()
 	{
+		panel = new TaggedFileJListCellPanel();
+	}
+
+	/** Creates a file whose cell is as tall as any file's, from which a
+	  list's fixed cell height is taken. Every cell has one line of tags, so
+	  every cell has the same height, and the list need not measure each
+	  cell's height.
+	  @return a prototype TaggedFile
+	  */
+	public static TaggedFile createPrototypeFile()
+	{
+		FileTagging tagging = new FileTagging();
+		tagging.setTag("tag");
+
+		TaggedFile prototype = new TaggedFile();
+		prototype.setFilePath("/path/to/a/file.txt");
+		prototype.addFileTagging(tagging);
+
+		return prototype;
 	}
 
-	/** Returns a component (a TaggedFileJListCellPanel extends JPanel) which
-	  is responsible for displaying a TaggedFile instance.
+	/** Returns the renderer's TaggedFileJListCellPanel, displaying the
+	  specified TaggedFile.
 	  */
 	public Component getListCellRendererComponent(
 		JList<? extends TaggedFile> list,
@@ -27,18 +53,17 @@ public class TaggedFileJListRenderer implements ListCellRenderer<TaggedFile> {
 		boolean cellHasFocus
 	)
 	{
-		TaggedFileJListCellPanel newPanel;
-	    newPanel = new TaggedFileJListCellPanel(value);
-		
-		if (isSelected) {
-			newPanel.setBackground(new Color(237, 240, 240)); 
-		} 
+		panel.setTaggedFile(value);
 
 		if (cellHasFocus) {
-			newPanel.setBackground(new Color(228, 238, 239));
+			panel.setBackground(Styles.LIST_FOCUSED_COLOR);
+		} else if (isSelected) {
+			panel.setBackground(Styles.LIST_SELECTED_COLOR);
+		} else {
+			panel.setBackground(Color.WHITE);
 		}
 
-		return newPanel;
+		return panel;
 	}
 
 }
@@ -0,0 +1,18 @@
+package jfmi.repo;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+
+/** A ConnectionFactory opens new physical Connections on behalf of a
+  ConnectionPool.
+  */
+public interface ConnectionFactory {
+
+	/** Opens a new Connection to the underlying database.
+	  @return a newly opened Connection
+	  @throws SQLException if a connection can not be established
+	  */
+	public Connection newConnection() throws SQLException;
+
+}
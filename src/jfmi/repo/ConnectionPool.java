@@ -0,0 +1,477 @@
+package jfmi.repo;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/** A ConnectionPool keeps a bounded number of open Connections so that they
+  can be reused rather than reopened for every unit of work. Connections
+  handed out by borrow() are wrappers around the physical connection; calling
+  close() on a wrapper returns the physical connection to the pool.
+
+  At most maxSize connections are open at any time. A borrower that finds
+  every connection in use waits up to the borrow timeout before an
+  SQLException is thrown. Connections which sit idle for longer than the
+  idle timeout are closed the next time the pool is used.
+
+  Each physical connection keeps a cache of its prepared statements, which
+  survives from one borrower to the next; see StatementCache.
+  */
+public class ConnectionPool {
+
+	// PUBLIC CLASS Fields
+	public static final int DEFAULT_MAX_SIZE = 4;
+	public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+	public static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 30000;
+	public static final int DEFAULT_STATEMENT_CACHE_SIZE = 32;
+
+	// PRIVATE INSTANCE Fields
+	private final ConnectionFactory factory;
+	private final int maxSize;
+	private final long idleTimeoutMillis;
+	private final long borrowTimeoutMillis;
+	private final int statementCacheSize;
+
+	private final Semaphore permits;
+	private final LinkedList<IdleConnection> idle;
+	private int activeCount;
+	private boolean closed;
+
+	private long borrowCount;
+	private long timeoutCount;
+	private long createdCount;
+	private long evictedCount;
+	private long totalBorrowWaitNanos;
+	private long maxBorrowWaitNanos;
+	private final AtomicLong statementHits;
+	private final AtomicLong statementMisses;
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs a ConnectionPool with default size and timeouts.
+	  @param factory_ opens the pool's physical connections
+	  */
+	public ConnectionPool(ConnectionFactory factory_)
+	{
+		this(factory_, DEFAULT_MAX_SIZE, DEFAULT_IDLE_TIMEOUT_MILLIS,
+			 DEFAULT_BORROW_TIMEOUT_MILLIS);
+	}
+
+	/** Constructs a ConnectionPool with the specified size and timeouts.
+	  @param factory_ opens the pool's physical connections
+	  @param maxSize_ the maximum number of open connections, at least 1
+	  @param idleTimeoutMillis_ idle connections older than this are closed;
+	  		a value <= 0 disables eviction
+	  @param borrowTimeoutMillis_ the longest a borrower waits for a connection
+	  @throws IllegalArgumentException if factory_ is null or maxSize_ < 1
+	  */
+	public ConnectionPool(ConnectionFactory factory_, int maxSize_,
+						  long idleTimeoutMillis_, long borrowTimeoutMillis_)
+	{
+		this(factory_, maxSize_, idleTimeoutMillis_, borrowTimeoutMillis_,
+			 DEFAULT_STATEMENT_CACHE_SIZE);
+	}
+
+	/** Constructs a ConnectionPool with the specified size, timeouts and
+	  statement cache size.
+	  @param factory_ opens the pool's physical connections
+	  @param maxSize_ the maximum number of open connections, at least 1
+	  @param idleTimeoutMillis_ idle connections older than this are closed;
+	  		a value <= 0 disables eviction
+	  @param borrowTimeoutMillis_ the longest a borrower waits for a connection
+	  @param statementCacheSize_ the most prepared statements cached per
+	  		connection; 0 disables statement caching
+	  @throws IllegalArgumentException if factory_ is null, maxSize_ < 1 or
+	  		statementCacheSize_ < 0
+	  */
+	public ConnectionPool(ConnectionFactory factory_, int maxSize_,
+						  long idleTimeoutMillis_, long borrowTimeoutMillis_,
+						  int statementCacheSize_)
+	{
+		if (factory_ == null) {
+			throw new IllegalArgumentException("factory_ cannot be null");
+		}
+
+		if (maxSize_ < 1) {
+			throw new IllegalArgumentException("maxSize_ must be at least 1");
+		}
+
+		if (statementCacheSize_ < 0) {
+			throw new IllegalArgumentException("statementCacheSize_ cannot be"
+											   + " negative");
+		}
+
+		factory = factory_;
+		maxSize = maxSize_;
+		idleTimeoutMillis = idleTimeoutMillis_;
+		borrowTimeoutMillis = borrowTimeoutMillis_;
+		statementCacheSize = statementCacheSize_;
+
+		permits = new Semaphore(maxSize, true);
+		idle = new LinkedList<IdleConnection>();
+		statementHits = new AtomicLong();
+		statementMisses = new AtomicLong();
+	}
+
+	/** Borrows a Connection from the pool, opening a new one if no idle
+	  connection is available and the pool is not at its maximum size. The
+	  returned Connection must be closed to return it to the pool.
+	  @return a Connection which is returned to the pool when closed
+	  @throws SQLException if the pool is closed, the borrow times out, or a
+	  		new connection can not be established
+	  */
+	public Connection borrow() throws SQLException
+	{
+		long start = System.nanoTime();
+		boolean acquired;
+
+		try {
+			acquired = permits.tryAcquire(borrowTimeoutMillis,
+										  TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a pooled"
+								   + " connection.", e);
+		}
+
+		long waited = System.nanoTime() - start;
+
+		if (!acquired) {
+			synchronized (this) {
+				timeoutCount++;
+			}
+
+			throw new SQLException("Timed out after " + borrowTimeoutMillis
+								   + " ms waiting for a pooled connection.");
+		}
+
+		Connection physical = null;
+		StatementCache statements = null;
+
+		synchronized (this) {
+			if (closed) {
+				permits.release();
+				throw new SQLException("The connection pool has been closed.");
+			}
+
+			evictExpired(System.currentTimeMillis());
+
+			while (physical == null && !idle.isEmpty()) {
+				IdleConnection ic = idle.removeFirst();
+
+				if (isBroken(ic.connection)) {
+					ic.close();
+				} else {
+					physical = ic.connection;
+					statements = ic.statements;
+				}
+			}
+
+			activeCount++;
+			borrowCount++;
+			totalBorrowWaitNanos += waited;
+			maxBorrowWaitNanos = Math.max(maxBorrowWaitNanos, waited);
+		}
+
+		if (physical == null) {
+			try {
+				physical = factory.newConnection();
+			} catch (SQLException e) {
+				synchronized (this) {
+					activeCount--;
+				}
+				permits.release();
+				throw e;
+			}
+
+			synchronized (this) {
+				createdCount++;
+			}
+
+			statements = new StatementCache(statementCacheSize, statementHits,
+											statementMisses);
+		}
+
+		return wrap(physical, statements);
+	}
+
+	/** Closes every idle connection, and marks the pool as closed. Borrowed
+	  connections are closed as they are returned.
+	  */
+	public void close()
+	{
+		synchronized (this) {
+			closed = true;
+
+			for (IdleConnection ic : idle) {
+				ic.close();
+			}
+
+			idle.clear();
+		}
+	}
+
+	/** Closes idle connections which have exceeded the idle timeout.
+	  @return the number of connections closed
+	  */
+	public synchronized int evictIdleConnections()
+	{
+		return evictExpired(System.currentTimeMillis());
+	}
+
+	/** @return the maximum number of open connections */
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+
+	/** @return the idle timeout of the pool, in milliseconds */
+	public long getIdleTimeoutMillis()
+	{
+		return idleTimeoutMillis;
+	}
+
+	/** @return the borrow timeout of the pool, in milliseconds */
+	public long getBorrowTimeoutMillis()
+	{
+		return borrowTimeoutMillis;
+	}
+
+	/** Takes a snapshot of the pool's usage statistics.
+	  @return the pool's current statistics
+	  */
+	public synchronized PoolStatistics getStatistics()
+	{
+		return new PoolStatistics(maxSize, activeCount, idle.size(),
+								  borrowCount, timeoutCount, createdCount,
+								  evictedCount, totalBorrowWaitNanos,
+								  maxBorrowWaitNanos, statementHits.get(),
+								  statementMisses.get());
+	}
+
+	/** Indicates whether the pool has been closed.
+	  @return true if close() has been called
+	  */
+	public synchronized boolean isClosed()
+	{
+		return closed;
+	}
+
+
+	//************************************************************
+	// PRIVATE INSTANCE Methods
+	//************************************************************
+
+	/** Closes a Connection, ignoring any exceptions.
+	  @param conn the Connection to close
+	  */
+	private static void closeQuietly(Connection conn)
+	{
+		try {
+			conn.close();
+		} catch (SQLException e) {
+			// ignore
+		}
+	}
+
+	/** Closes the idle connections which have been idle for longer than the
+	  idle timeout. The caller must hold the pool's lock.
+	  @param now the current time in milliseconds
+	  @return the number of connections closed
+	  */
+	private int evictExpired(long now)
+	{
+		if (idleTimeoutMillis <= 0) {
+			return 0;
+		}
+
+		int evicted = 0;
+		Iterator<IdleConnection> it = idle.iterator();
+
+		while (it.hasNext()) {
+			IdleConnection ic = it.next();
+
+			if (now - ic.idleSince > idleTimeoutMillis) {
+				it.remove();
+				ic.close();
+				evicted++;
+			}
+		}
+
+		evictedCount += evicted;
+		return evicted;
+	}
+
+	/** Tests whether a physical connection can no longer be used.
+	  @param conn the connection to test
+	  @return true if the connection is closed or its state is unknown
+	  */
+	private boolean isBroken(Connection conn)
+	{
+		try {
+			return conn.isClosed();
+		} catch (SQLException e) {
+			return true;
+		}
+	}
+
+	/** Returns a physical connection to the pool. Any open transaction is
+	  rolled back first; a connection which can not be reset is closed.
+	  @param physical the connection being returned
+	  @param statements the connection's statement cache
+	  */
+	private void release(Connection physical, StatementCache statements)
+	{
+		boolean reusable = !isBroken(physical);
+
+		if (reusable) {
+			try {
+				if (!physical.getAutoCommit()) {
+					physical.rollback();
+					physical.setAutoCommit(true);
+				}
+			} catch (SQLException e) {
+				reusable = false;
+			}
+		}
+
+		synchronized (this) {
+			activeCount--;
+
+			IdleConnection ic = new IdleConnection(physical, statements);
+
+			if (reusable && !closed) {
+				idle.addFirst(ic);
+				evictExpired(System.currentTimeMillis());
+			} else {
+				ic.close();
+			}
+		}
+
+		permits.release();
+	}
+
+	/** Wraps a physical connection so that closing it returns it to the pool.
+	  @param physical the connection to wrap
+	  @param statements the connection's statement cache
+	  @return a Connection proxy for the physical connection
+	  */
+	private Connection wrap(Connection physical, StatementCache statements)
+	{
+		return (Connection)Proxy.newProxyInstance(
+					Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class },
+					new PooledConnectionHandler(physical, statements)
+				);
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASSES
+	//************************************************************
+
+	/** Pairs an idle physical connection, and its statement cache, with the
+	  time it became idle.
+	  */
+	private static final class IdleConnection {
+		final Connection connection;
+		final StatementCache statements;
+		final long idleSince;
+
+		IdleConnection(Connection connection_, StatementCache statements_)
+		{
+			connection = connection_;
+			statements = statements_;
+			idleSince = System.currentTimeMillis();
+		}
+
+		/** Closes the cached statements, then the connection. */
+		void close()
+		{
+			statements.closeAll();
+			closeQuietly(connection);
+		}
+	}
+
+	/** Forwards calls to a physical connection until the proxy is closed,
+	  at which point the physical connection is returned to the pool.
+	  */
+	private final class PooledConnectionHandler implements InvocationHandler {
+		private Connection physical;
+		private final StatementCache statements;
+
+		PooledConnectionHandler(Connection physical_,
+								StatementCache statements_)
+		{
+			physical = physical_;
+			statements = statements_;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args)
+			throws Throwable
+		{
+			String name = method.getName();
+
+			if (name.equals("close")) {
+				Connection returning;
+
+				synchronized (this) {
+					returning = physical;
+					physical = null;
+				}
+
+				if (returning != null) {
+					release(returning, statements);
+				}
+
+				return null;
+			}
+
+			Connection current;
+			synchronized (this) {
+				current = physical;
+			}
+
+			if (name.equals("isClosed") && current == null) {
+				return Boolean.TRUE;
+			}
+
+			if (name.equals("equals")) {
+				return proxy == args[0];
+			}
+
+			if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+
+			if (current == null) {
+				throw new SQLException("The connection has been returned to"
+									   + " the pool.");
+			}
+
+			if (name.equals("prepareStatement") && args.length == 1) {
+				return statements.prepare(current, (Connection)proxy,
+										  (String)args[0]);
+			}
+
+			try {
+				return method.invoke(current, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,156 @@
+package jfmi.repo;
+
+
+/** A PoolStatistics is an immutable snapshot of the usage counters of a
+  ConnectionPool at the time it was taken.
+  */
+public final class PoolStatistics {
+
+	// PRIVATE INSTANCE Fields
+	private final int maxSize;
+	private final int activeCount;
+	private final int idleCount;
+	private final long borrowCount;
+	private final long timeoutCount;
+	private final long createdCount;
+	private final long evictedCount;
+	private final long totalBorrowWaitNanos;
+	private final long maxBorrowWaitNanos;
+	private final long statementHits;
+	private final long statementMisses;
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs a snapshot of pool statistics.
+	  @param maxSize_ the maximum number of connections the pool may open
+	  @param activeCount_ number of connections currently borrowed
+	  @param idleCount_ number of open connections waiting to be borrowed
+	  @param borrowCount_ number of successful borrows so far
+	  @param timeoutCount_ number of borrows which timed out
+	  @param createdCount_ number of physical connections opened
+	  @param evictedCount_ number of idle connections closed by eviction
+	  @param totalBorrowWaitNanos_ total time borrowers spent waiting
+	  @param maxBorrowWaitNanos_ longest time a single borrower waited
+	  @param statementHits_ number of statements served from a cache
+	  @param statementMisses_ number of statements which had to be prepared
+	  */
+	public PoolStatistics(int maxSize_, int activeCount_, int idleCount_,
+						  long borrowCount_, long timeoutCount_,
+						  long createdCount_, long evictedCount_,
+						  long totalBorrowWaitNanos_, long maxBorrowWaitNanos_,
+						  long statementHits_, long statementMisses_)
+	{
+		maxSize = maxSize_;
+		activeCount = activeCount_;
+		idleCount = idleCount_;
+		borrowCount = borrowCount_;
+		timeoutCount = timeoutCount_;
+		createdCount = createdCount_;
+		evictedCount = evictedCount_;
+		totalBorrowWaitNanos = totalBorrowWaitNanos_;
+		maxBorrowWaitNanos = maxBorrowWaitNanos_;
+		statementHits = statementHits_;
+		statementMisses = statementMisses_;
+	}
+
+	/** @return the maximum number of connections the pool may open */
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+
+	/** @return the number of connections currently borrowed */
+	public int getActiveCount()
+	{
+		return activeCount;
+	}
+
+	/** @return the number of open connections waiting to be borrowed */
+	public int getIdleCount()
+	{
+		return idleCount;
+	}
+
+	/** @return the number of successful borrows */
+	public long getBorrowCount()
+	{
+		return borrowCount;
+	}
+
+	/** @return the number of borrows which gave up waiting */
+	public long getTimeoutCount()
+	{
+		return timeoutCount;
+	}
+
+	/** @return the number of physical connections opened by the pool */
+	public long getCreatedCount()
+	{
+		return createdCount;
+	}
+
+	/** @return the number of idle connections closed by eviction */
+	public long getEvictedCount()
+	{
+		return evictedCount;
+	}
+
+	/** @return the total time, in milliseconds, borrowers spent waiting */
+	public double getTotalBorrowWaitMillis()
+	{
+		return totalBorrowWaitNanos / 1000000.0;
+	}
+
+	/** @return the average time, in milliseconds, a borrower waited */
+	public double getAverageBorrowWaitMillis()
+	{
+		if (borrowCount == 0) {
+			return 0.0;
+		}
+
+		return getTotalBorrowWaitMillis() / borrowCount;
+	}
+
+	/** @return the longest time, in milliseconds, a single borrower waited */
+	public double getMaxBorrowWaitMillis()
+	{
+		return maxBorrowWaitNanos / 1000000.0;
+	}
+
+	/** @return the number of prepared statements served from a cache */
+	public long getStatementHits()
+	{
+		return statementHits;
+	}
+
+	/** @return the number of prepared statements which had to be prepared */
+	public long getStatementMisses()
+	{
+		return statementMisses;
+	}
+
+	/**
+	  @return a String representation of the statistics
+	  */
+	public String toString()
+	{
+		StringBuilder str = new StringBuilder("PoolStatistics[");
+		str.append("max=").append(maxSize);
+		str.append(", active=").append(activeCount);
+		str.append(", idle=").append(idleCount);
+		str.append(", borrows=").append(borrowCount);
+		str.append(", timeouts=").append(timeoutCount);
+		str.append(", created=").append(createdCount);
+		str.append(", evicted=").append(evictedCount);
+		str.append(", avgWaitMs=").append(getAverageBorrowWaitMillis());
+		str.append(", maxWaitMs=").append(getMaxBorrowWaitMillis());
+		str.append(", stmtHits=").append(statementHits);
+		str.append(", stmtMisses=").append(statementMisses);
+		str.append("]");
+		return str.toString();
+	}
+
+}
@@ -0,0 +1,128 @@
+package jfmi.repo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+
+/** A RepositoryChange describes records which were inserted into, updated
+  in, or deleted from the repository, identified by their ids. DAOs publish
+  a change through SQLiteRepository.publishChange() once it is committed.
+
+  Changes are reported per aggregate: a file's taggings are part of the
+  file, so adding, editing or removing a tagging is reported as an update
+  of its file, and renaming or deleting a tag also reports the files which
+  were tagged with it.
+  */
+public final class RepositoryChange {
+
+	/** The kinds of record a change can concern. */
+	public enum Entity {
+		/** TaggedFiles, with their taggings; ids are Integer fileIds. */
+		FILE,
+		/** FileTags; ids are Integer tagIds. */
+		TAG
+	}
+
+	/** The kinds of change. */
+	public enum Kind {
+		INSERTED,
+		UPDATED,
+		DELETED,
+		/** Every record of the entity may have changed; listeners should
+		  reload them. The change has no ids. */
+		RESET
+	}
+
+	// PRIVATE INSTANCE Fields
+	private final Entity entity;
+	private final Kind kind;
+	private final List<Object> ids;
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs a RepositoryChange.
+	  @param entity_ the kind of record changed
+	  @param kind_ the kind of change
+	  @param ids_ the ids of the changed records
+	  @throws NullPointerException if any argument is null
+	  */
+	public RepositoryChange(Entity entity_, Kind kind_,
+							Collection<? extends Object> ids_)
+	{
+		if (entity_ == null || kind_ == null || ids_ == null) {
+			throw new NullPointerException("arguments cannot be null");
+		}
+
+		entity = entity_;
+		kind = kind_;
+		ids = Collections.unmodifiableList(new ArrayList<Object>(ids_));
+	}
+
+	/** @return the kind of record changed */
+	public Entity getEntity()
+	{
+		return entity;
+	}
+
+	/** Retrieves the ids of the changed files of a FILE change.
+	  @return the Integer fileIds, in no particular order
+	  @throws IllegalStateException if the change is not of files
+	  */
+	public List<Integer> getFileIds()
+	{
+		if (entity != Entity.FILE) {
+			throw new IllegalStateException("not a change of files");
+		}
+
+		List<Integer> fileIds = new ArrayList<Integer>(ids.size());
+		for (Object id : ids) {
+			fileIds.add((Integer)id);
+		}
+
+		return fileIds;
+	}
+
+	/** Retrieves the ids of the changed tags of a TAG change.
+	  @return the Integer tagIds, in no particular order
+	  @throws IllegalStateException if the change is not of tags
+	  */
+	public List<Integer> getTagIds()
+	{
+		if (entity != Entity.TAG) {
+			throw new IllegalStateException("not a change of tags");
+		}
+
+		List<Integer> tagIds = new ArrayList<Integer>(ids.size());
+		for (Object id : ids) {
+			tagIds.add((Integer)id);
+		}
+
+		return tagIds;
+	}
+
+	/** @return the ids of the changed records, in no particular order */
+	public List<Object> getIds()
+	{
+		return ids;
+	}
+
+	/** @return the kind of change */
+	public Kind getKind()
+	{
+		return kind;
+	}
+
+	/** Returns a String representation of this change.
+	  @return a String representation of this change
+	  */
+	public String toString()
+	{
+		return entity + " " + kind + " " + ids;
+	}
+
+}
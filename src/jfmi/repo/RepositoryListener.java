@@ -0,0 +1,16 @@
+package jfmi.repo;
+
+
+/** A RepositoryListener is notified of committed changes to the repository.
+  Listeners are called on the thread which made the change, after its
+  transaction has committed; listeners which update a GUI must pass the
+  change to the event dispatch thread themselves.
+  */
+public interface RepositoryListener {
+
+	/** Called after a change to the repository has been committed.
+	  @param change the committed change
+	  */
+	void repositoryChanged(RepositoryChange change);
+
+}
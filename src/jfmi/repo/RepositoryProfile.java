@@ -0,0 +1,250 @@
+package jfmi.repo;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+
+/** A RepositoryProfile holds the durability and concurrency settings applied
+  to each connection the SQLiteRepository opens: the journal mode, the
+  synchronous level, the page cache size, the memory-map size, where
+  temporary tables are stored, and how long a connection waits on a lock.
+
+  The default profile uses write-ahead logging with synchronous=NORMAL, so
+  readers are not blocked by the writer and commits do not wait for a full
+  sync. A database in WAL mode can lose its most recent commits on power
+  failure, but can not be corrupted; use durable() where that trade-off is
+  not acceptable.
+  */
+public class RepositoryProfile {
+
+	// PUBLIC CLASS Fields
+	public static final String DEFAULT_JOURNAL_MODE = "WAL";
+	public static final String DEFAULT_SYNCHRONOUS = "NORMAL";
+	public static final int DEFAULT_CACHE_SIZE_PAGES = 8000;
+	public static final long DEFAULT_MMAP_SIZE_BYTES = 256L * 1024 * 1024;
+	public static final String DEFAULT_TEMP_STORE = "MEMORY";
+	public static final int DEFAULT_BUSY_TIMEOUT_MILLIS = 5000;
+
+	// PRIVATE INSTANCE Fields
+	private String journalMode;
+	private String synchronous;
+	private int cacheSizePages;
+	private long mmapSizeBytes;
+	private String tempStore;
+	private int busyTimeoutMillis;
+
+
+	//************************************************************
+	// PUBLIC CLASS Methods
+	//************************************************************
+
+	/** Creates a profile which favours durability over write speed: WAL
+	  mode, with a full sync on every commit.
+	  @return a new durable profile
+	  */
+	public static RepositoryProfile durable()
+	{
+		RepositoryProfile profile = new RepositoryProfile();
+		profile.setSynchronous("FULL");
+
+		return profile;
+	}
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs a RepositoryProfile with the default settings.
+	  */
+	public RepositoryProfile()
+	{
+		journalMode = DEFAULT_JOURNAL_MODE;
+		synchronous = DEFAULT_SYNCHRONOUS;
+		cacheSizePages = DEFAULT_CACHE_SIZE_PAGES;
+		mmapSizeBytes = DEFAULT_MMAP_SIZE_BYTES;
+		tempStore = DEFAULT_TEMP_STORE;
+		busyTimeoutMillis = DEFAULT_BUSY_TIMEOUT_MILLIS;
+	}
+
+	/** Constructs a RepositoryProfile with the same settings as another.
+	  @param other the profile to copy
+	  */
+	public RepositoryProfile(RepositoryProfile other)
+	{
+		journalMode = other.journalMode;
+		synchronous = other.synchronous;
+		cacheSizePages = other.cacheSizePages;
+		mmapSizeBytes = other.mmapSizeBytes;
+		tempStore = other.tempStore;
+		busyTimeoutMillis = other.busyTimeoutMillis;
+	}
+
+	/** Applies the profile's settings to a newly opened connection. The
+	  journal mode is persistent in the database file, and can only be
+	  changed by a writable connection, so it is set only when writable is
+	  true.
+	  @param conn the physical connection to configure
+	  @param writable true if the connection may write to the database
+	  @throws SQLException if a setting can not be applied
+	  */
+	public void applyTo(Connection conn, boolean writable) throws SQLException
+	{
+		Statement stmt = conn.createStatement();
+
+		try {
+			/* Unknown pragmas are ignored by SQLite, so settings which the
+			   bundled library does not support, such as mmap_size before
+			   SQLite 3.7.17, are harmless. Pragmas which report their new
+			   value return a row, so execute() is used throughout. */
+			if (writable) {
+				stmt.execute("PRAGMA journal_mode = " + journalMode);
+			}
+
+			stmt.execute("PRAGMA synchronous = " + synchronous);
+			stmt.execute("PRAGMA cache_size = " + cacheSizePages);
+			stmt.execute("PRAGMA mmap_size = " + mmapSizeBytes);
+			stmt.execute("PRAGMA temp_store = " + tempStore);
+
+			/* The driver has no busy_timeout pragma; a statement's query
+			   timeout sets the busy timeout of its whole connection. */
+			stmt.setQueryTimeout((busyTimeoutMillis + 999) / 1000);
+
+		} finally {
+			SQLiteRepository.closeQuietly(stmt);
+		}
+	}
+
+	/** @return the busy timeout, in milliseconds */
+	public int getBusyTimeoutMillis()
+	{
+		return busyTimeoutMillis;
+	}
+
+	/** @return the page cache size, in pages */
+	public int getCacheSizePages()
+	{
+		return cacheSizePages;
+	}
+
+	/** @return the journal mode, such as "WAL" or "DELETE" */
+	public String getJournalMode()
+	{
+		return journalMode;
+	}
+
+	/** @return the maximum number of bytes of the database to memory-map */
+	public long getMmapSizeBytes()
+	{
+		return mmapSizeBytes;
+	}
+
+	/** @return the synchronous level, such as "NORMAL" or "FULL" */
+	public String getSynchronous()
+	{
+		return synchronous;
+	}
+
+	/** @return where temporary tables and indices are stored */
+	public String getTempStore()
+	{
+		return tempStore;
+	}
+
+	/** Sets how long a connection waits for a lock before failing.
+	  @param millis the busy timeout in milliseconds, at least 0
+	  @throws IllegalArgumentException if millis is negative
+	  */
+	public void setBusyTimeoutMillis(int millis)
+	{
+		if (millis < 0) {
+			throw new IllegalArgumentException("millis cannot be negative");
+		}
+
+		busyTimeoutMillis = millis;
+	}
+
+	/** Sets the number of database pages each connection caches.
+	  @param pages the page cache size
+	  */
+	public void setCacheSizePages(int pages)
+	{
+		cacheSizePages = pages;
+	}
+
+	/** Sets the journal mode.
+	  @param mode one of DELETE, TRUNCATE, PERSIST, MEMORY, WAL or OFF
+	  @throws IllegalArgumentException if mode is not a journal mode
+	  */
+	public void setJournalMode(String mode)
+	{
+		journalMode = checkKeyword(mode, "DELETE", "TRUNCATE", "PERSIST",
+								   "MEMORY", "WAL", "OFF");
+	}
+
+	/** Sets the maximum number of bytes of the database to memory-map.
+	  @param bytes the memory-map size; 0 disables memory-mapped I/O
+	  */
+	public void setMmapSizeBytes(long bytes)
+	{
+		mmapSizeBytes = bytes;
+	}
+
+	/** Sets the synchronous level.
+	  @param level one of OFF, NORMAL or FULL
+	  @throws IllegalArgumentException if level is not a synchronous level
+	  */
+	public void setSynchronous(String level)
+	{
+		synchronous = checkKeyword(level, "OFF", "NORMAL", "FULL");
+	}
+
+	/** Sets where temporary tables and indices are stored.
+	  @param store one of DEFAULT, FILE or MEMORY
+	  @throws IllegalArgumentException if store is not a temp store
+	  */
+	public void setTempStore(String store)
+	{
+		tempStore = checkKeyword(store, "DEFAULT", "FILE", "MEMORY");
+	}
+
+	/** Returns a String representation of this profile.
+	  @return a String representation of this profile
+	  */
+	public String toString()
+	{
+		return "journal_mode=" + journalMode + ", synchronous=" + synchronous
+				+ ", cache_size=" + cacheSizePages + ", mmap_size="
+				+ mmapSizeBytes + ", temp_store=" + tempStore
+				+ ", busy_timeout=" + busyTimeoutMillis;
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASS Methods
+	//************************************************************
+
+	/** Checks that a pragma value is one of the allowed keywords. Values are
+	  concatenated into pragma statements, so nothing else is accepted.
+	  @param value the value to check
+	  @param allowed the allowed keywords
+	  @return the value, in upper case
+	  @throws IllegalArgumentException if value is not an allowed keyword
+	  */
+	private static String checkKeyword(String value, String... allowed)
+	{
+		if (value != null) {
+			String upper = value.toUpperCase();
+
+			for (String keyword : allowed) {
+				if (keyword.equals(upper)) {
+					return upper;
+				}
+			}
+		}
+
+		throw new IllegalArgumentException("unsupported value: " + value);
+	}
+
+}
@@ -1,17 +1,37 @@
 package jfmi.repo;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.sqlite.Function;
 import org.sqlite.SQLiteConfig;
 
 
 /** Implements an SQLite-based repository.
+
+  Connections are served from two pools. Writes go through a single writer
+  connection, so writers are serialized in the application rather than by
+  lock contention in SQLite. Reads go through a pool of read-only
+  connections which, with the default write-ahead-log profile, proceed in
+  parallel with the writer.
   */
 public class SQLiteRepository extends AbstractRepository {
+	// PUBLIC CLASS Fields
+	/** An SQL function, available on every repository connection, which
+	  scores a full-text match from its matchinfo() blob. Each phrase
+	  contributes the share of all its matches which occur in the row, so
+	  rows holding more of a rare phrase score higher.
+	  */
+	public static final String FTS_RANK_FUNCTION = "jfmi_fts_rank";
+
 	// PRIVATE CLASS Fields
 	private static SQLiteRepository singleton;
 
@@ -21,6 +41,16 @@ public class SQLiteRepository extends AbstractRepository {
 	private boolean initialized;
 
 	private SQLiteConfig sqliteConfig;
+	private SQLiteConfig readConfig;
+	private RepositoryProfile profile;
+
+	private ConnectionPool readPool;
+	private ConnectionPool writePool;
+	private final ThreadLocal<Transaction> transactions;
+	private final List<RepositoryListener> listeners;
+	private int poolSize;
+	private long poolIdleTimeoutMillis;
+	private long poolBorrowTimeoutMillis;
 
 	//************************************************************
 	// PUBLIC CLASS Methods
@@ -78,13 +108,145 @@ public class SQLiteRepository extends AbstractRepository {
 	// PUBLIC INSTANCE Methods
 	//************************************************************
 
-	/** Returns a new Connection for the database.
-	  @return a Connection for the database, or null if not initialized
+	/** Registers a listener to be notified of committed changes.
+	  @param listener the listener to add
+	  */
+	public void addRepositoryListener(RepositoryListener listener)
+	{
+		listeners.add(listener);
+	}
+
+	/** Begins a unit of work on the current thread. Until the returned
+	  Transaction ends, getConnection() and getReadConnection() return the
+	  transaction's connection on this thread, so that DAO operations commit
+	  or roll back together. If a transaction is already active on this
+	  thread, the new one joins it.
+	  @return the new Transaction, which must be closed
+	  @throws SQLException if a connection can not be established
+	  */
+	public Transaction beginTransaction() throws SQLException
+	{
+		Transaction current = transactions.get();
+
+		if (current != null) {
+			return new Transaction(current);
+		}
+
+		Connection conn = getWritePool().borrow();
+		Transaction tx;
+
+		try {
+			tx = new Transaction(this, conn);
+		} catch (SQLException e) {
+			closeQuietly(conn);
+			throw e;
+		}
+
+		transactions.set(tx);
+		return tx;
+	}
+
+	/** Closes the repository's pooled connections. The pools are reopened
+	  the next time a connection is requested.
+	  */
+	public synchronized void closeConnections()
+	{
+		if (readPool != null) {
+			readPool.close();
+			readPool = null;
+		}
+
+		if (writePool != null) {
+			writePool.close();
+			writePool = null;
+		}
+	}
+
+	/** Borrows the repository's writer Connection. There is one writer, so
+	  a caller waits until any other writer has closed its Connection.
+	  Closing the returned Connection returns it to the pool. On a thread
+	  with an active transaction, the transaction's connection is returned.
+	  @return the pooled writer Connection for the database
 	  @throws SQLException if a connection can not be established
 	  */
 	public Connection getConnection() throws SQLException 
 	{
-		return DriverManager.getConnection(repoURL, sqliteConfig.toProperties());
+		Transaction tx = transactions.get();
+
+		if (tx != null) {
+			return tx.getConnection();
+		}
+
+		return getWritePool().borrow();
+	}
+
+	/** Retrieves the transaction active on the current thread, if any.
+	  @return the active outermost Transaction, or null if there is none
+	  */
+	public Transaction getCurrentTransaction()
+	{
+		return transactions.get();
+	}
+
+	/** Retrieves a snapshot of the read connection pool's usage statistics.
+	  @return the pool statistics, or null if no read connection has been
+	  		requested since the pool was last closed
+	  */
+	public synchronized PoolStatistics getPoolStatistics()
+	{
+		if (readPool == null) {
+			return null;
+		}
+
+		return readPool.getStatistics();
+	}
+
+	/** Retrieves the durability and concurrency profile applied to new
+	  connections.
+	  @return a copy of the repository's profile
+	  */
+	public synchronized RepositoryProfile getProfile()
+	{
+		return new RepositoryProfile(profile);
+	}
+
+	/** Borrows a read-only Connection for the database. Read connections do
+	  not wait for the writer. Closing the returned Connection returns it to
+	  the pool.
+
+	  A database with no file of its own, such as an in-memory database,
+	  can not be shared between connections, so the writer is returned. On
+	  a thread with an active transaction, the transaction's connection is
+	  returned, so that the transaction's uncommitted work can be read.
+	  @return a pooled read-only Connection for the database
+	  @throws SQLException if a connection can not be established
+	  */
+	public Connection getReadConnection() throws SQLException
+	{
+		Transaction tx = transactions.get();
+
+		if (tx != null) {
+			return tx.getConnection();
+		}
+
+		if (repoPath.isEmpty() || repoPath.equals(":memory:")) {
+			return getConnection();
+		}
+
+		return getReadPool().borrow();
+	}
+
+	/** Retrieves a snapshot of the writer pool's usage statistics.
+	  @return the pool statistics, or null if no writer connection has been
+	  		requested since the pool was last closed
+	  */
+	public synchronized PoolStatistics getWriterStatistics()
+	{
+		if (writePool == null) {
+			return null;
+		}
+
+		return writePool.getStatistics();
 	}
 
 	/** Retrieves the path of the SQLite repository.
@@ -103,17 +265,36 @@ public class SQLiteRepository extends AbstractRepository {
 		return repoURL;
 	}
 
+	/** Reads the schema version of the repository's database, as recorded
+	  by the schema migrations applied to it.
+	  @return the schema version of the database
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public int getSchemaVersion() throws SQLException
+	{
+		Connection conn = getConnection();
+
+		try {
+			return SchemaMigrator.readVersion(conn);
+		} finally {
+			closeQuietly(conn);
+		}
+	}
+
 	/** Initializes the SQLiteRepository by attempting to load the 
 	  SQLite driver. The path to the repository should be set before
-	  calling this method.
+	  calling this method. Tables are created if necessary, and any schema
+	  migrations the database has not yet received are applied.
 	  @throws ClassNotFoundException If the driver cannot be loaded.
-	  @throws SQLException If table creation is necessary, and fails.
+	  @throws SQLException If table creation or migration is necessary, and
+	  		fails.
 	  */
 	public void initialize() throws ClassNotFoundException, SQLException
 	{
 		if (!isInitialized()) {
 			Class.forName("org.sqlite.JDBC");
 			createTablesIfNecessary();
+			migrateSchema();
 
 			setInitialized(true);
 		}
@@ -127,7 +308,69 @@ public class SQLiteRepository extends AbstractRepository {
 		return initialized;
 	}
 
-	/** Sets the path to an SQLite database.
+	/** Publishes a change made to the repository. On a thread with an active
+	  transaction, the change is held until the transaction commits, and
+	  dropped if it rolls back; otherwise listeners are notified at once.
+	  @param change the change to publish
+	  */
+	public void publishChange(RepositoryChange change)
+	{
+		Transaction tx = transactions.get();
+
+		if (tx != null) {
+			tx.deferChange(change);
+		} else {
+			fireChange(change);
+		}
+	}
+
+	/** Unregisters a listener added with addRepositoryListener().
+	  @param listener the listener to remove
+	  */
+	public void removeRepositoryListener(RepositoryListener listener)
+	{
+		listeners.remove(listener);
+	}
+
+	/** Sets the configuration of the connection pools. The current pools,
+	  if any, are closed and new pools with the new configuration are opened
+	  the next time a connection is requested. The writer pool always holds
+	  a single connection.
+	  @param size the maximum number of open read connections, at least 1
+	  @param idleTimeoutMillis idle connections older than this are closed; a
+	  		value <= 0 disables eviction
+	  @param borrowTimeoutMillis the longest a caller of getConnection() waits
+	  		for a free connection
+	  @throws IllegalArgumentException if size is less than 1
+	  */
+	public synchronized void setPoolConfiguration(int size,
+												  long idleTimeoutMillis,
+												  long borrowTimeoutMillis)
+	{
+		if (size < 1) {
+			throw new IllegalArgumentException("size must be at least 1");
+		}
+
+		poolSize = size;
+		poolIdleTimeoutMillis = idleTimeoutMillis;
+		poolBorrowTimeoutMillis = borrowTimeoutMillis;
+
+		closeConnections();
+	}
+
+	/** Sets the durability and concurrency profile applied to connections.
+	  Open connections are closed, and new connections use the profile.
+	  @param profile_ the profile to copy and apply
+	  @throws NullPointerException if profile_ is null
+	  */
+	public synchronized void setProfile(RepositoryProfile profile_)
+	{
+		profile = new RepositoryProfile(profile_);
+		closeConnections();
+	}
+
+	/** Sets the path to an SQLite database. Pooled connections to any
+	  previous database are closed.
 	  @param path the file path to set repoPath to
 	  */
 	public void setRepoPath(String path)
@@ -139,6 +382,31 @@ public class SQLiteRepository extends AbstractRepository {
 		}	
 
 		setRepoURL("jdbc:sqlite:" + repoPath);
+		closeConnections();
+	}
+
+	//************************************************************
+	// PACKAGE INSTANCE Methods
+	//************************************************************
+
+	/** Notifies the registered listeners of a committed change.
+	  @param change the committed change
+	  */
+	void fireChange(RepositoryChange change)
+	{
+		for (RepositoryListener listener : listeners) {
+			listener.repositoryChanged(change);
+		}
+	}
+
+	/** Unbinds a transaction which has ended from the current thread.
+	  @param tx the Transaction which ended
+	  */
+	void unbindTransaction(Transaction tx)
+	{
+		if (transactions.get() == tx) {
+			transactions.remove();
+		}
 	}
 
 	//************************************************************
@@ -150,11 +418,23 @@ public class SQLiteRepository extends AbstractRepository {
 	  */
 	private SQLiteRepository(String path)
 	{
+		poolSize = ConnectionPool.DEFAULT_MAX_SIZE;
+		poolIdleTimeoutMillis = ConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS;
+		poolBorrowTimeoutMillis = ConnectionPool.DEFAULT_BORROW_TIMEOUT_MILLIS;
+		transactions = new ThreadLocal<Transaction>();
+		listeners = new CopyOnWriteArrayList<RepositoryListener>();
+
 		setRepoPath(path);
 		setInitialized(false);
 
 		sqliteConfig = new SQLiteConfig();
 		sqliteConfig.enforceForeignKeys(true);
+
+		readConfig = new SQLiteConfig();
+		readConfig.enforceForeignKeys(true);
+		readConfig.setReadOnly(true);
+
+		profile = new RepositoryProfile();
 	}
 
 	/** Creates the SQLite database tables if necessary.
@@ -211,6 +491,128 @@ public class SQLiteRepository extends AbstractRepository {
 		}
 	}
 
+	/** Applies the schema migrations which the database has not yet received.
+	  @throws SQLException if a migration fails
+	  */
+	private void migrateSchema() throws SQLException
+	{
+		Connection conn = getConnection();
+
+		try {
+			new SchemaMigrator(SchemaMigrations.all()).migrate(conn);
+		} finally {
+			closeQuietly(conn);
+		}
+	}
+
+	/** Retrieves the repository's read connection pool, opening a new pool
+	  for the current repository URL if necessary.
+	  @return the repository's read connection pool
+	  */
+	private synchronized ConnectionPool getReadPool()
+	{
+		if (readPool == null) {
+			readPool = newPool(false, poolSize);
+		}
+
+		return readPool;
+	}
+
+	/** Retrieves the repository's writer pool, opening a new pool for the
+	  current repository URL if necessary.
+	  @return the repository's writer pool
+	  */
+	private synchronized ConnectionPool getWritePool()
+	{
+		if (writePool == null) {
+			writePool = newPool(true, 1);
+		}
+
+		return writePool;
+	}
+
+	/** Opens a connection pool for the current repository URL, whose
+	  connections are configured with the current profile.
+	  @param writable false to open the pool's connections read-only
+	  @param size the maximum number of connections in the pool
+	  @return a new connection pool
+	  */
+	private ConnectionPool newPool(final boolean writable, int size)
+	{
+		final String url = repoURL;
+		final SQLiteConfig config = writable ? sqliteConfig : readConfig;
+		final RepositoryProfile connProfile = new RepositoryProfile(profile);
+
+		ConnectionFactory factory = new ConnectionFactory() {
+			public Connection newConnection() throws SQLException
+			{
+				Connection conn = DriverManager.getConnection(
+										url,
+										config.toProperties()
+									);
+
+				try {
+					connProfile.applyTo(conn, writable);
+					registerFunctions(conn);
+				} catch (SQLException e) {
+					closeQuietly(conn);
+					throw e;
+				}
+
+				return conn;
+			}
+		};
+
+		return new ConnectionPool(factory, size, poolIdleTimeoutMillis,
+								  poolBorrowTimeoutMillis);
+	}
+
+	/** Registers the repository's application-defined SQL functions on a
+	  newly opened connection.
+	  @param conn the physical connection to register the functions on
+	  @throws SQLException if a function can not be registered
+	  */
+	private static void registerFunctions(Connection conn) throws SQLException
+	{
+		Function.create(conn, FTS_RANK_FUNCTION, new Function() {
+			protected void xFunc() throws SQLException
+			{
+				byte[] matchinfo = value_blob(0);
+				result(matchinfo == null ? 0.0 : rankMatch(matchinfo));
+			}
+		});
+	}
+
+	/** Scores a full-text match. The matchinfo blob holds the number of
+	  phrases and columns, followed, for each phrase and column, by the hits
+	  in the row, the hits in all rows, and the rows with a hit.
+	  @param matchinfo the default-format result of the FTS matchinfo()
+	  @return the row's score; higher is a better match
+	  */
+	private static double rankMatch(byte[] matchinfo)
+	{
+		IntBuffer info = ByteBuffer.wrap(matchinfo)
+									.order(ByteOrder.nativeOrder())
+									.asIntBuffer();
+		int phrases = info.get(0);
+		int columns = info.get(1);
+		double score = 0.0;
+
+		for (int p = 0; p < phrases; p++) {
+			for (int c = 0; c < columns; c++) {
+				int base = 2 + 3 * (p * columns + c);
+				int rowHits = info.get(base);
+				int allHits = info.get(base + 1);
+
+				if (allHits > 0) {
+					score += (double)rowHits / allHits;
+				}
+			}
+		}
+
+		return score;
+	}
+
 	/** Sets the initialization status of the instance.
 	  @param init boolean value indicating if the database is initialized
 	  */
@@ -0,0 +1,97 @@
+package jfmi.repo;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+
+/** A SchemaMigration upgrades a repository's schema from the previous
+  version to the migration's version. Migrations are applied in version
+  order by a SchemaMigrator, each inside its own transaction.
+  */
+public abstract class SchemaMigration {
+
+	// PRIVATE INSTANCE Fields
+	private final int version;
+	private final String description;
+
+
+	//************************************************************
+	// PUBLIC CLASS Methods
+	//************************************************************
+
+	/** Creates a migration which executes the specified SQL statements, in
+	  order.
+	  @param version the schema version the migration upgrades to
+	  @param description a short description of the change
+	  @param statements the SQL statements which make the change
+	  @return a SchemaMigration executing the statements
+	  */
+	public static SchemaMigration ofStatements(int version,
+											   String description,
+											   final String... statements)
+	{
+		return new SchemaMigration(version, description) {
+			public void apply(Connection conn) throws SQLException
+			{
+				Statement stmt = conn.createStatement();
+
+				try {
+					for (String sql : statements) {
+						stmt.executeUpdate(sql);
+					}
+				} finally {
+					SQLiteRepository.closeQuietly(stmt);
+				}
+			}
+		};
+	}
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs a SchemaMigration to the specified version.
+	  @param version_ the schema version the migration upgrades to, at least 1
+	  @param description_ a short description of the change
+	  @throws IllegalArgumentException if version_ is less than 1
+	  */
+	public SchemaMigration(int version_, String description_)
+	{
+		if (version_ < 1) {
+			throw new IllegalArgumentException("version_ must be at least 1");
+		}
+
+		version = version_;
+		description = description_;
+	}
+
+	/** Makes the migration's schema changes. The connection is already in a
+	  transaction; the migration must not commit or roll it back.
+	  @param conn the connection to the repository being migrated
+	  @throws SQLException if the changes can not be made
+	  */
+	public abstract void apply(Connection conn) throws SQLException;
+
+	/** @return a short description of the schema change */
+	public String getDescription()
+	{
+		return description;
+	}
+
+	/** @return the schema version this migration upgrades to */
+	public int getVersion()
+	{
+		return version;
+	}
+
+	/** Returns a String representation of this migration.
+	  @return a String representation of this migration
+	  */
+	public String toString()
+	{
+		return "v" + version + ": " + description;
+	}
+
+}
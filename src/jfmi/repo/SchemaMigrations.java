@@ -0,0 +1,408 @@
+package jfmi.repo;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import jfmi.util.StringUtil;
+
+
+/** SchemaMigrations lists every migration of the SQLiteRepository schema.
+  Version 0 is the schema created by SQLiteRepository.createTablesIfNecessary;
+  each later version is reached by one migration below. A migration which
+  has shipped must never be edited; changes to the schema are made by
+  adding a migration with the next version number.
+  */
+public class SchemaMigrations {
+
+	// PRIVATE CLASS Fields
+	private static final List<SchemaMigration> MIGRATIONS;
+
+	static {
+		List<SchemaMigration> list = new ArrayList<SchemaMigration>();
+
+		list.add(SchemaMigration.ofStatements(1,
+			"index FileTagging.fileId, FileTagging.tag and TaggedFile.path",
+			"CREATE INDEX IF NOT EXISTS main.FileTagging_fileId_idx"
+				+ " ON FileTagging(fileId)",
+			"CREATE INDEX IF NOT EXISTS main.FileTagging_tag_idx"
+				+ " ON FileTagging(tag)",
+			"CREATE INDEX IF NOT EXISTS main.TaggedFile_path_nocase_idx"
+				+ " ON TaggedFile(path COLLATE NOCASE)"
+		));
+
+		/* FileTaggingComment is a full-text index of tagging comments. Each
+		   row's docid is the taggingId of the tagging it indexes; the
+		   triggers keep it in step with FileTagging, including deletes which
+		   cascade from TaggedFile and FileTag. */
+		list.add(SchemaMigration.ofStatements(2,
+			"full-text index of FileTagging.comment",
+			"CREATE VIRTUAL TABLE main.FileTaggingComment USING fts4(comment)",
+			"INSERT INTO main.FileTaggingComment(docid, comment)"
+				+ " SELECT taggingId, comment FROM main.FileTagging"
+				+ " WHERE comment IS NOT NULL",
+			"CREATE TRIGGER main.FileTagging_comment_insert"
+				+ " AFTER INSERT ON FileTagging BEGIN"
+				+ " INSERT INTO FileTaggingComment(docid, comment)"
+				+ " SELECT new.taggingId, new.comment"
+				+ " WHERE new.comment IS NOT NULL;"
+				+ " END",
+			"CREATE TRIGGER main.FileTagging_comment_update"
+				+ " AFTER UPDATE OF taggingId, comment ON FileTagging BEGIN"
+				+ " DELETE FROM FileTaggingComment WHERE docid = old.taggingId;"
+				+ " INSERT INTO FileTaggingComment(docid, comment)"
+				+ " SELECT new.taggingId, new.comment"
+				+ " WHERE new.comment IS NOT NULL;"
+				+ " END",
+			"CREATE TRIGGER main.FileTagging_comment_delete"
+				+ " AFTER DELETE ON FileTagging BEGIN"
+				+ " DELETE FROM FileTaggingComment WHERE docid = old.taggingId;"
+				+ " END"
+		));
+
+		/* TaggedFile.missing is set when a file is found to no longer exist
+		   at its path, and cleared when its path is updated. */
+		list.add(SchemaMigration.ofStatements(3,
+			"flag TaggedFiles whose paths no longer exist",
+			"ALTER TABLE main.TaggedFile"
+				+ " ADD COLUMN missing INTEGER NOT NULL DEFAULT 0"
+		));
+
+		/* The size and modification time a file had when its path was last
+		   checked, and the modification time of its directory then. A file
+		   whose directory is unchanged still exists at its path. */
+		list.add(SchemaMigration.ofStatements(4,
+			"cache file system metadata of TaggedFiles",
+			"ALTER TABLE main.TaggedFile ADD COLUMN size INTEGER",
+			"ALTER TABLE main.TaggedFile ADD COLUMN modified INTEGER",
+			"ALTER TABLE main.TaggedFile ADD COLUMN dirModified INTEGER"
+		));
+
+		/* A fingerprint of each file's contents, and optionally a hash of
+		   the whole file, so that a missing file can be found again by
+		   looking up the fingerprints of files at other paths. */
+		list.add(SchemaMigration.ofStatements(5,
+			"fingerprint the contents of TaggedFiles",
+			"ALTER TABLE main.TaggedFile ADD COLUMN fingerprint TEXT",
+			"ALTER TABLE main.TaggedFile ADD COLUMN fullHash TEXT",
+			"CREATE INDEX IF NOT EXISTS main.TaggedFile_fingerprint_idx"
+				+ " ON TaggedFile(fingerprint)"
+		));
+
+		/* Tags are keyed by an integer tagId, with the tag text kept unique,
+		   so that taggings carry and index a small integer instead of the
+		   text, and renaming a tag updates a single FileTag row. SQLite can
+		   not alter a primary key, so both tables are copied into new ones,
+		   keeping their ids and the next taggingId. Dropping FileTagging
+		   drops its triggers, which are created again; renaming FileTag2
+		   rewrites the foreign key of FileTagging2 to refer to FileTag. */
+		list.add(SchemaMigration.ofStatements(6,
+			"key FileTag by an integer tagId",
+			"CREATE TABLE main.FileTag2 ("
+				+ " tagId INTEGER"
+				+ " CONSTRAINT tagId_is_pk PRIMARY KEY ASC AUTOINCREMENT"
+				+ " CONSTRAINT tagId_nonnegative CHECK (tagId >= 0),"
+				+ " tag TEXT NOT NULL"
+				+ " CONSTRAINT tag_is_unique UNIQUE"
+				+ " )",
+			"INSERT INTO main.FileTag2(tag)"
+				+ " SELECT tag FROM main.FileTag ORDER BY tag",
+			"CREATE TABLE main.FileTagging2 ("
+				+ " taggingId INTEGER"
+				+ " CONSTRAINT taggingId_is_pk PRIMARY KEY ASC AUTOINCREMENT"
+				+ " CONSTRAINT taggingId_nonnegative CHECK (taggingId >= 0),"
+				+ " fileId INTEGER NOT NULL,"
+				+ " tagId INTEGER NOT NULL,"
+				+ " comment TEXT,"
+				+ " CONSTRAINT fileId_is_fk FOREIGN KEY(fileId)"
+				+ " REFERENCES TaggedFile(fileId)"
+				+ " ON DELETE CASCADE ON UPDATE CASCADE,"
+				+ " CONSTRAINT tagId_is_fk FOREIGN KEY(tagId)"
+				+ " REFERENCES FileTag2(tagId)"
+				+ " ON DELETE CASCADE ON UPDATE CASCADE"
+				+ " )",
+			"INSERT INTO main.FileTagging2(taggingId, fileId, tagId, comment)"
+				+ " SELECT t.taggingId, t.fileId, g.tagId, t.comment"
+				+ " FROM main.FileTagging t"
+				+ " JOIN main.FileTag2 g ON g.tag = t.tag",
+			"DELETE FROM main.sqlite_sequence WHERE name = 'FileTagging2'",
+			"INSERT INTO main.sqlite_sequence(name, seq)"
+				+ " SELECT 'FileTagging2', seq FROM main.sqlite_sequence"
+				+ " WHERE name = 'FileTagging'",
+			"DROP TABLE main.FileTagging",
+			"DROP TABLE main.FileTag",
+			"ALTER TABLE main.FileTag2 RENAME TO FileTag",
+			"ALTER TABLE main.FileTagging2 RENAME TO FileTagging",
+			"CREATE INDEX IF NOT EXISTS main.FileTagging_fileId_idx"
+				+ " ON FileTagging(fileId)",
+			"CREATE INDEX IF NOT EXISTS main.FileTagging_tagId_idx"
+				+ " ON FileTagging(tagId)",
+			"CREATE TRIGGER main.FileTagging_comment_insert"
+				+ " AFTER INSERT ON FileTagging BEGIN"
+				+ " INSERT INTO FileTaggingComment(docid, comment)"
+				+ " SELECT new.taggingId, new.comment"
+				+ " WHERE new.comment IS NOT NULL;"
+				+ " END",
+			"CREATE TRIGGER main.FileTagging_comment_update"
+				+ " AFTER UPDATE OF taggingId, comment ON FileTagging BEGIN"
+				+ " DELETE FROM FileTaggingComment WHERE docid = old.taggingId;"
+				+ " INSERT INTO FileTaggingComment(docid, comment)"
+				+ " SELECT new.taggingId, new.comment"
+				+ " WHERE new.comment IS NOT NULL;"
+				+ " END",
+			"CREATE TRIGGER main.FileTagging_comment_delete"
+				+ " AFTER DELETE ON FileTagging BEGIN"
+				+ " DELETE FROM FileTaggingComment WHERE docid = old.taggingId;"
+				+ " END"
+		));
+
+		/* Files are stored as a directory and a name, and the path of each
+		   directory is stored once, so that long directory prefixes are not
+		   repeated for every file, and the files under a directory are found
+		   by a range of directory paths. See DirectoryMigration. */
+		list.add(new DirectoryMigration(7));
+
+		MIGRATIONS = Collections.unmodifiableList(list);
+	}
+
+
+	//************************************************************
+	// PUBLIC CLASS Methods
+	//************************************************************
+
+	/** Retrieves every migration of the repository schema.
+	  @return an unmodifiable list of migrations, in version order
+	  */
+	public static List<SchemaMigration> all()
+	{
+		return MIGRATIONS;
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASSES
+	//************************************************************
+
+	/** A DirectoryMigration moves the paths of TaggedFiles into a Directory
+	  table. A directory's path ends in a delimiter, and each directory but
+	  the root, whose path is "", has the directory containing it as its
+	  parent. TaggedFile is rebuilt with a dirId and a name in place of its
+	  path, keeping its fileIds. Dropping the old TaggedFile would cascade to
+	  the taggings which refer to it, so, as in migration 6, FileTagging is
+	  rebuilt to refer to the new table first. Splitting paths needs Java, so
+	  the files are copied one at a time. Pages of files in path order are
+	  merged from Directory_path_nocase_idx and, within each directory,
+	  TaggedFile_dirId_name_nocase_idx.
+	  */
+	private static final class DirectoryMigration extends SchemaMigration {
+
+		private static final String INSERT_DIRECTORY_PSQL
+			= "INSERT INTO main.Directory(parentId, name, path)"
+			+ " VALUES((SELECT dirId FROM main.Directory WHERE path = ?),"
+			+ " ?, ?)";
+
+		private static final String INSERT_FILE_PSQL
+			= "INSERT INTO main.TaggedFile2(fileId, dirId, name, missing,"
+			+ " size, modified, dirModified, fingerprint, fullHash)"
+			+ " SELECT fileId,"
+			+ " (SELECT dirId FROM main.Directory WHERE path = ?), ?,"
+			+ " missing, size, modified, dirModified, fingerprint, fullHash"
+			+ " FROM main.TaggedFile WHERE fileId = ?";
+
+		private static final String[] CREATE_SQL = {
+			"CREATE TABLE main.Directory ("
+				+ " dirId INTEGER"
+				+ " CONSTRAINT dirId_is_pk PRIMARY KEY ASC AUTOINCREMENT"
+				+ " CONSTRAINT dirId_nonnegative CHECK (dirId >= 0),"
+				+ " parentId INTEGER,"
+				+ " name TEXT NOT NULL,"
+				+ " path TEXT NOT NULL"
+				+ " CONSTRAINT path_is_unique UNIQUE,"
+				+ " CONSTRAINT parentId_is_fk FOREIGN KEY(parentId)"
+				+ " REFERENCES Directory(dirId)"
+				+ " ON DELETE CASCADE ON UPDATE CASCADE"
+				+ " )",
+			"CREATE INDEX IF NOT EXISTS main.Directory_parentId_idx"
+				+ " ON Directory(parentId)",
+			"CREATE INDEX IF NOT EXISTS main.Directory_path_nocase_idx"
+				+ " ON Directory(path COLLATE NOCASE)",
+			"CREATE TABLE main.TaggedFile2 ("
+				+ " fileId INTEGER"
+				+ " CONSTRAINT fileId_is_pk PRIMARY KEY ASC AUTOINCREMENT"
+				+ " CONSTRAINT fileId_nonnegative CHECK (fileId >= 0),"
+				+ " dirId INTEGER NOT NULL,"
+				+ " name TEXT NOT NULL,"
+				+ " missing INTEGER NOT NULL DEFAULT 0,"
+				+ " size INTEGER,"
+				+ " modified INTEGER,"
+				+ " dirModified INTEGER,"
+				+ " fingerprint TEXT,"
+				+ " fullHash TEXT,"
+				+ " CONSTRAINT dirId_is_fk FOREIGN KEY(dirId)"
+				+ " REFERENCES Directory(dirId) ON UPDATE CASCADE,"
+				+ " CONSTRAINT dirId_name_is_unique UNIQUE (dirId, name)"
+				+ " )"
+		};
+
+		private static final String[] REPLACE_SQL = {
+			"CREATE TABLE main.FileTagging2 ("
+				+ " taggingId INTEGER"
+				+ " CONSTRAINT taggingId_is_pk PRIMARY KEY ASC AUTOINCREMENT"
+				+ " CONSTRAINT taggingId_nonnegative CHECK (taggingId >= 0),"
+				+ " fileId INTEGER NOT NULL,"
+				+ " tagId INTEGER NOT NULL,"
+				+ " comment TEXT,"
+				+ " CONSTRAINT fileId_is_fk FOREIGN KEY(fileId)"
+				+ " REFERENCES TaggedFile2(fileId)"
+				+ " ON DELETE CASCADE ON UPDATE CASCADE,"
+				+ " CONSTRAINT tagId_is_fk FOREIGN KEY(tagId)"
+				+ " REFERENCES FileTag(tagId)"
+				+ " ON DELETE CASCADE ON UPDATE CASCADE"
+				+ " )",
+			"INSERT INTO main.FileTagging2(taggingId, fileId, tagId, comment)"
+				+ " SELECT taggingId, fileId, tagId, comment"
+				+ " FROM main.FileTagging",
+			"DELETE FROM main.sqlite_sequence"
+				+ " WHERE name IN ('TaggedFile2', 'FileTagging2')",
+			"INSERT INTO main.sqlite_sequence(name, seq)"
+				+ " SELECT name || '2', seq FROM main.sqlite_sequence"
+				+ " WHERE name IN ('TaggedFile', 'FileTagging')",
+			"DROP TABLE main.FileTagging",
+			"DROP TABLE main.TaggedFile",
+			"ALTER TABLE main.TaggedFile2 RENAME TO TaggedFile",
+			"ALTER TABLE main.FileTagging2 RENAME TO FileTagging",
+			"CREATE INDEX IF NOT EXISTS main.TaggedFile_name_nocase_idx"
+				+ " ON TaggedFile(name COLLATE NOCASE)",
+			"CREATE INDEX IF NOT EXISTS main.TaggedFile_dirId_name_nocase_idx"
+				+ " ON TaggedFile(dirId, name COLLATE NOCASE)",
+			"CREATE INDEX IF NOT EXISTS main.TaggedFile_fingerprint_idx"
+				+ " ON TaggedFile(fingerprint)",
+			"CREATE INDEX IF NOT EXISTS main.FileTagging_fileId_idx"
+				+ " ON FileTagging(fileId)",
+			"CREATE INDEX IF NOT EXISTS main.FileTagging_tagId_idx"
+				+ " ON FileTagging(tagId)",
+			"CREATE TRIGGER main.FileTagging_comment_insert"
+				+ " AFTER INSERT ON FileTagging BEGIN"
+				+ " INSERT INTO FileTaggingComment(docid, comment)"
+				+ " SELECT new.taggingId, new.comment"
+				+ " WHERE new.comment IS NOT NULL;"
+				+ " END",
+			"CREATE TRIGGER main.FileTagging_comment_update"
+				+ " AFTER UPDATE OF taggingId, comment ON FileTagging BEGIN"
+				+ " DELETE FROM FileTaggingComment WHERE docid = old.taggingId;"
+				+ " INSERT INTO FileTaggingComment(docid, comment)"
+				+ " SELECT new.taggingId, new.comment"
+				+ " WHERE new.comment IS NOT NULL;"
+				+ " END",
+			"CREATE TRIGGER main.FileTagging_comment_delete"
+				+ " AFTER DELETE ON FileTagging BEGIN"
+				+ " DELETE FROM FileTaggingComment WHERE docid = old.taggingId;"
+				+ " END"
+		};
+
+		DirectoryMigration(int version)
+		{
+			super(version, "store TaggedFile paths as a directory and a name");
+		}
+
+		public void apply(Connection conn) throws SQLException
+		{
+			ofStatements(getVersion(), getDescription(), CREATE_SQL)
+				.apply(conn);
+			copyFiles(conn);
+			ofStatements(getVersion(), getDescription(), REPLACE_SQL)
+				.apply(conn);
+		}
+
+		/** Copies every file into TaggedFile2, creating its directory, and
+		  the directory's ancestors, as they are first needed. */
+		private void copyFiles(Connection conn) throws SQLException
+		{
+			Set<String> created = new HashSet<String>();
+			PreparedStatement dirPs = conn.prepareStatement(
+												INSERT_DIRECTORY_PSQL);
+
+			try {
+				PreparedStatement filePs = conn.prepareStatement(
+												INSERT_FILE_PSQL);
+
+				try {
+					Statement stmt = conn.createStatement();
+
+					try {
+						ResultSet rs = stmt.executeQuery(
+								"SELECT fileId, path FROM main.TaggedFile");
+
+						try {
+							while (rs.next()) {
+								String path = rs.getString("path");
+								String dir;
+								dir = StringUtil.parseDirectoryFromPath(path);
+
+								createDirectory(dirPs, dir, created);
+
+								filePs.setString(1, dir);
+								filePs.setString(2,
+										StringUtil.parseNameFromPath(path));
+								filePs.setInt(3, rs.getInt("fileId"));
+								filePs.executeUpdate();
+							}
+
+						} finally {
+							SQLiteRepository.closeQuietly(rs);
+						}
+
+					} finally {
+						SQLiteRepository.closeQuietly(stmt);
+					}
+
+				} finally {
+					SQLiteRepository.closeQuietly(filePs);
+				}
+
+			} finally {
+				SQLiteRepository.closeQuietly(dirPs);
+			}
+		}
+
+		/** Creates the row of a directory, after the rows of its ancestors,
+		  unless it has already been created. */
+		private static void createDirectory(PreparedStatement ps, String dir,
+											Set<String> created)
+			throws SQLException
+		{
+			if (!created.add(dir)) {
+				return;
+			}
+
+			String parent = null;
+			String name = "";
+
+			if (!dir.isEmpty()) {
+				String trimmed = dir.substring(0, dir.length() - 1);
+				parent = StringUtil.parseDirectoryFromPath(trimmed);
+				name = StringUtil.parseNameFromPath(trimmed);
+
+				createDirectory(ps, parent, created);
+			}
+
+			ps.setString(1, parent);
+			ps.setString(2, name);
+			ps.setString(3, dir);
+			ps.executeUpdate();
+		}
+	}
+
+
+	/* Private to keep class from being instantiated. */
+	private SchemaMigrations() {
+	}
+
+}
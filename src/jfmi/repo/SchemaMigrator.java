@@ -0,0 +1,159 @@
+package jfmi.repo;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+
+/** A SchemaMigrator brings a repository's schema up to date by applying, in
+  version order, every migration newer than the schema version recorded in
+  the database's "PRAGMA user_version". Each migration is applied and
+  recorded in a single transaction, so a failed migration leaves the
+  database at the previous version.
+  */
+public class SchemaMigrator {
+
+	// PRIVATE INSTANCE Fields
+	private final List<SchemaMigration> migrations;
+
+
+	//************************************************************
+	// PUBLIC CLASS Methods
+	//************************************************************
+
+	/** Reads the schema version recorded in a database.
+	  @param conn a connection to the database
+	  @return the database's user_version
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public static int readVersion(Connection conn) throws SQLException
+	{
+		Statement stmt = conn.createStatement();
+
+		try {
+			ResultSet rs = stmt.executeQuery("PRAGMA user_version");
+
+			try {
+				return rs.next() ? rs.getInt(1) : 0;
+			} finally {
+				SQLiteRepository.closeQuietly(rs);
+			}
+
+		} finally {
+			SQLiteRepository.closeQuietly(stmt);
+		}
+	}
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Constructs a SchemaMigrator for the specified migrations.
+	  @param migrations_ the known migrations, in any order
+	  @throws IllegalArgumentException if two migrations share a version
+	  */
+	public SchemaMigrator(List<SchemaMigration> migrations_)
+	{
+		migrations = new ArrayList<SchemaMigration>(migrations_);
+
+		Collections.sort(migrations, new Comparator<SchemaMigration>() {
+			public int compare(SchemaMigration m1, SchemaMigration m2)
+			{
+				return m1.getVersion() - m2.getVersion();
+			}
+		});
+
+		for (int i = 1; i < migrations.size(); i++) {
+			if (migrations.get(i).getVersion()
+				== migrations.get(i - 1).getVersion()) {
+				throw new IllegalArgumentException("duplicate migration version "
+												   + migrations.get(i).getVersion());
+			}
+		}
+	}
+
+	/** Retrieves the newest schema version known to this migrator.
+	  @return the version of the last migration, or 0 if there are none
+	  */
+	public int getLatestVersion()
+	{
+		if (migrations.isEmpty()) {
+			return 0;
+		}
+
+		return migrations.get(migrations.size() - 1).getVersion();
+	}
+
+	/** Applies every migration newer than the database's schema version.
+	  @param conn a connection to the database, in auto-commit mode
+	  @return the number of migrations applied
+	  @throws SQLException if a migration fails, or if the database's schema
+	  		is newer than the latest known version
+	  */
+	public int migrate(Connection conn) throws SQLException
+	{
+		int current = readVersion(conn);
+
+		if (current > getLatestVersion()) {
+			throw new SQLException("The database schema version (" + current
+								   + ") is newer than this application"
+								   + " supports (" + getLatestVersion() + ").");
+		}
+
+		int applied = 0;
+
+		for (SchemaMigration migration : migrations) {
+			if (migration.getVersion() <= current) {
+				continue;
+			}
+
+			conn.setAutoCommit(false);
+
+			try {
+				migration.apply(conn);
+				writeVersion(conn, migration.getVersion());
+				conn.commit();
+
+			} catch (SQLException e) {
+				conn.rollback();
+				throw new SQLException("Schema migration " + migration
+									   + " failed: " + e.getMessage(), e);
+			} finally {
+				conn.setAutoCommit(true);
+			}
+
+			applied++;
+		}
+
+		return applied;
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASS Methods
+	//************************************************************
+
+	/** Records a schema version in a database.
+	  @param conn a connection to the database
+	  @param version the version to record
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	private static void writeVersion(Connection conn, int version)
+		throws SQLException
+	{
+		Statement stmt = conn.createStatement();
+
+		try {
+			stmt.executeUpdate("PRAGMA user_version = " + version);
+		} finally {
+			SQLiteRepository.closeQuietly(stmt);
+		}
+	}
+
+}
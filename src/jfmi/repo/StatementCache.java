@@ -0,0 +1,224 @@
+package jfmi.repo;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/** A StatementCache keeps the compiled PreparedStatements of one physical
+  connection, keyed by their SQL text, so that a statement prepared by one
+  borrower of the connection can be reused by the next without SQLite
+  parsing and planning it again.
+
+  Statements handed out by prepare() are wrappers; closing a wrapper clears
+  its parameters and returns the statement to the cache. A statement whose
+  execution failed is closed instead, as the driver can not reuse it. When
+  the cache is full, the least recently used statement is closed.
+  */
+final class StatementCache {
+
+	// PRIVATE INSTANCE Fields
+	private final int capacity;
+	private final LinkedHashMap<String, PreparedStatement> idle;
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+
+
+	//************************************************************
+	// PACKAGE INSTANCE Methods
+	//************************************************************
+
+	/** Constructs an empty StatementCache.
+	  @param capacity_ the most statements kept; 0 disables caching
+	  @param hits_ counts statements served from the cache
+	  @param misses_ counts statements which had to be prepared
+	  */
+	StatementCache(int capacity_, AtomicLong hits_, AtomicLong misses_)
+	{
+		capacity = capacity_;
+		hits = hits_;
+		misses = misses_;
+
+		idle = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(
+				Map.Entry<String, PreparedStatement> eldest)
+			{
+				if (size() > capacity) {
+					closeQuietly(eldest.getValue());
+					return true;
+				}
+
+				return false;
+			}
+		};
+	}
+
+	/** Closes every cached statement. */
+	synchronized void closeAll()
+	{
+		Iterator<PreparedStatement> it = idle.values().iterator();
+
+		while (it.hasNext()) {
+			closeQuietly(it.next());
+			it.remove();
+		}
+	}
+
+	/** Retrieves a statement for the specified SQL, reusing a cached one if
+	  possible.
+	  @param physical the physical connection the cache belongs to
+	  @param owner the connection the borrower sees, which the statement
+	  		reports as its connection
+	  @param sql the SQL text of the statement
+	  @return a PreparedStatement which returns to the cache when closed
+	  @throws SQLException if a new statement can not be prepared
+	  */
+	PreparedStatement prepare(Connection physical, Connection owner,
+							  String sql) throws SQLException
+	{
+		PreparedStatement ps;
+
+		synchronized (this) {
+			ps = idle.remove(sql);
+		}
+
+		if (ps != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+			ps = physical.prepareStatement(sql);
+		}
+
+		return (PreparedStatement)Proxy.newProxyInstance(
+					PreparedStatement.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class },
+					new CachedStatementHandler(sql, ps, owner)
+				);
+	}
+
+
+	//************************************************************
+	// PRIVATE INSTANCE Methods
+	//************************************************************
+
+	/** Closes a statement, ignoring any exceptions.
+	  @param ps the statement to close
+	  */
+	private static void closeQuietly(PreparedStatement ps)
+	{
+		try {
+			ps.close();
+		} catch (SQLException e) {
+			// ignore
+		}
+	}
+
+	/** Returns a statement to the cache, or closes it if an equivalent
+	  statement is already cached.
+	  @param sql the SQL text of the statement
+	  @param ps the statement, with its parameters cleared
+	  */
+	private synchronized void release(String sql, PreparedStatement ps)
+	{
+		if (capacity < 1 || idle.containsKey(sql)) {
+			closeQuietly(ps);
+		} else {
+			idle.put(sql, ps);
+		}
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASSES
+	//************************************************************
+
+	/** Forwards calls to a cached statement until the wrapper is closed. */
+	private final class CachedStatementHandler implements InvocationHandler {
+		private final String sql;
+		private final PreparedStatement physical;
+		private final Connection owner;
+		private boolean closed;
+		private boolean broken;
+
+		CachedStatementHandler(String sql_, PreparedStatement physical_,
+							   Connection owner_)
+		{
+			sql = sql_;
+			physical = physical_;
+			owner = owner_;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args)
+			throws Throwable
+		{
+			String name = method.getName();
+
+			if (name.equals("close")) {
+				if (!closed) {
+					closed = true;
+					returnStatement();
+				}
+				return null;
+			}
+
+			if (name.equals("isClosed")) {
+				return closed;
+			}
+
+			if (name.equals("equals")) {
+				return proxy == args[0];
+			}
+
+			if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+
+			if (closed) {
+				throw new SQLException("The statement has been closed.");
+			}
+
+			if (name.equals("getConnection")) {
+				return owner;
+			}
+
+			try {
+				return method.invoke(physical, args);
+			} catch (InvocationTargetException e) {
+				if (name.startsWith("execute")) {
+					broken = true;
+				}
+				throw e.getCause();
+			}
+		}
+
+		/** Clears the statement and returns it to the cache, or closes it if
+		  it can not be reused.
+		  */
+		private void returnStatement()
+		{
+			if (!broken) {
+				try {
+					physical.clearParameters();
+					physical.clearBatch();
+				} catch (SQLException e) {
+					broken = true;
+				}
+			}
+
+			if (broken) {
+				closeQuietly(physical);
+			} else {
+				release(sql, physical);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,274 @@
+package jfmi.repo;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/** A Transaction is a unit of work which binds the repository's writer
+  connection to the thread that began it. Until the transaction ends,
+  every connection the repository hands out on that thread, for reads or
+  writes, shares the transaction's connection, so DAO operations made in
+  between commit or roll back together. Closing one of the shared
+  connections does not end the transaction.
+
+  A transaction begun while another is active on the same thread joins the
+  active one. Committing a joined transaction only marks it finished; the
+  work is committed when the outermost transaction commits. Rolling back,
+  or closing without committing, a joined transaction makes the outermost
+  one roll back.
+
+  Changes published by the transaction's work are delivered to repository
+  listeners after the outermost transaction commits, and are dropped if it
+  rolls back.
+
+  Transactions are used as:
+  <pre>
+  Transaction tx = SQLiteRepository.instance().beginTransaction();
+  try {
+  	...DAO operations...
+  	tx.commit();
+  } finally {
+  	tx.close();
+  }
+  </pre>
+  */
+public class Transaction implements AutoCloseable {
+
+	// PRIVATE INSTANCE Fields
+	private final SQLiteRepository repository;
+	private final Transaction outer;
+	private final Connection pooled;
+	private final Connection shared;
+	private final List<RepositoryChange> changes;
+	private boolean finished;
+	private boolean rollbackOnly;
+
+
+	//************************************************************
+	// PUBLIC INSTANCE Methods
+	//************************************************************
+
+	/** Ends the transaction, rolling it back if it has not been committed.
+	  Failures while rolling back are ignored.
+	  */
+	public void close()
+	{
+		if (!finished) {
+			try {
+				rollback();
+			} catch (SQLException e) {
+				// ignore
+			}
+		}
+	}
+
+	/** Commits the work of the transaction. For a joined transaction, the
+	  work is committed later by the outermost transaction.
+	  @throws SQLException if the commit fails, or a joined transaction was
+	  		rolled back, in which case all of the work is rolled back
+	  @throws IllegalStateException if the transaction has already ended
+	  */
+	public void commit() throws SQLException
+	{
+		checkActive();
+
+		if (outer != null) {
+			finished = true;
+			return;
+		}
+
+		try {
+			if (rollbackOnly) {
+				pooled.rollback();
+				throw new SQLException("The transaction was rolled back by a"
+									   + " unit of work which joined it.");
+			}
+
+			pooled.commit();
+
+		} finally {
+			end();
+		}
+
+		for (RepositoryChange change : changes) {
+			repository.fireChange(change);
+		}
+		changes.clear();
+	}
+
+	/** Retrieves the connection shared by the transaction's work. Closing
+	  it has no effect; it can not be used to commit or roll back.
+	  @return the transaction's shared connection
+	  */
+	public Connection getConnection()
+	{
+		return shared;
+	}
+
+	/** Indicates whether the transaction has not yet been committed, rolled
+	  back or closed.
+	  @return true if the transaction is active
+	  */
+	public boolean isActive()
+	{
+		return !finished;
+	}
+
+	/** Rolls back the work of the transaction. For a joined transaction, the
+	  outermost transaction is marked so that it rolls back when it ends.
+	  @throws SQLException if the rollback fails
+	  @throws IllegalStateException if the transaction has already ended
+	  */
+	public void rollback() throws SQLException
+	{
+		checkActive();
+
+		if (outer != null) {
+			outer.rollbackOnly = true;
+			finished = true;
+			return;
+		}
+
+		changes.clear();
+
+		try {
+			pooled.rollback();
+		} finally {
+			end();
+		}
+	}
+
+
+	//************************************************************
+	// PACKAGE INSTANCE Methods
+	//************************************************************
+
+	/** Constructs an outermost Transaction on a borrowed writer connection.
+	  @param repository_ the repository the transaction is bound in
+	  @param pooled_ the borrowed connection, which the transaction closes
+	  		when it ends
+	  @throws SQLException if a transaction can not be started
+	  */
+	Transaction(SQLiteRepository repository_, Connection pooled_)
+		throws SQLException
+	{
+		repository = repository_;
+		outer = null;
+		pooled = pooled_;
+		changes = new ArrayList<RepositoryChange>();
+		pooled.setAutoCommit(false);
+
+		shared = (Connection)Proxy.newProxyInstance(
+					Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class },
+					new SharedConnectionHandler()
+				);
+	}
+
+	/** Constructs a Transaction which joins an active outer transaction.
+	  @param outer_ the active transaction to join
+	  */
+	Transaction(Transaction outer_)
+	{
+		repository = outer_.repository;
+		outer = outer_;
+		pooled = outer_.pooled;
+		shared = outer_.shared;
+		changes = outer_.changes;
+	}
+
+	/** Holds a change made by the transaction's work until the outermost
+	  transaction commits.
+	  @param change the change to publish on commit
+	  */
+	void deferChange(RepositoryChange change)
+	{
+		changes.add(change);
+	}
+
+
+	//************************************************************
+	// PRIVATE INSTANCE Methods
+	//************************************************************
+
+	/** Throws an IllegalStateException if the transaction has ended. */
+	private void checkActive()
+	{
+		if (finished) {
+			throw new IllegalStateException("The transaction has ended.");
+		}
+	}
+
+	/** Ends an outermost transaction: unbinds it from its thread, and returns
+	  its connection to the pool.
+	  */
+	private void end()
+	{
+		finished = true;
+		repository.unbindTransaction(this);
+
+		try {
+			pooled.setAutoCommit(true);
+		} catch (SQLException e) {
+			// the pool rolls back and discards connections it can not reset
+		}
+
+		SQLiteRepository.closeQuietly(pooled);
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASSES
+	//************************************************************
+
+	/** Forwards calls to the transaction's connection, except those which
+	  would end the transaction.
+	  */
+	private final class SharedConnectionHandler implements InvocationHandler {
+
+		public Object invoke(Object proxy, Method method, Object[] args)
+			throws Throwable
+		{
+			String name = method.getName();
+
+			if (name.equals("close")) {
+				return null;
+			}
+
+			if (name.equals("isClosed")) {
+				return finished;
+			}
+
+			if (name.equals("equals")) {
+				return proxy == args[0];
+			}
+
+			if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+
+			if (finished) {
+				throw new SQLException("The transaction has ended.");
+			}
+
+			if (name.equals("commit") || name.equals("rollback")
+				|| name.equals("setAutoCommit")) {
+				throw new SQLException("The connection is managed by a"
+									   + " Transaction.");
+			}
+
+			try {
+				return method.invoke(pooled, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,122 @@
+package jfmi.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** Provides methods for hashing the contents of files. Files are read
+  through memory-mapped FileChannels, so their contents are not copied onto
+  the heap.
+  */
+public final class ContentHash {
+
+	// PUBLIC CLASS Fields
+	public static final int BLOCK_SIZE = 64 * 1024;
+
+	// PRIVATE CLASS Fields
+	private static final long WINDOW_SIZE = 16L * 1024 * 1024;
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+
+	//************************************************************
+	// PUBLIC CLASS Methods
+	//************************************************************
+
+	/** Computes a fast fingerprint of a file, from its size and its first and
+	  last BLOCK_SIZE bytes. Files with different fingerprints differ; files
+	  with the same fingerprint almost always have the same contents, which
+	  fullHash() can confirm.
+	  @param file the file to fingerprint
+	  @return the fingerprint, as a String of hexadecimal digits
+	  @throws IOException if the file can not be read
+	  */
+	public static String fingerprint(Path file) throws IOException
+	{
+		MessageDigest digest = newDigest("SHA-1");
+
+		try (FileChannel channel = FileChannel.open(file,
+												StandardOpenOption.READ)) {
+			long size = channel.size();
+			digest.update(ByteBuffer.allocate(8).putLong(0, size));
+
+			long head = Math.min(size, BLOCK_SIZE);
+			digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, head));
+
+			// the tail block may overlap the head block of a small file
+			long tail = Math.max(head, size - BLOCK_SIZE);
+			if (tail < size) {
+				digest.update(channel.map(FileChannel.MapMode.READ_ONLY, tail,
+										  size - tail));
+			}
+		}
+
+		return toHex(digest.digest());
+	}
+
+	/** Computes a hash of the whole contents of a file.
+	  @param file the file to hash
+	  @return the hash, as a String of hexadecimal digits
+	  @throws IOException if the file can not be read
+	  */
+	public static String fullHash(Path file) throws IOException
+	{
+		MessageDigest digest = newDigest("SHA-256");
+
+		try (FileChannel channel = FileChannel.open(file,
+												StandardOpenOption.READ)) {
+			long size = channel.size();
+
+			for (long pos = 0; pos < size; pos += WINDOW_SIZE) {
+				digest.update(channel.map(FileChannel.MapMode.READ_ONLY, pos,
+										  Math.min(WINDOW_SIZE, size - pos)));
+			}
+		}
+
+		return toHex(digest.digest());
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASS Methods
+	//************************************************************
+
+	/** Creates a MessageDigest for an algorithm every JVM provides.
+	  @param algorithm the name of the algorithm
+	  @return a new MessageDigest
+	  */
+	private static MessageDigest newDigest(String algorithm)
+	{
+		try {
+			return MessageDigest.getInstance(algorithm);
+
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(algorithm + " is not available", e);
+		}
+	}
+
+	/** Encodes bytes as hexadecimal digits.
+	  @param bytes the bytes to encode
+	  @return two lower case digits per byte
+	  */
+	private static String toHex(byte[] bytes)
+	{
+		char[] hex = new char[bytes.length * 2];
+
+		for (int i = 0; i < bytes.length; i++) {
+			hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+			hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+		}
+
+		return new String(hex);
+	}
+
+
+	/* Private to keep class from being instantiated. */
+	private ContentHash() {
+	}
+
+}
@@ -0,0 +1,337 @@
+package jfmi.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Provides a stable merge sort which sorts large arrays and lists on
+  several threads. Runs of THRESHOLD or fewer elements are sorted with
+  Arrays.sort(); larger runs are split in half, the halves are sorted in
+  parallel in a fork-join pool, and then merged. Halves which are already
+  in order are not merged, so sorting a list which is nearly sorted costs
+  little more than one comparison per element.
+  */
+public final class ParallelSort {
+
+	// PUBLIC CLASS Fields
+	public static final int THRESHOLD = 8192;
+
+	// PRIVATE CLASS Fields
+	private static final int INSERTION_THRESHOLD = 32;
+	private static final ForkJoinPool POOL = new ForkJoinPool();
+
+
+	//************************************************************
+	// PUBLIC CLASS Methods
+	//************************************************************
+
+	/** Sorts an array with a comparator. Equal elements keep their order.
+	  @param a the array to sort
+	  @param order the comparator to sort by, or null to sort by the natural
+	  		ordering of the elements
+	  */
+	public static <T> void sort(T[] a, Comparator<? super T> order)
+	{
+		sort(a, order, THRESHOLD);
+	}
+
+	/** Sorts an array with a comparator, splitting the array into runs of at
+	  most the specified length. Equal elements keep their order.
+	  @param a the array to sort
+	  @param order the comparator to sort by, or null to sort by the natural
+	  		ordering of the elements
+	  @param threshold the longest run sorted on one thread
+	  @throws IllegalArgumentException if threshold is less than 1
+	  */
+	public static <T> void sort(T[] a, Comparator<? super T> order,
+								int threshold)
+	{
+		if (threshold < 1) {
+			throw new IllegalArgumentException("threshold must be positive");
+		}
+
+		if (a.length <= threshold) {
+			Arrays.sort(a, order);
+			return;
+		}
+
+		Object[] buffer = new Object[a.length];
+		POOL.invoke(new MergeSort<T>(a, buffer, 0, a.length, order, threshold));
+	}
+
+	/** Returns the indices of an array's elements in the order which sorts
+	  the elements with a comparator, leaving the array unchanged. Equal
+	  elements keep their order. The indices are sorted as primitive ints,
+	  so no index is boxed.
+	  @param a the array whose elements to order
+	  @param order the comparator to sort by, or null to sort by the natural
+	  		ordering of the elements
+	  @return the indices of the elements, in their sorted order
+	  */
+	public static <T> int[] sortIndices(T[] a, Comparator<? super T> order)
+	{
+		return sortIndices(a, order, THRESHOLD);
+	}
+
+	/** Returns the indices of an array's elements in the order which sorts
+	  the elements with a comparator, splitting the indices into runs of at
+	  most the specified length. Equal elements keep their order.
+	  @param a the array whose elements to order
+	  @param order the comparator to sort by, or null to sort by the natural
+	  		ordering of the elements
+	  @param threshold the longest run sorted on one thread
+	  @return the indices of the elements, in their sorted order
+	  @throws IllegalArgumentException if threshold is less than 1
+	  */
+	public static <T> int[] sortIndices(T[] a, Comparator<? super T> order,
+										int threshold)
+	{
+		if (threshold < 1) {
+			throw new IllegalArgumentException("threshold must be positive");
+		}
+
+		int[] indices = new int[a.length];
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = i;
+		}
+
+		IndexSort<T> sort = new IndexSort<T>(a, indices, new int[a.length],
+											 0, a.length, order, threshold);
+
+		if (a.length <= threshold) {
+			sort.sortRun(0, a.length);
+		} else {
+			POOL.invoke(sort);
+		}
+
+		return indices;
+	}
+
+	/** Sorts a list with a comparator. Equal elements keep their order. As
+	  with Collections.sort(), the list is copied into an array, sorted, and
+	  copied back.
+	  @param list the list to sort
+	  @param order the comparator to sort by, or null to sort by the natural
+	  		ordering of the elements
+	  */
+	@SuppressWarnings("unchecked")
+	public static <T> void sort(List<T> list, Comparator<? super T> order)
+	{
+		Object[] a = list.toArray();
+		sort(a, (Comparator<Object>) order);
+
+		ListIterator<T> it = list.listIterator();
+		for (Object e : a) {
+			it.next();
+			it.set((T) e);
+		}
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASS Methods
+	//************************************************************
+
+	/** Compares two elements with a comparator, or by their natural ordering
+	  if the comparator is null. */
+	@SuppressWarnings("unchecked")
+	private static <T> int compare(T e1, T e2, Comparator<? super T> order)
+	{
+		if (order == null) {
+			return ((Comparable<Object>) e1).compareTo(e2);
+		}
+
+		return order.compare(e1, e2);
+	}
+
+
+	//************************************************************
+	// PRIVATE CLASSES
+	//************************************************************
+
+	/** A MergeSort sorts a run of an array, forking to sort each half of a
+	  long run.
+	  */
+	private static final class MergeSort<T> extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final T[] a;
+		private final Object[] buffer;
+		private final int from;
+		private final int to;
+		private final Comparator<? super T> order;
+		private final int threshold;
+
+		/** Constructs a MergeSort of the run of a from index from_, inclusive,
+		  to index to_, exclusive.
+		  */
+		MergeSort(T[] a_, Object[] buffer_, int from_, int to_,
+				  Comparator<? super T> order_, int threshold_)
+		{
+			a = a_;
+			buffer = buffer_;
+			from = from_;
+			to = to_;
+			order = order_;
+			threshold = threshold_;
+		}
+
+		protected void compute()
+		{
+			if (to - from <= threshold) {
+				Arrays.sort(a, from, to, order);
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(new MergeSort<T>(a, buffer, from, mid, order, threshold),
+					  new MergeSort<T>(a, buffer, mid, to, order, threshold));
+
+			// halves which are already in order need no merging
+			if (compare(a[mid - 1], a[mid], order) > 0) {
+				merge(mid);
+			}
+		}
+
+		/** Merges the sorted halves of the run, which meet at index mid. Each
+		  run has its own part of the buffer, so merges do not overlap. */
+		@SuppressWarnings("unchecked")
+		private void merge(int mid)
+		{
+			System.arraycopy(a, from, buffer, from, to - from);
+
+			int left = from;
+			int right = mid;
+
+			for (int i = from; i < to; i++) {
+				// taking from the left on ties keeps the sort stable
+				if (right >= to || (left < mid
+									&& compare((T) buffer[left],
+											   (T) buffer[right], order) <= 0)) {
+					a[i] = (T) buffer[left++];
+				} else {
+					a[i] = (T) buffer[right++];
+				}
+			}
+		}
+	}
+
+
+	/** An IndexSort sorts a run of an array of indices by the elements they
+	  index, forking to sort each half of a long run. Short runs are merge
+	  sorted on one thread, and the shortest by insertion.
+	  */
+	private static final class IndexSort<T> extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final T[] elements;
+		private final int[] a;
+		private final int[] buffer;
+		private final int from;
+		private final int to;
+		private final Comparator<? super T> order;
+		private final int threshold;
+
+		/** Constructs an IndexSort of the run of a from index from_,
+		  inclusive, to index to_, exclusive.
+		  */
+		IndexSort(T[] elements_, int[] a_, int[] buffer_, int from_, int to_,
+				  Comparator<? super T> order_, int threshold_)
+		{
+			elements = elements_;
+			a = a_;
+			buffer = buffer_;
+			from = from_;
+			to = to_;
+			order = order_;
+			threshold = threshold_;
+		}
+
+		protected void compute()
+		{
+			if (to - from <= threshold) {
+				sortRun(from, to);
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(new IndexSort<T>(elements, a, buffer, from, mid, order,
+									   threshold),
+					  new IndexSort<T>(elements, a, buffer, mid, to, order,
+									   threshold));
+
+			// halves which are already in order need no merging
+			if (compareAt(a[mid - 1], a[mid]) > 0) {
+				merge(from, mid, to);
+			}
+		}
+
+		/** Sorts the run of a from lo, inclusive, to hi, exclusive, on the
+		  calling thread. */
+		void sortRun(int lo, int hi)
+		{
+			if (hi - lo <= INSERTION_THRESHOLD) {
+				for (int i = lo + 1; i < hi; i++) {
+					int index = a[i];
+					int j = i;
+
+					// moving only past greater elements keeps the sort stable
+					while (j > lo && compareAt(a[j - 1], index) > 0) {
+						a[j] = a[j - 1];
+						j--;
+					}
+
+					a[j] = index;
+				}
+				return;
+			}
+
+			int mid = (lo + hi) >>> 1;
+			sortRun(lo, mid);
+			sortRun(mid, hi);
+
+			if (compareAt(a[mid - 1], a[mid]) > 0) {
+				merge(lo, mid, hi);
+			}
+		}
+
+		/** Compares the elements at two indices. */
+		private int compareAt(int i1, int i2)
+		{
+			return compare(elements[i1], elements[i2], order);
+		}
+
+		/** Merges the sorted runs of a which meet at index mid. Each run has
+		  its own part of the buffer, so merges do not overlap. */
+		private void merge(int lo, int mid, int hi)
+		{
+			System.arraycopy(a, lo, buffer, lo, hi - lo);
+
+			int left = lo;
+			int right = mid;
+
+			for (int i = lo; i < hi; i++) {
+				// taking from the left on ties keeps the sort stable
+				if (right >= hi || (left < mid
+									&& compareAt(buffer[left],
+												 buffer[right]) <= 0)) {
+					a[i] = buffer[left++];
+				} else {
+					a[i] = buffer[right++];
+				}
+			}
+		}
+	}
+
+
+	/* Private to keep class from being instantiated. */
+	private ParallelSort()
+	{
+	}
+
+}
@@ -1,5 +1,7 @@
 package jfmi.util;
 
+import java.util.ArrayList;
+import java.util.List;
 
 /** Provides utility methods for working with Strings and related types.
   */
@@ -22,6 +24,113 @@ public final class StringUtil {
 		}
 	}
 
+	/** Parses the directory part of a delimited path: everything up to and
+	  including the last delimiter, which may be '/' or '\\'. The directory
+	  followed by parseNameFromPath(path) is the path itself.
+	  @param path The path to parse.
+	  @return The directory of the path, ending in a delimiter, or the empty
+	  		string if the path has no delimiter.
+	  */
+	public static String parseDirectoryFromPath(String path)
+	{
+		int lastDelim = Math.max(path.lastIndexOf('/'),
+								 path.lastIndexOf('\\'));
+
+		return path.substring(0, lastDelim + 1);
+	}
+
+	/** Splits search text into keywords at whitespace, keeping the words of
+	  a "double quoted phrase" together as one keyword.
+	  @param text the search text to split
+	  @return the keywords in the text, in order, without the quotes
+	  */
+	public static List<String> splitKeywords(String text)
+	{
+		List<String> keywords = new ArrayList<String>();
+		StringBuilder current = new StringBuilder();
+		boolean quoted = false;
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+
+			if (c == '"') {
+				quoted = !quoted;
+			} else if (!quoted && Character.isWhitespace(c)) {
+				addKeyword(keywords, current);
+			} else {
+				current.append(c);
+			}
+		}
+
+		addKeyword(keywords, current);
+		return keywords;
+	}
+
+	/** Compares two strings as SQLite's NOCASE collation does: ASCII
+	  letters are compared without regard to case, and every other
+	  character by its code point, which is the order of its UTF-8 bytes.
+	  @param a the first String to compare
+	  @param b the second String to compare
+	  @return a negative number, zero, or a positive number as a sorts
+	  		before, with, or after b
+	  */
+	public static int compareNoCase(String a, String b)
+	{
+		int i = 0;
+		int j = 0;
+
+		while (i < a.length() && j < b.length()) {
+			int ca = a.codePointAt(i);
+			int cb = b.codePointAt(j);
+			i += Character.charCount(ca);
+			j += Character.charCount(cb);
+
+			if (ca >= 'A' && ca <= 'Z') {
+				ca += 'a' - 'A';
+			}
+			if (cb >= 'A' && cb <= 'Z') {
+				cb += 'a' - 'A';
+			}
+
+			if (ca != cb) {
+				return ca < cb ? -1 : 1;
+			}
+		}
+
+		if (i < a.length()) {
+			return 1;
+		}
+
+		return j < b.length() ? -1 : 0;
+	}
+
+	/** Folds the case of a string into a key which sorts with
+	  String.compareTo() exactly as the string sorts with
+	  String.compareToIgnoreCase(). Each character is upper-cased and then
+	  lower-cased, as compareToIgnoreCase() does when comparing.
+	  @param str the String to fold
+	  @return the folded String; str itself if folding changes nothing
+	  */
+	public static String foldCase(String str)
+	{
+		char[] folded = null;
+
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			char f = Character.toLowerCase(Character.toUpperCase(c));
+
+			if (f != c) {
+				if (folded == null) {
+					folded = str.toCharArray();
+				}
+
+				folded[i] = f;
+			}
+		}
+
+		return folded == null ? str : new String(folded);
+	}
+
 	/** Surround a string in double quotes.
 	  @param str the String to surround in double quotes
 	  @return a new String surrouned in double quotes
@@ -31,4 +140,21 @@ public final class StringUtil {
 		return "\"" + str + "\"";
 	}
 
+	/** Adds the trimmed contents of a buffer to a list of keywords, if it is
+	  not empty, and clears the buffer.
+	  @param keywords the list to add to
+	  @param current the buffer holding the keyword
+	  */
+	private static void addKeyword(List<String> keywords,
+								   StringBuilder current)
+	{
+		String keyword = current.toString().trim();
+
+		if (!keyword.isEmpty()) {
+			keywords.add(keyword);
+		}
+
+		current.setLength(0);
+	}
+
 }
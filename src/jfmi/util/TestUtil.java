@@ -1,9 +1,62 @@
 package jfmi.util;
 
+import java.io.File;
+import java.nio.file.Path;
+import java.sql.SQLException;
+
+import jfmi.app.TaggedFile;
+import jfmi.dao.TaggedFileDAO;
+
 /** A utility class used for testing/generating "fake" data.
   */
 public final class TestUtil {
 
-	
+	//************************************************************
+	// PUBLIC CLASS Methods
+	//************************************************************
+
+	/** Deletes a file, or a directory and everything under it. Files which
+	  can not be deleted are left in place.
+	  @param f the file or directory to delete
+	  */
+	public static void deleteTree(File f)
+	{
+		File[] children = f.listFiles();
+
+		if (children != null) {
+			for (File child : children) {
+				deleteTree(child);
+			}
+		}
+
+		f.delete();
+	}
+
+	/** Stores a file at the specified path in the repository.
+	  @param dao the DAO to store the file with
+	  @param path the path of the file
+	  @return the id of the stored file
+	  @throws SQLException if a problem occurs working with the database
+	  */
+	public static int storeFile(TaggedFileDAO dao, Path path)
+		throws SQLException
+	{
+		TaggedFile file = new TaggedFile(-1, path.toString(), null);
+
+		if (!dao.create(file)) {
+			throw new SQLException("file was not stored: " + path);
+		}
+
+		return file.getFileId();
+	}
+
+	//************************************************************
+	// PRIVATE INSTANCE Methods
+	//************************************************************
+
+	/** TestUtil is not instantiated. */
+	private TestUtil()
+	{
+	}
 
 }
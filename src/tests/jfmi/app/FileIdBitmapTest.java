@@ -0,0 +1,119 @@
+package tests.jfmi.app;
+
+import java.util.TreeSet;
+
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import jfmi.app.FileIdBitmap;
+
+/** Implements unit tests for the jfmi.app.FileIdBitmap class.
+  */
+public class FileIdBitmapTest {
+
+	/* Tests that a container keeps its values when it grows past, and then
+	   shrinks back below, the array container limit. */
+	@Test
+	public void testAddRemove_AcrossContainerLimit()
+	{
+		System.out.println("testAddRemove_AcrossContainerLimit()");
+
+		FileIdBitmap bitmap = new FileIdBitmap();
+		int count = FileIdBitmap.ARRAY_MAX_SIZE * 2;
+
+		for (int i = 0; i < count; i++) {
+			assertTrue(bitmap.add(i * 3));
+		}
+		assertFalse(bitmap.add(3));
+		assertEquals(count, bitmap.cardinality());
+		assertTrue(bitmap.contains(300));
+		assertFalse(bitmap.contains(301));
+
+		for (int i = 0; i < count; i += 2) {
+			assertTrue(bitmap.remove(i * 3));
+		}
+		assertEquals(count / 2, bitmap.cardinality());
+		assertFalse(bitmap.contains(0));
+		assertTrue(bitmap.contains(3));
+
+		int[] ids = bitmap.toArray();
+		for (int i = 0; i < ids.length; i++) {
+			assertEquals((i * 2 + 1) * 3, ids[i]);
+		}
+	}
+
+	/* Tests and(), or() and andNot() against sets which span several
+	   containers of both kinds. */
+	@Test
+	public void testSetOperations_MatchTreeSet()
+	{
+		System.out.println("testSetOperations_MatchTreeSet()");
+
+		FileIdBitmap a = new FileIdBitmap();
+		FileIdBitmap b = new FileIdBitmap();
+		TreeSet<Integer> setA = new TreeSet<Integer>();
+		TreeSet<Integer> setB = new TreeSet<Integer>();
+
+		// Dense in the first container, sparse in the others.
+		for (int i = 0; i < 20000; i++) {
+			a.add(i);
+			setA.add(i);
+		}
+		for (int i = 0; i < 300000; i += 7) {
+			b.add(i);
+			setB.add(i);
+		}
+		a.add(1 << 20);
+		setA.add(1 << 20);
+
+		TreeSet<Integer> expected = new TreeSet<Integer>(setA);
+		expected.retainAll(setB);
+		assertArrayEquals(toArray(expected), a.and(b).toArray());
+
+		expected = new TreeSet<Integer>(setA);
+		expected.addAll(setB);
+		assertArrayEquals(toArray(expected), a.or(b).toArray());
+		assertEquals(expected.size(), a.or(b).cardinality());
+
+		expected = new TreeSet<Integer>(setA);
+		expected.removeAll(setB);
+		assertArrayEquals(toArray(expected), a.andNot(b).toArray());
+
+		expected = new TreeSet<Integer>(setB);
+		expected.removeAll(setA);
+		assertArrayEquals(toArray(expected), b.andNot(a).toArray());
+	}
+
+	/* Tests that the results of set operations are independent of their
+	   operands. */
+	@Test
+	public void testOr_ReturnsCopy()
+	{
+		System.out.println("testOr_ReturnsCopy()");
+
+		FileIdBitmap a = FileIdBitmap.of(1, 2, 70000);
+		FileIdBitmap union = a.or(new FileIdBitmap());
+
+		union.add(3);
+		union.remove(70000);
+
+		assertArrayEquals(new int[] {1, 2, 70000}, a.toArray());
+		assertArrayEquals(new int[] {1, 2, 3}, union.toArray());
+	}
+
+	private static int[] toArray(TreeSet<Integer> set)
+	{
+		int[] ids = new int[set.size()];
+		int i = 0;
+
+		for (Integer id : set) {
+			ids[i++] = id;
+		}
+
+		return ids;
+	}
+
+}
@@ -0,0 +1,114 @@
+package tests.jfmi.app;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.junit.Before;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import jfmi.app.FileIdBitmap;
+import jfmi.app.FileTagging;
+import jfmi.app.TagIndex;
+import jfmi.app.TaggedFile;
+
+/** Implements unit tests for the jfmi.app.TagIndex class.
+  */
+public class TagIndexTest {
+	private TagIndex index;
+
+	@Before
+	public void setUp()
+	{
+		System.out.println("setUp()");
+
+		index = new TagIndex();
+		index.addFile(newFile(1, "red", "blue"));
+		index.addFile(newFile(2, "red"));
+		index.addFile(newFile(3));
+		index.addFile(newFile(4, "green"));
+	}
+
+	/* Tests that matchAll(), matchAny() and matchNone() combine the files
+	   of their tags, including tags which no file has, and that results are
+	   copies of the index's bitmaps. */
+	@Test
+	public void testMatch_CombinesTags()
+	{
+		System.out.println("testMatch_CombinesTags()");
+
+		assertArrayEquals(new int[] { 1 },
+						  index.matchAll(Arrays.asList("red", "blue"))
+							   .toArray());
+		assertEquals(0, index.matchAll(Arrays.asList("red", "none"))
+							 .cardinality());
+		assertEquals(4, index.matchAll(Collections.<String>emptyList())
+							 .cardinality());
+
+		assertArrayEquals(new int[] { 1, 2, 4 },
+						  index.matchAny(Arrays.asList("red", "green", "none"))
+							   .toArray());
+		assertArrayEquals(new int[] { 3, 4 },
+						  index.matchNone(Arrays.asList("red")).toArray());
+
+		assertEquals(2, index.countFiles("red"));
+		assertEquals(0, index.countFiles("none"));
+
+		FileIdBitmap red = index.getFiles("red");
+		red.add(3);
+		index.matchAll(Arrays.asList("red")).add(4);
+		assertEquals(2, index.countFiles("red"));
+		assertTrue(index.getFiles("none").isEmpty());
+	}
+
+	/* Tests that updating a file replaces its taggings, that removing a tag
+	   keeps its files, and that replaceWith() and clear() replace every
+	   file. */
+	@Test
+	public void testChanges_UpdateTaggings()
+	{
+		System.out.println("testChanges_UpdateTaggings()");
+
+		index.updateFile(newFile(2, "green"));
+		assertArrayEquals(new int[] { 1 }, index.getFiles("red").toArray());
+		assertArrayEquals(new int[] { 2, 4 },
+						  index.getFiles("green").toArray());
+
+		index.removeFile(4);
+		assertArrayEquals(new int[] { 2 }, index.getFiles("green").toArray());
+		assertArrayEquals(new int[] { 1, 2, 3 },
+						  index.getAllFiles().toArray());
+
+		index.removeTag("green");
+		assertEquals(0, index.countFiles("green"));
+		assertEquals(3, index.getAllFiles().cardinality());
+
+		TagIndex other = new TagIndex();
+		other.addFile(newFile(9, "blue"));
+		index.replaceWith(other);
+		assertArrayEquals(new int[] { 9 }, index.getAllFiles().toArray());
+		assertArrayEquals(new int[] { 9 }, index.getFiles("blue").toArray());
+		assertEquals(0, index.countFiles("red"));
+
+		index.clear();
+		assertTrue(index.getAllFiles().isEmpty());
+		assertEquals(0, index.countFiles("blue"));
+	}
+
+	/* Builds a file with the specified tags, or with no taggings at all if
+	   there are none. */
+	private static TaggedFile newFile(int id, String... tags)
+	{
+		TaggedFile file = new TaggedFile(id, "/files/file" + id, null);
+
+		for (int i = 0; i < tags.length; i++) {
+			file.addFileTagging(new FileTagging(id * 10 + i, id, tags[i],
+												null));
+		}
+
+		return file;
+	}
+
+}
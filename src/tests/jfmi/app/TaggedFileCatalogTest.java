@@ -0,0 +1,135 @@
+package tests.jfmi.app;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Before;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import jfmi.app.FileIdBitmap;
+import jfmi.app.FileTagging;
+import jfmi.app.TaggedFile;
+import jfmi.app.TaggedFileCatalog;
+
+/** Implements unit tests for the jfmi.app.TaggedFileCatalog class.
+  */
+public class TaggedFileCatalogTest {
+	private TaggedFileCatalog catalog;
+
+	@Before
+	public void setUp()
+	{
+		System.out.println("setUp()");
+
+		catalog = new TaggedFileCatalog();
+	}
+
+	/* Tests that a file is built back with its path, status, taggings and
+	   comments, including characters outside ASCII. */
+	@Test
+	public void testPutFile_RoundTrips()
+	{
+		System.out.println("testPutFile_RoundTrips()");
+
+		TaggedFile file = newFile(7, "/photos/\u00e9t\u00e9/\u65e5\u672c.jpg",
+								  "holiday", "beach");
+		file.setMissing(true);
+		file.addFileTagging(new FileTagging(80, 7, "family", null));
+		catalog.putFile(file);
+
+		TaggedFile read = catalog.getFile(7);
+		assertEquals(file.getFilePath(), read.getFilePath());
+		assertTrue(read.isMissing());
+		assertEquals(2, read.getFileTaggings().size());
+		assertEquals("holiday", read.getFileTaggings().first().getTag());
+		assertEquals("beach", read.getFileTaggings().first().getComment());
+		assertEquals("", read.getFileTaggings().last().getComment());
+		assertEquals(file.getFileTagsAsString(), read.getFileTagsAsString());
+
+		assertNull(catalog.getFile(8));
+		assertEquals(file.getFilePath(), catalog.getPath(7));
+	}
+
+	/* Tests that files added out of id order, updated, and removed are found
+	   by id, in the order the ids are given, and that removing a tag removes
+	   only its taggings. */
+	@Test
+	public void testChanges_KeepRowsInIdOrder()
+	{
+		System.out.println("testChanges_KeepRowsInIdOrder()");
+
+		catalog.putFile(newFile(5, "e", "t", "c5"));
+		catalog.putFile(newFile(1, "a", "t", "c1"));
+		catalog.putFile(newFile(3, "c", "u", null));
+
+		catalog.putFile(newFile(1, "renamed", "u", null));
+		catalog.removeFile(5);
+		catalog.removeTag("u");
+
+		assertEquals(2, catalog.size());
+		assertFalse(catalog.contains(5));
+
+		List<TaggedFile> files = catalog.getFiles(FileIdBitmap.of(1, 3, 5, 9));
+		assertEquals(2, files.size());
+		assertEquals("renamed", files.get(0).getFilePath());
+		assertEquals(0, files.get(0).getFileTaggings().size());
+		assertEquals("c", files.get(1).getFilePath());
+
+		catalog.putFile(newFile(5, "back", "t", null));
+		assertEquals("back", catalog.getPath(5));
+		assertEquals(3, catalog.size());
+
+		files = catalog.getFiles(Arrays.asList(5, 9, 1));
+		assertEquals(2, files.size());
+		assertEquals("back", files.get(0).getFilePath());
+		assertEquals("renamed", files.get(1).getFilePath());
+	}
+
+	/* Tests that files survive the compactions which many updates and
+	   removals cause, and that the catalog stays far smaller than the
+	   files it holds. */
+	@Test
+	public void testCompaction_KeepsFiles()
+	{
+		System.out.println("testCompaction_KeepsFiles()");
+
+		int count = 20000;
+		for (int id = 0; id < count; id++) {
+			catalog.putFile(newFile(id, "/home/user/documents/file" + id
+										+ ".txt", "tag" + (id % 50), null));
+		}
+
+		for (int id = 0; id < count; id += 2) {
+			catalog.removeFile(id);
+		}
+
+		for (int id = 1; id < count; id += 4) {
+			catalog.putFile(newFile(id, "/moved/file" + id, "tag1", "note"));
+		}
+
+		assertEquals(count / 2, catalog.size());
+		assertEquals("/moved/file5", catalog.getPath(5));
+		assertEquals("/home/user/documents/file7.txt", catalog.getPath(7));
+		assertEquals("tag7", catalog.getFile(7).getFileTaggings().first()
+																.getTag());
+		assertTrue(catalog.estimateHeapBytes() / catalog.size() < 150);
+	}
+
+	/* Builds a file with one tagging, or none if tag is null. */
+	private static TaggedFile newFile(int id, String path, String tag,
+									  String comment)
+	{
+		TaggedFile file = new TaggedFile(id, path, null);
+
+		if (tag != null) {
+			file.addFileTagging(new FileTagging(id * 10, id, tag, comment));
+		}
+
+		return file;
+	}
+
+}
@@ -0,0 +1,134 @@
+package tests.jfmi.control;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.swing.SwingUtilities;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Before;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+
+import jfmi.control.BackgroundTask;
+import jfmi.control.TaskExecutor;
+
+/** Implements unit tests for the jfmi.control.BackgroundTask class.
+  */
+public class BackgroundTaskTest {
+	private TaskExecutor executor;
+
+	@Before
+	public void setUp()
+	{
+		System.out.println("setUp()");
+
+		executor = new TaskExecutor(1);
+	}
+
+	@After
+	public void tearDown() throws InterruptedException
+	{
+		executor.shutdown(1000);
+	}
+
+	/* Tests that a result is delivered to succeeded() on the event dispatch
+	   thread. */
+	@Test
+	public void testSucceeded_OnEventDispatchThread() throws Exception
+	{
+		System.out.println("testSucceeded_OnEventDispatchThread()");
+
+		final CountDownLatch delivered = new CountDownLatch(1);
+		final AtomicReference<String> result = new AtomicReference<String>();
+		final AtomicReference<Boolean> onEDT = new AtomicReference<Boolean>();
+
+		executor.submit(new BackgroundTask<String>() {
+			protected String doInBackground()
+			{
+				return SwingUtilities.isEventDispatchThread() ? "edt" : "bg";
+			}
+
+			protected void succeeded(String r)
+			{
+				result.set(r);
+				onEDT.set(SwingUtilities.isEventDispatchThread());
+				delivered.countDown();
+			}
+		});
+
+		assertTrue(delivered.await(5, TimeUnit.SECONDS));
+		assertEquals("bg", result.get());
+		assertTrue(onEDT.get());
+	}
+
+	/* Tests that an exception thrown by the work is delivered to failed(). */
+	@Test
+	public void testFailed_ReceivesCause() throws Exception
+	{
+		System.out.println("testFailed_ReceivesCause()");
+
+		final CountDownLatch delivered = new CountDownLatch(1);
+		final AtomicReference<Throwable> cause = new AtomicReference<Throwable>();
+
+		executor.submit(new BackgroundTask<Void>() {
+			protected Void doInBackground() throws Exception
+			{
+				throw new IllegalStateException("boom");
+			}
+
+			protected void failed(Throwable t)
+			{
+				cause.set(t);
+				delivered.countDown();
+			}
+		});
+
+		assertTrue(delivered.await(5, TimeUnit.SECONDS));
+		assertEquals("boom", cause.get().getMessage());
+	}
+
+	/* Tests that a cancelled task stops, and is delivered to cancelled()
+	   instead of succeeded(). */
+	@Test
+	public void testCancel_DeliversCancelled() throws Exception
+	{
+		System.out.println("testCancel_DeliversCancelled()");
+
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch delivered = new CountDownLatch(1);
+		final AtomicReference<String> outcome = new AtomicReference<String>();
+
+		BackgroundTask<Void> task = executor.submit(new BackgroundTask<Void>() {
+			protected Void doInBackground() throws InterruptedException
+			{
+				started.countDown();
+				while (!isCancelled()) {
+					Thread.sleep(10);
+				}
+				return null;
+			}
+
+			protected void succeeded(Void v)
+			{
+				outcome.set("succeeded");
+				delivered.countDown();
+			}
+
+			protected void cancelled()
+			{
+				outcome.set("cancelled");
+				delivered.countDown();
+			}
+		});
+
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		assertTrue(task.cancel());
+
+		assertTrue(delivered.await(5, TimeUnit.SECONDS));
+		assertEquals("cancelled", outcome.get());
+		assertTrue(task.isCancelled());
+	}
+
+}
@@ -0,0 +1,108 @@
+package tests.jfmi.control;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SortedSet;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Before;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import jfmi.app.TaggedFile;
+import jfmi.control.FileImporter;
+import jfmi.dao.TaggedFileDAO;
+import jfmi.repo.SQLiteRepository;
+import jfmi.util.TestUtil;
+
+/** Implements unit tests for the jfmi.control.FileImporter class.
+  */
+public class FileImporterTest {
+	private static TaggedFileDAO dao = new TaggedFileDAO();
+	private Path tree;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		System.out.println("setUp()");
+
+		SQLiteRepository.instance().setRepoPath("./jfmi-test.db");
+		SQLiteRepository.instance().initialize();
+		dao.deleteAll();
+
+		tree = Files.createTempDirectory("jfmi-import");
+
+		for (int d = 0; d < 5; d++) {
+			Path dir = Files.createDirectories(tree.resolve("d" + d + "/sub"));
+
+			for (int f = 0; f < 10; f++) {
+				Files.createFile(dir.resolve("f" + f + ".txt"));
+				Files.createFile(dir.resolve("f" + f + ".tmp"));
+			}
+		}
+
+		Files.createDirectories(tree.resolve("skip"));
+		Files.createFile(tree.resolve("skip/hidden.txt"));
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		TestUtil.deleteTree(tree.toFile());
+	}
+
+	/* Tests that the walk applies the include and exclude patterns, and
+	   that every matching file is added across several batches. */
+	@Test
+	public void testImportFiles_FiltersAndBatches() throws Exception
+	{
+		System.out.println("testImportFiles_FiltersAndBatches()");
+
+		FileImporter importer = new FileImporter(Arrays.asList("*.txt"),
+												 Arrays.asList("skip"));
+		importer.setBatchSize(7);
+		importer.setQueueCapacity(3);
+
+		FileImporter.Summary summary = importer.importFiles(
+							Collections.singletonList(tree.toFile()), null);
+
+		assertEquals(50, summary.getFound());
+		assertEquals(50, summary.getAdded());
+		assertEquals(0, summary.getErrorCount());
+
+		SortedSet<TaggedFile> files = dao.readAll();
+		assertEquals(50, files.size());
+
+		for (TaggedFile file : files) {
+			assertTrue(file.getFilePath().endsWith(".txt"));
+		}
+	}
+
+	/* Tests that files already in the repository, or found twice, are
+	   skipped rather than reported as errors. */
+	@Test
+	public void testImportFiles_SkipsDuplicates() throws Exception
+	{
+		System.out.println("testImportFiles_SkipsDuplicates()");
+
+		FileImporter importer = new FileImporter(Arrays.asList("d0/**"),
+												 Collections.<String>emptyList());
+		importer.importFiles(Collections.singletonList(tree.toFile()), null);
+
+		importer = new FileImporter();
+		FileImporter.Summary summary = importer.importFiles(
+							Arrays.asList(tree.toFile(),
+										  tree.resolve("d1").toFile()), null);
+
+		assertEquals(101 + 20, summary.getFound());
+		assertEquals(101 - 20, summary.getAdded());
+		assertEquals(20 + 20, summary.getDuplicates());
+		assertEquals(0, summary.getErrorCount());
+		assertEquals(101, dao.readAll().size());
+	}
+
+}
@@ -0,0 +1,149 @@
+package tests.jfmi.control;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Before;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import jfmi.control.FileRelocator;
+import jfmi.control.FingerprintIndexer;
+import jfmi.dao.TaggedFileDAO;
+import jfmi.repo.SQLiteRepository;
+import jfmi.util.ContentHash;
+import jfmi.util.TestUtil;
+
+/** Implements unit tests for the jfmi.control.FileRelocator and
+  jfmi.control.FingerprintIndexer classes.
+  */
+public class FileRelocatorTest {
+	private static TaggedFileDAO dao = new TaggedFileDAO();
+	private Path tree;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		System.out.println("setUp()");
+
+		SQLiteRepository.instance().setRepoPath("./jfmi-test.db");
+		SQLiteRepository.instance().initialize();
+		dao.deleteAll();
+
+		tree = Files.createTempDirectory("jfmi-relocate").toRealPath();
+		Files.createDirectories(tree.resolve("old"));
+		Files.createDirectories(tree.resolve("new/sub"));
+	}
+
+	@After
+	public void tearDown()
+	{
+		TestUtil.deleteTree(tree.toFile());
+	}
+
+	/* Tests that moved files are found by their fingerprints, and that a
+	   copy of a file which is not missing is left alone. */
+	@Test
+	public void testRelocate_FindsMovedFiles() throws Exception
+	{
+		System.out.println("testRelocate_FindsMovedFiles()");
+
+		Path a = write(tree.resolve("old/a"), 10, 1);
+		Path b = write(tree.resolve("old/b"), 200000, 2);
+		Path c = write(tree.resolve("old/c"), 10, 3);
+		int idA = TestUtil.storeFile(dao, a);
+		int idB = TestUtil.storeFile(dao, b);
+		int idC = TestUtil.storeFile(dao, c);
+
+		FingerprintIndexer indexer = new FingerprintIndexer();
+		indexer.setBatchSize(2);
+		assertEquals(3, indexer.index(null).getFingerprintedCount());
+		assertEquals(0, indexer.index(null).getFingerprintedCount());
+
+		Files.move(a, tree.resolve("new/moved-a"));
+		Files.move(b, tree.resolve("new/sub/moved-b"));
+		Files.copy(c, tree.resolve("new/copy-c"));
+		dao.updateMissing(Arrays.asList(idA, idB), true);
+
+		FileRelocator.Result result = new FileRelocator().relocate(
+				Collections.singleton(tree.toFile()), null);
+
+		assertEquals(2, result.getRelocatedCount());
+		assertEquals(tree.resolve("new/moved-a").toString(),
+					 dao.readById(idA).getFilePath());
+		assertEquals(tree.resolve("new/sub/moved-b").toString(),
+					 dao.readById(idB).getFilePath());
+		assertFalse(dao.readById(idA).isMissing());
+		assertFalse(dao.readById(idB).isMissing());
+		assertEquals(c.toString(), dao.readById(idC).getFilePath());
+	}
+
+	/* Tests that full hashes tell apart missing files whose fingerprints
+	   are equal, and that without them such files are not relocated. */
+	@Test
+	public void testRelocate_FullHashDisambiguates() throws Exception
+	{
+		System.out.println("testRelocate_FullHashDisambiguates()");
+
+		int length = ContentHash.BLOCK_SIZE * 3;
+		Path a = write(tree.resolve("old/a"), length, 7);
+		Path b = write(tree.resolve("old/b"), length, 7);
+		byte[] middle = Files.readAllBytes(b);
+		middle[length / 2] ^= 1;
+		Files.write(b, middle);
+
+		assertEquals(ContentHash.fingerprint(a), ContentHash.fingerprint(b));
+		assertFalse(ContentHash.fullHash(a).equals(ContentHash.fullHash(b)));
+
+		int idA = TestUtil.storeFile(dao, a);
+		int idB = TestUtil.storeFile(dao, b);
+
+		new FingerprintIndexer().index(null);
+		Files.move(b, tree.resolve("new/moved-b"));
+		Files.delete(a);
+		dao.updateMissing(Arrays.asList(idA, idB), true);
+
+		FileRelocator.Result result = new FileRelocator().relocate(
+				Collections.singleton(tree.resolve("new").toFile()), null);
+		assertEquals(0, result.getRelocatedCount());
+		assertEquals(1, result.getAmbiguousCount());
+
+		dao.deleteAll();
+		Files.move(tree.resolve("new/moved-b"), b);
+		write(a, length, 7);
+		idA = TestUtil.storeFile(dao, a);
+		idB = TestUtil.storeFile(dao, b);
+
+		FingerprintIndexer indexer = new FingerprintIndexer();
+		indexer.setFullHash(true);
+		indexer.index(null);
+		Files.move(b, tree.resolve("new/moved-b"));
+		Files.delete(a);
+		dao.updateMissing(Arrays.asList(idA, idB), true);
+
+		result = new FileRelocator().relocate(
+				Collections.singleton(tree.resolve("new").toFile()), null);
+		assertEquals(1, result.getRelocatedCount());
+		assertEquals(tree.resolve("new/moved-b").toString(),
+					 dao.readById(idB).getFilePath());
+		assertTrue(dao.readById(idA).isMissing());
+	}
+
+	private static Path write(Path path, int length, int seed)
+		throws Exception
+	{
+		byte[] bytes = new byte[length];
+
+		for (int i = 0; i < length; i++) {
+			bytes[i] = (byte) (i * 31 + seed);
+		}
+
+		return Files.write(path, bytes);
+	}
+
+}
@@ -0,0 +1,159 @@
+package tests.jfmi.control;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Before;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import jfmi.control.FileWatcher;
+import jfmi.dao.TaggedFileDAO;
+import jfmi.repo.SQLiteRepository;
+import jfmi.util.TestUtil;
+
+/** Implements unit tests for the jfmi.control.FileWatcher class.
+  */
+public class FileWatcherTest {
+	private static final long TIMEOUT_MILLIS = 10000;
+
+	private static TaggedFileDAO dao = new TaggedFileDAO();
+	private FileWatcher watcher;
+	private Path dir;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		System.out.println("setUp()");
+
+		SQLiteRepository.instance().setRepoPath("./jfmi-test.db");
+		SQLiteRepository.instance().initialize();
+		dao.deleteAll();
+
+		dir = Files.createTempDirectory("jfmi-watch").toRealPath();
+		Files.createDirectories(dir.resolve("other"));
+
+		watcher = new FileWatcher(50);
+		SQLiteRepository.instance().addRepositoryListener(watcher);
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		watcher.stop();
+		SQLiteRepository.instance().removeRepositoryListener(watcher);
+
+		TestUtil.deleteTree(dir.toFile());
+	}
+
+	/* Tests that renaming a file in place, and moving a file to another
+	   watched directory, update the stored paths. */
+	@Test
+	public void testRename_UpdatesPath() throws Exception
+	{
+		System.out.println("testRename_UpdatesPath()");
+
+		Path a = Files.createFile(dir.resolve("a.txt"));
+		Path b = Files.createFile(dir.resolve("b.txt"));
+		Files.createFile(dir.resolve("other/c.txt"));
+		int idA = TestUtil.storeFile(dao, a);
+		int idB = TestUtil.storeFile(dao, b);
+		TestUtil.storeFile(dao, dir.resolve("other/c.txt"));
+
+		watcher.start();
+		awaitWatched(2);
+
+		Files.move(a, dir.resolve("renamed.txt"));
+		Files.move(b, dir.resolve("other/b.txt"));
+
+		assertTrue(awaitPath(idA, dir.resolve("renamed.txt").toString()));
+		assertTrue(awaitPath(idB, dir.resolve("other/b.txt").toString()));
+	}
+
+	/* Tests that a deleted file is flagged as missing, and unflagged when
+	   it is restored. */
+	@Test
+	public void testDelete_FlagsMissing() throws Exception
+	{
+		System.out.println("testDelete_FlagsMissing()");
+
+		Path a = Files.createFile(dir.resolve("a.txt"));
+		int idA = TestUtil.storeFile(dao, a);
+
+		watcher.start();
+		awaitWatched(1);
+
+		Files.delete(a);
+		assertTrue(awaitMissing(idA, true));
+		assertEquals(a.toString(), dao.readById(idA).getFilePath());
+
+		Files.createFile(a);
+		assertTrue(awaitMissing(idA, false));
+	}
+
+	/* Tests that each directory is watched once, and stops being watched
+	   when its last file is deleted from the repository. */
+	@Test
+	public void testDirectories_WatchedOnce() throws Exception
+	{
+		System.out.println("testDirectories_WatchedOnce()");
+
+		TestUtil.storeFile(dao, Files.createFile(dir.resolve("a.txt")));
+		TestUtil.storeFile(dao, Files.createFile(dir.resolve("b.txt")));
+		int idC = TestUtil.storeFile(dao, Files.createFile(
+											dir.resolve("other/c.txt")));
+
+		watcher.start();
+		awaitWatched(2);
+
+		dao.delete(dao.readById(idC));
+		assertEquals(1, watcher.getWatchedDirectoryCount());
+		assertFalse(dao.readById(dao.readAll().first().getFileId())
+					   .isMissing());
+	}
+
+	private void awaitWatched(int count) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+		while (watcher.getWatchedDirectoryCount() < count
+			   && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+
+		assertEquals(count, watcher.getWatchedDirectoryCount());
+	}
+
+	private static boolean awaitMissing(int id, boolean missing)
+		throws Exception
+	{
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+		while (System.currentTimeMillis() < deadline) {
+			if (dao.readById(id).isMissing() == missing) {
+				return true;
+			}
+			Thread.sleep(50);
+		}
+
+		return false;
+	}
+
+	private static boolean awaitPath(int id, String path) throws Exception
+	{
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+		while (System.currentTimeMillis() < deadline) {
+			if (dao.readById(id).getFilePath().equals(path)) {
+				return true;
+			}
+			Thread.sleep(50);
+		}
+
+		return false;
+	}
+
+}
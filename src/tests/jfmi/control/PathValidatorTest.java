@@ -0,0 +1,98 @@
+package tests.jfmi.control;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Before;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import jfmi.app.TaggedFile;
+import jfmi.control.PathValidator;
+import jfmi.dao.TaggedFileDAO;
+import jfmi.repo.SQLiteRepository;
+import jfmi.util.TestUtil;
+
+/** Implements unit tests for the jfmi.control.PathValidator class.
+  */
+public class PathValidatorTest {
+	private static TaggedFileDAO dao = new TaggedFileDAO();
+	private Path tree;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		System.out.println("setUp()");
+
+		SQLiteRepository.instance().setRepoPath("./jfmi-test.db");
+		SQLiteRepository.instance().initialize();
+		dao.deleteAll();
+
+		tree = Files.createTempDirectory("jfmi-validate");
+		List<TaggedFile> files = new ArrayList<TaggedFile>();
+
+		for (int d = 0; d < 4; d++) {
+			Path dir = Files.createDirectories(tree.resolve("d" + d));
+
+			for (int f = 0; f < 25; f++) {
+				TaggedFile file = new TaggedFile();
+				file.setFilePath(Files.createFile(dir.resolve("f" + f))
+									  .toString());
+				files.add(file);
+			}
+		}
+
+		dao.createAll(files);
+	}
+
+	@After
+	public void tearDown()
+	{
+		TestUtil.deleteTree(tree.toFile());
+	}
+
+	/* Tests that a second validation skips directories which have not
+	   changed, and that a deleted file is found and flagged. */
+	@Test
+	public void testValidate_Incremental() throws Exception
+	{
+		System.out.println("testValidate_Incremental()");
+
+		PathValidator validator = new PathValidator();
+		validator.setThreadCount(3);
+		validator.setBatchSize(10);
+
+		PathValidator.Result first = validator.validate(null);
+		assertEquals(100, first.getFileCount());
+		assertEquals(100, first.getCheckedCount());
+		assertEquals(0, first.getMissingCount());
+
+		PathValidator.Result second = validator.validate(null);
+		assertEquals(100, second.getFileCount());
+		assertEquals(0, second.getCheckedCount());
+
+		Thread.sleep(20);
+		Path deleted = tree.resolve("d2/f7");
+		Files.delete(deleted);
+
+		PathValidator.Result third = validator.validate(null);
+		assertEquals(100, third.getFileCount());
+		assertEquals(25, third.getCheckedCount());
+		assertEquals(1, third.getMissingCount());
+		assertEquals(1, third.getFlagsChangedCount());
+
+		for (TaggedFile f : dao.readAll()) {
+			if (f.getFilePath().equals(deleted.toString())) {
+				assertTrue(f.isMissing());
+			} else {
+				assertFalse(f.isMissing());
+			}
+		}
+	}
+
+}
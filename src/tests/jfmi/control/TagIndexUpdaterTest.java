@@ -0,0 +1,190 @@
+package tests.jfmi.control;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Before;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import jfmi.app.FileTag;
+import jfmi.app.FileTagging;
+import jfmi.app.TagIndex;
+import jfmi.app.TaggedFile;
+import jfmi.app.TaggedFileCatalog;
+import jfmi.control.TagIndexUpdater;
+import jfmi.dao.FileQuery;
+import jfmi.dao.FileTagDAO;
+import jfmi.dao.FileTaggingDAO;
+import jfmi.dao.TaggedFileDAO;
+import jfmi.repo.SQLiteRepository;
+
+/** Implements unit tests for the jfmi.control.TagIndexUpdater class.
+  */
+public class TagIndexUpdaterTest {
+	private static TaggedFileDAO dao = new TaggedFileDAO();
+	private static FileTagDAO tagDAO = new FileTagDAO();
+	private static FileTaggingDAO taggingDAO = new FileTaggingDAO();
+
+	private TagIndex index;
+	private TaggedFileCatalog catalog;
+	private TagIndexUpdater updater;
+	private int[] ids;
+	private FileTag tagA;
+	private FileTag tagB;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		System.out.println("setUp()");
+
+		SQLiteRepository.instance().setRepoPath("./jfmi-test.db");
+		SQLiteRepository.instance().initialize();
+		dao.deleteAll();
+		tagDAO.deleteAll();
+
+		ids = new int[3];
+		for (int i = 0; i < ids.length; i++) {
+			TaggedFile file = new TaggedFile(-1, "/index/file" + i, null);
+			assertTrue(dao.create(file));
+			ids[i] = file.getFileId();
+		}
+
+		tagA = new FileTag("index-a");
+		tagB = new FileTag("index-b");
+		assertTrue(tagDAO.create(tagA));
+		assertTrue(tagDAO.create(tagB));
+
+		taggingDAO.create(newTagging(ids[0], tagA, "first"));
+		taggingDAO.create(newTagging(ids[0], tagB, null));
+		taggingDAO.create(newTagging(ids[1], tagB, null));
+
+		index = new TagIndex();
+		catalog = new TaggedFileCatalog();
+		updater = new TagIndexUpdater(index, catalog);
+		SQLiteRepository.instance().addRepositoryListener(updater);
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		SQLiteRepository.instance().removeRepositoryListener(updater);
+
+		tagDAO.delete(tagA);
+		tagDAO.delete(tagB);
+	}
+
+	/* Tests that a rebuild loads every file and tagging into the index and
+	   the catalog, which are not current until then. */
+	@Test
+	public void testRebuild_LoadsFilesAndTaggings() throws Exception
+	{
+		System.out.println("testRebuild_LoadsFilesAndTaggings()");
+
+		assertFalse(updater.isCurrent());
+		updater.rebuild();
+		assertTrue(updater.isCurrent());
+
+		assertEquals(3, index.getAllFiles().cardinality());
+		assertArrayEquals(new int[] { ids[0] },
+						  index.getFiles("index-a").toArray());
+		assertArrayEquals(new int[] { ids[0], ids[1] },
+						  index.getFiles("index-b").toArray());
+
+		assertEquals(3, catalog.size());
+		assertEquals("/index/file1", catalog.getPath(ids[1]));
+		assertEquals(2, catalog.getFile(ids[0]).getFileTaggings().size());
+	}
+
+	/* Tests that committed taggings, file deletions and tag deletions are
+	   applied to the index and catalog as they are published. */
+	@Test
+	public void testRepositoryChanged_AppliesChanges() throws Exception
+	{
+		System.out.println("testRepositoryChanged_AppliesChanges()");
+
+		updater.rebuild();
+
+		taggingDAO.create(newTagging(ids[2], tagA, null));
+		assertArrayEquals(new int[] { ids[0], ids[2] },
+						  index.getFiles("index-a").toArray());
+		assertEquals(1, catalog.getFile(ids[2]).getFileTaggings().size());
+
+		dao.delete(dao.readById(ids[0]));
+		assertArrayEquals(new int[] { ids[1], ids[2] },
+						  index.getAllFiles().toArray());
+		assertArrayEquals(new int[] { ids[2] },
+						  index.getFiles("index-a").toArray());
+		assertNull(catalog.getFile(ids[0]));
+
+		tagDAO.delete(tagB);
+		assertEquals(0, index.countFiles("index-b"));
+		assertTrue(catalog.getFile(ids[1]).getFileTaggings().isEmpty());
+		assertTrue(updater.isCurrent());
+	}
+
+	/* Tests that a query with only tag criteria is answered by the index
+	   with the files, and ranking, which the repository gives it, and that
+	   other queries are not answered. */
+	@Test
+	public void testMatchIn_RanksAsRepository() throws Exception
+	{
+		System.out.println("testMatchIn_RanksAsRepository()");
+
+		updater.rebuild();
+
+		FileQuery a = FileQuery.taggedWithAny(Arrays.asList("index-a"));
+		FileQuery b = FileQuery.taggedWithAny(Arrays.asList("index-b"));
+		List<FileQuery> queries = Arrays.asList(
+							FileQuery.or(b, a),
+							FileQuery.and(b, FileQuery.not(a)),
+							FileQuery.not(FileQuery.or(a, b)));
+
+		for (FileQuery query : queries) {
+			List<Integer> expected = new ArrayList<Integer>();
+			for (TaggedFile file : dao.readByQuery(query)) {
+				expected.add(file.getFileId());
+			}
+
+			assertEquals(expected, query.matchIn(index));
+		}
+
+		assertEquals(Arrays.asList(ids[0], ids[1]),
+					 FileQuery.or(b, a).matchIn(index));
+		assertNull(FileQuery.or(a, FileQuery.nameContains("file"))
+							.matchIn(index));
+	}
+
+	/* Tests that a renamed tag is indexed by its new value only. */
+	@Test
+	public void testRepositoryChanged_RenamesTags() throws Exception
+	{
+		System.out.println("testRepositoryChanged_RenamesTags()");
+
+		updater.rebuild();
+
+		assertTrue(tagDAO.update(new FileTag("index-c"), tagA.getTagId()));
+		assertEquals(0, index.countFiles("index-a"));
+		assertArrayEquals(new int[] { ids[0] },
+						  index.getFiles("index-c").toArray());
+		assertEquals(tagA.getTagId(), catalog.getFile(ids[0])
+							.getFileTaggings().first().getTagId());
+	}
+
+	/* Builds a tagging of a file with a stored tag. */
+	private static FileTagging newTagging(int fileId, FileTag tag,
+										  String comment)
+	{
+		FileTagging tagging = new FileTagging(-1, fileId, tag.getTag(),
+											  comment);
+		tagging.setTagId(tag.getTagId());
+		return tagging;
+	}
+
+}
@@ -1,6 +1,12 @@
 package tests.jfmi.dao;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import org.junit.Test;
 import org.junit.Before;
@@ -8,8 +14,19 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import jfmi.app.FileTag;
+import jfmi.app.FileTagging;
 import jfmi.app.TaggedFile;
+import jfmi.dao.DirectoryDAO;
+import jfmi.dao.FileQuery;
+import jfmi.dao.FileTagDAO;
+import jfmi.dao.FileTaggingDAO;
+import jfmi.dao.Page;
+import jfmi.dao.RecordCursor;
 import jfmi.dao.TaggedFileDAO;
+import jfmi.dao.TaggedFileOrder;
+import jfmi.repo.RepositoryChange;
+import jfmi.repo.RepositoryListener;
 import jfmi.repo.SQLiteRepository;
 
 /** Implements unit tests for the TaggedFileDAO class.
@@ -30,6 +47,7 @@ public class TaggedFileDAOTest {
 			crudFile = new TaggedFile(0, "path/to/file", null);
 
 			dao.deleteAll();
+			new FileTagDAO().deleteAll();
 
 		} catch (ClassNotFoundException e) {
 			fail("test failed: " + e.toString());
@@ -61,6 +79,8 @@ public class TaggedFileDAOTest {
 		try {
 			boolean created = dao.create(crudFile);
 			assertTrue(created);
+			assertEquals(crudFile.getFilePath(),
+						 dao.readById(crudFile.getFileId()).getFilePath());
 			
 		} catch (SQLException e) {
 			System.out.println(e.toString());
@@ -84,4 +104,567 @@ public class TaggedFileDAOTest {
 		dao.create(crudFile);
 	}
 
+	/* Tests that readAll() loads each file together with its taggings. */
+	@Test
+	public void testReadAll_LoadsTaggings() throws SQLException
+	{
+		System.out.println("testReadAll_LoadsTaggings()");
+
+		FileTagDAO tagDAO = new FileTagDAO();
+		FileTaggingDAO taggingDAO = new FileTaggingDAO();
+		FileTag tag = new FileTag("readAll-tag");
+
+		tagDAO.create(tag);
+
+		dao.create(crudFile);
+		dao.create(new TaggedFile(0, "path/to/untagged", null));
+
+		int fileId = dao.readByPathLike("path/to/file").first().getFileId();
+		taggingDAO.create(newTagging(fileId, tag, "first"));
+		taggingDAO.create(newTagging(fileId, tag, "second"));
+
+		SortedSet<TaggedFile> files = dao.readAll();
+		assertEquals(2, files.size());
+
+		for (TaggedFile file : files) {
+			if (file.getFileId() == fileId) {
+				assertEquals(2, file.getFileTaggings().size());
+			} else {
+				assertEquals(0, file.getFileTaggings().size());
+			}
+		}
+
+		tagDAO.delete(tag);
+	}
+
+	/* Tests that a cursor groups the joined rows of each file, even when the
+	   fetch size splits a file's rows between fetches. */
+	@Test
+	public void testOpenCursor_GroupsTaggings() throws SQLException
+	{
+		System.out.println("testOpenCursor_GroupsTaggings()");
+
+		FileTagDAO tagDAO = new FileTagDAO();
+		FileTaggingDAO taggingDAO = new FileTaggingDAO();
+		FileTag tag = new FileTag("cursor-tag");
+
+		tagDAO.create(tag);
+
+		dao.create(crudFile);
+		dao.create(new TaggedFile(0, "path/to/untagged", null));
+
+		int fileId = dao.readByPathLike("path/to/file").first().getFileId();
+		for (int i = 0; i < 3; i++) {
+			taggingDAO.create(newTagging(fileId, tag, "c" + i));
+		}
+
+		RecordCursor<TaggedFile> cursor = dao.openCursor(1);
+		int count = 0;
+
+		try {
+			while (cursor.hasNext()) {
+				TaggedFile file = cursor.next();
+				count++;
+
+				if (file.getFileId() == fileId) {
+					assertEquals(3, file.getFileTaggings().size());
+				} else {
+					assertEquals(0, file.getFileTaggings().size());
+				}
+			}
+		} finally {
+			cursor.close();
+		}
+
+		assertEquals(2, count);
+		tagDAO.delete(tag);
+	}
+
+	/* Tests that createAll() sets the ids of the files it creates, from
+	   whole batches and from batches retried row by row, and publishes
+	   them. */
+	@Test
+	public void testCreateAll_SetsFileIds() throws SQLException
+	{
+		System.out.println("testCreateAll_SetsFileIds()");
+
+		final List<Integer> published = new ArrayList<Integer>();
+		RepositoryListener listener = new RepositoryListener() {
+			public void repositoryChanged(RepositoryChange change)
+			{
+				if (change.getKind() == RepositoryChange.Kind.INSERTED) {
+					published.addAll(change.getFileIds());
+				}
+			}
+		};
+
+		List<TaggedFile> created = new ArrayList<TaggedFile>();
+		for (String path : new String[] { "c/a", "c/b", "c/a", "c/d" }) {
+			created.add(new TaggedFile(0, path, null));
+		}
+
+		SQLiteRepository.instance().addRepositoryListener(listener);
+		dao.setBatchSize(2);
+		try {
+			assertTrue(dao.create(new TaggedFile(0, "c/0", null)));
+			assertEquals(3, dao.createAll(created).getSuccessCount());
+			created.add(new TaggedFile(0, "c/e", null));
+			created.add(new TaggedFile(0, "c/f", null));
+			dao.createAll(created.subList(4, 6));
+
+		} finally {
+			dao.setBatchSize(TaggedFileDAO.DEFAULT_BATCH_SIZE);
+			SQLiteRepository.instance().removeRepositoryListener(listener);
+		}
+
+		List<Integer> expected = new ArrayList<Integer>();
+		expected.add(published.get(0));
+		for (TaggedFile file : created) {
+			if (file != created.get(2)) {
+				expected.add(file.getFileId());
+				assertEquals(file.getFilePath(),
+							 dao.readById(file.getFileId()).getFilePath());
+			}
+		}
+
+		assertEquals(expected, published);
+	}
+
+	/* Tests that files are read by id across several buckets, in id
+	   order, with or without their taggings, and that unknown ids are
+	   skipped. */
+	@Test
+	public void testReadByIds_ReadsInBuckets() throws SQLException
+	{
+		System.out.println("testReadByIds_ReadsInBuckets()");
+
+		FileTag tag = new FileTag("ids-tag");
+		new FileTagDAO().create(tag);
+
+		List<TaggedFile> created = new ArrayList<TaggedFile>();
+		for (int i = 0; i < TaggedFileDAO.MAX_ID_BUCKET + 5; i++) {
+			created.add(new TaggedFile(0, "ids/f" + i, null));
+		}
+		dao.createAll(created);
+
+		List<Integer> ids = new ArrayList<Integer>();
+		for (TaggedFile file : dao.readAll()) {
+			ids.add(0, file.getFileId());
+		}
+		new FileTaggingDAO().create(newTagging(ids.get(0), tag, null));
+		ids.add(-5);
+
+		List<TaggedFile> files = dao.readByIds(ids, true);
+		assertEquals(created.size(), files.size());
+		for (int i = 1; i < files.size(); i++) {
+			assertTrue(files.get(i - 1).getFileId() < files.get(i).getFileId());
+		}
+
+		TaggedFile tagged = dao.readByIds(Arrays.asList(ids.get(0)), true)
+							   .get(0);
+		assertEquals(1, tagged.getFileTaggings().size());
+		assertEquals(0, dao.readByIds(Arrays.asList(ids.get(0)), false)
+						   .get(0).getFileTaggings().size());
+
+		new FileTagDAO().delete(tag);
+	}
+
+	/* Tests that paging by name visits every file once, in name order, with
+	   ties on the name broken by file id. */
+	@Test
+	public void testReadPage_ByName() throws SQLException
+	{
+		System.out.println("testReadPage_ByName()");
+
+		String[] paths = { "z/b.txt", "a/D.txt", "y/a.txt", "x/c.txt", "w/b.txt" };
+		for (String path : paths) {
+			dao.create(new TaggedFile(0, path, null));
+		}
+
+		List<String> names = new ArrayList<String>();
+		Page<TaggedFile> page = dao.readPage(TaggedFileOrder.NAME, true, 2);
+
+		while (true) {
+			assertTrue(page.getItems().size() <= 2);
+
+			for (TaggedFile file : page.getItems()) {
+				names.add(file.getFilePath());
+			}
+
+			if (!page.hasNext()) {
+				break;
+			}
+
+			page = dao.readPage(page.getNextToken(), 2);
+		}
+
+		assertEquals(5, names.size());
+		assertEquals("y/a.txt", names.get(0));
+		assertEquals("z/b.txt", names.get(1));
+		assertEquals("w/b.txt", names.get(2));
+		assertEquals("x/c.txt", names.get(3));
+		assertEquals("a/D.txt", names.get(4));
+	}
+
+	/* Tests that comment searches match words, prefixes and phrases, rank
+	   better matches first, and treat quotes in keywords literally. */
+	@Test
+	public void testReadByCommentMatch() throws SQLException
+	{
+		System.out.println("testReadByCommentMatch()");
+
+		FileTagDAO tagDAO = new FileTagDAO();
+		FileTaggingDAO taggingDAO = new FileTaggingDAO();
+		FileTag tag = new FileTag("comment-tag");
+
+		tagDAO.create(tag);
+
+		dao.create(new TaggedFile(0, "c/one", null));
+		dao.create(new TaggedFile(0, "c/two", null));
+		int one = dao.readByPathLike("c/one").first().getFileId();
+		int two = dao.readByPathLike("c/two").first().getFileId();
+
+		taggingDAO.create(newTagging(one, tag,
+									 "holiday photos from the beach"));
+		taggingDAO.create(newTagging(two, tag, "beach beach beach"));
+
+		List<TaggedFile> ranked = dao.readByCommentMatch("beach");
+		assertEquals(2, ranked.size());
+		assertEquals(two, ranked.get(0).getFileId());
+
+		assertEquals(1, dao.readByCommentMatch("holi*").size());
+		assertEquals(1, dao.readByCommentMatch("\"photos from\"").size());
+		assertEquals(0, dao.readByCommentMatch("\"from photos\"").size());
+		assertEquals(1, dao.readByCommentMatch("beach NOT holiday").size());
+
+		Set<String> words = new TreeSet<String>();
+		words.add("pho*");
+		words.add("\"quoted");
+		assertEquals(1, dao.readByCommentKeywords(words).size());
+
+		tagDAO.delete(tag);
+		assertEquals(0, dao.readByCommentMatch("beach").size());
+	}
+
+	/* Tests that tag searches bind their tags, so quotes are matched
+	   literally, and pad unused IN list slots without matching them. */
+	@Test
+	public void testReadByTags_BindsTags() throws SQLException
+	{
+		System.out.println("testReadByTags_BindsTags()");
+
+		FileTagDAO tagDAO = new FileTagDAO();
+		FileTaggingDAO taggingDAO = new FileTaggingDAO();
+		FileTag quoted = new FileTag("say \"cheese\"");
+		FileTag plain = new FileTag("plain");
+
+		for (FileTag tag : new FileTag[] { quoted, plain }) {
+			tagDAO.create(tag);
+		}
+
+		dao.create(new TaggedFile(0, "t/quoted", null));
+		dao.create(new TaggedFile(0, "t/plain", null));
+		int q = dao.readByPathLike("t/quoted").first().getFileId();
+		int p = dao.readByPathLike("t/plain").first().getFileId();
+		taggingDAO.create(newTagging(q, quoted, null));
+		taggingDAO.create(newTagging(p, plain, null));
+
+		Set<FileTag> tags = new TreeSet<FileTag>();
+		tags.add(quoted);
+		SortedSet<TaggedFile> files = dao.readByTags(tags);
+		assertEquals(1, files.size());
+		assertEquals(q, files.first().getFileId());
+
+		tags.add(plain);
+		tags.add(new FileTag("absent"));
+		assertEquals(2, dao.readByTags(tags).size());
+
+		tagDAO.delete(quoted);
+		tagDAO.delete(plain);
+	}
+
+	/* Tests that the files under a directory include its subdirectories'
+	   files but not those of a directory whose name it begins, and that
+	   moving a directory moves every file under it. */
+	@Test
+	public void testReadByDirectory_FollowsMoves() throws SQLException
+	{
+		System.out.println("testReadByDirectory_FollowsMoves()");
+
+		for (String path : new String[] { "/r/a/x.txt", "/r/a/b/y.txt",
+										  "/r/ab/z.txt", "/s/w.txt" }) {
+			assertTrue(dao.create(new TaggedFile(0, path, null)));
+		}
+
+		assertEquals(2, dao.readByDirectory("/r/a").size());
+		assertEquals(3, dao.readByDirectory("/r/").size());
+		assertEquals(4, dao.readByDirectory("").size());
+
+		DirectoryDAO dirDAO = new DirectoryDAO();
+		assertTrue(dirDAO.move("/r/a/", "/q/a2/"));
+		assertTrue(!dirDAO.move("/r/a/", "/q/a3/"));
+
+		SortedSet<TaggedFile> moved = dao.readByDirectory("/q/");
+		assertEquals(2, moved.size());
+		assertEquals("/q/a2/b/y.txt", moved.first().getFilePath());
+		assertEquals("/q/a2/x.txt", moved.last().getFilePath());
+		assertEquals(1, dao.readByDirectory("/r/").size());
+
+		List<String> paths = Arrays.asList("/q/a2/b/y.txt", "/r/a/b/y.txt");
+		assertEquals(1, dao.readExistingPaths(paths).size());
+		assertEquals(2, dirDAO.readFileIdsUnder("/q/a2").size());
+	}
+
+	/* Tests that a directory can be moved back to where it was, and that
+	   moving a directory onto a stored one merges their files, unless two of
+	   the files have the same name. */
+	@Test
+	public void testMove_MergesStoredDirectories() throws SQLException
+	{
+		System.out.println("testMove_MergesStoredDirectories()");
+
+		for (String path : new String[] { "/m/a/x.txt", "/m/a/b/y.txt",
+										  "/m/c/b/z.txt", "/m/d/x.txt" }) {
+			assertTrue(dao.create(new TaggedFile(0, path, null)));
+		}
+
+		DirectoryDAO dirDAO = new DirectoryDAO();
+		assertTrue(dirDAO.move("/m/a/", "/n/a/"));
+		assertTrue(dirDAO.move("/n/a/", "/m/a/"));
+		assertEquals(2, dao.readByDirectory("/m/a/").size());
+		assertEquals(0, dao.readByDirectory("/n/").size());
+
+		assertTrue(dirDAO.move("/m/a/", "/m/c/"));
+		SortedSet<TaggedFile> merged = dao.readByDirectory("/m/c/");
+		assertEquals(3, merged.size());
+		assertEquals("/m/c/b/y.txt", merged.first().getFilePath());
+		assertEquals("/m/c/x.txt", merged.last().getFilePath());
+		assertEquals(0, dao.readByDirectory("/m/a/").size());
+
+		try {
+			dirDAO.move("/m/d/", "/m/c/");
+			fail("moved a file onto a file with the same name");
+		} catch (SQLException e) {
+			// expected
+		}
+
+		assertEquals(1, dao.readByDirectory("/m/d/").size());
+		assertEquals(3, dao.readByDirectory("/m/c/").size());
+	}
+
+	/* Tests that deleting or moving a file deletes the directories it
+	   leaves empty, and only those. */
+	@Test
+	public void testDelete_DeletesEmptyDirectories() throws SQLException
+	{
+		System.out.println("testDelete_DeletesEmptyDirectories()");
+
+		TaggedFile deep = new TaggedFile(0, "/e/f/g/x.txt", null);
+		TaggedFile moved = new TaggedFile(0, "/e/h/y.txt", null);
+		assertTrue(dao.create(deep));
+		assertTrue(dao.create(moved));
+		assertTrue(dao.create(new TaggedFile(0, "/e/z.txt", null)));
+
+		DirectoryDAO dirDAO = new DirectoryDAO();
+		assertTrue(dao.delete(deep));
+		assertTrue(!dirDAO.move("/e/f/", "/k/f/"));
+		assertTrue(dirDAO.move("/e/h/", "/k/h/"));
+
+		moved = dao.readById(moved.getFileId());
+		moved.setFilePath("/e/y.txt");
+		assertTrue(dao.update(moved, moved.getFileId()));
+		assertTrue(!dirDAO.move("/k/", "/l/"));
+		assertEquals(2, dao.readByDirectory("/e/").size());
+	}
+
+	/* Tests that renaming a tag keeps its tagId, and that files tagged
+	   with it are read back with the new value. */
+	@Test
+	public void testUpdateTag_KeepsTaggings() throws SQLException
+	{
+		System.out.println("testUpdateTag_KeepsTaggings()");
+
+		FileTagDAO tagDAO = new FileTagDAO();
+		FileTag tag = new FileTag("before");
+		assertTrue(tagDAO.create(tag));
+		assertTrue(tag.getTagId() >= 0);
+
+		dao.create(new TaggedFile(0, "t/renamed", null));
+		int fileId = dao.readByPathLike("t/renamed").first().getFileId();
+		new FileTaggingDAO().create(newTagging(fileId, tag, "note"));
+
+		assertTrue(tagDAO.update(new FileTag("after"), tag.getTagId()));
+
+		FileTagging tagging = dao.readById(fileId).getFileTaggings().first();
+		assertEquals("after", tagging.getTag());
+		assertEquals(tag.getTagId(), tagging.getTagId());
+		assertEquals(tag.getTagId(), tagDAO.readById(tag.getTagId()).getTagId());
+		assertEquals("after", tagDAO.readById(tag.getTagId()).getTag());
+
+		tagDAO.delete(tag);
+		assertEquals(0, dao.readById(fileId).getFileTaggings().size());
+	}
+
+	/* Tests that a combined query returns each matching file once, ranked
+	   by the number of criteria it meets, and honours NOT. */
+	@Test
+	public void testReadByQuery_RanksCombinedCriteria() throws SQLException
+	{
+		System.out.println("testReadByQuery_RanksCombinedCriteria()");
+
+		FileTagDAO tagDAO = new FileTagDAO();
+		FileTaggingDAO taggingDAO = new FileTaggingDAO();
+		FileTag tag = new FileTag("query-tag");
+
+		tagDAO.create(tag);
+
+		dao.create(new TaggedFile(0, "q/report_1.txt", null));
+		dao.create(new TaggedFile(0, "q/report%2.txt", null));
+		dao.create(new TaggedFile(0, "q/notes.txt", null));
+		int one = dao.readByPathLike("q/report_1").first().getFileId();
+		int two = dao.readByPathLike("q/report%2").first().getFileId();
+		int notes = dao.readByPathLike("q/notes").first().getFileId();
+
+		taggingDAO.create(newTagging(two, tag, "quarterly figures"));
+		taggingDAO.create(newTagging(two, tag, "draft"));
+		taggingDAO.create(newTagging(notes, tag, null));
+
+		FileQuery any = FileQuery.or(
+							FileQuery.nameContains("REPORT"),
+							FileQuery.taggedWithAny(Arrays.asList(tag.getTag())),
+							FileQuery.commentKeywords(Arrays.asList("figures")));
+
+		List<TaggedFile> ranked = dao.readByQuery(any);
+		assertEquals(3, ranked.size());
+		assertEquals(two, ranked.get(0).getFileId());
+		assertEquals(2, ranked.get(0).getFileTaggings().size());
+
+		List<TaggedFile> literal = dao.readByQuery(
+										FileQuery.pathContains("report%"));
+		assertEquals(1, literal.size());
+		assertEquals(two, literal.get(0).getFileId());
+
+		List<TaggedFile> untagged = dao.readByQuery(FileQuery.and(
+							FileQuery.pathContains("q/"),
+							FileQuery.not(FileQuery.taggedWithAny(
+												Arrays.asList(tag.getTag())))));
+		assertEquals(1, untagged.size());
+		assertEquals(one, untagged.get(0).getFileId());
+
+		tagDAO.delete(tag);
+	}
+
+	/* Tests that descending path pages end without an empty trailing page. */
+	@Test
+	public void testReadPage_ByPathDescending() throws SQLException
+	{
+		System.out.println("testReadPage_ByPathDescending()");
+
+		dao.create(new TaggedFile(0, "b", null));
+		dao.create(new TaggedFile(0, "A", null));
+		dao.create(new TaggedFile(0, "c", null));
+
+		Page<TaggedFile> first = dao.readPageByPath(false, 2);
+		assertEquals(2, first.getItems().size());
+		assertEquals("c", first.getItems().get(0).getFilePath());
+		assertEquals("b", first.getItems().get(1).getFilePath());
+		assertTrue(first.hasNext());
+
+		Page<TaggedFile> second = dao.readPage(first.getNextToken(), 2);
+		assertEquals(1, second.getItems().size());
+		assertEquals("A", second.getItems().get(0).getFilePath());
+		assertTrue(!second.hasNext());
+	}
+
+	/* Tests that path pages list files in the order of their full paths,
+	   merging the files of a directory with those under its subdirectories
+	   and of directories whose paths differ only in case, in both
+	   directions, and that pages seek and skip across directories. */
+	@Test
+	public void testReadPage_ByPathMergesDirectories() throws SQLException
+	{
+		System.out.println("testReadPage_ByPathMergesDirectories()");
+
+		String[] paths = { "w/b/x", "w/zz", "W/m", "w/B.c/y", "w/a",
+						   "w/e/f/g" };
+		for (String path : paths) {
+			dao.create(new TaggedFile(0, path, null));
+		}
+
+		String[] ordered = { "w/a", "w/B.c/y", "w/b/x", "w/e/f/g", "W/m",
+							 "w/zz" };
+		List<String> read = new ArrayList<String>();
+		Page<TaggedFile> page = dao.readPage(TaggedFileOrder.PATH, true, 2);
+		while (true) {
+			for (TaggedFile file : page.getItems()) {
+				read.add(file.getFilePath());
+			}
+
+			if (!page.hasNext()) {
+				break;
+			}
+
+			page = dao.readPage(page.getNextToken(), 2);
+		}
+		assertEquals(Arrays.asList(ordered), read);
+
+		page = dao.readPage(TaggedFileOrder.PATH, false, 3);
+		assertEquals(ordered[5], page.getItems().get(0).getFilePath());
+		assertEquals(ordered[4], page.getItems().get(1).getFilePath());
+		assertEquals(ordered[3], page.getItems().get(2).getFilePath());
+		page = dao.readPage(page.getNextToken(), 3);
+		assertEquals(3, page.getItems().size());
+		assertEquals(ordered[2], page.getItems().get(0).getFilePath());
+		assertEquals(ordered[0], page.getItems().get(2).getFilePath());
+		assertTrue(!page.hasNext());
+
+		Page<TaggedFile> first = dao.readPage(TaggedFileOrder.PATH, true,
+											  null, 0, 1);
+		page = dao.readPage(TaggedFileOrder.PATH, true, first.getNextToken(),
+							2, 2);
+		assertEquals(ordered[3], page.getItems().get(0).getFilePath());
+		assertEquals(ordered[4], page.getItems().get(1).getFilePath());
+		assertTrue(page.hasNext());
+	}
+
+	/* Tests that pages read after skipping rows, with or without a token,
+	   match the rows counted in order. */
+	@Test
+	public void testReadPage_SkipsRows() throws SQLException
+	{
+		System.out.println("testReadPage_SkipsRows()");
+
+		String[] paths = { "s/e", "s/a", "s/d", "s/b", "s/c" };
+		for (String path : paths) {
+			dao.create(new TaggedFile(0, path, null));
+		}
+
+		assertEquals(5, dao.countAll());
+
+		Page<TaggedFile> skipped = dao.readPage(TaggedFileOrder.PATH, true,
+												null, 3, 2);
+		assertEquals(2, skipped.getItems().size());
+		assertEquals("s/d", skipped.getItems().get(0).getFilePath());
+		assertEquals("s/e", skipped.getItems().get(1).getFilePath());
+		assertTrue(!skipped.hasNext());
+
+		Page<TaggedFile> first = dao.readPage(TaggedFileOrder.PATH, true,
+											  null, 0, 1);
+		Page<TaggedFile> after = dao.readPage(TaggedFileOrder.PATH, true,
+											  first.getNextToken(), 2, 1);
+		assertEquals(1, after.getItems().size());
+		assertEquals("s/d", after.getItems().get(0).getFilePath());
+		assertTrue(after.hasNext());
+	}
+
+	/* Builds a tagging of a file with a stored tag. */
+	private static FileTagging newTagging(int fileId, FileTag tag,
+										  String comment)
+	{
+		FileTagging tagging = new FileTagging(-1, fileId, tag.getTag(),
+											  comment);
+		tagging.setTagId(tag.getTagId());
+		return tagging;
+	}
+
 }
@@ -0,0 +1,131 @@
+package tests.jfmi.gui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.junit.Before;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+
+import jfmi.gui.MutableListModel;
+
+/** Implements unit tests for the jfmi.gui.MutableListModel class.
+  */
+public class MutableListModelTest {
+	private MutableListModel<String> model;
+	private CountingOrder byLength;
+	private CountingOrder byLastChar;
+
+	@Before
+	public void setUp()
+	{
+		System.out.println("setUp()");
+
+		model = new MutableListModel<String>(new ArrayList<String>(
+							Arrays.asList("ccc", "a", "bb", "dddd", "eb")));
+		byLength = new CountingOrder(false);
+		byLastChar = new CountingOrder(true);
+	}
+
+	/* Tests that reversing and returning to an earlier order do not compare
+	   any elements. */
+	@Test
+	public void testSort_ReusesOrders()
+	{
+		System.out.println("testSort_ReusesOrders()");
+
+		model.sort(byLength);
+		assertEquals(Arrays.asList("a", "bb", "eb", "ccc", "dddd"),
+					 model.getDataCopy());
+
+		model.sort(byLastChar);
+		assertEquals(Arrays.asList("a", "bb", "eb", "ccc", "dddd"),
+					 model.getDataCopy());
+
+		byLength.calls.set(0);
+		byLastChar.calls.set(0);
+
+		model.sort(byLength);
+		model.reverse();
+		assertEquals(Arrays.asList("dddd", "ccc", "eb", "bb", "a"),
+					 model.getDataCopy());
+		assertEquals(0, byLength.calls.get() + byLastChar.calls.get());
+	}
+
+	/* Tests that elements added, replaced and removed are kept in order in
+	   every order the model keeps. */
+	@Test
+	public void testChanges_UpdateEveryOrder()
+	{
+		System.out.println("testChanges_UpdateEveryOrder()");
+
+		model = new MutableListModel<String>();
+		for (String s : new String[] { "ccc", "a", "bb", "dddd", "eb" }) {
+			model.add(s);
+		}
+
+		model.sort(byLastChar);
+		model.sort(byLength);
+		model.setReversed(true);
+
+		assertEquals(0, model.add("zzzzz"));
+		assertEquals(2, model.indexOf(model.getElementAt(2)));
+
+		model.remove(model.indexOf(model.getElementAt(
+											model.binarySearch("a"))));
+		int replaced = model.indexOf(model.getElementAt(1));
+		model.set(replaced, "f");
+
+		assertEquals(Arrays.asList("zzzzz", "ccc", "eb", "bb", "f"),
+					 model.getDataCopy());
+
+		model.sort(byLastChar);
+		assertEquals(Arrays.asList("eb", "ccc", "f", "zzzzz"),
+					 model.getDataCopy().subList(1, 5));
+		assertTrue(!model.isReversed());
+	}
+
+	/* Tests that inserting at an index keeps the displayed order. */
+	@Test
+	public void testAddAtIndex_KeepsDisplayedOrder()
+	{
+		System.out.println("testAddAtIndex_KeepsDisplayedOrder()");
+
+		model.sort(byLength);
+		model.reverse();
+		model.add(1, "x");
+
+		List<String> expected = Arrays.asList("dddd", "x", "ccc", "eb", "bb",
+											  "a");
+		assertEquals(expected, model.getDataCopy());
+		assertTrue(model.getOrder() == null);
+	}
+
+	/* Orders strings by length, or by their last character, and counts its
+	   comparisons. Ties keep the order in which elements were added. */
+	private static final class CountingOrder implements Comparator<String> {
+		final AtomicInteger calls = new AtomicInteger();
+		final boolean lastChar;
+
+		CountingOrder(boolean lastChar_)
+		{
+			lastChar = lastChar_;
+		}
+
+		public int compare(String s1, String s2)
+		{
+			calls.incrementAndGet();
+
+			if (lastChar) {
+				return s1.charAt(s1.length() - 1) - s2.charAt(s2.length() - 1);
+			}
+
+			return s1.length() - s2.length();
+		}
+	}
+
+}
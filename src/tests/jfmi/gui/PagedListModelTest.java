@@ -0,0 +1,379 @@
+package tests.jfmi.gui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Before;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import jfmi.gui.PagedListModel;
+
+/** Implements unit tests for the jfmi.gui.PagedListModel class.
+  */
+public class PagedListModelTest {
+	private PagedListModel<Integer> model;
+	private CountingSource source;
+
+	@Before
+	public void setUp()
+	{
+		System.out.println("setUp()");
+
+		model = new PagedListModel<Integer>(10, 4, 1);
+		source = new CountingSource();
+	}
+
+	@After
+	public void tearDown()
+	{
+		model.dispose();
+	}
+
+	/* Tests that rows are null until their page is read, and that only the
+	   page asked for and the next one are read. */
+	@Test
+	public void testGetElementAt_ReadsPagesLazily() throws Exception
+	{
+		System.out.println("testGetElementAt_ReadsPagesLazily()");
+
+		onEDT(new Runnable() {
+			public void run()
+			{
+				model.setSource(source, 1000);
+				assertNull(model.getElementAt(25));
+			}
+		});
+
+		waitUntilLoaded(25);
+		waitUntilLoaded(35);
+
+		assertEquals(Integer.valueOf(25), elementAt(25));
+		assertEquals(2, source.reads.get());
+	}
+
+	/* Tests that peeking at a row does not read its page. */
+	@Test
+	public void testPeekElementAt_DoesNotRead() throws Exception
+	{
+		System.out.println("testPeekElementAt_DoesNotRead()");
+
+		final AtomicReference<Integer> unread = new AtomicReference<Integer>();
+		onEDT(new Runnable() {
+			public void run()
+			{
+				model.setSource(source, 1000);
+				unread.set(model.peekElementAt(500));
+				model.getElementAt(0);
+			}
+		});
+		waitUntilLoaded(0);
+
+		final AtomicReference<Integer> read = new AtomicReference<Integer>();
+		final AtomicReference<Boolean> loaded = new AtomicReference<Boolean>();
+		onEDT(new Runnable() {
+			public void run()
+			{
+				read.set(model.peekElementAt(5));
+				loaded.set(model.isLoaded(500));
+			}
+		});
+
+		assertNull(unread.get());
+		assertEquals(Integer.valueOf(5), read.get());
+		assertTrue(!loaded.get());
+	}
+
+	/* Tests that no more than the maximum number of pages are cached. */
+	@Test
+	public void testCache_IsBounded() throws Exception
+	{
+		System.out.println("testCache_IsBounded()");
+
+		onEDT(new Runnable() {
+			public void run()
+			{
+				model.setSource(source, 1000);
+			}
+		});
+
+		for (int row = 0; row < 200; row += 10) {
+			elementAt(row);
+			waitUntilLoaded(row);
+		}
+
+		final AtomicInteger cached = new AtomicInteger();
+		onEDT(new Runnable() {
+			public void run()
+			{
+				cached.set(model.getCachedPageCount());
+			}
+		});
+
+		assertTrue(cached.get() <= 4);
+		assertEquals(Integer.valueOf(190), elementAt(190));
+	}
+
+	/* Tests that a new source's rows replace the old source's rows. */
+	@Test
+	public void testSetSource_ReplacesRows() throws Exception
+	{
+		System.out.println("testSetSource_ReplacesRows()");
+
+		onEDT(new Runnable() {
+			public void run()
+			{
+				model.setSource(source, 15);
+				model.getElementAt(0);
+			}
+		});
+		waitUntilLoaded(0);
+
+		final CountingSource shifted = new CountingSource(100);
+		onEDT(new Runnable() {
+			public void run()
+			{
+				model.setSource(shifted, 5);
+				model.getElementAt(0);
+			}
+		});
+		waitUntilLoaded(0);
+
+		assertEquals(Integer.valueOf(100), elementAt(0));
+		assertNull(elementAt(5));
+	}
+
+	/* Tests that applied changes place rows among the cached pages, count
+	   rows added and removed among the pages not read, and keep the pages
+	   whose rows are all known. */
+	@Test
+	public void testApplyChanges_KeepsKnownPages() throws Exception
+	{
+		System.out.println("testApplyChanges_KeepsKnownPages()");
+
+		final OrderedSource ordered = new OrderedSource(50);
+		final List<String> events = new ArrayList<String>();
+
+		onEDT(new Runnable() {
+			public void run()
+			{
+				model.setSource(ordered, 50);
+				model.getElementAt(0);
+			}
+		});
+		waitUntilLoaded(0);
+		waitUntilLoaded(10);
+
+		onEDT(new Runnable() {
+			public void run()
+			{
+				model.addListDataListener(new RecordingListener(events));
+			}
+		});
+
+		// row 4 becomes 5, and 39 is added among the rows not read
+		ordered.change(Arrays.asList(4), Arrays.asList(5, 39));
+		onEDT(new Runnable() {
+			public void run()
+			{
+				model.applyChanges(Arrays.asList(4), Arrays.asList(5, 39));
+			}
+		});
+
+		assertEquals(Arrays.asList("removed 2", "added 2", "added 50",
+								   "changed 2-50"), events);
+		assertEquals(Arrays.asList(0), ordered.moved);
+
+		// peeking reads no pages, so only the first two stay known
+		onEDT(new Runnable() {
+			public void run()
+			{
+				assertTrue(model.isLoaded(19));
+				assertEquals(Integer.valueOf(5), model.peekElementAt(2));
+				assertEquals(Integer.valueOf(38), model.peekElementAt(19));
+			}
+		});
+
+		// an unknown row could be any row after those read
+		events.clear();
+		ordered.change(Arrays.asList(60), Collections.<Integer>emptyList());
+		onEDT(new Runnable() {
+			public void run()
+			{
+				model.applyChanges(Arrays.asList(60),
+								   Collections.<Integer>emptyList());
+				assertEquals(50, model.getSize());
+			}
+		});
+
+		assertEquals(Arrays.asList("removed 50", "changed 20-49"), events);
+		assertEquals(Arrays.asList(0, 2), ordered.moved);
+
+		elementAt(25);
+		waitUntilLoaded(25);
+		assertEquals(Integer.valueOf(48), elementAt(25));
+		assertEquals(Integer.valueOf(39), elementAt(20));
+	}
+
+	/* Runs a task on the event dispatch thread, and waits for it. */
+	private void onEDT(Runnable r) throws Exception
+	{
+		SwingUtilities.invokeAndWait(r);
+	}
+
+	/* Reads a row on the event dispatch thread. */
+	private Integer elementAt(final int index) throws Exception
+	{
+		final AtomicReference<Integer> row = new AtomicReference<Integer>();
+		onEDT(new Runnable() {
+			public void run()
+			{
+				row.set(model.getElementAt(index));
+			}
+		});
+
+		return row.get();
+	}
+
+	/* Waits until the page of a row has been read. */
+	private void waitUntilLoaded(final int index) throws Exception
+	{
+		final AtomicReference<Boolean> loaded = new AtomicReference<Boolean>();
+
+		for (int i = 0; i < 500; i++) {
+			onEDT(new Runnable() {
+				public void run()
+				{
+					loaded.set(model.isLoaded(index));
+				}
+			});
+
+			if (loaded.get()) {
+				return;
+			}
+
+			Thread.sleep(10);
+		}
+
+		throw new AssertionError("row " + index + " was not read");
+	}
+
+	/* A source whose rows are their indices, plus an offset, and which
+	   counts the pages it reads. */
+	private static final class CountingSource
+		implements PagedListModel.PageSource<Integer> {
+
+		final AtomicInteger reads = new AtomicInteger();
+		final int offset;
+
+		CountingSource()
+		{
+			this(0);
+		}
+
+		CountingSource(int offset_)
+		{
+			offset = offset_;
+		}
+
+		public List<Integer> readPage(int page, int pageSize)
+		{
+			reads.incrementAndGet();
+
+			List<Integer> rows = new ArrayList<Integer>(pageSize);
+			for (int i = 0; i < pageSize; i++) {
+				rows.add(offset + page * pageSize + i);
+			}
+
+			return Collections.unmodifiableList(rows);
+		}
+	}
+
+	/* A source whose rows are sorted integers, keyed by their values, which
+	   records the pages it is told have moved. */
+	private static final class OrderedSource
+		implements PagedListModel.OrderedPageSource<Integer> {
+
+		final List<Integer> rows = new ArrayList<Integer>();
+		final List<Integer> moved = new ArrayList<Integer>();
+
+		/* Constructs a source of the first even numbers. */
+		OrderedSource(int size)
+		{
+			for (int i = 0; i < size; i++) {
+				rows.add(i * 2);
+			}
+		}
+
+		/* Removes and adds rows, keeping them sorted. */
+		synchronized void change(List<Integer> removed, List<Integer> added)
+		{
+			rows.removeAll(removed);
+			rows.addAll(added);
+			Collections.sort(rows);
+		}
+
+		public synchronized List<Integer> readPage(int page, int pageSize)
+		{
+			int end = Math.min(rows.size(), (page + 1) * pageSize);
+			return new ArrayList<Integer>(rows.subList(page * pageSize, end));
+		}
+
+		public Comparator<Integer> getComparator()
+		{
+			return new Comparator<Integer>() {
+				public int compare(Integer a, Integer b)
+				{
+					return a.compareTo(b);
+				}
+			};
+		}
+
+		public Object getKey(Integer row)
+		{
+			return row;
+		}
+
+		public void pagesMoved(int page)
+		{
+			moved.add(page);
+		}
+	}
+
+	/* A listener which records the events of a model as text. */
+	private static final class RecordingListener implements ListDataListener {
+		final List<String> events;
+
+		RecordingListener(List<String> events_)
+		{
+			events = events_;
+		}
+
+		public void intervalAdded(ListDataEvent e)
+		{
+			events.add("added " + e.getIndex0());
+		}
+
+		public void intervalRemoved(ListDataEvent e)
+		{
+			events.add("removed " + e.getIndex0());
+		}
+
+		public void contentsChanged(ListDataEvent e)
+		{
+			events.add("changed " + e.getIndex0() + "-" + e.getIndex1());
+		}
+	}
+
+}
@@ -0,0 +1,165 @@
+package tests.jfmi.repo;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.Test;
+import org.junit.Before;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import jfmi.repo.ConnectionFactory;
+import jfmi.repo.ConnectionPool;
+import jfmi.repo.PoolStatistics;
+
+/** Implements unit tests for the jfmi.repo.ConnectionPool class.
+  */
+public class ConnectionPoolTest {
+	private ConnectionFactory factory;
+
+	@Before
+	public void setUp() throws ClassNotFoundException
+	{
+		System.out.println("setUp()");
+
+		Class.forName("org.sqlite.JDBC");
+
+		factory = new ConnectionFactory() {
+			public Connection newConnection() throws SQLException
+			{
+				return DriverManager.getConnection("jdbc:sqlite::memory:");
+			}
+		};
+	}
+
+	/* Tests that a returned connection is reused by the next borrower. */
+	@Test
+	public void testBorrow_ReusesReturnedConnection() throws SQLException
+	{
+		System.out.println("testBorrow_ReusesReturnedConnection()");
+
+		ConnectionPool pool = new ConnectionPool(factory, 2, 0, 1000);
+
+		Connection first = pool.borrow();
+		first.close();
+		assertTrue(first.isClosed());
+
+		Connection second = pool.borrow();
+		assertTrue(!second.isClosed());
+		second.close();
+
+		PoolStatistics stats = pool.getStatistics();
+		assertEquals(2, stats.getBorrowCount());
+		assertEquals(1, stats.getCreatedCount());
+		assertEquals(0, stats.getActiveCount());
+		assertEquals(1, stats.getIdleCount());
+
+		pool.close();
+	}
+
+	/* Tests that borrowing from an exhausted pool times out. */
+	@Test
+	public void testBorrow_TimesOutWhenExhausted() throws SQLException
+	{
+		System.out.println("testBorrow_TimesOutWhenExhausted()");
+
+		ConnectionPool pool = new ConnectionPool(factory, 1, 0, 50);
+		Connection held = pool.borrow();
+
+		try {
+			pool.borrow();
+			fail("borrow() should have timed out");
+		} catch (SQLException e) {
+			assertEquals(1, pool.getStatistics().getTimeoutCount());
+		} finally {
+			held.close();
+			pool.close();
+		}
+	}
+
+	/* Tests that a statement closed by one borrower is reused by the next
+	   borrower of the same connection, and that a failed statement is not. */
+	@Test
+	public void testPrepareStatement_ReusesCachedStatement() throws SQLException
+	{
+		System.out.println("testPrepareStatement_ReusesCachedStatement()");
+
+		final String sql = "SELECT ? + 1";
+		ConnectionPool pool = new ConnectionPool(factory, 1, 0, 1000);
+
+		Connection conn = pool.borrow();
+		PreparedStatement ps = conn.prepareStatement(sql);
+		ps.setInt(1, 1);
+		ResultSet rs = ps.executeQuery();
+		assertTrue(rs.next());
+		assertEquals(2, rs.getInt(1));
+		rs.close();
+		ps.close();
+		assertTrue(ps.isClosed());
+		conn.close();
+
+		conn = pool.borrow();
+		ps = conn.prepareStatement(sql);
+		assertTrue(ps.getConnection() == conn);
+		ps.setInt(1, 41);
+		rs = ps.executeQuery();
+		assertTrue(rs.next());
+		assertEquals(42, rs.getInt(1));
+		rs.close();
+		ps.close();
+
+		Statement stmt = conn.createStatement();
+		stmt.executeUpdate("CREATE TABLE t (x PRIMARY KEY)");
+		stmt.close();
+
+		final String insert = "INSERT INTO t VALUES (?)";
+		ps = conn.prepareStatement(insert);
+		ps.setInt(1, 1);
+		ps.executeUpdate();
+		ps.close();
+
+		ps = conn.prepareStatement(insert);
+		ps.setInt(1, 1);
+		try {
+			ps.executeUpdate();
+			fail("duplicate insert should have failed");
+		} catch (SQLException e) {
+			ps.close();
+		}
+
+		ps = conn.prepareStatement(insert);
+		ps.setInt(1, 2);
+		assertEquals(1, ps.executeUpdate());
+		ps.close();
+		conn.close();
+
+		PoolStatistics stats = pool.getStatistics();
+		assertEquals(2, stats.getStatementHits());
+		assertEquals(3, stats.getStatementMisses());
+
+		pool.close();
+	}
+
+	/* Tests that idle connections past the idle timeout are evicted. */
+	@Test
+	public void testEvictIdleConnections() throws Exception
+	{
+		System.out.println("testEvictIdleConnections()");
+
+		ConnectionPool pool = new ConnectionPool(factory, 2, 10, 1000);
+		pool.borrow().close();
+
+		Thread.sleep(30);
+
+		assertEquals(1, pool.evictIdleConnections());
+		assertEquals(0, pool.getStatistics().getIdleCount());
+
+		pool.close();
+	}
+
+}
@@ -0,0 +1,216 @@
+package tests.jfmi.repo;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import jfmi.repo.SchemaMigration;
+import jfmi.repo.SchemaMigrations;
+import jfmi.repo.SchemaMigrator;
+
+/** Implements unit tests for the jfmi.repo.SchemaMigrator class.
+  */
+public class SchemaMigratorTest {
+	private Connection conn;
+	private List<SchemaMigration> migrations;
+
+	@Before
+	public void setUp() throws ClassNotFoundException, SQLException
+	{
+		System.out.println("setUp()");
+
+		Class.forName("org.sqlite.JDBC");
+		conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+
+		migrations = new ArrayList<SchemaMigration>();
+		migrations.add(SchemaMigration.ofStatements(2, "add index",
+						"CREATE INDEX t_value_idx ON t(value)"));
+		migrations.add(SchemaMigration.ofStatements(1, "create table",
+						"CREATE TABLE t (id INTEGER PRIMARY KEY, value TEXT)"));
+	}
+
+	@After
+	public void tearDown() throws SQLException
+	{
+		conn.close();
+	}
+
+	/* Tests that migrations are applied in version order, and only once. */
+	@Test
+	public void testMigrate_AppliesPendingInOrder() throws SQLException
+	{
+		System.out.println("testMigrate_AppliesPendingInOrder()");
+
+		SchemaMigrator migrator = new SchemaMigrator(migrations);
+
+		assertEquals(2, migrator.migrate(conn));
+		assertEquals(2, SchemaMigrator.readVersion(conn));
+		assertTrue(indexExists("t_value_idx"));
+
+		assertEquals(0, migrator.migrate(conn));
+	}
+
+	/* Tests that a failed migration leaves the schema at the previous
+	   version. */
+	@Test
+	public void testMigrate_FailureRollsBack() throws SQLException
+	{
+		System.out.println("testMigrate_FailureRollsBack()");
+
+		migrations.add(SchemaMigration.ofStatements(3, "broken",
+						"CREATE INDEX t_id_idx ON t(id)",
+						"CREATE INDEX broken_idx ON no_such_table(x)"));
+
+		try {
+			new SchemaMigrator(migrations).migrate(conn);
+			fail("migration 3 should have failed");
+		} catch (SQLException e) {
+			assertEquals(2, SchemaMigrator.readVersion(conn));
+			assertTrue(!indexExists("t_id_idx"));
+		}
+	}
+
+	/* Tests that a database newer than the known migrations is rejected. */
+	@Test(expected= SQLException.class)
+	public void testMigrate_RejectsNewerSchema() throws SQLException
+	{
+		System.out.println("testMigrate_RejectsNewerSchema()");
+
+		Statement stmt = conn.createStatement();
+		stmt.executeUpdate("PRAGMA user_version = 9");
+		stmt.close();
+
+		new SchemaMigrator(migrations).migrate(conn);
+	}
+
+	/* Tests that the repository's migrations key tags by tagId, keeping
+	   the taggings, their ids and the foreign keys of an existing
+	   database. */
+	@Test
+	public void testSchemaMigrations_KeyTagsById() throws SQLException
+	{
+		System.out.println("testSchemaMigrations_KeyTagsById()");
+
+		Statement stmt = createVersion0Tables();
+		stmt.executeUpdate("INSERT INTO TaggedFile(path) VALUES('a')");
+		stmt.executeUpdate("INSERT INTO FileTag VALUES('x')");
+		stmt.executeUpdate("INSERT INTO FileTag VALUES('y')");
+		stmt.executeUpdate("INSERT INTO FileTagging VALUES(5, 1, 'y', 'c')");
+		stmt.executeUpdate("INSERT INTO FileTagging VALUES(9, 1, 'x', NULL)");
+		stmt.executeUpdate("DELETE FROM FileTagging WHERE taggingId = 9");
+
+		new SchemaMigrator(SchemaMigrations.all()).migrate(conn);
+
+		stmt.executeUpdate("UPDATE FileTag SET tag = 'z' WHERE tag = 'y'");
+		stmt.executeUpdate("INSERT INTO FileTagging(fileId, tagId)"
+						   + " VALUES(1, 1)");
+
+		ResultSet rs = stmt.executeQuery("SELECT t.taggingId, g.tag"
+						   + " FROM FileTagging t JOIN FileTag g"
+						   + " ON g.tagId = t.tagId ORDER BY t.taggingId");
+		assertTrue(rs.next());
+		assertEquals(5, rs.getInt(1));
+		assertEquals("z", rs.getString(2));
+		assertTrue(rs.next());
+		assertEquals(10, rs.getInt(1));
+		assertEquals("x", rs.getString(2));
+		rs.close();
+
+		stmt.executeUpdate("DELETE FROM FileTag WHERE tag = 'z'");
+		rs = stmt.executeQuery("SELECT COUNT(*) FROM FileTagging");
+		assertEquals(1, rs.getInt(1));
+		rs.close();
+
+		stmt.close();
+		assertTrue(indexExists("FileTagging_tagId_idx"));
+	}
+
+	/* Tests that the repository's migrations move file paths into
+	   directories, keeping the files' ids and taggings. */
+	@Test
+	public void testSchemaMigrations_StoreDirectories() throws SQLException
+	{
+		System.out.println("testSchemaMigrations_StoreDirectories()");
+
+		Statement stmt = createVersion0Tables();
+		stmt.executeUpdate("INSERT INTO TaggedFile(path)"
+						   + " VALUES('/docs/sub/b.txt')");
+		stmt.executeUpdate("INSERT INTO TaggedFile(path) VALUES('c')");
+		stmt.executeUpdate("INSERT INTO TaggedFile(path)"
+						   + " VALUES('/docs/a.txt')");
+		stmt.executeUpdate("INSERT INTO FileTag VALUES('x')");
+		stmt.executeUpdate("INSERT INTO FileTagging VALUES(1, 1, 'x', NULL)");
+
+		new SchemaMigrator(SchemaMigrations.all()).migrate(conn);
+
+		ResultSet rs = stmt.executeQuery("SELECT d.path || f.name"
+						   + " FROM TaggedFile f JOIN Directory d"
+						   + " ON d.dirId = f.dirId ORDER BY f.fileId");
+		for (String path : new String[] { "/docs/sub/b.txt", "c",
+										  "/docs/a.txt" }) {
+			assertTrue(rs.next());
+			assertEquals(path, rs.getString(1));
+		}
+		rs.close();
+
+		rs = stmt.executeQuery("SELECT p.path, c.name FROM Directory c"
+						   + " JOIN Directory p ON p.dirId = c.parentId"
+						   + " WHERE c.path = '/docs/sub/'");
+		assertEquals("/docs/", rs.getString(1));
+		assertEquals("sub", rs.getString(2));
+		rs.close();
+
+		stmt.executeUpdate("DELETE FROM TaggedFile WHERE fileId = 1");
+		rs = stmt.executeQuery("SELECT COUNT(*) FROM FileTagging");
+		assertEquals(0, rs.getInt(1));
+		rs.close();
+
+		stmt.close();
+	}
+
+	/* Creates the tables of the version 0 repository schema, with foreign
+	   keys enforced, and returns a statement to fill them with. */
+	private Statement createVersion0Tables() throws SQLException
+	{
+		Statement stmt = conn.createStatement();
+		stmt.executeUpdate("PRAGMA foreign_keys = ON");
+		stmt.executeUpdate("CREATE TABLE TaggedFile (fileId INTEGER"
+						   + " PRIMARY KEY AUTOINCREMENT, path TEXT)");
+		stmt.executeUpdate("CREATE TABLE FileTag (tag TEXT PRIMARY KEY)");
+		stmt.executeUpdate("CREATE TABLE FileTagging (taggingId INTEGER"
+						   + " PRIMARY KEY AUTOINCREMENT, fileId INTEGER"
+						   + " REFERENCES TaggedFile(fileId)"
+						   + " ON DELETE CASCADE ON UPDATE CASCADE,"
+						   + " tag TEXT REFERENCES FileTag(tag)"
+						   + " ON DELETE CASCADE ON UPDATE CASCADE,"
+						   + " comment TEXT)");
+
+		return stmt;
+	}
+
+	private boolean indexExists(String name) throws SQLException
+	{
+		Statement stmt = conn.createStatement();
+
+		try {
+			ResultSet rs = stmt.executeQuery("SELECT name FROM sqlite_master"
+								+ " WHERE type = 'index' AND name = '"
+								+ name + "'");
+			return rs.next();
+		} finally {
+			stmt.close();
+		}
+	}
+
+}
@@ -0,0 +1,165 @@
+package tests.jfmi.repo;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Before;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import jfmi.app.TaggedFile;
+import jfmi.dao.TaggedFileDAO;
+import jfmi.repo.RepositoryChange;
+import jfmi.repo.RepositoryListener;
+import jfmi.repo.SQLiteRepository;
+import jfmi.repo.Transaction;
+
+/** Implements unit tests for the jfmi.repo.Transaction class.
+  */
+public class TransactionTest {
+	private static TaggedFileDAO dao = new TaggedFileDAO();
+	private SQLiteRepository repo;
+
+	@Before
+	public void setUp() throws ClassNotFoundException, SQLException
+	{
+		System.out.println("setUp()");
+
+		repo = SQLiteRepository.instance();
+		repo.setRepoPath("./jfmi-test.db");
+		repo.initialize();
+
+		dao.deleteAll();
+	}
+
+	/* Tests that work in a committed transaction is visible afterwards. */
+	@Test
+	public void testCommit() throws SQLException
+	{
+		System.out.println("testCommit()");
+
+		Transaction tx = repo.beginTransaction();
+
+		try {
+			dao.create(new TaggedFile(0, "tx/one", null));
+			dao.create(new TaggedFile(0, "tx/two", null));
+
+			// reads on the same thread see the uncommitted work
+			assertEquals(2, dao.readAll().size());
+			tx.commit();
+		} finally {
+			tx.close();
+		}
+
+		assertTrue(!tx.isActive());
+		assertTrue(repo.getCurrentTransaction() == null);
+		assertEquals(2, dao.readAll().size());
+	}
+
+	/* Tests that closing a transaction without committing discards its
+	   work. */
+	@Test
+	public void testClose_RollsBack() throws SQLException
+	{
+		System.out.println("testClose_RollsBack()");
+
+		Transaction tx = repo.beginTransaction();
+
+		try {
+			dao.create(new TaggedFile(0, "tx/discarded", null));
+		} finally {
+			tx.close();
+		}
+
+		assertEquals(0, dao.readAll().size());
+	}
+
+	/* Tests that a joined transaction which rolls back makes the outermost
+	   transaction roll back. */
+	@Test
+	public void testJoined_RollbackIsPropagated() throws SQLException
+	{
+		System.out.println("testJoined_RollbackIsPropagated()");
+
+		Transaction outer = repo.beginTransaction();
+
+		try {
+			dao.create(new TaggedFile(0, "tx/outer", null));
+
+			Transaction inner = repo.beginTransaction();
+			try {
+				dao.create(new TaggedFile(0, "tx/inner", null));
+			} finally {
+				inner.close();
+			}
+
+			try {
+				outer.commit();
+				fail("commit() should have failed");
+			} catch (SQLException e) {
+				// expected
+			}
+
+		} finally {
+			outer.close();
+		}
+
+		assertEquals(0, dao.readAll().size());
+	}
+
+	/* Tests that changes published inside a transaction reach listeners
+	   only when it commits, and are dropped when it rolls back. */
+	@Test
+	public void testChanges_PublishedOnCommit() throws SQLException
+	{
+		System.out.println("testChanges_PublishedOnCommit()");
+
+		final List<RepositoryChange> changes = new ArrayList<RepositoryChange>();
+		RepositoryListener listener = new RepositoryListener() {
+			public void repositoryChanged(RepositoryChange change)
+			{
+				changes.add(change);
+			}
+		};
+
+		repo.addRepositoryListener(listener);
+
+		try {
+			Transaction tx = repo.beginTransaction();
+			try {
+				dao.create(new TaggedFile(0, "tx/published", null));
+				assertEquals(0, changes.size());
+				tx.commit();
+			} finally {
+				tx.close();
+			}
+
+			assertEquals(1, changes.size());
+			RepositoryChange change = changes.get(0);
+			assertEquals(RepositoryChange.Entity.FILE, change.getEntity());
+			assertEquals(RepositoryChange.Kind.INSERTED, change.getKind());
+			assertEquals(dao.readAll().first().getFileId(),
+						 change.getIds().get(0));
+
+			tx = repo.beginTransaction();
+			try {
+				dao.create(new TaggedFile(0, "tx/dropped", null));
+			} finally {
+				tx.close();
+			}
+
+			assertEquals(1, changes.size());
+
+			dao.delete(dao.readAll().first());
+			assertEquals(RepositoryChange.Kind.DELETED,
+						 changes.get(1).getKind());
+
+		} finally {
+			repo.removeRepositoryListener(listener);
+		}
+	}
+
+}
@@ -0,0 +1,104 @@
+package tests.jfmi.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import jfmi.util.ParallelSort;
+
+/** Implements unit tests for the jfmi.util.ParallelSort class.
+  */
+public class ParallelSortTest {
+
+	/* Tests that an array split into many runs sorts as Arrays.sort() does,
+	   keeping equal elements in their order. */
+	@Test
+	public void testSort_MatchesStableSort()
+	{
+		System.out.println("testSort_MatchesStableSort()");
+
+		Random random = new Random(17);
+		Integer[] values = new Integer[10007];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random.nextInt(1000) * 100000 + i;
+		}
+
+		// only the leading digits are compared, so ties are ordered by index
+		Comparator<Integer> byLeading = new Comparator<Integer>() {
+			public int compare(Integer o1, Integer o2)
+			{
+				return (o1 / 100000) - (o2 / 100000);
+			}
+		};
+
+		Integer[] expected = values.clone();
+		Arrays.sort(expected, byLeading);
+
+		ParallelSort.sort(values, byLeading, 64);
+		assertArrayEquals(expected, values);
+	}
+
+	/* Tests that the indices sorted in runs, on one thread or several,
+	   order the elements as a stable sort does, and leave them in place. */
+	@Test
+	public void testSortIndices_MatchesStableSort()
+	{
+		System.out.println("testSortIndices_MatchesStableSort()");
+
+		Random random = new Random(23);
+		Integer[] values = new Integer[10007];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random.nextInt(1000) * 100000 + i;
+		}
+
+		Comparator<Integer> byLeading = new Comparator<Integer>() {
+			public int compare(Integer o1, Integer o2)
+			{
+				return (o1 / 100000) - (o2 / 100000);
+			}
+		};
+
+		Integer[] unsorted = values.clone();
+		Integer[] expected = values.clone();
+		Arrays.sort(expected, byLeading);
+
+		for (int threshold : new int[] { 64, ParallelSort.THRESHOLD * 2 }) {
+			int[] indices = ParallelSort.sortIndices(values, byLeading,
+													 threshold);
+			assertArrayEquals(unsorted, values);
+
+			Integer[] sorted = new Integer[indices.length];
+			for (int i = 0; i < indices.length; i++) {
+				sorted[i] = values[indices[i]];
+			}
+			assertArrayEquals(expected, sorted);
+		}
+	}
+
+	/* Tests that a list is sorted by the natural ordering of its elements
+	   when no comparator is given. */
+	@Test
+	public void testSort_ListNaturalOrder()
+	{
+		System.out.println("testSort_ListNaturalOrder()");
+
+		List<String> list = new ArrayList<String>();
+		for (int i = 20000; i > 0; i--) {
+			list.add(String.format("%06d", i));
+		}
+
+		ParallelSort.sort(list, null);
+
+		assertEquals(20000, list.size());
+		for (int i = 1; i < list.size(); i++) {
+			assertEquals(-1, Integer.signum(list.get(i - 1).compareTo(list.get(i))));
+		}
+	}
+
+}
@@ -1,5 +1,7 @@
 package tests.jfmi.util;
 
+import java.util.List;
+
 import org.junit.Test;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertEquals;
@@ -26,6 +28,21 @@ public class StringUtilTest {
 		assertTrue(result.equals(NOPATH));
 	}
 
+	/* Tests that a path is split into its directory and name at the last
+	   delimiter of either kind. */
+	@Test
+	public void testParseDirectoryFromPath()
+	{
+		System.out.println("testParseDirectoryFromPath()");
+
+		assertEquals("some/path/", StringUtil.parseDirectoryFromPath(
+														"some/path/filename"));
+		assertEquals("C:\\dir/", StringUtil.parseDirectoryFromPath(
+														"C:\\dir/name"));
+		assertEquals("/", StringUtil.parseDirectoryFromPath("/"));
+		assertEquals("", StringUtil.parseDirectoryFromPath("filename"));
+	}
+
 	@Test(expected= NullPointerException.class)
 	public void testParseNameFromPath_NullParams()
 	{
@@ -57,4 +74,39 @@ public class StringUtilTest {
 		assertEquals(expected, actual);
 	}
 
+	@Test
+	public void testSplitKeywords_KeepsPhrases()
+	{
+		System.out.println("testSplitKeywords_KeepsPhrases()");
+
+		List<String> words;
+		words = StringUtil.splitKeywords(" one \"two three\"  four\t");
+
+		assertEquals(3, words.size());
+		assertEquals("one", words.get(0));
+		assertEquals("two three", words.get(1));
+		assertEquals("four", words.get(2));
+	}
+
+	/* Tests that folded keys sort as compareToIgnoreCase() sorts. */
+	@Test
+	public void testFoldCase_MatchesCompareToIgnoreCase()
+	{
+		System.out.println("testFoldCase_MatchesCompareToIgnoreCase()");
+
+		String[] words = { "apple", "Banana", "_under", "ZEBRA", "\u00c9t\u00e9",
+						   "\u00e9T\u00c9", "a", "" };
+
+		for (String w1 : words) {
+			for (String w2 : words) {
+				assertEquals(Integer.signum(w1.compareToIgnoreCase(w2)),
+							 Integer.signum(StringUtil.foldCase(w1).compareTo(
+											StringUtil.foldCase(w2))));
+			}
+		}
+
+		String lower = "already lower";
+		assertTrue(StringUtil.foldCase(lower) == lower);
+	}
+
 }